@@ -55,12 +55,24 @@ public class FilteringBuffer<E>
 
 	private final Buffer<E> sourceBuffer;
 	private final Condition condition;
+	private final BlockMatcher blockMatcher;
 	private final ReentrantReadWriteLock indicesLock;
 	private final List<Long> filteredIndices;
 	private boolean disposed;
 
 	public FilteringBuffer(Buffer<E> sourceBuffer, Condition condition)
 	{
+		this(sourceBuffer, condition, null);
+	}
+
+	/**
+	 * @param sourceBuffer the buffer to filter.
+	 * @param condition the condition elements have to match.
+	 * @param blockMatcher used to skip blocks of the source buffer if it implements BlockSummaryOperation. Might be null.
+	 */
+	public FilteringBuffer(Buffer<E> sourceBuffer, Condition condition, BlockMatcher blockMatcher)
+	{
+		this.blockMatcher = blockMatcher;
 		this.indicesLock = new ReentrantReadWriteLock(true);
 		this.sourceBuffer = Objects.requireNonNull(sourceBuffer, "sourceBuffer must not be null!");
 		this.condition = Objects.requireNonNull(condition, "condition must not be null!");
@@ -163,6 +175,11 @@ public class FilteringBuffer<E>
 		return condition;
 	}
 
+	public BlockMatcher getBlockMatcher()
+	{
+		return blockMatcher;
+	}
+
 	@Override
 	public void dispose()
 	{
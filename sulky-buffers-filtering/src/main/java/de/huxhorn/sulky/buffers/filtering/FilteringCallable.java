@@ -34,6 +34,7 @@
 
 package de.huxhorn.sulky.buffers.filtering;
 
+import de.huxhorn.sulky.buffers.BlockSummaryOperation;
 import de.huxhorn.sulky.buffers.Buffer;
 import de.huxhorn.sulky.conditions.Condition;
 import de.huxhorn.sulky.tasks.AbstractProgressingCallable;
@@ -64,6 +65,14 @@ public class FilteringCallable<E>
 		{
 			Buffer<E> sourceBuffer = filteringBuffer.getSourceBuffer();
 			Condition condition = filteringBuffer.getCondition();
+			BlockMatcher blockMatcher = filteringBuffer.getBlockMatcher();
+			BlockSummaryOperation summaries = null;
+			int blockSize = 0;
+			if(blockMatcher != null && sourceBuffer instanceof BlockSummaryOperation)
+			{
+				summaries = (BlockSummaryOperation) sourceBuffer;
+				blockSize = summaries.getBlockSize();
+			}
 			boolean disposed = filteringBuffer.isDisposed();
 			if(disposed)
 			{
@@ -83,21 +92,40 @@ public class FilteringCallable<E>
 
 			if(currentSize != filterStartIndex)
 			{
-				for(long i = filterStartIndex; i < currentSize; i++)
+				long i = filterStartIndex;
+				while(i < currentSize)
 				{
 					disposed = filteringBuffer.isDisposed();
 					if(disposed)
 					{
 						break;
 					}
-					E current = sourceBuffer.get(i);
-					if(current != null && condition.isTrue(current))
+					long lastIndex = i;
+					boolean skipped = false;
+					if(blockSize > 0 && (i == filterStartIndex || i % blockSize == 0))
+					{
+						long blockIndex = i / blockSize;
+						Object summary = summaries.getBlockSummary(blockIndex);
+						if(summary != null && !blockMatcher.mayMatch(condition, summary))
+						{
+							// skip the remaining elements of the block
+							lastIndex = Math.min((blockIndex + 1) * blockSize, currentSize) - 1;
+							skipped = true;
+							if(logger.isDebugEnabled()) logger.debug("Skipped block {}, i.e. indices {} to {}.", blockIndex, i, lastIndex);
+						}
+					}
+					if(!skipped)
 					{
-						filteringBuffer.addFilteredIndex(i);
-						if(logger.isDebugEnabled()) logger.debug("Added index: {}", i);
+						E current = sourceBuffer.get(i);
+						if(current != null && condition.isTrue(current))
+						{
+							filteringBuffer.addFilteredIndex(i);
+							if(logger.isDebugEnabled()) logger.debug("Added index: {}", i);
+						}
 					}
-					setCurrentStep(i);
-					lastFilteredElement = i;
+					setCurrentStep(lastIndex);
+					lastFilteredElement = lastIndex;
+					i = lastIndex + 1;
 				}
 			}
 			try
@@ -0,0 +1,291 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the summaries of consecutive blocks of elements in memory.
+ *
+ * Buffers call update for every element that is written. Elements that existed
+ * before (see reset(long)) have never been seen so the blocks containing them
+ * don't have a summary. The same is true for elements written by somebody else,
+ * e.g. a different process appending to the same file. Blocks containing skipped
+ * indices are therefore invalidated and getSummary(long, LongSupplier) ignores
+ * the block that may contain elements appended after the last update.
+ *
+ * @param <E> the type of the summarized elements.
+ * @param <S> the type of the summary.
+ */
+public class BlockSummaries<E, S>
+{
+	public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+	private final ReadWriteLock readWriteLock;
+	private final BlockSummarizer<E, S> summarizer;
+	private final int blockSize;
+	private final List<S> summaries;
+	private final BitSet invalidBlocks;
+	private long firstKnownBlock;
+	private long summarizedSize;
+
+	public BlockSummaries(BlockSummarizer<E, S> summarizer)
+	{
+		this(summarizer, DEFAULT_BLOCK_SIZE);
+	}
+
+	public BlockSummaries(BlockSummarizer<E, S> summarizer, int blockSize)
+	{
+		if(blockSize <= 0)
+		{
+			throw new IllegalArgumentException("blockSize must be positive but was " + blockSize + "!");
+		}
+		this.readWriteLock = new ReentrantReadWriteLock(true);
+		this.summarizer = Objects.requireNonNull(summarizer, "summarizer must not be null!");
+		this.blockSize = blockSize;
+		this.summaries = new ArrayList<>();
+		this.invalidBlocks = new BitSet();
+	}
+
+	public BlockSummarizer<E, S> getSummarizer()
+	{
+		return summarizer;
+	}
+
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	/**
+	 * Includes the element at the given index in the summary of its block.
+	 * null elements are ignored.
+	 *
+	 * Blocks containing indices between the previous highest index and the given index
+	 * are invalidated because those elements are unknown.
+	 *
+	 * @param index the index of the element.
+	 * @param element the element.
+	 */
+	public void update(long index, E element)
+	{
+		if(index < 0)
+		{
+			return;
+		}
+		long blockIndex = index / blockSize;
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			if(index > summarizedSize)
+			{
+				invalidate(summarizedSize, index);
+			}
+			if(index >= summarizedSize)
+			{
+				summarizedSize = index + 1;
+			}
+			if(element == null || blockIndex < firstKnownBlock)
+			{
+				return;
+			}
+			int listIndex = toListIndex(blockIndex);
+			if(invalidBlocks.get(listIndex))
+			{
+				return;
+			}
+			while(summaries.size() <= listIndex)
+			{
+				summaries.add(null);
+			}
+			summaries.set(listIndex, summarizer.summarize(summaries.get(listIndex), element));
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Includes the given elements, starting at the given index.
+	 *
+	 * @param startIndex the index of the first element.
+	 * @param elements the elements.
+	 */
+	public void updateAll(long startIndex, List<E> elements)
+	{
+		long index = startIndex;
+		for(E element : elements)
+		{
+			update(index, element);
+			index++;
+		}
+	}
+
+	/**
+	 * Returns the summary of the given block.
+	 *
+	 * @param blockIndex the index of the block.
+	 * @return the summary of the block or null if it is unknown.
+	 */
+	public S getSummary(long blockIndex)
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			if(blockIndex < firstKnownBlock)
+			{
+				return null;
+			}
+			long listIndex = blockIndex - firstKnownBlock;
+			if(listIndex >= summaries.size())
+			{
+				return null;
+			}
+			return summaries.get((int) listIndex);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the summary of the given block if it can't contain any elements that
+	 * haven't been passed to update.
+	 *
+	 * The size is only obtained for the last summarized block since preceding blocks
+	 * can't change if elements are only appended.
+	 *
+	 * @param blockIndex the index of the block.
+	 * @param size supplies the current number of elements, e.g. the size of the buffer.
+	 * @return the summary of the block or null if it is unknown.
+	 */
+	public S getSummary(long blockIndex, LongSupplier size)
+	{
+		long lastSummarizedSize;
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			lastSummarizedSize = summarizedSize;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(blockIndex >= lastSummarizedSize / blockSize && size.getAsLong() > lastSummarizedSize)
+		{
+			return null;
+		}
+		return getSummary(blockIndex);
+	}
+
+	/**
+	 * Removes all summaries.
+	 *
+	 * Blocks containing any of the <code>existingElements</code> first elements won't be summarized
+	 * because those elements are unknown.
+	 *
+	 * @param existingElements the number of elements that already exist.
+	 */
+	public void reset(long existingElements)
+	{
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			summaries.clear();
+			invalidBlocks.clear();
+			if(existingElements > 0)
+			{
+				firstKnownBlock = (existingElements + blockSize - 1) / blockSize;
+				summarizedSize = existingElements;
+			}
+			else
+			{
+				firstKnownBlock = 0;
+				summarizedSize = 0;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Invalidates all blocks containing any of the indices from startIndex (inclusive) to endIndex (exclusive).
+	 */
+	private void invalidate(long startIndex, long endIndex)
+	{
+		long firstBlock = Math.max(startIndex / blockSize, firstKnownBlock);
+		long lastBlock = (endIndex - 1) / blockSize;
+		for(long blockIndex = firstBlock; blockIndex <= lastBlock; blockIndex++)
+		{
+			int listIndex = toListIndex(blockIndex);
+			invalidBlocks.set(listIndex);
+			if(listIndex < summaries.size())
+			{
+				summaries.set(listIndex, null);
+			}
+		}
+	}
+
+	private int toListIndex(long blockIndex)
+	{
+		long listIndex = blockIndex - firstKnownBlock;
+		if(listIndex > Integer.MAX_VALUE - 1)
+		{
+			throw new IllegalStateException("Too many blocks!");
+		}
+		return (int) listIndex;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "BlockSummaries[blockSize=" + blockSize + ", summarizer=" + summarizer + "]";
+	}
+}
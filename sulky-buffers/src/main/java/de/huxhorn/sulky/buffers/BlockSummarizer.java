@@ -0,0 +1,57 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+/**
+ * Computes the summary of a block of elements, e.g. min and max timestamp
+ * or the set of logger names of all elements contained in the block.
+ *
+ * A summary must always cover every element it has been given, i.e. it may be
+ * less precise than the actual content of the block but never more restrictive.
+ *
+ * @param <E> the type of the summarized elements.
+ * @param <S> the type of the summary.
+ */
+public interface BlockSummarizer<E, S>
+{
+	/**
+	 * Includes the given element in the given summary.
+	 *
+	 * @param summary the current summary of the block, null for the first element of a block.
+	 * @param element the element to include in the summary, never null.
+	 * @return the updated summary. This can either be the given summary or a new instance.
+	 */
+	S summarize(S summary, E element);
+}
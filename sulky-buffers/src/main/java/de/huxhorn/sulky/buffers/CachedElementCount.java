@@ -0,0 +1,157 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.io.File;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the number of elements of a file based buffer in memory so getSize() doesn't have to open the index file.
+ *
+ * The writing buffer sets the count after every change while still holding its write lock.
+ * Since the files might also be changed by a different instance or process, the count is revalidated
+ * by comparing lastModified and length of the index file if it hasn't been validated for
+ * revalidationMillis. In between, get() is just a volatile read.
+ *
+ * A revalidationMillis of 0 checks the index file on every call, which is still considerably cheaper
+ * than opening it.
+ */
+public class CachedElementCount
+{
+	public static final long DEFAULT_REVALIDATION_MILLIS = 100;
+
+	private final File indexFile;
+	private final long revalidationNanos;
+	private volatile Snapshot snapshot;
+
+	public CachedElementCount(File indexFile)
+	{
+		this(indexFile, DEFAULT_REVALIDATION_MILLIS);
+	}
+
+	public CachedElementCount(File indexFile, long revalidationMillis)
+	{
+		this.indexFile = Objects.requireNonNull(indexFile, "indexFile must not be null!");
+		if(revalidationMillis < 0)
+		{
+			throw new IllegalArgumentException("revalidationMillis must not be negative but was " + revalidationMillis + "!");
+		}
+		this.revalidationNanos = TimeUnit.MILLISECONDS.toNanos(revalidationMillis);
+	}
+
+	/**
+	 * @return the cached count or -1 if it's unknown or outdated and must be recalculated.
+	 */
+	public long get()
+	{
+		Snapshot current = snapshot;
+		if(current == null)
+		{
+			return -1;
+		}
+		long now = System.nanoTime();
+		if(now - current.validatedNanos < revalidationNanos)
+		{
+			return current.count;
+		}
+		if(current.lastModified != indexFile.lastModified() || current.length != indexFile.length())
+		{
+			snapshot = null;
+			return -1;
+		}
+		snapshot = new Snapshot(current.count, current.lastModified, current.length, now);
+		return current.count;
+	}
+
+	/**
+	 * Must be called while holding the lock that protects the index file.
+	 *
+	 * lastModified must be obtained before the index file is examined so a concurrent change by a different
+	 * process is detected by the next revalidation.
+	 *
+	 * @param count the number of elements.
+	 * @param lastModified the lastModified of the index file, obtained before it was examined.
+	 * @param length the length of the index file corresponding to count.
+	 */
+	public void set(long count, long lastModified, long length)
+	{
+		snapshot = new Snapshot(count, lastModified, length, System.nanoTime());
+	}
+
+	/**
+	 * Convenience method for writers that already finished writing and still hold the write lock.
+	 *
+	 * @param count the number of elements.
+	 * @param length the length of the index file corresponding to count.
+	 */
+	public void set(long count, long length)
+	{
+		set(count, indexFile.lastModified(), length);
+	}
+
+	public void invalidate()
+	{
+		snapshot = null;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CachedElementCount{indexFile=" + indexFile + ", snapshot=" + snapshot + "}";
+	}
+
+	private static final class Snapshot
+	{
+		final long count;
+		final long lastModified;
+		final long length;
+		final long validatedNanos;
+
+		Snapshot(long count, long lastModified, long length, long validatedNanos)
+		{
+			this.count = count;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.validatedNanos = validatedNanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "count=" + count + ", lastModified=" + lastModified + ", length=" + length;
+		}
+	}
+}
@@ -0,0 +1,461 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forces the files of a file buffer to the storage device according to a DurabilityPolicy.
+ *
+ * Writers call written() while still holding their write lock and awaitDurable(long)
+ * with the returned ticket after the lock has been released. In case of GROUP_COMMIT,
+ * the first waiting writer forces the files for all writes that happened so far while
+ * the other writers simply wait for that force to finish.
+ *
+ * Periodic forcing is executed by a single daemon thread shared by all instances. The scheduled
+ * task only references the instance weakly, so it's cancelled automatically if the instance is
+ * garbage collected without being closed.
+ *
+ * A failed force is logged and counted in the statistics. It doesn't make any write durable.
+ * Writers waiting in awaitDurable retry the force themselves and fail with an UncheckedIOException
+ * if their retry fails, too. After close, awaitDurable fails for every write that isn't durable,
+ * e.g. because the final force failed or because it happened after close.
+ */
+public class FileSynchronizer
+{
+	public static final long DEFAULT_PERIOD_MILLIS = 1000;
+
+	private static final ScheduledExecutorService PERIODIC_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "FileSynchronizer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Logger logger = LoggerFactory.getLogger(FileSynchronizer.class);
+
+	private final Lock lock = new ReentrantLock();
+	private final Condition forceFinished = lock.newCondition();
+	private final DurabilityPolicy policy;
+	private final long periodMillis;
+	private final List<File> files;
+	private final ScheduledFuture<?> periodicFuture;
+
+	private long writtenTicket;
+	private long durableTicket;
+	private boolean forcing;
+	private boolean closed;
+	private Throwable closeFailure;
+
+	private long forceCount;
+	private long failureCount;
+	private long totalForceNanos;
+	private long maxForceNanos;
+	private long lastForceNanos;
+	private long totalBatchSize;
+	private long maxBatchSize;
+
+	public FileSynchronizer(DurabilityPolicy policy, File... files)
+	{
+		this(policy, DEFAULT_PERIOD_MILLIS, files);
+	}
+
+	/**
+	 * @param policy the durability policy.
+	 * @param periodMillis the period in case of PERIODIC, ignored otherwise.
+	 * @param files the files that are forced.
+	 */
+	public FileSynchronizer(DurabilityPolicy policy, long periodMillis, File... files)
+	{
+		this.policy = Objects.requireNonNull(policy, "policy must not be null!");
+		if(policy == DurabilityPolicy.PERIODIC && periodMillis <= 0)
+		{
+			throw new IllegalArgumentException("periodMillis must be positive but was " + periodMillis + "!");
+		}
+		this.periodMillis = periodMillis;
+		this.files = Arrays.asList(files.clone());
+		if(policy == DurabilityPolicy.PERIODIC)
+		{
+			PeriodicForce task = new PeriodicForce(this);
+			periodicFuture = PERIODIC_EXECUTOR.scheduleWithFixedDelay(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+			task.future = periodicFuture;
+		}
+		else
+		{
+			periodicFuture = null;
+		}
+	}
+
+	public DurabilityPolicy getPolicy()
+	{
+		return policy;
+	}
+
+	public long getPeriodMillis()
+	{
+		return periodMillis;
+	}
+
+	/**
+	 * Must be called after data has been written, while the write lock is still held.
+	 *
+	 * @return the ticket to be used with awaitDurable.
+	 */
+	public long written()
+	{
+		if(policy == DurabilityPolicy.NONE)
+		{
+			return 0;
+		}
+		lock.lock();
+		try
+		{
+			writtenTicket++;
+			return writtenTicket;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until the write identified by the given ticket is durable if the policy is GROUP_COMMIT.
+	 * Returns immediately otherwise.
+	 *
+	 * This method must not be called while holding the write lock of the buffer.
+	 *
+	 * @param ticket the ticket returned by written().
+	 * @throws UncheckedIOException if the files couldn't be forced.
+	 */
+	public void awaitDurable(long ticket)
+	{
+		if(policy != DurabilityPolicy.GROUP_COMMIT)
+		{
+			return;
+		}
+		boolean interrupted = false;
+		for(;;)
+		{
+			long targetTicket;
+			long batchSize;
+			lock.lock();
+			try
+			{
+				while(forcing && durableTicket < ticket)
+				{
+					try
+					{
+						forceFinished.await();
+					}
+					catch(InterruptedException e)
+					{
+						interrupted = true;
+					}
+				}
+				if(durableTicket >= ticket)
+				{
+					break;
+				}
+				if(closed)
+				{
+					if(interrupted)
+					{
+						Thread.currentThread().interrupt();
+					}
+					throw closedException();
+				}
+				forcing = true;
+				targetTicket = writtenTicket;
+				batchSize = targetTicket - durableTicket;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+			Throwable throwable = force(targetTicket, batchSize);
+			if(throwable != null)
+			{
+				if(interrupted)
+				{
+					Thread.currentThread().interrupt();
+				}
+				if(throwable instanceof IOException)
+				{
+					throw new UncheckedIOException("Couldn't force files " + files + "!", (IOException) throwable);
+				}
+				throw (RuntimeException) throwable;
+			}
+		}
+		if(interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Forces all files if anything has been written since the last force.
+	 */
+	public void forceIfChanged()
+	{
+		long targetTicket;
+		long batchSize;
+		lock.lock();
+		try
+		{
+			if(forcing || durableTicket >= writtenTicket)
+			{
+				return;
+			}
+			forcing = true;
+			targetTicket = writtenTicket;
+			batchSize = targetTicket - durableTicket;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		force(targetTicket, batchSize);
+	}
+
+	/**
+	 * Stops periodic forcing and forces all pending changes.
+	 *
+	 * A failure of the final force is logged and reported to writers waiting in awaitDurable.
+	 */
+	public void close()
+	{
+		if(periodicFuture != null)
+		{
+			periodicFuture.cancel(false);
+		}
+		long targetTicket;
+		long batchSize;
+		lock.lock();
+		try
+		{
+			while(forcing)
+			{
+				forceFinished.awaitUninterruptibly();
+			}
+			targetTicket = writtenTicket;
+			batchSize = targetTicket - durableTicket;
+			if(batchSize > 0)
+			{
+				forcing = true;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		Throwable throwable = null;
+		if(batchSize > 0)
+		{
+			// resets forcing on its own
+			throwable = force(targetTicket, batchSize);
+		}
+		lock.lock();
+		try
+		{
+			closed = true;
+			if(throwable != null)
+			{
+				closeFailure = throwable;
+			}
+			forceFinished.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	public SyncStatistics getStatistics()
+	{
+		lock.lock();
+		try
+		{
+			return new SyncStatistics(forceCount, failureCount, totalForceNanos, maxForceNanos, lastForceNanos, totalBatchSize, maxBatchSize);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private UncheckedIOException closedException()
+	{
+		IOException cause;
+		if(closeFailure instanceof IOException)
+		{
+			cause = (IOException) closeFailure;
+		}
+		else
+		{
+			cause = new IOException("FileSynchronizer has been closed before the write was durable!", closeFailure);
+		}
+		return new UncheckedIOException("Couldn't force files " + files + "!", cause);
+	}
+
+	/**
+	 * Executes the actual force without holding the lock so additional writers can queue up in the meantime.
+	 *
+	 * @return the failure or null if the files have been forced successfully.
+	 */
+	private Throwable force(long targetTicket, long batchSize)
+	{
+		long startNanos = System.nanoTime();
+		Throwable throwable;
+		try
+		{
+			throwable = forceFiles();
+		}
+		catch(RuntimeException e)
+		{
+			throwable = e;
+		}
+		long nanos = System.nanoTime() - startNanos;
+		lock.lock();
+		try
+		{
+			forcing = false;
+			forceCount++;
+			if(throwable == null)
+			{
+				durableTicket = Math.max(durableTicket, targetTicket);
+			}
+			else
+			{
+				failureCount++;
+			}
+			totalForceNanos += nanos;
+			lastForceNanos = nanos;
+			maxForceNanos = Math.max(maxForceNanos, nanos);
+			totalBatchSize += batchSize;
+			maxBatchSize = Math.max(maxBatchSize, batchSize);
+			forceFinished.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(throwable != null)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't force files {}!", files, throwable);
+		}
+		return throwable;
+	}
+
+	/**
+	 * @return the last failure or null if all files have been forced.
+	 */
+	Throwable forceFiles()
+	{
+		Throwable result = null;
+		for(File current : files)
+		{
+			if(!current.isFile())
+			{
+				continue;
+			}
+			try(FileChannel channel = FileChannel.open(current.toPath(), StandardOpenOption.WRITE))
+			{
+				channel.force(true);
+			}
+			catch(IOException e)
+			{
+				result = e;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "FileSynchronizer[policy=" + policy + ", periodMillis=" + periodMillis + ", files=" + files + "]";
+	}
+
+	/**
+	 * Doesn't keep the synchronizer, and therefore the buffer, reachable.
+	 */
+	private static class PeriodicForce
+		implements Runnable
+	{
+		private final WeakReference<FileSynchronizer> synchronizerReference;
+		volatile ScheduledFuture<?> future;
+
+		PeriodicForce(FileSynchronizer synchronizer)
+		{
+			this.synchronizerReference = new WeakReference<>(synchronizer);
+		}
+
+		@Override
+		public void run()
+		{
+			FileSynchronizer synchronizer = synchronizerReference.get();
+			if(synchronizer == null)
+			{
+				ScheduledFuture<?> localFuture = future;
+				if(localFuture != null)
+				{
+					localFuture.cancel(false);
+				}
+				return;
+			}
+			synchronizer.forceIfChanged();
+		}
+	}
+}
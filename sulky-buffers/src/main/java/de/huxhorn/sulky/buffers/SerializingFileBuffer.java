@@ -42,6 +42,8 @@ import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -73,6 +75,9 @@ public class SerializingFileBuffer<E>
 
 	private static final String INDEX_EXTENSION = ".index";
 
+	private FileSynchronizer fileSynchronizer;
+	private CachedElementCount elementCount;
+
 	public SerializingFileBuffer(File dataFile)
 	{
 		this(dataFile, null);
@@ -98,11 +103,80 @@ public class SerializingFileBuffer<E>
 		}
 
 		setIndexFile(indexFile);
+		this.elementCount = new CachedElementCount(this.indexFile);
+		this.fileSynchronizer = new FileSynchronizer(DurabilityPolicy.NONE, dataFile, indexFile);
+	}
+
+	public DurabilityPolicy getDurabilityPolicy()
+	{
+		return getFileSynchronizer().getPolicy();
+	}
+
+	public void setDurabilityPolicy(DurabilityPolicy durabilityPolicy)
+	{
+		setDurabilityPolicy(durabilityPolicy, FileSynchronizer.DEFAULT_PERIOD_MILLIS);
+	}
+
+	/**
+	 * Changes the durability policy. Changes of the previous policy are forced before this method returns.
+	 *
+	 * @param durabilityPolicy the new durability policy.
+	 * @param periodMillis the period in case of PERIODIC, ignored otherwise.
+	 */
+	public void setDurabilityPolicy(DurabilityPolicy durabilityPolicy, long periodMillis)
+	{
+		FileSynchronizer newSynchronizer = new FileSynchronizer(durabilityPolicy, periodMillis, dataFile, indexFile);
+		FileSynchronizer previousSynchronizer;
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			previousSynchronizer = fileSynchronizer;
+			fileSynchronizer = newSynchronizer;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		previousSynchronizer.close();
+	}
+
+	/**
+	 * @return the fsync statistics of the current durability policy.
+	 */
+	public SyncStatistics getSyncStatistics()
+	{
+		return getFileSynchronizer().getStatistics();
+	}
+
+	private FileSynchronizer getFileSynchronizer()
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			return fileSynchronizer;
+		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 
+	/**
+	 * Returns the cached number of elements if it's still valid.
+	 * Otherwise, the size is calculated using the index file.
+	 *
+	 * @return the number of elements contained in this buffer.
+	 */
 	@Override
 	public long getSize()
 	{
+		long result = elementCount.get();
+		if(result >= 0)
+		{
+			return result;
+		}
 		if(!indexFile.canRead())
 		{
 			return 0;
@@ -111,9 +185,12 @@ public class SerializingFileBuffer<E>
 		Throwable throwable;
 		Lock lock = readWriteLock.readLock();
 		lock.lock(); // FindBugs "Multithreaded correctness - Method does not release lock on all exception paths" is a false positive
+		long lastModified = indexFile.lastModified();
 		try(RandomAccessFile raf = new RandomAccessFile(indexFile, "r"))
 		{
-			return internalGetSize(raf);
+			result = internalGetSize(raf);
+			elementCount.set(result, lastModified, raf.length());
+			return result;
 		}
 		catch(Throwable e)
 		{
@@ -177,10 +254,59 @@ public class SerializingFileBuffer<E>
 		return null;
 	}
 
+	/**
+	 * Returns the serialized and gzipped bytes of count consecutive elements without deserializing them.
+	 * The bytes can be decoded using a compressing SerializableDecoder.
+	 * The entry of an element that is not available is null.
+	 *
+	 * @param startIndex the index of the first element.
+	 * @param count the number of elements.
+	 * @return a list containing count entries or null if the elements couldn't be read.
+	 */
+	public List<byte[]> getEncoded(long startIndex, int count)
+	{
+		if(startIndex < 0)
+		{
+			throw new IllegalArgumentException("startIndex must not be negative!");
+		}
+		if(count < 0)
+		{
+			throw new IllegalArgumentException("count must not be negative!");
+		}
+		if(!dataFile.canRead() || !indexFile.canRead())
+		{
+			return null;
+		}
+
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		Throwable throwable;
+		try(RandomAccessFile randomSerializeIndexFile = new RandomAccessFile(indexFile, "r");
+			RandomAccessFile randomSerializeFile = new RandomAccessFile(dataFile, "r")
+		)
+		{
+			return internalReadEncoded(randomSerializeIndexFile, randomSerializeFile, startIndex, count);
+		}
+		catch(Throwable e)
+		{
+			throwable = e;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		// it's a really bad idea to log while locked *sigh*
+		if(logger.isWarnEnabled()) logger.warn("Couldn't retrieve {} elements starting at index {}!", count, startIndex, throwable);
+		return null;
+	}
+
 	@Override
 	public void add(E element)
 	{
 		Throwable throwable = null;
+		FileSynchronizer synchronizer = null;
+		long ticket = 0;
 		Lock lock = readWriteLock.writeLock();
 		lock.lock(); // FindBugs "Multithreaded correctness - Method does not release lock on all exception paths" is a false positive
 		try(RandomAccessFile randomSerializeIndexFile = new RandomAccessFile(indexFile, "rw");
@@ -197,9 +323,13 @@ public class SerializingFileBuffer<E>
 			}
 			internalWriteElement(randomSerializeFile, offset, element);
 			internalWriteOffset(randomSerializeIndexFile, elementsCount, offset);
+			elementCount.set(internalGetSize(randomSerializeIndexFile), randomSerializeIndexFile.length());
+			synchronizer = fileSynchronizer;
+			ticket = synchronizer.written();
 		}
 		catch(IOException e)
 		{
+			elementCount.invalidate();
 			throwable = e;
 		}
 		finally
@@ -211,7 +341,10 @@ public class SerializingFileBuffer<E>
 			// it's a really bad idea to log while locked *sigh*
 			if(logger.isWarnEnabled()) logger.warn("Couldn't write element!", throwable); // NOPMD
 		}
-
+		if(synchronizer != null)
+		{
+			synchronizer.awaitDurable(ticket);
+		}
 	}
 
 	@Override
@@ -224,6 +357,8 @@ public class SerializingFileBuffer<E>
 			{
 
 				Throwable throwable = null;
+				FileSynchronizer synchronizer = null;
+				long ticket = 0;
 				Lock lock = readWriteLock.writeLock();
 				lock.lock(); // FindBugs "Multithreaded correctness - Method does not release lock on all exception paths" is a false positive
 				try(RandomAccessFile randomSerializeIndexFile = new RandomAccessFile(indexFile, "rw");
@@ -253,9 +388,13 @@ public class SerializingFileBuffer<E>
 						internalWriteOffset(randomSerializeIndexFile, elementsCount + index, curOffset);
 						index++;
 					}
+					elementCount.set(internalGetSize(randomSerializeIndexFile), randomSerializeIndexFile.length());
+					synchronizer = fileSynchronizer;
+					ticket = synchronizer.written();
 				}
 				catch(Throwable e)
 				{
+					elementCount.invalidate();
 					throwable = e;
 				}
 				finally
@@ -267,6 +406,10 @@ public class SerializingFileBuffer<E>
 					// it's a really bad idea to log while locked *sigh*
 					if(logger.isWarnEnabled()) logger.warn("Couldn't write element!", throwable); // NOPMD
 				}
+				if(synchronizer != null)
+				{
+					synchronizer.awaitDurable(ticket);
+				}
 			}
 
 		}
@@ -290,6 +433,7 @@ public class SerializingFileBuffer<E>
 		{
 			indexDeleted=indexFile.delete();
 			dataDeleted=dataFile.delete();
+			elementCount.invalidate();
 		}
 		finally
 		{
@@ -371,6 +515,60 @@ public class SerializingFileBuffer<E>
 		}
 	}
 
+	/**
+	 * Reads the offsets of all available elements at once and their data using a single read
+	 * since elements are written sequentially.
+	 */
+	private List<byte[]> internalReadEncoded(RandomAccessFile randomSerializeIndexFile, RandomAccessFile randomSerializeFile, long startIndex, int count)
+		throws IOException
+	{
+		List<byte[]> result = new ArrayList<>(count);
+		long available = Math.min(count, Math.max(0, internalGetSize(randomSerializeIndexFile) - startIndex));
+		int availableCount = (int) available;
+		if(availableCount > 0)
+		{
+			byte[] indexBytes = new byte[availableCount * 8];
+			randomSerializeIndexFile.seek(8 * startIndex);
+			randomSerializeIndexFile.readFully(indexBytes);
+			ByteBuffer indexBuffer = ByteBuffer.wrap(indexBytes);
+			long firstOffset = indexBuffer.getLong(0);
+			long lastOffset = indexBuffer.getLong(indexBytes.length - 8);
+			long dataLength = randomSerializeFile.length();
+			if(lastOffset < firstOffset || lastOffset + 4 > dataLength)
+			{
+				throw new IndexOutOfBoundsException("Invalid offsets " + firstOffset + " and " + lastOffset + "!");
+			}
+			long end = lastOffset + 4 + internalReadElementSize(randomSerializeFile, lastOffset);
+			if(end > dataLength || end - firstOffset > Integer.MAX_VALUE)
+			{
+				throw new IndexOutOfBoundsException("Invalid length at offset: " + lastOffset + "!");
+			}
+			byte[] data = new byte[(int) (end - firstOffset)];
+			randomSerializeFile.seek(firstOffset);
+			randomSerializeFile.readFully(data);
+			ByteBuffer dataBuffer = ByteBuffer.wrap(data);
+			for(int i = 0; i < availableCount; i++)
+			{
+				long position = indexBuffer.getLong(i * 8) - firstOffset;
+				if(position < 0 || position + 4 > data.length)
+				{
+					throw new IndexOutOfBoundsException("Invalid offset of element " + (startIndex + i) + "!");
+				}
+				int bufferSize = dataBuffer.getInt((int) position);
+				if(bufferSize < 0 || position + 4 + bufferSize > data.length)
+				{
+					throw new IndexOutOfBoundsException("Invalid length (" + bufferSize + ") of element " + (startIndex + i) + "!");
+				}
+				result.add(Arrays.copyOfRange(data, (int) position + 4, (int) position + 4 + bufferSize));
+			}
+		}
+		while(result.size() < count)
+		{
+			result.add(null);
+		}
+		return result;
+	}
+
 	private void internalWriteOffset(RandomAccessFile randomSerializeIndexFile, long index, long offset)
 		throws IOException
 	{
@@ -0,0 +1,143 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.io.Serializable;
+
+/**
+ * Immutable snapshot of the statistics of a FileSynchronizer.
+ */
+public final class SyncStatistics
+	implements Serializable
+{
+	private static final long serialVersionUID = -2710262283575009207L;
+
+	private final long forceCount;
+	private final long failureCount;
+	private final long totalForceNanos;
+	private final long maxForceNanos;
+	private final long lastForceNanos;
+	private final long totalBatchSize;
+	private final long maxBatchSize;
+
+	public SyncStatistics(long forceCount, long failureCount, long totalForceNanos, long maxForceNanos, long lastForceNanos, long totalBatchSize, long maxBatchSize)
+	{
+		this.forceCount = forceCount;
+		this.failureCount = failureCount;
+		this.totalForceNanos = totalForceNanos;
+		this.maxForceNanos = maxForceNanos;
+		this.lastForceNanos = lastForceNanos;
+		this.totalBatchSize = totalBatchSize;
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @return the number of executed forces, including failed ones.
+	 */
+	public long getForceCount()
+	{
+		return forceCount;
+	}
+
+	/**
+	 * @return the number of failed forces.
+	 */
+	public long getFailureCount()
+	{
+		return failureCount;
+	}
+
+	public long getTotalForceNanos()
+	{
+		return totalForceNanos;
+	}
+
+	public long getMaxForceNanos()
+	{
+		return maxForceNanos;
+	}
+
+	public long getLastForceNanos()
+	{
+		return lastForceNanos;
+	}
+
+	public long getAverageForceNanos()
+	{
+		if(forceCount == 0)
+		{
+			return 0;
+		}
+		return totalForceNanos / forceCount;
+	}
+
+	/**
+	 * @return the number of writes made durable by all forces.
+	 */
+	public long getTotalBatchSize()
+	{
+		return totalBatchSize;
+	}
+
+	/**
+	 * @return the largest number of writes made durable by a single force.
+	 */
+	public long getMaxBatchSize()
+	{
+		return maxBatchSize;
+	}
+
+	public double getAverageBatchSize()
+	{
+		if(forceCount == 0)
+		{
+			return 0;
+		}
+		return (double) totalBatchSize / forceCount;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SyncStatistics[forceCount=" + forceCount
+				+ ", failureCount=" + failureCount
+				+ ", averageForceNanos=" + getAverageForceNanos()
+				+ ", maxForceNanos=" + maxForceNanos
+				+ ", lastForceNanos=" + lastForceNanos
+				+ ", averageBatchSize=" + getAverageBatchSize()
+				+ ", maxBatchSize=" + maxBatchSize
+				+ "]";
+	}
+}
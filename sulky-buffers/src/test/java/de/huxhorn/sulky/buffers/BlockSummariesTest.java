@@ -0,0 +1,156 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BlockSummariesTest
+{
+	private static final int BLOCK_SIZE = 4;
+
+	private BlockSummaries<Long, long[]> instance;
+
+	@Before
+	public void setUp()
+	{
+		instance = new BlockSummaries<>(new MinMaxSummarizer(), BLOCK_SIZE);
+	}
+
+	@Test
+	public void empty()
+	{
+		assertEquals(BLOCK_SIZE, instance.getBlockSize());
+		assertNull(instance.getSummary(0));
+		assertNull(instance.getSummary(-1));
+	}
+
+	@Test
+	public void blocks()
+	{
+		instance.updateAll(0, Arrays.asList(5L, 3L, 7L, 4L, 10L, 12L));
+
+		assertArrayEquals(new long[]{3, 7}, instance.getSummary(0));
+		assertArrayEquals(new long[]{10, 12}, instance.getSummary(1));
+		assertNull(instance.getSummary(2));
+
+		instance.update(6, 1L);
+		assertArrayEquals(new long[]{1, 12}, instance.getSummary(1));
+	}
+
+	@Test
+	public void nullElementsAreIgnored()
+	{
+		instance.update(0, 5L);
+		instance.update(1, null);
+
+		assertArrayEquals(new long[]{5, 5}, instance.getSummary(0));
+	}
+
+	@Test
+	public void existingElementsAreUnknown()
+	{
+		instance.reset(5);
+		instance.update(5, 17L);
+		instance.update(8, 42L);
+
+		assertNull(instance.getSummary(0));
+		assertNull(instance.getSummary(1));
+		assertArrayEquals(new long[]{42, 42}, instance.getSummary(2));
+
+		instance.reset(0);
+		instance.update(0, 1L);
+		assertArrayEquals(new long[]{1, 1}, instance.getSummary(0));
+		assertNull(instance.getSummary(2));
+	}
+
+	@Test
+	public void skippedElementsAreUnknown()
+	{
+		instance.updateAll(0, Arrays.asList(5L, 3L));
+		// elements 2 to 9 have been written by somebody else
+		instance.update(10, 17L);
+		instance.update(11, 42L);
+		instance.update(12, 1L);
+
+		assertNull(instance.getSummary(0));
+		assertNull(instance.getSummary(1));
+		assertNull(instance.getSummary(2));
+		assertArrayEquals(new long[]{1, 1}, instance.getSummary(3));
+
+		instance.update(0, 2L);
+		assertNull(instance.getSummary(0));
+	}
+
+	@Test
+	public void appendedElementsAreUnknown()
+	{
+		instance.updateAll(0, Arrays.asList(5L, 3L, 7L, 4L, 10L, 12L));
+
+		assertArrayEquals(new long[]{3, 7}, instance.getSummary(0, () -> 6));
+		assertArrayEquals(new long[]{10, 12}, instance.getSummary(1, () -> 6));
+		// elements appended by somebody else
+		assertArrayEquals(new long[]{3, 7}, instance.getSummary(0, () -> 7));
+		assertNull(instance.getSummary(1, () -> 7));
+		assertNull(instance.getSummary(2, () -> 9));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidBlockSize()
+	{
+		new BlockSummaries<>(new MinMaxSummarizer(), 0);
+	}
+
+	private static class MinMaxSummarizer
+		implements BlockSummarizer<Long, long[]>
+	{
+		@Override
+		public long[] summarize(long[] summary, Long element)
+		{
+			if(summary == null)
+			{
+				return new long[]{element, element};
+			}
+			summary[0] = Math.min(summary[0], element);
+			summary[1] = Math.max(summary[1], element);
+			return summary;
+		}
+	}
+}
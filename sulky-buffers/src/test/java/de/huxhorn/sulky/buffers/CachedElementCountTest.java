@@ -0,0 +1,122 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CachedElementCountTest
+{
+	private File tempOutputPath;
+	private File indexFile;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		tempOutputPath = Files.createTempDirectory("cec-testing").toFile();
+		indexFile = new File(tempOutputPath, "data.index");
+		Files.write(indexFile.toPath(), new byte[16]);
+	}
+
+	@After
+	public void tearDown()
+	{
+		indexFile.delete();
+		tempOutputPath.delete();
+	}
+
+	@Test
+	public void unknown()
+	{
+		CachedElementCount instance = new CachedElementCount(indexFile);
+		assertEquals(-1, instance.get());
+	}
+
+	@Test
+	public void setAndInvalidate()
+	{
+		CachedElementCount instance = new CachedElementCount(indexFile);
+		instance.set(2, indexFile.length());
+		assertEquals(2, instance.get());
+
+		instance.invalidate();
+		assertEquals(-1, instance.get());
+	}
+
+	@Test
+	public void revalidationDetectsChangedLength()
+		throws Exception
+	{
+		CachedElementCount instance = new CachedElementCount(indexFile, 0);
+		instance.set(2, indexFile.length());
+		assertEquals(2, instance.get());
+
+		Files.write(indexFile.toPath(), new byte[24]);
+		assertEquals(-1, instance.get());
+	}
+
+	@Test
+	public void revalidationDetectsDeletedFile()
+	{
+		CachedElementCount instance = new CachedElementCount(indexFile, 0);
+		instance.set(2, indexFile.length());
+
+		indexFile.delete();
+		assertEquals(-1, instance.get());
+	}
+
+	@Test
+	public void changesAreIgnoredUntilRevalidation()
+		throws Exception
+	{
+		CachedElementCount instance = new CachedElementCount(indexFile, 60_000);
+		instance.set(2, indexFile.length());
+
+		Files.write(indexFile.toPath(), new byte[24]);
+		assertEquals(2, instance.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeRevalidationMillis()
+	{
+		new CachedElementCount(indexFile, -1);
+	}
+}
@@ -0,0 +1,301 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.buffers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FileSynchronizerTest
+{
+	private File tempOutputPath;
+	private File file;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		tempOutputPath = Files.createTempDirectory("fs-testing").toFile();
+		file = new File(tempOutputPath, "data");
+		Files.write(file.toPath(), new byte[]{1, 2, 3});
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+		tempOutputPath.delete();
+	}
+
+	@Test
+	public void none()
+	{
+		FileSynchronizer instance = new FileSynchronizer(DurabilityPolicy.NONE, file);
+		instance.awaitDurable(instance.written());
+		instance.forceIfChanged();
+		instance.close();
+
+		assertEquals(0, instance.getStatistics().getForceCount());
+	}
+
+	@Test
+	public void groupCommitForcesEachTicket()
+	{
+		FileSynchronizer instance = new FileSynchronizer(DurabilityPolicy.GROUP_COMMIT, file);
+		instance.awaitDurable(instance.written());
+		instance.awaitDurable(instance.written());
+		// already durable
+		instance.forceIfChanged();
+
+		SyncStatistics statistics = instance.getStatistics();
+		assertEquals(2, statistics.getForceCount());
+		assertEquals(0, statistics.getFailureCount());
+		assertEquals(2, statistics.getTotalBatchSize());
+		assertEquals(1, statistics.getMaxBatchSize());
+	}
+
+	@Test
+	public void groupCommitBatchesPendingTickets()
+	{
+		FileSynchronizer instance = new FileSynchronizer(DurabilityPolicy.GROUP_COMMIT, file);
+		instance.written();
+		instance.written();
+		long ticket = instance.written();
+		instance.awaitDurable(ticket);
+
+		SyncStatistics statistics = instance.getStatistics();
+		assertEquals(1, statistics.getForceCount());
+		assertEquals(3, statistics.getMaxBatchSize());
+	}
+
+	@Test
+	public void groupCommitConcurrentWriters()
+		throws InterruptedException
+	{
+		final int threadCount = 8;
+		final int writesPerThread = 50;
+		final FileSynchronizer instance = new FileSynchronizer(DurabilityPolicy.GROUP_COMMIT, file);
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for(int i = 0; i < threadCount; i++)
+		{
+			Thread thread = new Thread(() -> {
+				try
+				{
+					start.await();
+				}
+				catch(InterruptedException e)
+				{
+					return;
+				}
+				for(int j = 0; j < writesPerThread; j++)
+				{
+					long ticket;
+					synchronized(instance)
+					{
+						ticket = instance.written();
+					}
+					instance.awaitDurable(ticket);
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for(Thread current : threads)
+		{
+			current.join();
+		}
+
+		SyncStatistics statistics = instance.getStatistics();
+		assertEquals(threadCount * writesPerThread, statistics.getTotalBatchSize());
+		assertTrue(statistics.getForceCount() <= threadCount * writesPerThread);
+		assertEquals(0, statistics.getFailureCount());
+	}
+
+	@Test
+	public void periodic()
+		throws InterruptedException
+	{
+		FileSynchronizer instance = new FileSynchronizer(DurabilityPolicy.PERIODIC, 10, file);
+		instance.awaitDurable(instance.written());
+		for(int i = 0; i < 500 && instance.getStatistics().getForceCount() == 0; i++)
+		{
+			Thread.sleep(10);
+		}
+		instance.close();
+
+		SyncStatistics statistics = instance.getStatistics();
+		assertEquals(1, statistics.getForceCount());
+		assertEquals(1, statistics.getTotalBatchSize());
+	}
+
+	@Test
+	public void closeForcesPendingChanges()
+	{
+		FileSynchronizer instance = new FileSynchronizer(DurabilityPolicy.PERIODIC, 60_000, file);
+		instance.written();
+		instance.close();
+
+		assertEquals(1, instance.getStatistics().getForceCount());
+	}
+
+	@Test
+	public void missingFilesAreIgnored()
+	{
+		FileSynchronizer instance = new FileSynchronizer(DurabilityPolicy.GROUP_COMMIT, new File(tempOutputPath, "missing"));
+		instance.awaitDurable(instance.written());
+
+		SyncStatistics statistics = instance.getStatistics();
+		assertEquals(1, statistics.getForceCount());
+		assertEquals(0, statistics.getFailureCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void periodicRequiresPositivePeriod()
+	{
+		new FileSynchronizer(DurabilityPolicy.PERIODIC, 0, file);
+	}
+
+	@Test
+	public void failedForceIsNotDurable()
+	{
+		final IOException failure = new IOException("Failed!");
+		final int[] failures = {2};
+		FileSynchronizer instance = new FileSynchronizer(DurabilityPolicy.GROUP_COMMIT, file)
+		{
+			@Override
+			Throwable forceFiles()
+			{
+				if(failures[0] > 0)
+				{
+					failures[0]--;
+					return failure;
+				}
+				return super.forceFiles();
+			}
+		};
+		long ticket = instance.written();
+		try
+		{
+			instance.awaitDurable(ticket);
+			fail("Expected UncheckedIOException!");
+		}
+		catch(UncheckedIOException ex)
+		{
+			assertEquals(failure, ex.getCause());
+		}
+		// periodic or later forces don't pretend the failed ticket is durable
+		instance.forceIfChanged();
+		instance.awaitDurable(ticket);
+
+		SyncStatistics statistics = instance.getStatistics();
+		assertEquals(3, statistics.getForceCount());
+		assertEquals(2, statistics.getFailureCount());
+	}
+
+	@Test
+	public void failedCloseIsNotDurable()
+	{
+		final IOException failure = new IOException("Failed!");
+		FileSynchronizer instance = new FileSynchronizer(DurabilityPolicy.GROUP_COMMIT, file)
+		{
+			@Override
+			Throwable forceFiles()
+			{
+				return failure;
+			}
+		};
+		long ticket = instance.written();
+		instance.close();
+		try
+		{
+			instance.awaitDurable(ticket);
+			fail("Expected UncheckedIOException!");
+		}
+		catch(UncheckedIOException ex)
+		{
+			assertEquals(failure, ex.getCause());
+		}
+		assertEquals(1, instance.getStatistics().getFailureCount());
+	}
+
+	@Test
+	public void writeAfterCloseIsNotDurable()
+	{
+		FileSynchronizer instance = new FileSynchronizer(DurabilityPolicy.GROUP_COMMIT, file);
+		long ticket = instance.written();
+		instance.close();
+		instance.awaitDurable(ticket);
+
+		long lateTicket = instance.written();
+		try
+		{
+			instance.awaitDurable(lateTicket);
+			fail("Expected UncheckedIOException!");
+		}
+		catch(UncheckedIOException ex)
+		{
+			// expected
+		}
+		assertEquals(1, instance.getStatistics().getForceCount());
+	}
+
+	@Test
+	public void periodicTaskDoesNotKeepInstanceReachable()
+		throws InterruptedException
+	{
+		WeakReference<FileSynchronizer> reference = new WeakReference<>(new FileSynchronizer(DurabilityPolicy.PERIODIC, 10, file));
+		for(int i = 0; i < 100 && reference.get() != null; i++)
+		{
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+	}
+}
@@ -34,8 +34,12 @@
 
 package de.huxhorn.sulky.buffers;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.ObjectInputStream;
 import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +47,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class SerializingFileBufferTest
 {
@@ -113,6 +118,67 @@ public class SerializingFileBufferTest
 		}
 	}
 
+	@Test
+	public void sizeIsUpdatedByOtherInstance()
+		throws InterruptedException
+	{
+		instance.addAll(values);
+		assertEquals(values.length, (int) instance.getSize());
+
+		SerializingFileBuffer<String> other = new SerializingFileBuffer<>(serializeFile, serializeIndexFile);
+		assertEquals(values.length, (int) other.getSize());
+		other.add(values[0]);
+		assertEquals(values.length + 1, (int) other.getSize());
+
+		Thread.sleep(CachedElementCount.DEFAULT_REVALIDATION_MILLIS + 50);
+		assertEquals(values.length + 1, (int) instance.getSize());
+	}
+
+	@Test
+	public void sizeAfterReset()
+	{
+		instance.addAll(values);
+		instance.reset();
+		assertEquals(0, (int) instance.getSize());
+	}
+
+	@Test
+	public void groupCommit()
+	{
+		instance.setDurabilityPolicy(DurabilityPolicy.GROUP_COMMIT);
+		assertEquals(DurabilityPolicy.GROUP_COMMIT, instance.getDurabilityPolicy());
+		instance.add(values[0]);
+		instance.addAll(values);
+
+		SyncStatistics statistics = instance.getSyncStatistics();
+		assertEquals(2, statistics.getForceCount());
+		assertEquals(0, statistics.getFailureCount());
+		assertEquals(values.length + 1, (int) instance.getSize());
+
+		instance.setDurabilityPolicy(DurabilityPolicy.NONE);
+		instance.add(values[0]);
+		assertEquals(0, instance.getSyncStatistics().getForceCount());
+	}
+
+	@Test
+	public void getEncoded()
+		throws Exception
+	{
+		instance.addAll(values);
+		List<byte[]> encoded = instance.getEncoded(2, values.length);
+		assertEquals(values.length, encoded.size());
+		for(int i = 0; i < values.length - 2; i++)
+		{
+			try(ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(encoded.get(i)))))
+			{
+				assertEquals("Element #" + (i + 2) + " differs!", values[i + 2], ois.readObject());
+			}
+		}
+		assertNull(encoded.get(values.length - 2));
+		assertNull(encoded.get(values.length - 1));
+		assertEquals(0, instance.getEncoded(values.length, 0).size());
+	}
+
 	@Test
 	public void readWriteAddAll()
 	{
@@ -0,0 +1,130 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures add() and addAll() of DefaultDataStrategy and SparseDataStrategy.
+ *
+ * Every invocation of addAll writes batchSize elements so the element throughput is
+ * the measured throughput multiplied by batchSize. The buffer is reset after every iteration.
+ */
+@State(Scope.Thread)
+public class AppendBenchmark
+{
+	@Param({"64", "512", "4096"})
+	private int elementSize;
+
+	@Param({"1", "10", "100", "1000"})
+	private int batchSize;
+
+	@Param({"false", "true"})
+	private boolean sparse;
+
+	private File directory;
+	private CodecFileBuffer<byte[]> buffer;
+	private List<byte[]> batch;
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws IOException
+	{
+		directory = BenchmarkSupport.createTempDirectory();
+		buffer = BenchmarkSupport.createBuffer(directory, sparse);
+		batch = BenchmarkSupport.createElements(batchSize, elementSize);
+	}
+
+	@TearDown(Level.Iteration)
+	public void resetBuffer()
+	{
+		buffer.reset();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		buffer.dispose();
+		BenchmarkSupport.deleteDirectory(directory);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void add()
+	{
+		for(byte[] current : batch)
+		{
+			buffer.add(current);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void addAll()
+	{
+		buffer.addAll(batch);
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		Options opt = new OptionsBuilder()
+				.include(AppendBenchmark.class.getSimpleName())
+				.warmupIterations(5)
+				.measurementIterations(5)
+				.forks(1)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
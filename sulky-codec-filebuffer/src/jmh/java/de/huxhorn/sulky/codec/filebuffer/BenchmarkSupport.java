@@ -0,0 +1,116 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.codec.Codec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Helpers shared by the benchmarks.
+ *
+ * Elements are byte arrays stored as they are so the benchmarks measure the buffer and its
+ * strategies instead of the codec.
+ */
+final class BenchmarkSupport
+{
+	static final int MAGIC_VALUE = 0x0B0B0B0B;
+
+	private BenchmarkSupport()
+	{}
+
+	static File createTempDirectory()
+		throws IOException
+	{
+		return Files.createTempDirectory("sulky-filebuffer-jmh").toFile();
+	}
+
+	static void deleteDirectory(File directory)
+	{
+		File[] files = directory.listFiles();
+		if(files != null)
+		{
+			for(File current : files)
+			{
+				if(!current.delete())
+				{
+					current.deleteOnExit();
+				}
+			}
+		}
+		if(!directory.delete())
+		{
+			directory.deleteOnExit();
+		}
+	}
+
+	static CodecFileBuffer<byte[]> createBuffer(File directory, boolean sparse)
+	{
+		return new CodecFileBuffer<>(MAGIC_VALUE, sparse, null, new BytesCodec(), new File(directory, "buffer"), new File(directory, "buffer.index"));
+	}
+
+	static List<byte[]> createElements(int count, int elementSize)
+	{
+		Random random = new Random(count * 31L + elementSize);
+		List<byte[]> result = new ArrayList<>(count);
+		for(int i = 0; i < count; i++)
+		{
+			byte[] element = new byte[elementSize];
+			random.nextBytes(element);
+			result.add(element);
+		}
+		return result;
+	}
+
+	static class BytesCodec
+		implements Codec<byte[]>
+	{
+		@Override
+		public byte[] encode(byte[] object)
+		{
+			return object;
+		}
+
+		@Override
+		public byte[] decode(byte[] bytes)
+		{
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures get(), getSize() and index lookups of a buffer containing elementCount elements.
+ *
+ * The buffer is shared by all threads so the randomGet variants with more threads show
+ * how concurrent readers scale.
+ */
+@State(Scope.Benchmark)
+public class ReadBenchmark
+{
+	@Param({"64", "512", "4096"})
+	private int elementSize;
+
+	@Param({"10000"})
+	private int elementCount;
+
+	@Param({"false", "true"})
+	private boolean sparse;
+
+	private File directory;
+	private CodecFileBuffer<byte[]> buffer;
+
+	@State(Scope.Thread)
+	public static class Cursor
+	{
+		private long index;
+		private RandomAccessFile indexFile;
+
+		@Setup(Level.Trial)
+		public void setUp(ReadBenchmark benchmark)
+			throws IOException
+		{
+			indexFile = new RandomAccessFile(benchmark.buffer.getIndexFile(), "r");
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown()
+			throws IOException
+		{
+			indexFile.close();
+		}
+
+		long next(long size)
+		{
+			long result = index;
+			index++;
+			if(index >= size)
+			{
+				index = 0;
+			}
+			return result;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws IOException
+	{
+		directory = BenchmarkSupport.createTempDirectory();
+		buffer = BenchmarkSupport.createBuffer(directory, sparse);
+		buffer.addAll(BenchmarkSupport.createElements(elementCount, elementSize));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		buffer.dispose();
+		BenchmarkSupport.deleteDirectory(directory);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public byte[] sequentialGet(Cursor cursor)
+	{
+		return buffer.get(cursor.next(elementCount));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public byte[] randomGet()
+	{
+		return buffer.get(ThreadLocalRandom.current().nextInt(elementCount));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Threads(1)
+	public byte[] randomGetThreads1()
+	{
+		return randomGet();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Threads(2)
+	public byte[] randomGetThreads2()
+	{
+		return randomGet();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Threads(4)
+	public byte[] randomGetThreads4()
+	{
+		return randomGet();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Threads(8)
+	public byte[] randomGetThreads8()
+	{
+		return randomGet();
+	}
+
+	/**
+	 * getSize() as long as the in-memory element count is valid.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public long getSize()
+	{
+		return buffer.getSize();
+	}
+
+	/**
+	 * getSize() reading the size from the index file.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public long getSizeUncached()
+	{
+		buffer.invalidateSize();
+		return buffer.getSize();
+	}
+
+	/**
+	 * Offset lookup of the IndexStrategy without opening files.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public long indexLookup(Cursor cursor)
+		throws IOException
+	{
+		return buffer.getIndexStrategy().getOffset(cursor.indexFile, ThreadLocalRandom.current().nextInt(elementCount));
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		Options opt = new OptionsBuilder()
+				.include(ReadBenchmark.class.getSimpleName())
+				.warmupIterations(5)
+				.measurementIterations(5)
+				.forks(1)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,638 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.codec.Codec;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous facade of a CodecFileBuffer. None of the methods block the calling thread on disk I/O.
+ *
+ * Reads are executed using AsynchronousFileChannel. Decoding happens in the executor of this instance.
+ * Buffers using a different IndexStrategy than DefaultIndexStrategy are read using the
+ * synchronous methods of the buffer, executed by the executor.
+ *
+ * Writes are executed by the buffer itself, one after the other in the order of the calls,
+ * so ElementProcessors, BlockSummaries and the DurabilityPolicy of the buffer are honored.
+ *
+ * At most maxInFlight operations are executed at the same time. Additional operations are queued.
+ *
+ * Reading an element that does not exist results in null while I/O and decoding problems
+ * complete the future exceptionally. The future of a write that didn't add all elements
+ * is completed exceptionally, too.
+ *
+ * @param <E> the type of objects that are stored in the buffer.
+ */
+public class AsyncCodecFileBuffer<E>
+	implements AutoCloseable
+{
+	public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+	public static final int DEFAULT_THREAD_COUNT = 4;
+
+	/**
+	 * Number of bytes read in addition to the element header in the hope that the whole element fits.
+	 */
+	static final int SPECULATIVE_READ_SIZE = 4096;
+
+	private final CodecFileBuffer<E> buffer;
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+	private final int maxInFlight;
+
+	private final Lock lock = new ReentrantLock();
+	private final Queue<Operation<?>> pendingOperations = new ArrayDeque<>();
+	private int inFlight;
+	private CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+	private boolean closed;
+
+	public AsyncCodecFileBuffer(CodecFileBuffer<E> buffer)
+	{
+		this(buffer, Executors.newFixedThreadPool(DEFAULT_THREAD_COUNT, runnable -> {
+			Thread thread = new Thread(runnable, "AsyncCodecFileBuffer");
+			thread.setDaemon(true);
+			return thread;
+		}), DEFAULT_MAX_IN_FLIGHT, true);
+	}
+
+	/**
+	 * @param buffer the buffer.
+	 * @param executor executes decoding, writes and I/O completion. It isn't shut down by close().
+	 * @param maxInFlight the maximum number of operations executed at the same time.
+	 */
+	public AsyncCodecFileBuffer(CodecFileBuffer<E> buffer, ExecutorService executor, int maxInFlight)
+	{
+		this(buffer, executor, maxInFlight, false);
+	}
+
+	private AsyncCodecFileBuffer(CodecFileBuffer<E> buffer, ExecutorService executor, int maxInFlight, boolean ownExecutor)
+	{
+		this.buffer = Objects.requireNonNull(buffer, "buffer must not be null!");
+		this.executor = Objects.requireNonNull(executor, "executor must not be null!");
+		if(maxInFlight < 1)
+		{
+			throw new IllegalArgumentException("maxInFlight must be positive but was " + maxInFlight + "!");
+		}
+		this.maxInFlight = maxInFlight;
+		this.ownExecutor = ownExecutor;
+	}
+
+	public CodecFileBuffer<E> getBuffer()
+	{
+		return buffer;
+	}
+
+	public int getMaxInFlight()
+	{
+		return maxInFlight;
+	}
+
+	/**
+	 * @return the number of operations that are currently executed.
+	 */
+	public int getInFlightCount()
+	{
+		lock.lock();
+		try
+		{
+			return inFlight;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of operations waiting for execution.
+	 */
+	public int getPendingCount()
+	{
+		lock.lock();
+		try
+		{
+			return pendingOperations.size();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param index the index of the element.
+	 * @return the element or null if it does not exist.
+	 */
+	public CompletableFuture<E> get(long index)
+	{
+		return getRange(index, 1).thenApply(list -> list.get(0));
+	}
+
+	/**
+	 * @param startIndex the index of the first element.
+	 * @param count the number of elements.
+	 * @return a list containing count entries. The entry of an element that does not exist is null.
+	 */
+	public CompletableFuture<List<E>> getRange(long startIndex, int count)
+	{
+		if(count < 0)
+		{
+			throw new IllegalArgumentException("count must not be negative but was " + count + "!");
+		}
+		return submit(() -> readRange(startIndex, count));
+	}
+
+	public CompletableFuture<Void> add(E element)
+	{
+		return addAll(Collections.singletonList(element));
+	}
+
+	/**
+	 * Adds all elements. Writes are executed in the order of the calls.
+	 *
+	 * @param elements the elements to add.
+	 * @return a future that is completed after the elements have been added.
+	 */
+	public CompletableFuture<Void> addAll(List<E> elements)
+	{
+		if(elements == null || elements.isEmpty())
+		{
+			return CompletableFuture.completedFuture(null);
+		}
+		List<E> copy = new ArrayList<>(elements);
+		// the order of the writes is determined by the calls, not by the start of the operations.
+		CompletableFuture<Void> previousWrite;
+		CompletableFuture<Void> written = new CompletableFuture<>();
+		lock.lock();
+		try
+		{
+			previousWrite = lastWrite;
+			lastWrite = written;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		CompletableFuture<Void> result = submit(() -> previousWrite.thenRunAsync(() -> write(copy), executor));
+		result.whenComplete((value, throwable) -> written.complete(null));
+		return result;
+	}
+
+	public CompletableFuture<Void> addAll(E[] elements)
+	{
+		return addAll(Arrays.asList(elements));
+	}
+
+	/**
+	 * Rejects further operations. Operations that are already pending are still executed.
+	 * The executor is shut down after the last pending operation if it has been created by this instance.
+	 */
+	@Override
+	public void close()
+	{
+		boolean shutdown;
+		lock.lock();
+		try
+		{
+			closed = true;
+			shutdown = ownExecutor && inFlight == 0;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(shutdown)
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * CodecFileBuffer.addAll only logs problems so a failed write is detected by the size of the buffer.
+	 */
+	private void write(List<E> elements)
+	{
+		long expectedSize = buffer.getSize() + elements.size();
+		buffer.addAll(elements);
+		if(buffer.getSize() < expectedSize)
+		{
+			throw new CompletionException(new IOException("Couldn't add " + elements.size() + " elements to " + buffer.getDataFile().getAbsolutePath() + "!"));
+		}
+	}
+
+	private <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation)
+	{
+		Operation<T> current = new Operation<>(operation);
+		boolean startNow = false;
+		lock.lock();
+		try
+		{
+			if(closed)
+			{
+				current.result.completeExceptionally(new IllegalStateException("AsyncCodecFileBuffer has already been closed!"));
+				return current.result;
+			}
+			if(inFlight < maxInFlight)
+			{
+				inFlight++;
+				startNow = true;
+			}
+			else
+			{
+				pendingOperations.add(current);
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(startNow && !dispatch(current))
+		{
+			operationFinished();
+		}
+		return current.result;
+	}
+
+	/**
+	 * Starts the operation in the executor so the calling thread never executes the operation itself.
+	 *
+	 * @return false if the executor rejected the operation. The operation has been completed exceptionally in that case.
+	 */
+	private boolean dispatch(Operation<?> operation)
+	{
+		try
+		{
+			executor.execute(operation);
+			return true;
+		}
+		catch(RejectedExecutionException ex)
+		{
+			operation.result.completeExceptionally(ex);
+			return false;
+		}
+	}
+
+	private void operationFinished()
+	{
+		for(;;)
+		{
+			Operation<?> next;
+			boolean shutdown = false;
+			lock.lock();
+			try
+			{
+				next = pendingOperations.poll();
+				if(next == null)
+				{
+					inFlight--;
+					shutdown = closed && ownExecutor && inFlight == 0;
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+			if(next == null)
+			{
+				if(shutdown)
+				{
+					executor.shutdown();
+				}
+				return;
+			}
+			// the slot is handed over to the next operation.
+			if(dispatch(next))
+			{
+				return;
+			}
+		}
+	}
+
+	private CompletableFuture<List<E>> readRange(long startIndex, int count)
+	{
+		long available = Math.min(count, buffer.getSize() - startIndex);
+		if(startIndex < 0 || available <= 0)
+		{
+			return CompletableFuture.completedFuture(Arrays.asList(newArray(count)));
+		}
+		Codec<E> codec = buffer.getCodec();
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		if(!(buffer.getIndexStrategy() instanceof DefaultIndexStrategy))
+		{
+			return CompletableFuture.supplyAsync(() -> decode(buffer.getEncoded(startIndex, count), codec), executor);
+		}
+		long elementHeaderSize = buffer.getFileHeader().getMetaData().isSparse()
+				? SparseDataStrategy.DATA_LENGTH_SIZE + SparseDataStrategy.INDEX_SIZE
+				: DefaultDataStrategy.DATA_LENGTH_SIZE;
+
+		AsynchronousFileChannel indexChannel;
+		AsynchronousFileChannel dataChannel;
+		try
+		{
+			indexChannel = open(buffer.getIndexFile());
+		}
+		catch(IOException e)
+		{
+			return failed(e);
+		}
+		try
+		{
+			dataChannel = open(buffer.getDataFile());
+		}
+		catch(IOException e)
+		{
+			closeQuietly(indexChannel);
+			return failed(e);
+		}
+		ByteBuffer indexBuffer = ByteBuffer.allocate((int) (available * DefaultIndexStrategy.DATA_OFFSET_SIZE));
+		CompletableFuture<List<E>> result = read(indexChannel, indexBuffer, startIndex * DefaultIndexStrategy.DATA_OFFSET_SIZE, true)
+				.thenCompose(ignored -> {
+					long[] offsets = new long[count];
+					Arrays.fill(offsets, -1L);
+					for(int i = 0; i < available; i++)
+					{
+						offsets[i] = indexBuffer.getLong(i * (int) DefaultIndexStrategy.DATA_OFFSET_SIZE);
+					}
+					return readElements(dataChannel, offsets, elementHeaderSize);
+				})
+				.thenApplyAsync(encoded -> decode(encoded, codec), executor);
+		result.whenComplete((value, throwable) -> {
+			closeQuietly(indexChannel);
+			closeQuietly(dataChannel);
+		});
+		return result;
+	}
+
+	/**
+	 * Reads the elements at once if they are stored consecutively, each on its own otherwise.
+	 */
+	private CompletableFuture<List<byte[]>> readElements(AsynchronousFileChannel dataChannel, long[] offsets, long elementHeaderSize)
+	{
+		int consecutiveCount = 0;
+		for(int i = 0; i < offsets.length; i++)
+		{
+			if(offsets[i] < 0 || (i > 0 && offsets[i] <= offsets[i - 1]))
+			{
+				break;
+			}
+			consecutiveCount++;
+		}
+		if(consecutiveCount > 1 && offsets[consecutiveCount - 1] - offsets[0] <= EncodedElements.MAX_READ_SIZE)
+		{
+			long[] run = Arrays.copyOf(offsets, consecutiveCount);
+			return readRun(dataChannel, run, elementHeaderSize).thenCombine(
+					readSingleElements(dataChannel, Arrays.copyOfRange(offsets, consecutiveCount, offsets.length), elementHeaderSize),
+					(first, second) -> {
+						List<byte[]> all = new ArrayList<>(offsets.length);
+						all.addAll(first);
+						all.addAll(second);
+						return all;
+					});
+		}
+		return readSingleElements(dataChannel, offsets, elementHeaderSize);
+	}
+
+	private CompletableFuture<List<byte[]>> readSingleElements(AsynchronousFileChannel dataChannel, long[] offsets, long elementHeaderSize)
+	{
+		List<CompletableFuture<byte[]>> futures = new ArrayList<>(offsets.length);
+		for(long offset : offsets)
+		{
+			futures.add(offset < 0
+					? CompletableFuture.completedFuture(null)
+					: readRun(dataChannel, new long[]{offset}, elementHeaderSize).thenApply(list -> list.get(0)));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+			List<byte[]> result = new ArrayList<>(futures.size());
+			for(CompletableFuture<byte[]> current : futures)
+			{
+				result.add(current.join());
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Reads elements with ascending offsets using a single read, followed by another one
+	 * if the last element didn't fit into the speculative part.
+	 */
+	private CompletableFuture<List<byte[]>> readRun(AsynchronousFileChannel dataChannel, long[] offsets, long elementHeaderSize)
+	{
+		long first = offsets[0];
+		long last = offsets[offsets.length - 1];
+		ByteBuffer runBuffer = ByteBuffer.allocate((int) (last - first + elementHeaderSize + SPECULATIVE_READ_SIZE));
+		return read(dataChannel, runBuffer, first, false).thenCompose(ignored -> {
+			int lastPosition = (int) (last - first);
+			if(runBuffer.position() < lastPosition + elementHeaderSize)
+			{
+				throw new IndexOutOfBoundsException("Invalid offset: " + last + "! Couldn't read length of data!");
+			}
+			int lastLength = runBuffer.getInt(lastPosition);
+			int missing = (int) (lastPosition + elementHeaderSize + lastLength - runBuffer.position());
+			if(missing <= 0)
+			{
+				return CompletableFuture.completedFuture(split(runBuffer, offsets, elementHeaderSize, null));
+			}
+			ByteBuffer remaining = ByteBuffer.allocate(missing);
+			return read(dataChannel, remaining, first + runBuffer.position(), true)
+					.thenApply(nothing -> split(runBuffer, offsets, elementHeaderSize, remaining.array()));
+		});
+	}
+
+	private static List<byte[]> split(ByteBuffer runBuffer, long[] offsets, long elementHeaderSize, byte[] remaining)
+	{
+		byte[] run = runBuffer.array();
+		int runLength = runBuffer.position();
+		List<byte[]> result = new ArrayList<>(offsets.length);
+		for(long offset : offsets)
+		{
+			int position = (int) (offset - offsets[0]);
+			int length = runBuffer.getInt(position);
+			byte[] bytes = new byte[length];
+			int start = (int) (position + elementHeaderSize);
+			int available = Math.max(0, Math.min(length, runLength - start));
+			System.arraycopy(run, start, bytes, 0, available);
+			if(available < length)
+			{
+				System.arraycopy(remaining, 0, bytes, available, length - available);
+			}
+			result.add(bytes);
+		}
+		return result;
+	}
+
+	private List<E> decode(List<byte[]> encoded, Codec<E> codec)
+	{
+		if(encoded == null)
+		{
+			throw new IllegalStateException("Couldn't read elements from " + buffer.getDataFile().getAbsolutePath() + "!");
+		}
+		List<E> result = new ArrayList<>(encoded.size());
+		for(byte[] current : encoded)
+		{
+			result.add(current == null ? null : codec.decode(current));
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private E[] newArray(int count)
+	{
+		return (E[]) new Object[count];
+	}
+
+	private AsynchronousFileChannel open(File file)
+		throws IOException
+	{
+		return AsynchronousFileChannel.open(file.toPath(), EnumSet.of(StandardOpenOption.READ), executor);
+	}
+
+	/**
+	 * Reads into the buffer starting at position.
+	 * If fully is false, reaching the end of the file isn't a problem.
+	 */
+	private static CompletableFuture<ByteBuffer> read(AsynchronousFileChannel channel, ByteBuffer buffer, long position, boolean fully)
+	{
+		CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+		channel.read(buffer, position, position, new CompletionHandler<Integer, Long>()
+		{
+			@Override
+			public void completed(Integer read, Long currentPosition)
+			{
+				if(read < 0 || !buffer.hasRemaining())
+				{
+					if(fully && buffer.hasRemaining())
+					{
+						result.completeExceptionally(new EOFException("Unexpected end of file at position " + currentPosition + "!"));
+					}
+					else
+					{
+						result.complete(buffer);
+					}
+					return;
+				}
+				long nextPosition = currentPosition + read;
+				channel.read(buffer, nextPosition, nextPosition, this);
+			}
+
+			@Override
+			public void failed(Throwable throwable, Long currentPosition)
+			{
+				result.completeExceptionally(throwable);
+			}
+		});
+		return result;
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable throwable)
+	{
+		CompletableFuture<T> result = new CompletableFuture<>();
+		result.completeExceptionally(throwable);
+		return result;
+	}
+
+	private static void closeQuietly(AsynchronousFileChannel channel)
+	{
+		try
+		{
+			channel.close();
+		}
+		catch(IOException e)
+		{
+			// ignore
+		}
+	}
+
+	private class Operation<T>
+		implements Runnable
+	{
+		private final Supplier<CompletableFuture<T>> supplier;
+		final CompletableFuture<T> result = new CompletableFuture<>();
+
+		Operation(Supplier<CompletableFuture<T>> supplier)
+		{
+			this.supplier = supplier;
+		}
+
+		@Override
+		public void run()
+		{
+			CompletableFuture<T> future;
+			try
+			{
+				future = supplier.get();
+			}
+			catch(Throwable t)
+			{
+				future = new CompletableFuture<>();
+				future.completeExceptionally(t);
+			}
+			future.whenComplete((value, throwable) -> {
+				operationFinished();
+				if(throwable != null)
+				{
+					result.completeExceptionally(throwable);
+				}
+				else
+				{
+					result.complete(value);
+				}
+			});
+		}
+	}
+}
@@ -35,13 +35,20 @@
 package de.huxhorn.sulky.codec.filebuffer;
 
 import de.huxhorn.sulky.buffers.BasicBufferIterator;
+import de.huxhorn.sulky.buffers.BlockSummaries;
+import de.huxhorn.sulky.buffers.BlockSummaryOperation;
+import de.huxhorn.sulky.buffers.CachedElementCount;
 import de.huxhorn.sulky.buffers.Dispose;
 import de.huxhorn.sulky.buffers.DisposeOperation;
+import de.huxhorn.sulky.buffers.DurabilityPolicy;
 import de.huxhorn.sulky.buffers.ElementProcessor;
 import de.huxhorn.sulky.buffers.FileBuffer;
+import de.huxhorn.sulky.buffers.FileSynchronizer;
 import de.huxhorn.sulky.buffers.Reset;
 import de.huxhorn.sulky.buffers.SetOperation;
+import de.huxhorn.sulky.buffers.SyncStatistics;
 import de.huxhorn.sulky.codec.Codec;
+import de.huxhorn.sulky.codec.LazyElement;
 import java.io.File;
 import java.io.IOException;
 import java.io.InvalidClassException;
@@ -53,6 +60,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -74,7 +82,12 @@ import org.slf4j.LoggerFactory;
  * Optional meta data that can be used to provide additional information about the content of the buffer.
  * It might be used to identify the correct Codec required by the buffer
  * </li>
+ * <li>An optional compact index, see CompactIndexStrategy.</li>
  * <li>Optional ElementProcessors that are executed after elements are added to the buffer.</li>
+ * <li>A DurabilityPolicy defining if and how the files are forced to the storage device. The default is NONE.</li>
+ * <li>Optional BlockSummaries that are updated while elements are added to the buffer.
+ * They are kept in memory and allow filters to skip whole blocks of elements without decoding them.
+ * </li>
  * </ul>
  *
  * TODO: more documentation :p
@@ -82,7 +95,7 @@ import org.slf4j.LoggerFactory;
  * @param <E> the type of objects that are stored in this buffer.
  */
 public class CodecFileBuffer<E>
-	implements FileBuffer<E>, SetOperation<E>, DisposeOperation
+	implements FileBuffer<E>, SetOperation<E>, DisposeOperation, BlockSummaryOperation
 {
 	private final Logger logger = LoggerFactory.getLogger(CodecFileBuffer.class);
 
@@ -109,6 +122,9 @@ public class CodecFileBuffer<E>
 	private boolean preferredSparse;
 	private DataStrategy<E> dataStrategy;
 	private IndexStrategy indexStrategy;
+	private BlockSummaries<E, ?> blockSummaries;
+	private FileSynchronizer fileSynchronizer;
+	private CachedElementCount elementCount;
 
 	/**
 	 * TODO: add description :p
@@ -139,6 +155,10 @@ public class CodecFileBuffer<E>
 		if(preferredMetaData != null)
 		{
 			this.preferredMetaData = new HashMap<>(preferredMetaData);
+			if(preferredSparse && CompactIndexStrategy.COMPACT_INDEX_STRATEGY.equals(preferredMetaData.get(CompactIndexStrategy.INDEX_STRATEGY_KEY)))
+			{
+				throw new IllegalArgumentException("CompactIndexStrategy is not supported by sparse buffers!");
+			}
 		}
 		this.codec = codec;
 
@@ -159,6 +179,8 @@ public class CodecFileBuffer<E>
 		}
 
 		setIndexFile(indexFile);
+		this.elementCount = new CachedElementCount(this.indexFile);
+		this.fileSynchronizer = new FileSynchronizer(DurabilityPolicy.NONE, dataFile, indexFile);
 
 		if(!initFilesIfNecessary())
 		{
@@ -234,6 +256,116 @@ public class CodecFileBuffer<E>
 		this.elementProcessors = elementProcessors;
 	}
 
+	public DurabilityPolicy getDurabilityPolicy()
+	{
+		return getFileSynchronizer().getPolicy();
+	}
+
+	public void setDurabilityPolicy(DurabilityPolicy durabilityPolicy)
+	{
+		setDurabilityPolicy(durabilityPolicy, FileSynchronizer.DEFAULT_PERIOD_MILLIS);
+	}
+
+	/**
+	 * Changes the durability policy. Changes of the previous policy are forced before this method returns.
+	 *
+	 * @param durabilityPolicy the new durability policy.
+	 * @param periodMillis the period in case of PERIODIC, ignored otherwise.
+	 */
+	public void setDurabilityPolicy(DurabilityPolicy durabilityPolicy, long periodMillis)
+	{
+		FileSynchronizer newSynchronizer = new FileSynchronizer(durabilityPolicy, periodMillis, dataFile, indexFile);
+		FileSynchronizer previousSynchronizer;
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			previousSynchronizer = fileSynchronizer;
+			fileSynchronizer = newSynchronizer;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		previousSynchronizer.close();
+	}
+
+	/**
+	 * @return the fsync statistics of the current durability policy.
+	 */
+	public SyncStatistics getSyncStatistics()
+	{
+		return getFileSynchronizer().getStatistics();
+	}
+
+	private FileSynchronizer getFileSynchronizer()
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			return fileSynchronizer;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	public BlockSummaries<E, ?> getBlockSummaries()
+	{
+		return blockSummaries;
+	}
+
+	/**
+	 * Sets the summaries that are updated for every element written by this instance.
+	 *
+	 * Blocks containing elements that are already contained in the buffer won't be summarized.
+	 * The same is true for elements added by other instances or processes.
+	 *
+	 * @param blockSummaries the summaries, might be null.
+	 */
+	public void setBlockSummaries(BlockSummaries<E, ?> blockSummaries)
+	{
+		Lock lock = readWriteLock.writeLock();
+		lock.lock();
+		try
+		{
+			if(blockSummaries != null)
+			{
+				blockSummaries.reset(readSize());
+			}
+			this.blockSummaries = blockSummaries;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int getBlockSize()
+	{
+		BlockSummaries<E, ?> localSummaries = blockSummaries;
+		if(localSummaries == null)
+		{
+			return 0;
+		}
+		return localSummaries.getBlockSize();
+	}
+
+	@Override
+	public Object getBlockSummary(long blockIndex)
+	{
+		BlockSummaries<E, ?> localSummaries = blockSummaries;
+		if(localSummaries == null)
+		{
+			return null;
+		}
+		// the cached size might not contain elements appended by somebody else yet.
+		return localSummaries.getSummary(blockIndex, this::readSize);
+	}
+
 	private boolean initFilesIfNecessary()
 	{
 		if(!dataFile.exists() || dataFile.length() < fileHeaderStrategy.getMinimalSize())
@@ -248,6 +380,11 @@ public class CodecFileBuffer<E>
 				dataDeleted=dataFile.delete();
 				setFileHeader(fileHeaderStrategy.writeFileHeader(dataFile, magicValue, preferredMetaData, preferredSparse));
 				indexDeleted=indexFile.delete();
+				elementCount.invalidate();
+				if(blockSummaries != null)
+				{
+					blockSummaries.reset(0);
+				}
 			}
 			catch(IOException e)
 			{
@@ -280,6 +417,28 @@ public class CodecFileBuffer<E>
 		return fileHeader;
 	}
 
+	/**
+	 * Makes sure that the next call of getSize() examines the index file.
+	 */
+	void invalidateSize()
+	{
+		elementCount.invalidate();
+	}
+
+	IndexStrategy getIndexStrategy()
+	{
+		Lock lock = readWriteLock.readLock();
+		lock.lock();
+		try
+		{
+			return indexStrategy;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
 	/**
 	 * @return the preferred meta data of the buffer, as defined by c'tor.
 	 */
@@ -303,20 +462,43 @@ public class CodecFileBuffer<E>
 		return indexFile;
 	}
 
+	/**
+	 * Returns the cached number of elements if it's still valid.
+	 * Otherwise, the size is calculated using the index file.
+	 *
+	 * @return the number of elements contained in this buffer.
+	 */
 	@Override
 	public long getSize()
+	{
+		long result = elementCount.get();
+		if(result >= 0)
+		{
+			return result;
+		}
+		return readSize();
+	}
+
+	/**
+	 * Reads the size from the index file, ignoring the cached element count.
+	 */
+	private long readSize()
 	{
 		if(!indexFile.canRead())
 		{
 			return 0;
 		}
 
+		long result;
 		Throwable throwable;
 		Lock lock = readWriteLock.readLock();
-		lock.lock(); // FindBugs "Multithreaded correctness - Method does not release lock on all exception paths" is a false positive
+		FileBufferEvents.lock(lock, "getSize"); // FindBugs "Multithreaded correctness - Method does not release lock on all exception paths" is a false positive
+		long lastModified = indexFile.lastModified();
 		try(RandomAccessFile raf = new RandomAccessFile(indexFile, "r"))
 		{
-			return indexStrategy.getSize(raf);
+			result = indexStrategy.getSize(raf);
+			elementCount.set(result, lastModified, raf.length());
+			return result;
 		}
 		catch(Throwable e)
 		{
@@ -346,8 +528,9 @@ public class CodecFileBuffer<E>
 			return null;
 		}
 
+		Object readEvent = FileBufferEvents.BUFFER_READ.begin();
 		Lock lock = readWriteLock.readLock();
-		lock.lock();
+		FileBufferEvents.lock(lock, "get");
 		Throwable throwable;
 		try(RandomAccessFile randomSerializeIndexFile = new RandomAccessFile(indexFile, "r");
 			RandomAccessFile randomSerializeFile = new RandomAccessFile(dataFile, "r"))
@@ -361,6 +544,7 @@ public class CodecFileBuffer<E>
 		finally
 		{
 			lock.unlock();
+			FileBufferEvents.BUFFER_READ.commit(readEvent, index, 1);
 		}
 
 		// it's a really bad idea to log while locked *sigh*
@@ -380,6 +564,68 @@ public class CodecFileBuffer<E>
 		return null;
 	}
 
+	/**
+	 * Returns the encoded bytes of count consecutive elements without decoding them.
+	 * The entry of an element that is not available is null.
+	 *
+	 * @param startIndex the index of the first element.
+	 * @param count the number of elements.
+	 * @return a list containing count entries or null if the elements couldn't be read.
+	 */
+	public List<byte[]> getEncoded(long startIndex, int count)
+	{
+		if(!dataFile.canRead() || !indexFile.canRead())
+		{
+			return null;
+		}
+
+		Object readEvent = FileBufferEvents.BUFFER_READ.begin();
+		Lock lock = readWriteLock.readLock();
+		FileBufferEvents.lock(lock, "getEncoded");
+		Throwable throwable;
+		try(RandomAccessFile randomSerializeIndexFile = new RandomAccessFile(indexFile, "r");
+			RandomAccessFile randomSerializeFile = new RandomAccessFile(dataFile, "r"))
+		{
+			return dataStrategy.getEncoded(startIndex, count, randomSerializeIndexFile, randomSerializeFile, codec, indexStrategy);
+		}
+		catch(Throwable e)
+		{
+			throwable = e;
+		}
+		finally
+		{
+			lock.unlock();
+			FileBufferEvents.BUFFER_READ.commit(readEvent, startIndex, count);
+		}
+
+		// it's a really bad idea to log while locked *sigh*
+		if(logger.isWarnEnabled()) logger.warn("Couldn't retrieve {} elements starting at index {}!", count, startIndex, throwable);
+		return null;
+	}
+
+	/**
+	 * Returns a handle of the element at the given index that decodes the element only on demand.
+	 * If no element is found, null is returned.
+	 *
+	 * @param index must be in the range <code>[0..(getSize()-1)]</code>.
+	 * @return the lazily decoded element at the given index.
+	 * @throws IllegalStateException if no Decoder has been set.
+	 */
+	public LazyElement<E> getLazy(long index)
+	{
+		Codec<E> localCodec = codec;
+		if(localCodec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		List<byte[]> encoded = getEncoded(index, 1);
+		if(encoded == null || encoded.isEmpty() || encoded.get(0) == null)
+		{
+			return null;
+		}
+		return new LazyElement<>(encoded.get(0), localCodec);
+	}
+
 	/**
 	 * Adds the element to the end of the buffer.
 	 *
@@ -391,13 +637,40 @@ public class CodecFileBuffer<E>
 	{
 		initFilesIfNecessary();
 
+		Object appendEvent = FileBufferEvents.BUFFER_APPEND.begin();
+		long appendIndex = -1;
+		long appendBytes = 0;
 		Lock lock = readWriteLock.writeLock();
-		lock.lock();
+		FileBufferEvents.lock(lock, "add");
 		Throwable throwable = null;
+		FileSynchronizer synchronizer = null;
+		long ticket = 0;
 		try(RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw");
 			RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw"))
 		{
+			BlockSummaries<E, ?> localSummaries = blockSummaries;
+			long index = -1;
+			if(localSummaries != null || appendEvent != null)
+			{
+				index = indexStrategy.getSize(randomIndexFile);
+			}
+			if(appendEvent != null)
+			{
+				appendIndex = index;
+				appendBytes = randomDataFile.length();
+			}
 			dataStrategy.add(element, randomIndexFile, randomDataFile, codec, indexStrategy);
+			if(appendEvent != null)
+			{
+				appendBytes = randomDataFile.length() - appendBytes;
+			}
+			elementCount.set(indexStrategy.getSize(randomIndexFile), randomIndexFile.length());
+			synchronizer = fileSynchronizer;
+			ticket = synchronizer.written();
+			if(localSummaries != null)
+			{
+				localSummaries.update(index, element);
+			}
 			// call processors if available
 			List<ElementProcessor<E>> localProcessors = elementProcessors;
 			if(localProcessors != null)
@@ -410,17 +683,23 @@ public class CodecFileBuffer<E>
 		}
 		catch(IOException e)
 		{
+			elementCount.invalidate();
 			throwable = e;
 		}
 		finally
 		{
 			lock.unlock();
+			FileBufferEvents.BUFFER_APPEND.commit(appendEvent, appendIndex, 1, appendBytes);
 		}
 		if(throwable != null)
 		{
 			// it's a really bad idea to log while locked *sigh*
 			if(logger.isWarnEnabled()) logger.warn("Couldn't write element!", throwable); // NOPMD
 		}
+		if(synchronizer != null)
+		{
+			synchronizer.awaitDurable(ticket);
+		}
 	}
 
 	/**
@@ -431,6 +710,28 @@ public class CodecFileBuffer<E>
 	 */
 	@Override
 	public void addAll(List<E> elements)
+	{
+		internalAddAll(elements, null);
+	}
+
+	/**
+	 * Adds all elements to the end of the buffer without encoding them again.
+	 * The elements are encoded again if the DataStrategy doesn't support addAllEncoded.
+	 *
+	 * @param elements the elements, used for block summaries and element processors.
+	 * @param encoded the elements encoded by the codec of this buffer.
+	 */
+	void addAllEncoded(List<E> elements, List<byte[]> encoded)
+	{
+		Objects.requireNonNull(encoded, "encoded must not be null!");
+		if(elements == null || elements.size() != encoded.size())
+		{
+			throw new IllegalArgumentException("elements and encoded must have the same size!");
+		}
+		internalAddAll(elements, encoded);
+	}
+
+	private void internalAddAll(List<E> elements, List<byte[]> encoded)
 	{
 		if(elements != null)
 		{
@@ -438,14 +739,48 @@ public class CodecFileBuffer<E>
 			int newElementCount = elements.size();
 			if(newElementCount > 0)
 			{
+				Object appendEvent = FileBufferEvents.BUFFER_APPEND.begin();
+				long appendIndex = -1;
+				long appendBytes = 0;
 				Lock lock = readWriteLock.writeLock();
-				lock.lock();
-				Throwable throwable;
+				FileBufferEvents.lock(lock, "addAll");
+				Throwable throwable = null;
+				FileSynchronizer synchronizer = null;
+				long ticket = 0;
 				try(RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw");
 					RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw")
 				)
 				{
-					dataStrategy.addAll(elements, randomIndexFile, randomDataFile, codec, indexStrategy);
+					BlockSummaries<E, ?> localSummaries = blockSummaries;
+					long startIndex = -1;
+					if(localSummaries != null || appendEvent != null)
+					{
+						startIndex = indexStrategy.getSize(randomIndexFile);
+					}
+					if(appendEvent != null)
+					{
+						appendIndex = startIndex;
+						appendBytes = randomDataFile.length();
+					}
+					if(encoded == null || !dataStrategy.isAddAllEncodedSupported())
+					{
+						dataStrategy.addAll(elements, randomIndexFile, randomDataFile, codec, indexStrategy);
+					}
+					else
+					{
+						dataStrategy.addAllEncoded(encoded, randomIndexFile, randomDataFile, indexStrategy);
+					}
+					if(appendEvent != null)
+					{
+						appendBytes = randomDataFile.length() - appendBytes;
+					}
+					elementCount.set(indexStrategy.getSize(randomIndexFile), randomIndexFile.length());
+					synchronizer = fileSynchronizer;
+					ticket = synchronizer.written();
+					if(localSummaries != null)
+					{
+						localSummaries.updateAll(startIndex, elements);
+					}
 
 					// call processors if available
 					if(elementProcessors != null)
@@ -455,18 +790,26 @@ public class CodecFileBuffer<E>
 							current.processElements(elements);
 						}
 					}
-					return;
 				}
 				catch(Throwable e)
 				{
+					elementCount.invalidate();
 					throwable = e;
 				}
 				finally
 				{
 					lock.unlock();
+					FileBufferEvents.BUFFER_APPEND.commit(appendEvent, appendIndex, newElementCount, appendBytes);
+				}
+				if(throwable != null)
+				{
+					// it's a really bad idea to log while locked *sigh*
+					if(logger.isWarnEnabled()) logger.warn("Couldn't write element!", throwable); // NOPMD
+				}
+				if(synchronizer != null)
+				{
+					synchronizer.awaitDurable(ticket);
 				}
-				// it's a really bad idea to log while locked *sigh*
-				if(logger.isWarnEnabled()) logger.warn("Couldn't write element!", throwable); // NOPMD
 			}
 		}
 	}
@@ -485,12 +828,17 @@ public class CodecFileBuffer<E>
 		boolean indexDeleted=false;
 		boolean dataDeleted=false;
 		Lock lock = readWriteLock.writeLock();
-		lock.lock();
+		FileBufferEvents.lock(lock, "reset");
 		try
 		{
 			indexDeleted=indexFile.delete();
 			dataDeleted=dataFile.delete();
+			elementCount.invalidate();
 			fileHeaderStrategy.writeFileHeader(dataFile, magicValue, preferredMetaData, preferredSparse);
+			if(blockSummaries != null)
+			{
+				blockSummaries.reset(0);
+			}
 			if(elementProcessors != null)
 			{
 				for(ElementProcessor<E> current : elementProcessors)
@@ -612,6 +960,7 @@ public class CodecFileBuffer<E>
 				Dispose.dispose(current);
 			}
 		}
+		getFileSynchronizer().close();
 		// TODO: implement dispose()
 	}
 
@@ -632,6 +981,7 @@ public class CodecFileBuffer<E>
 		{
 			dataStrategy = new DefaultDataStrategy<>();
 		}
+		indexStrategy = CompactIndexStrategy.create(metaData);
 		this.fileHeader = fileHeader;
 	}
 
@@ -641,13 +991,27 @@ public class CodecFileBuffer<E>
 		initFilesIfNecessary();
 
 		Lock lock = readWriteLock.writeLock();
-		lock.lock();
+		FileBufferEvents.lock(lock, "set");
 		Throwable throwable = null;
 		boolean result = false;
+		FileSynchronizer synchronizer = null;
+		long ticket = 0;
 		try(RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw");
 			RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw"))
 		{
 			result = dataStrategy.set(index, element, randomIndexFile, randomDataFile, codec, indexStrategy);
+			if(result)
+			{
+				elementCount.set(indexStrategy.getSize(randomIndexFile), randomIndexFile.length());
+				synchronizer = fileSynchronizer;
+				ticket = synchronizer.written();
+			}
+			BlockSummaries<E, ?> localSummaries = blockSummaries;
+			if(result && localSummaries != null)
+			{
+				// the summary of the block still contains a replaced element, i.e. it's less precise but still correct.
+				localSummaries.update(index, element);
+			}
 			// call processors if available
 			List<ElementProcessor<E>> localProcessors = elementProcessors;
 			if(localProcessors != null)
@@ -660,6 +1024,7 @@ public class CodecFileBuffer<E>
 		}
 		catch(IOException e)
 		{
+			elementCount.invalidate();
 			throwable = e;
 		}
 		finally
@@ -671,6 +1036,10 @@ public class CodecFileBuffer<E>
 			// it's a really bad idea to log while locked *sigh*
 			if(logger.isWarnEnabled()) logger.warn("Couldn't write element!", throwable); // NOPMD
 		}
+		if(synchronizer != null)
+		{
+			synchronizer.awaitDurable(ticket);
+		}
 		return result;
 	}
 
@@ -0,0 +1,320 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Follows a CodecFileBuffer that is written by a different instance, e.g. in another process,
+ * and publishes the ranges of newly visible elements to ElementRangeListeners.
+ *
+ * The directory of the index file is watched using a WatchService. Since some WatchService implementations
+ * are slow or unavailable, the index file is also checked every pollIntervalMillis. A check only compares
+ * length and lastModified of the index file as long as nothing changed.
+ *
+ * Listeners are called by the thread of the follower.
+ */
+public class CodecFileBufferFollower
+	implements AutoCloseable
+{
+	public static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000;
+
+	private final Logger logger = LoggerFactory.getLogger(CodecFileBufferFollower.class);
+
+	private final CodecFileBuffer<?> buffer;
+	private final long pollIntervalMillis;
+	private final boolean watching;
+	private final List<ElementRangeListener> listeners = new CopyOnWriteArrayList<>();
+
+	private final Object checkLock = new Object();
+	private long lastIndexLength;
+	private long lastIndexModified;
+	private long lastSize;
+
+	private volatile boolean running;
+	private Thread thread;
+	private WatchService watchService;
+
+	public CodecFileBufferFollower(CodecFileBuffer<?> buffer)
+	{
+		this(buffer, DEFAULT_POLL_INTERVAL_MILLIS, true);
+	}
+
+	/**
+	 * @param buffer the followed buffer.
+	 * @param pollIntervalMillis the maximum time between two checks.
+	 * @param watching whether or not a WatchService should be used. If false, the index file is only polled.
+	 */
+	public CodecFileBufferFollower(CodecFileBuffer<?> buffer, long pollIntervalMillis, boolean watching)
+	{
+		this.buffer = Objects.requireNonNull(buffer, "buffer must not be null!");
+		if(pollIntervalMillis <= 0)
+		{
+			throw new IllegalArgumentException("pollIntervalMillis must be positive but was " + pollIntervalMillis + "!");
+		}
+		this.pollIntervalMillis = pollIntervalMillis;
+		this.watching = watching;
+		this.lastSize = buffer.getSize();
+		this.lastIndexLength = buffer.getIndexFile().length();
+		this.lastIndexModified = buffer.getIndexFile().lastModified();
+	}
+
+	public CodecFileBuffer<?> getBuffer()
+	{
+		return buffer;
+	}
+
+	public long getPollIntervalMillis()
+	{
+		return pollIntervalMillis;
+	}
+
+	public void addListener(ElementRangeListener listener)
+	{
+		listeners.add(Objects.requireNonNull(listener, "listener must not be null!"));
+	}
+
+	public void removeListener(ElementRangeListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return true, if changes are detected using a WatchService, false if the index file is only polled.
+	 */
+	public synchronized boolean isWatching()
+	{
+		return watchService != null;
+	}
+
+	public synchronized boolean isRunning()
+	{
+		return running;
+	}
+
+	public synchronized void start()
+	{
+		if(running)
+		{
+			return;
+		}
+		running = true;
+		if(watching)
+		{
+			watchService = createWatchService(buffer.getIndexFile());
+		}
+		thread = new Thread(this::follow, "CodecFileBufferFollower-" + buffer.getDataFile().getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops following. Doesn't wait for the thread of the follower.
+	 */
+	public synchronized void stop()
+	{
+		if(!running)
+		{
+			return;
+		}
+		running = false;
+		if(watchService != null)
+		{
+			try
+			{
+				watchService.close();
+			}
+			catch(IOException e)
+			{
+				// ignore
+			}
+			watchService = null;
+		}
+		thread.interrupt();
+		thread = null;
+	}
+
+	@Override
+	public void close()
+	{
+		stop();
+	}
+
+	/**
+	 * Checks the buffer for changes and notifies the listeners.
+	 * This is done automatically while the follower is running but may also be called manually.
+	 */
+	public void check()
+	{
+		synchronized(checkLock)
+		{
+			File indexFile = buffer.getIndexFile();
+			long indexModified = indexFile.lastModified();
+			long indexLength = indexFile.length();
+			if(indexLength == lastIndexLength && indexModified == lastIndexModified)
+			{
+				return;
+			}
+			lastIndexLength = indexLength;
+			lastIndexModified = indexModified;
+			buffer.invalidateSize();
+			long size = buffer.getSize();
+			if(size < lastSize)
+			{
+				lastSize = 0;
+				fireBufferReset();
+			}
+			if(size > lastSize)
+			{
+				long startIndex = lastSize;
+				lastSize = size;
+				fireElementsAdded(startIndex, size);
+			}
+		}
+	}
+
+	private void follow()
+	{
+		WatchService localWatchService;
+		synchronized(this)
+		{
+			localWatchService = watchService;
+		}
+		while(running)
+		{
+			try
+			{
+				if(localWatchService != null)
+				{
+					WatchKey key = localWatchService.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+					if(key != null)
+					{
+						key.pollEvents();
+						if(!key.reset())
+						{
+							if(logger.isInfoEnabled()) logger.info("Directory of {} can't be watched anymore. Falling back to polling.", buffer.getIndexFile().getAbsolutePath());
+							localWatchService = null;
+						}
+					}
+				}
+				else
+				{
+					Thread.sleep(pollIntervalMillis);
+				}
+			}
+			catch(InterruptedException | ClosedWatchServiceException e)
+			{
+				break;
+			}
+			check();
+		}
+	}
+
+	private WatchService createWatchService(File indexFile)
+	{
+		Path directory = indexFile.getAbsoluteFile().getParentFile().toPath();
+		WatchService result = null;
+		try
+		{
+			result = directory.getFileSystem().newWatchService();
+			directory.register(result, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			return result;
+		}
+		catch(IOException | UnsupportedOperationException e)
+		{
+			if(logger.isInfoEnabled()) logger.info("Couldn't watch {}. Falling back to polling.", directory, e);
+			if(result != null)
+			{
+				try
+				{
+					result.close();
+				}
+				catch(IOException ex)
+				{
+					// ignore
+				}
+			}
+			return null;
+		}
+	}
+
+	private void fireElementsAdded(long startIndex, long endIndex)
+	{
+		for(ElementRangeListener current : listeners)
+		{
+			try
+			{
+				current.elementsAdded(startIndex, endIndex);
+			}
+			catch(Throwable t)
+			{
+				if(logger.isWarnEnabled()) logger.warn("Exception while notifying {}!", current, t);
+			}
+		}
+	}
+
+	private void fireBufferReset()
+	{
+		for(ElementRangeListener current : listeners)
+		{
+			try
+			{
+				current.bufferReset();
+			}
+			catch(Throwable t)
+			{
+				if(logger.isWarnEnabled()) logger.warn("Exception while notifying {}!", current, t);
+			}
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CodecFileBufferFollower{buffer=" + buffer.getDataFile().getAbsolutePath() + ", pollIntervalMillis=" + pollIntervalMillis + ", running=" + running + "}";
+	}
+}
@@ -0,0 +1,454 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Index storing the offsets in blocks of BLOCK_SIZE entries.
+ *
+ * Each block starts with a header containing the absolute offset of its first entry (long),
+ * the number of entries (unsigned short) and the length of the deltas (unsigned short).
+ * The header is followed by the zigzag-encoded variable-length deltas between consecutive offsets.
+ * Offsets of elements written one after the other usually differ by a few hundred bytes so
+ * a delta requires one or two bytes instead of eight.
+ *
+ * The positions of all blocks are kept in memory, i.e. eight bytes per BLOCK_SIZE elements,
+ * so a lookup only reads and decodes a single block. The most recently decoded block is cached.
+ * The summary is rebuilt or extended if the length of the index file changed unexpectedly.
+ *
+ * Offsets set at once using setOffsets are written using a single write. The header of the
+ * last block is updated afterwards so readers never see entries that haven't been written
+ * completely. Data following the last complete block, e.g. caused by an interrupted write,
+ * is ignored and overwritten by the next append.
+ *
+ * This index is append-only. It is therefore not available for sparse buffers.
+ * It is selected by adding INDEX_STRATEGY_KEY=COMPACT_INDEX_STRATEGY to the meta data of a buffer.
+ *
+ * Instances are bound to a single index file.
+ */
+public class CompactIndexStrategy
+	implements IndexStrategy
+{
+	public static final String INDEX_STRATEGY_KEY = "sulky.indexStrategy";
+	public static final String COMPACT_INDEX_STRATEGY = "compact";
+
+	public static final int BLOCK_SIZE = 256;
+
+	private static final int HEADER_SIZE = 12;
+	private static final int MAX_VARINT_SIZE = 10;
+
+	private final Lock lock = new ReentrantLock();
+
+	private long[] blockPositions = new long[16];
+	private int blockCount;
+	private long size;
+	private long endPosition;
+	private long lastBlockBase;
+	private int lastBlockEntries;
+	private int lastBlockDataLength;
+	private long lastOffset;
+
+	private long cachedBlock = -1;
+	private final long[] cachedOffsets = new long[BLOCK_SIZE];
+
+	/**
+	 * @param metaData the meta data of a buffer.
+	 * @return true, if the meta data requests a compact index and the buffer isn't sparse.
+	 */
+	static boolean isRequested(MetaData metaData)
+	{
+		return !metaData.isSparse() && COMPACT_INDEX_STRATEGY.equals(metaData.getData().get(INDEX_STRATEGY_KEY));
+	}
+
+	static IndexStrategy create(MetaData metaData)
+	{
+		if(isRequested(metaData))
+		{
+			return new CompactIndexStrategy();
+		}
+		return new DefaultIndexStrategy();
+	}
+
+	/**
+	 * Appends the offset. Missing entries up to index are filled with -1.
+	 *
+	 * @throws UnsupportedOperationException if index is smaller than the size of the index.
+	 */
+	@Override
+	public void setOffset(RandomAccessFile indexFile, long index, long offset)
+		throws IOException
+	{
+		setOffsets(indexFile, index, new long[]{offset});
+	}
+
+	/**
+	 * Appends the offsets. Missing entries up to startIndex are filled with -1.
+	 *
+	 * @throws UnsupportedOperationException if startIndex is smaller than the size of the index.
+	 */
+	@Override
+	public void setOffsets(RandomAccessFile indexFile, long startIndex, long[] offsets)
+		throws IOException
+	{
+		lock.lock();
+		try
+		{
+			synchronize(indexFile);
+			if(startIndex < size)
+			{
+				throw new UnsupportedOperationException("CompactIndexStrategy does not support replacing offset of index " + startIndex + "!");
+			}
+			long[] appended = offsets;
+			if(startIndex > size)
+			{
+				int missing = (int) (startIndex - size);
+				appended = new long[missing + offsets.length];
+				Arrays.fill(appended, 0, missing, -1L);
+				System.arraycopy(offsets, 0, appended, missing, offsets.length);
+			}
+			append(indexFile, appended);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			// the summary doesn't correspond to the index file anymore
+			reset();
+			throw e;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getOffset(RandomAccessFile indexFile, long index)
+		throws IOException
+	{
+		Object event = FileBufferEvents.INDEX_LOOKUP.begin();
+		long result = internalGetOffset(indexFile, index);
+		FileBufferEvents.INDEX_LOOKUP.commit(event, index, result);
+		return result;
+	}
+
+	private long internalGetOffset(RandomAccessFile indexFile, long index)
+		throws IOException
+	{
+		lock.lock();
+		try
+		{
+			synchronize(indexFile);
+			if(index < 0 || index >= size)
+			{
+				return -1;
+			}
+			decodeBlock(indexFile, index / BLOCK_SIZE);
+			return cachedOffsets[(int) (index % BLOCK_SIZE)];
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long[] getOffsets(RandomAccessFile indexFile, long startIndex, int count)
+		throws IOException
+	{
+		long[] result = new long[count];
+		Arrays.fill(result, -1L);
+		if(startIndex < 0 || count <= 0)
+		{
+			return result;
+		}
+		lock.lock();
+		try
+		{
+			synchronize(indexFile);
+			long endIndex = Math.min(size, startIndex + count);
+			long index = startIndex;
+			while(index < endIndex)
+			{
+				long block = index / BLOCK_SIZE;
+				decodeBlock(indexFile, block);
+				int first = (int) (index - block * BLOCK_SIZE);
+				int length = (int) Math.min(BLOCK_SIZE - first, endIndex - index);
+				System.arraycopy(cachedOffsets, first, result, (int) (index - startIndex), length);
+				index += length;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		return result;
+	}
+
+	@Override
+	public long getSize(RandomAccessFile indexFile)
+		throws IOException
+	{
+		lock.lock();
+		try
+		{
+			synchronize(indexFile);
+			return size;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Makes sure that the in-memory summary corresponds to the index file.
+	 */
+	private void synchronize(RandomAccessFile indexFile)
+		throws IOException
+	{
+		long length = indexFile.length();
+		if(length == endPosition)
+		{
+			return;
+		}
+		cachedBlock = -1;
+		if(length > endPosition && blockCount > 0 && endPosition >= 0 && readLong(indexFile, blockPositions[blockCount - 1]) == lastBlockBase)
+		{
+			// appended by a different instance, rescan starting with last block
+			blockCount--;
+			size -= lastBlockEntries;
+			scan(indexFile, blockPositions[blockCount], length);
+			return;
+		}
+		blockCount = 0;
+		size = 0;
+		scan(indexFile, 0, length);
+	}
+
+	private void scan(RandomAccessFile indexFile, long startPosition, long length)
+		throws IOException
+	{
+		byte[] header = new byte[HEADER_SIZE];
+		long position = startPosition;
+		// all blocks but the last one are complete
+		boolean previousComplete = true;
+		while(position + HEADER_SIZE <= length)
+		{
+			indexFile.seek(position);
+			indexFile.readFully(header);
+			ByteBuffer byteBuffer = ByteBuffer.wrap(header);
+			long base = byteBuffer.getLong();
+			int entries = byteBuffer.getShort() & 0xFFFF;
+			int dataLength = byteBuffer.getShort() & 0xFFFF;
+			if(entries < 1 || entries > BLOCK_SIZE || !previousComplete || position + HEADER_SIZE + dataLength > length)
+			{
+				// incomplete or interrupted write, ignore
+				break;
+			}
+			addBlockPosition(position);
+			size += entries;
+			lastBlockBase = base;
+			lastBlockEntries = entries;
+			lastBlockDataLength = dataLength;
+			previousComplete = entries == BLOCK_SIZE;
+			position += HEADER_SIZE + dataLength;
+		}
+		endPosition = position;
+		if(blockCount > 0)
+		{
+			decodeBlock(indexFile, blockCount - 1);
+			lastOffset = cachedOffsets[lastBlockEntries - 1];
+		}
+	}
+
+	/**
+	 * Writes the deltas and headers of all offsets using a single write, followed by the update
+	 * of the header of the block that was incomplete before, if any.
+	 */
+	private void append(RandomAccessFile indexFile, long[] offsets)
+		throws IOException
+	{
+		if(offsets.length == 0)
+		{
+			return;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(offsets.length * MAX_VARINT_SIZE + (offsets.length / BLOCK_SIZE + 1) * HEADER_SIZE);
+		byte[] delta = new byte[MAX_VARINT_SIZE];
+		long startPosition = endPosition;
+		// the incomplete block that existed before, its header is updated after the write.
+		int previousBlock = size % BLOCK_SIZE == 0 ? -1 : blockCount - 1;
+		int previousBlockEntries = lastBlockEntries;
+		int previousBlockDataLength = lastBlockDataLength;
+		// position of the header of the current block in buffer, -1 for the previous block.
+		int headerPosition = -1;
+		for(long offset : offsets)
+		{
+			if(size % BLOCK_SIZE == 0)
+			{
+				headerPosition = buffer.position();
+				buffer.putLong(offset);
+				buffer.putShort((short) 1);
+				buffer.putShort((short) 0);
+				addBlockPosition(startPosition + headerPosition);
+				lastBlockBase = offset;
+				lastBlockEntries = 1;
+				lastBlockDataLength = 0;
+			}
+			else
+			{
+				int deltaLength = writeVarLong(offset - lastOffset, delta);
+				buffer.put(delta, 0, deltaLength);
+				lastBlockEntries++;
+				lastBlockDataLength += deltaLength;
+				if(headerPosition < 0)
+				{
+					previousBlockEntries = lastBlockEntries;
+					previousBlockDataLength = lastBlockDataLength;
+				}
+				else
+				{
+					buffer.putShort(headerPosition + 8, (short) lastBlockEntries);
+					buffer.putShort(headerPosition + 10, (short) lastBlockDataLength);
+				}
+			}
+			if(cachedBlock == blockCount - 1)
+			{
+				cachedOffsets[lastBlockEntries - 1] = offset;
+			}
+			lastOffset = offset;
+			size++;
+		}
+		indexFile.seek(startPosition);
+		indexFile.write(buffer.array(), 0, buffer.position());
+		endPosition = startPosition + buffer.position();
+		if(previousBlock >= 0)
+		{
+			ByteBuffer counts = ByteBuffer.allocate(4);
+			counts.putShort((short) previousBlockEntries);
+			counts.putShort((short) previousBlockDataLength);
+			indexFile.seek(blockPositions[previousBlock] + 8);
+			indexFile.write(counts.array());
+		}
+	}
+
+	/**
+	 * Forces a rescan of the index file.
+	 */
+	private void reset()
+	{
+		blockCount = 0;
+		size = 0;
+		endPosition = -1;
+		cachedBlock = -1;
+	}
+
+	private void decodeBlock(RandomAccessFile indexFile, long block)
+		throws IOException
+	{
+		if(cachedBlock == block)
+		{
+			return;
+		}
+		cachedBlock = -1;
+		long position = blockPositions[(int) block];
+		long nextPosition = block + 1 < blockCount ? blockPositions[(int) block + 1] : endPosition;
+		byte[] bytes = new byte[(int) (nextPosition - position)];
+		indexFile.seek(position);
+		indexFile.readFully(bytes);
+		ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+		long offset = byteBuffer.getLong();
+		int entries = byteBuffer.getShort() & 0xFFFF;
+		byteBuffer.getShort(); // data length
+		cachedOffsets[0] = offset;
+		for(int i = 1; i < entries; i++)
+		{
+			offset += readVarLong(byteBuffer);
+			cachedOffsets[i] = offset;
+		}
+		cachedBlock = block;
+	}
+
+	private void addBlockPosition(long position)
+	{
+		if(blockCount == blockPositions.length)
+		{
+			blockPositions = Arrays.copyOf(blockPositions, blockCount * 2);
+		}
+		blockPositions[blockCount] = position;
+		blockCount++;
+	}
+
+	private static long readLong(RandomAccessFile indexFile, long position)
+		throws IOException
+	{
+		indexFile.seek(position);
+		return indexFile.readLong();
+	}
+
+	static int writeVarLong(long value, byte[] buffer)
+	{
+		long zigzag = (value << 1) ^ (value >> 63);
+		int index = 0;
+		while((zigzag & ~0x7FL) != 0)
+		{
+			buffer[index] = (byte) ((zigzag & 0x7F) | 0x80);
+			zigzag >>>= 7;
+			index++;
+		}
+		buffer[index] = (byte) zigzag;
+		return index + 1;
+	}
+
+	static long readVarLong(ByteBuffer byteBuffer)
+		throws IOException
+	{
+		long zigzag = 0;
+		for(int shift = 0; shift < 64; shift += 7)
+		{
+			byte current = byteBuffer.get();
+			zigzag |= (long) (current & 0x7F) << shift;
+			if((current & 0x80) == 0)
+			{
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+		}
+		throw new IOException("Malformed delta in compact index!");
+	}
+}
@@ -37,6 +37,7 @@ package de.huxhorn.sulky.codec.filebuffer;
 import de.huxhorn.sulky.codec.Codec;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.List;
 
 public interface DataStrategy<E>
@@ -56,6 +57,31 @@ public interface DataStrategy<E>
 	            IndexStrategy indexStrategy)
 		throws IOException;
 
+	/**
+	 * Adds already encoded elements to the end of the buffer.
+	 *
+	 * Only supported if isAddAllEncodedSupported() returns true.
+	 *
+	 * @param encoded the encoded elements, e.g. created by the codec of the buffer.
+	 * @param indexFile the index file.
+	 * @param dataFile the data file.
+	 * @param indexStrategy the index strategy.
+	 * @throws IOException in case of IOException :p
+	 */
+	default void addAllEncoded(List<byte[]> encoded,
+	                           RandomAccessFile indexFile,
+	                           RandomAccessFile dataFile,
+	                           IndexStrategy indexStrategy)
+		throws IOException
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " does not support addAllEncoded!");
+	}
+
+	default boolean isAddAllEncodedSupported()
+	{
+		return false;
+	}
+
 	boolean set(long index, E element,
 	            RandomAccessFile indexFile,
 	            RandomAccessFile dataFile,
@@ -71,4 +97,44 @@ public interface DataStrategy<E>
 	      Codec<E> codec,
 	      IndexStrategy indexStrategy)
 		throws IOException, ClassNotFoundException;
+
+	/**
+	 * Returns the encoded bytes of count consecutive elements without decoding them.
+	 * The entry of an element that is not available is null.
+	 *
+	 * The default implementation calls get for every element and encodes it again using the codec.
+	 *
+	 * @param startIndex the index of the first element.
+	 * @param count the number of elements.
+	 * @param indexFile the index file.
+	 * @param dataFile the data file.
+	 * @param codec the codec, only used by the default implementation.
+	 * @param indexStrategy the index strategy.
+	 * @return a list containing count entries.
+	 * @throws IOException in case of IOException :p
+	 */
+	default List<byte[]> getEncoded(long startIndex,
+	                                int count,
+	                                RandomAccessFile indexFile,
+	                                RandomAccessFile dataFile,
+	                                Codec<E> codec,
+	                                IndexStrategy indexStrategy)
+		throws IOException
+	{
+		List<byte[]> result = new ArrayList<>(count);
+		for(long index = startIndex; index < startIndex + count; index++)
+		{
+			E element;
+			try
+			{
+				element = get(index, indexFile, dataFile, codec, indexStrategy);
+			}
+			catch(ClassNotFoundException e)
+			{
+				throw new IOException("Couldn't read element " + index + "!", e);
+			}
+			result.add(element == null ? null : codec.encode(element));
+		}
+		return result;
+	}
 }
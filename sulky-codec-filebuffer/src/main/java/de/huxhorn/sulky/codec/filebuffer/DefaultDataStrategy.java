@@ -35,8 +35,10 @@
 package de.huxhorn.sulky.codec.filebuffer;
 
 import de.huxhorn.sulky.codec.Codec;
+import de.huxhorn.sulky.codec.EncodingBuffer;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public class DefaultDataStrategy<E>
@@ -47,6 +49,11 @@ public class DefaultDataStrategy<E>
 	 */
 	public static final long DATA_LENGTH_SIZE = 4;
 
+	/**
+	 * Encoded elements are written as soon as the write buffer exceeds this size.
+	 */
+	private static final int WRITE_BUFFER_SIZE = 512 * 1024;
+
 	@Override
 	public void add(E element,
 	                RandomAccessFile indexFile,
@@ -83,21 +90,75 @@ public class DefaultDataStrategy<E>
 				long offset = dataFile.length();
 				long[] offsets = new long[newElementCount];
 				int index = 0;
-				for(E element : elements)
+				EncodingBuffer buffer = EncodingBuffer.acquire();
+				try
 				{
-					offsets[index] = offset;
-					offset = offset + internalWriteElement(dataFile, offset, element, codec) + DATA_LENGTH_SIZE;
-					index++;
+					for(E element : elements)
+					{
+						offsets[index] = offset + buffer.size();
+						internalEncodeElement(buffer, element, codec);
+						index++;
+						if(buffer.size() >= WRITE_BUFFER_SIZE)
+						{
+							offset = internalWriteBuffer(dataFile, offset, buffer);
+						}
+					}
+					internalWriteBuffer(dataFile, offset, buffer);
 				}
+				finally
+				{
+					buffer.release();
+				}
+
+				indexStrategy.setOffsets(indexFile, elementsCount, offsets);
+			}
 
-				index = 0;
-				for(long curOffset : offsets)
+		}
+	}
+
+	/**
+	 * Writes all elements using a single write.
+	 */
+	@Override
+	public void addAllEncoded(List<byte[]> encoded,
+	                          RandomAccessFile indexFile,
+	                          RandomAccessFile dataFile,
+	                          IndexStrategy indexStrategy)
+		throws IOException
+	{
+		if(encoded != null)
+		{
+			int newElementCount = encoded.size();
+			if(newElementCount > 0)
+			{
+				long elementsCount = indexStrategy.getSize(indexFile);
+
+				long dataSize = 0;
+				for(byte[] current : encoded)
+				{
+					dataSize = dataSize + current.length + DATA_LENGTH_SIZE;
+				}
+				if(dataSize > Integer.MAX_VALUE)
 				{
-					indexStrategy.setOffset(indexFile, elementsCount + index, curOffset);
+					throw new IllegalArgumentException("Encoded elements are too large to be written at once!");
+				}
+
+				long offset = dataFile.length();
+				long[] offsets = new long[newElementCount];
+				ByteBuffer buffer = ByteBuffer.allocate((int) dataSize);
+				int index = 0;
+				for(byte[] current : encoded)
+				{
+					offsets[index] = offset + buffer.position();
+					buffer.putInt(current.length);
+					buffer.put(current);
 					index++;
 				}
-			}
+				dataFile.seek(offset);
+				dataFile.write(buffer.array());
 
+				indexStrategy.setOffsets(indexFile, elementsCount, offsets);
+			}
 		}
 	}
 
@@ -107,6 +168,12 @@ public class DefaultDataStrategy<E>
 		throw new UnsupportedOperationException("DefaultDataStrategy does not support set!");
 	}
 
+	@Override
+	public boolean isAddAllEncodedSupported()
+	{
+		return true;
+	}
+
 	@Override
 	public boolean isSetSupported()
 	{
@@ -136,21 +203,73 @@ public class DefaultDataStrategy<E>
 	}
 
 
+	@Override
+	public List<byte[]> getEncoded(long startIndex,
+	                               int count,
+	                               RandomAccessFile indexFile,
+	                               RandomAccessFile dataFile,
+	                               Codec<E> codec,
+	                               IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long[] offsets = indexStrategy.getOffsets(indexFile, startIndex, count);
+		return EncodedElements.read(dataFile, offsets, DATA_LENGTH_SIZE);
+	}
+
 	private int internalWriteElement(RandomAccessFile dataFile, long offset, E element, Codec<E> codec)
 		throws IOException
+	{
+		EncodingBuffer buffer = EncodingBuffer.acquire();
+		try
+		{
+			int bufferSize = internalEncodeElement(buffer, element, codec);
+			internalWriteBuffer(dataFile, offset, buffer);
+			return bufferSize;
+		}
+		finally
+		{
+			buffer.release();
+		}
+	}
+
+	/**
+	 * Appends length and encoded element to the buffer.
+	 */
+	private int internalEncodeElement(EncodingBuffer buffer, E element, Codec<E> codec)
+		throws IOException
 	{
 		if(codec == null)
 		{
 			throw new IllegalStateException("Codec has not been initialized!");
 		}
-		byte[] buffer = codec.encode(element);
-
-		int bufferSize = buffer.length;
+		int position = buffer.reserveInt();
+		int bufferSize = codec.encode(element, buffer);
+		if(bufferSize < 0)
+		{
+			buffer.setSize(position);
+			throw new IOException("Couldn't encode element!");
+		}
+		buffer.putInt(position, bufferSize);
+		return bufferSize;
+	}
 
+	/**
+	 * Writes and resets the buffer.
+	 *
+	 * @return the offset after the written data.
+	 */
+	private static long internalWriteBuffer(RandomAccessFile dataFile, long offset, EncodingBuffer buffer)
+		throws IOException
+	{
+		int size = buffer.size();
+		if(size == 0)
+		{
+			return offset;
+		}
 		dataFile.seek(offset);
-		dataFile.writeInt(bufferSize);
-		dataFile.write(buffer);
-		return bufferSize;
+		dataFile.write(buffer.getBuffer(), 0, size);
+		buffer.reset();
+		return offset + size;
 	}
 
 	private E internalReadElement(RandomAccessFile dataFile, long offset, Codec<E> codec)
@@ -173,6 +292,9 @@ public class DefaultDataStrategy<E>
 		}
 		byte[] buffer = new byte[bufferSize];
 		dataFile.readFully(buffer);
-		return codec.decode(buffer);
+		Object event = FileBufferEvents.ELEMENT_DECODE.begin();
+		E result = codec.decode(buffer);
+		FileBufferEvents.ELEMENT_DECODE.commit(event, bufferSize);
+		return result;
 	}
 }
@@ -36,6 +36,8 @@ package de.huxhorn.sulky.codec.filebuffer;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class DefaultIndexStrategy
 	implements IndexStrategy
@@ -65,6 +67,15 @@ public class DefaultIndexStrategy
 	@Override
 	public long getOffset(RandomAccessFile indexFile, long index)
 		throws IOException
+	{
+		Object event = FileBufferEvents.INDEX_LOOKUP.begin();
+		long result = internalGetOffset(indexFile, index);
+		FileBufferEvents.INDEX_LOOKUP.commit(event, index, result);
+		return result;
+	}
+
+	private long internalGetOffset(RandomAccessFile indexFile, long index)
+		throws IOException
 	{
 		if(index < 0)
 		{
@@ -79,6 +90,33 @@ public class DefaultIndexStrategy
 		return indexFile.readLong();
 	}
 
+	@Override
+	public long[] getOffsets(RandomAccessFile indexFile, long startIndex, int count)
+		throws IOException
+	{
+		long[] result = new long[count];
+		Arrays.fill(result, -1L);
+		if(startIndex < 0 || count <= 0)
+		{
+			return result;
+		}
+		long available = getSize(indexFile) - startIndex;
+		if(available <= 0)
+		{
+			return result;
+		}
+		int readCount = (int) Math.min(count, available);
+		byte[] buffer = new byte[(int) (readCount * DATA_OFFSET_SIZE)];
+		indexFile.seek(startIndex * DATA_OFFSET_SIZE);
+		indexFile.readFully(buffer);
+		ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+		for(int i = 0; i < readCount; i++)
+		{
+			result[i] = byteBuffer.getLong();
+		}
+		return result;
+	}
+
 	@Override
 	public long getSize(RandomAccessFile indexFile)
 		throws IOException
@@ -0,0 +1,173 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the encoded bytes of elements from a data file.
+ *
+ * Elements that are stored consecutively, which is the case for all elements that haven't been
+ * replaced by set, are read using a single read operation.
+ */
+final class EncodedElements
+{
+	/**
+	 * Consecutive elements are read at once if they don't exceed this size.
+	 */
+	static final int MAX_READ_SIZE = 16 * 1024 * 1024;
+
+	private EncodedElements()
+	{}
+
+	static List<byte[]> read(RandomAccessFile dataFile, long[] offsets, long elementHeaderSize)
+		throws IOException
+	{
+		List<byte[]> result = new ArrayList<>(offsets.length);
+		int i = 0;
+		while(i < offsets.length)
+		{
+			long offset = offsets[i];
+			if(offset < 0)
+			{
+				result.add(null);
+				i++;
+				continue;
+			}
+			int runEnd = consecutiveRunEnd(dataFile, offsets, i, elementHeaderSize);
+			if(runEnd - i > 1)
+			{
+				readRun(dataFile, offsets, i, runEnd, elementHeaderSize, result);
+				i = runEnd;
+			}
+			else
+			{
+				result.add(readElement(dataFile, offset, elementHeaderSize));
+				i++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the exclusive end of the run of elements starting at startIndex that are
+	 * stored in ascending order and can be read at once.
+	 */
+	private static int consecutiveRunEnd(RandomAccessFile dataFile, long[] offsets, int startIndex, long elementHeaderSize)
+		throws IOException
+	{
+		int end = startIndex + 1;
+		while(end < offsets.length)
+		{
+			long offset = offsets[end];
+			long previous = offsets[end - 1];
+			if(offset <= previous || offset - offsets[startIndex] > MAX_READ_SIZE)
+			{
+				break;
+			}
+			end++;
+		}
+		// the last element of the run must also fit into the read.
+		while(end - startIndex > 1)
+		{
+			long lastOffset = offsets[end - 1];
+			long runSize = lastOffset + elementHeaderSize + readLength(dataFile, lastOffset) - offsets[startIndex];
+			if(runSize <= MAX_READ_SIZE)
+			{
+				break;
+			}
+			end--;
+		}
+		return end;
+	}
+
+	private static void readRun(RandomAccessFile dataFile, long[] offsets, int startIndex, int endIndex, long elementHeaderSize, List<byte[]> result)
+		throws IOException
+	{
+		long runStart = offsets[startIndex];
+		long lastOffset = offsets[endIndex - 1];
+		long runEnd = lastOffset + elementHeaderSize + readLength(dataFile, lastOffset);
+		if(dataFile.length() < runEnd)
+		{
+			throw new IndexOutOfBoundsException("Invalid length at offset: " + lastOffset + "!");
+		}
+		byte[] run = new byte[(int) (runEnd - runStart)];
+		dataFile.seek(runStart);
+		dataFile.readFully(run);
+		ByteBuffer runBuffer = ByteBuffer.wrap(run);
+		for(int i = startIndex; i < endIndex; i++)
+		{
+			int position = (int) (offsets[i] - runStart);
+			int bufferSize = runBuffer.getInt(position);
+			int dataStart = (int) (position + elementHeaderSize);
+			if(bufferSize < 0 || dataStart + bufferSize > run.length)
+			{
+				throw new IndexOutOfBoundsException("Invalid length (" + bufferSize + ") at offset: " + offsets[i] + "!");
+			}
+			byte[] buffer = new byte[bufferSize];
+			System.arraycopy(run, dataStart, buffer, 0, bufferSize);
+			result.add(buffer);
+		}
+	}
+
+	private static byte[] readElement(RandomAccessFile dataFile, long offset, long elementHeaderSize)
+		throws IOException
+	{
+		int bufferSize = readLength(dataFile, offset);
+		if(bufferSize < 0 || dataFile.length() < offset + elementHeaderSize + bufferSize)
+		{
+			throw new IndexOutOfBoundsException("Invalid length (" + bufferSize + ") at offset: " + offset + "!");
+		}
+		byte[] buffer = new byte[bufferSize];
+		dataFile.seek(offset + elementHeaderSize);
+		dataFile.readFully(buffer);
+		return buffer;
+	}
+
+	private static int readLength(RandomAccessFile dataFile, long offset)
+		throws IOException
+	{
+		if(dataFile.length() < offset + DefaultDataStrategy.DATA_LENGTH_SIZE)
+		{
+			throw new IndexOutOfBoundsException("Invalid offset: " + offset + "! Couldn't read length of data!");
+		}
+		dataFile.seek(offset);
+		return dataFile.readInt();
+	}
+}
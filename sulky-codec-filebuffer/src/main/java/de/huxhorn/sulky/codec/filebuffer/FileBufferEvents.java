@@ -0,0 +1,473 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Java Flight Recorder events emitted by the buffer and strategy layers.
+ *
+ * The events are defined at runtime using jdk.jfr.EventFactory so this module still compiles
+ * and runs on Java 8 runtimes without Flight Recorder. In that case, all events are simply disabled.
+ *
+ * The enabled state of the events is cached and refreshed whenever a recording changes its state
+ * so instrumented code only pays for a volatile read while no recording enables the respective event.
+ * Settings that are changed on a running recording are picked up on the next state change of any recording.
+ *
+ * <ul>
+ *     <li>de.huxhorn.sulky.codec.filebuffer.BufferRead - get() and getEncoded(), including opening files and lock waits.</li>
+ *     <li>de.huxhorn.sulky.codec.filebuffer.BufferAppend - add() and addAll(), including opening files and lock waits.</li>
+ *     <li>de.huxhorn.sulky.codec.filebuffer.IndexLookup - resolving the data offset of an element.</li>
+ *     <li>de.huxhorn.sulky.codec.filebuffer.ElementDecode - decoding a single element.</li>
+ *     <li>de.huxhorn.sulky.codec.filebuffer.LockWait - waiting for the read or write lock of a buffer.</li>
+ * </ul>
+ */
+final class FileBufferEvents
+{
+	private static final String EVENT_PREFIX = "de.huxhorn.sulky.codec.filebuffer.";
+	private static final String CATEGORY = "sulky";
+	private static final String SUB_CATEGORY = "File Buffer";
+
+	static final EventDefinition BUFFER_READ;
+	static final EventDefinition BUFFER_APPEND;
+	static final EventDefinition INDEX_LOOKUP;
+	static final EventDefinition ELEMENT_DECODE;
+	static final EventDefinition LOCK_WAIT;
+
+	static
+	{
+		EventDefinitionFactory factory = EventDefinitionFactory.create();
+		BUFFER_READ = define(factory, "BufferRead", "Buffer Read", "Reading elements from a file buffer.",
+				new FieldDefinition(long.class, "index", "Index", null),
+				new FieldDefinition(long.class, "count", "Count", null));
+		BUFFER_APPEND = define(factory, "BufferAppend", "Buffer Append", "Appending elements to a file buffer.",
+				new FieldDefinition(long.class, "index", "Index", null),
+				new FieldDefinition(long.class, "count", "Count", null),
+				new FieldDefinition(long.class, "bytes", "Bytes", "BYTES"));
+		INDEX_LOOKUP = define(factory, "IndexLookup", "Index Lookup", "Resolving the data offset of an element.",
+				new FieldDefinition(long.class, "index", "Index", null),
+				new FieldDefinition(long.class, "offset", "Offset", null));
+		ELEMENT_DECODE = define(factory, "ElementDecode", "Element Decode", "Decoding a single element.",
+				new FieldDefinition(long.class, "bytes", "Bytes", "BYTES"));
+		LOCK_WAIT = define(factory, "LockWait", "Lock Wait", "Waiting for the lock of a file buffer.",
+				new FieldDefinition(String.class, "operation", "Operation", null));
+		if(factory != null)
+		{
+			RecordingStateListener.register(BUFFER_READ, BUFFER_APPEND, INDEX_LOOKUP, ELEMENT_DECODE, LOCK_WAIT);
+		}
+	}
+
+	private FileBufferEvents()
+	{}
+
+	private static EventDefinition define(EventDefinitionFactory factory, String name, String label, String description, FieldDefinition... fields)
+	{
+		if(factory == null)
+		{
+			return new EventDefinition();
+		}
+		return factory.define(name, label, description, fields);
+	}
+
+	/**
+	 * Acquires the lock, emitting a LockWait event if enabled.
+	 *
+	 * @param lock the lock.
+	 * @param operation the operation requiring the lock.
+	 */
+	static void lock(Lock lock, String operation)
+	{
+		Object event = LOCK_WAIT.begin();
+		lock.lock();
+		if(event != null)
+		{
+			LOCK_WAIT.commit(event, operation);
+		}
+	}
+
+	static final class EventDefinition
+	{
+		private static final MethodHandle IS_ENABLED;
+		private static final MethodHandle NEW_EVENT;
+		private static final MethodHandle BEGIN;
+		private static final MethodHandle END;
+		private static final MethodHandle SET;
+		private static final MethodHandle COMMIT;
+
+		static
+		{
+			MethodHandle isEnabled;
+			MethodHandle newEvent;
+			MethodHandle begin;
+			MethodHandle end;
+			MethodHandle set;
+			MethodHandle commit;
+			try
+			{
+				MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+				Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+				Class<?> eventClass = Class.forName("jdk.jfr.Event");
+				Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+
+				// adapted to Object so invokeExact can be used without the jdk.jfr types
+				isEnabled = lookup.findVirtual(eventTypeClass, "isEnabled", MethodType.methodType(boolean.class))
+						.asType(MethodType.methodType(boolean.class, Object.class));
+				newEvent = lookup.findVirtual(eventFactoryClass, "newEvent", MethodType.methodType(eventClass))
+						.asType(MethodType.methodType(Object.class, Object.class));
+				begin = lookup.findVirtual(eventClass, "begin", MethodType.methodType(void.class))
+						.asType(MethodType.methodType(void.class, Object.class));
+				end = lookup.findVirtual(eventClass, "end", MethodType.methodType(void.class))
+						.asType(MethodType.methodType(void.class, Object.class));
+				set = lookup.findVirtual(eventClass, "set", MethodType.methodType(void.class, int.class, Object.class))
+						.asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+				commit = lookup.findVirtual(eventClass, "commit", MethodType.methodType(void.class))
+						.asType(MethodType.methodType(void.class, Object.class));
+			}
+			catch(Throwable t)
+			{
+				// Flight Recorder isn't available.
+				isEnabled = null;
+				newEvent = null;
+				begin = null;
+				end = null;
+				set = null;
+				commit = null;
+			}
+			IS_ENABLED = isEnabled;
+			NEW_EVENT = newEvent;
+			BEGIN = begin;
+			END = end;
+			SET = set;
+			COMMIT = commit;
+		}
+
+		private final Object eventFactory;
+		private final Object eventType;
+		private volatile boolean enabled;
+		private boolean polling;
+
+		private EventDefinition()
+		{
+			this(null, null);
+		}
+
+		private EventDefinition(Object eventFactory, Object eventType)
+		{
+			this.eventFactory = eventFactory;
+			this.eventType = eventType;
+		}
+
+		boolean isEnabled()
+		{
+			if(polling)
+			{
+				return readEnabled();
+			}
+			return enabled;
+		}
+
+		/**
+		 * Updates the cached enabled state from the event type.
+		 */
+		synchronized void refresh()
+		{
+			enabled = readEnabled();
+		}
+
+		private boolean readEnabled()
+		{
+			if(eventType == null)
+			{
+				return false;
+			}
+			try
+			{
+				return (boolean) IS_ENABLED.invokeExact(eventType);
+			}
+			catch(Throwable t)
+			{
+				return false;
+			}
+		}
+
+		/**
+		 * Creates and begins a new event.
+		 *
+		 * @return the event or null if the event isn't enabled.
+		 */
+		Object begin()
+		{
+			if(!isEnabled())
+			{
+				return null;
+			}
+			try
+			{
+				Object result = (Object) NEW_EVENT.invokeExact(eventFactory);
+				BEGIN.invokeExact(result);
+				return result;
+			}
+			catch(Throwable t)
+			{
+				return null;
+			}
+		}
+
+		void commit(Object event, long value)
+		{
+			if(event != null)
+			{
+				commitValues(event, value);
+			}
+		}
+
+		void commit(Object event, long value1, long value2)
+		{
+			if(event != null)
+			{
+				commitValues(event, value1, value2);
+			}
+		}
+
+		void commit(Object event, long value1, long value2, long value3)
+		{
+			if(event != null)
+			{
+				commitValues(event, value1, value2, value3);
+			}
+		}
+
+		void commit(Object event, String value)
+		{
+			if(event != null)
+			{
+				commitValues(event, value);
+			}
+		}
+
+		private static void commitValues(Object event, Object... values)
+		{
+			try
+			{
+				END.invokeExact(event);
+				for(int i = 0; i < values.length; i++)
+				{
+					SET.invokeExact(event, i, values[i]);
+				}
+				COMMIT.invokeExact(event);
+			}
+			catch(Throwable t)
+			{
+				// silently ignore any problems
+			}
+		}
+	}
+
+	private static final class FieldDefinition
+	{
+		final Class<?> type;
+		final String name;
+		final String label;
+		final String dataAmount;
+
+		FieldDefinition(Class<?> type, String name, String label, String dataAmount)
+		{
+			this.type = type;
+			this.name = name;
+			this.label = label;
+			this.dataAmount = dataAmount;
+		}
+	}
+
+	/**
+	 * Refreshes the enabled state of the events whenever a recording changes its state.
+	 *
+	 * Implements jdk.jfr.FlightRecorderListener using a dynamic proxy.
+	 */
+	private static final class RecordingStateListener
+		implements InvocationHandler
+	{
+		private final List<EventDefinition> definitions;
+
+		private RecordingStateListener(List<EventDefinition> definitions)
+		{
+			this.definitions = definitions;
+		}
+
+		static void register(EventDefinition... definitions)
+		{
+			RecordingStateListener handler = new RecordingStateListener(Arrays.asList(definitions));
+			try
+			{
+				Class<?> listenerClass = Class.forName("jdk.jfr.FlightRecorderListener");
+				Class<?> flightRecorderClass = Class.forName("jdk.jfr.FlightRecorder");
+				MethodHandle addListener = MethodHandles.publicLookup()
+						.findStatic(flightRecorderClass, "addListener", MethodType.methodType(void.class, listenerClass));
+				Object listener = Proxy.newProxyInstance(FileBufferEvents.class.getClassLoader(), new Class<?>[]{listenerClass}, handler);
+				addListener.invoke(listener);
+			}
+			catch(Throwable t)
+			{
+				// e.g. denied by a SecurityManager, query the event types on every call instead.
+				for(EventDefinition current : definitions)
+				{
+					current.polling = true;
+				}
+				return;
+			}
+			// recordings started before the listener was added
+			handler.refresh();
+		}
+
+		private void refresh()
+		{
+			for(EventDefinition current : definitions)
+			{
+				current.refresh();
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+		{
+			if(method.getDeclaringClass() == Object.class)
+			{
+				switch(method.getName())
+				{
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					default:
+						return "RecordingStateListener" + definitions;
+				}
+			}
+			// recordingStateChanged(Recording) and recorderInitialized(FlightRecorder)
+			refresh();
+			return null;
+		}
+	}
+
+	/**
+	 * Wraps the reflective access to jdk.jfr that is only needed while defining the events.
+	 */
+	private static final class EventDefinitionFactory
+	{
+		private final MethodHandle annotationElementWithValue;
+		private final MethodHandle valueDescriptor;
+		private final MethodHandle createFactory;
+		private final MethodHandle getEventType;
+		private final Class<?> nameClass;
+		private final Class<?> labelClass;
+		private final Class<?> descriptionClass;
+		private final Class<?> categoryClass;
+		private final Class<?> dataAmountClass;
+
+		private EventDefinitionFactory()
+			throws ReflectiveOperationException
+		{
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+			Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+			Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+			Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+			nameClass = Class.forName("jdk.jfr.Name");
+			labelClass = Class.forName("jdk.jfr.Label");
+			descriptionClass = Class.forName("jdk.jfr.Description");
+			categoryClass = Class.forName("jdk.jfr.Category");
+			dataAmountClass = Class.forName("jdk.jfr.DataAmount");
+
+			annotationElementWithValue = lookup.findConstructor(annotationElementClass, MethodType.methodType(void.class, Class.class, Object.class));
+			valueDescriptor = lookup.findConstructor(valueDescriptorClass, MethodType.methodType(void.class, Class.class, String.class, List.class));
+			createFactory = lookup.findStatic(eventFactoryClass, "create", MethodType.methodType(eventFactoryClass, List.class, List.class));
+			getEventType = lookup.findVirtual(eventFactoryClass, "getEventType", MethodType.methodType(eventTypeClass));
+		}
+
+		static EventDefinitionFactory create()
+		{
+			try
+			{
+				return new EventDefinitionFactory();
+			}
+			catch(Throwable t)
+			{
+				// Flight Recorder isn't available.
+				return null;
+			}
+		}
+
+		EventDefinition define(String name, String label, String description, FieldDefinition... fields)
+		{
+			try
+			{
+				List<Object> annotations = new ArrayList<>();
+				annotations.add(annotationElementWithValue.invoke(nameClass, EVENT_PREFIX + name));
+				annotations.add(annotationElementWithValue.invoke(labelClass, label));
+				annotations.add(annotationElementWithValue.invoke(descriptionClass, description));
+				annotations.add(annotationElementWithValue.invoke(categoryClass, new String[]{CATEGORY, SUB_CATEGORY}));
+
+				List<Object> descriptors = new ArrayList<>();
+				for(FieldDefinition current : fields)
+				{
+					List<Object> fieldAnnotations = new ArrayList<>();
+					fieldAnnotations.add(annotationElementWithValue.invoke(labelClass, current.label));
+					if(current.dataAmount != null)
+					{
+						fieldAnnotations.add(annotationElementWithValue.invoke(dataAmountClass, current.dataAmount));
+					}
+					descriptors.add(valueDescriptor.invoke(current.type, current.name, fieldAnnotations));
+				}
+
+				Object eventFactory = createFactory.invoke(annotations, descriptors);
+				Object eventType = getEventType.invoke(eventFactory);
+				return new EventDefinition(eventFactory, eventType);
+			}
+			catch(Throwable t)
+			{
+				return new EventDefinition();
+			}
+		}
+	}
+}
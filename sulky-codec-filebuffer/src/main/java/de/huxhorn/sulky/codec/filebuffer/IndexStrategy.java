@@ -42,9 +42,51 @@ public interface IndexStrategy
 	void setOffset(RandomAccessFile indexFile, long index, long offset)
 		throws IOException;
 
+	/**
+	 * Sets the offsets of consecutive elements, e.g. of all elements added at once.
+	 *
+	 * The default implementation calls setOffset for every element.
+	 *
+	 * @param indexFile the index file.
+	 * @param startIndex the index of the first element.
+	 * @param offsets the offsets.
+	 * @throws IOException in case of IOException :p
+	 */
+	default void setOffsets(RandomAccessFile indexFile, long startIndex, long[] offsets)
+		throws IOException
+	{
+		for(int i = 0; i < offsets.length; i++)
+		{
+			setOffset(indexFile, startIndex + i, offsets[i]);
+		}
+	}
+
 	long getOffset(RandomAccessFile indexFile, long index)
 		throws IOException;
 
 	long getSize(RandomAccessFile indexFile)
 		throws IOException;
+
+	/**
+	 * Returns the offsets of count consecutive elements.
+	 * Offsets of elements that are not available are -1.
+	 *
+	 * The default implementation calls getOffset for every element.
+	 *
+	 * @param indexFile the index file.
+	 * @param startIndex the index of the first element.
+	 * @param count the number of offsets to return.
+	 * @return the offsets.
+	 * @throws IOException in case of IOException :p
+	 */
+	default long[] getOffsets(RandomAccessFile indexFile, long startIndex, int count)
+		throws IOException
+	{
+		long[] result = new long[count];
+		for(int i = 0; i < count; i++)
+		{
+			result[i] = getOffset(indexFile, startIndex + i);
+		}
+		return result;
+	}
 }
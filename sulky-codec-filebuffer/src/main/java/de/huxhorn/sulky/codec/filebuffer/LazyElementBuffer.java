@@ -0,0 +1,103 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.buffers.BasicBufferIterator;
+import de.huxhorn.sulky.buffers.BlockSummaryOperation;
+import de.huxhorn.sulky.buffers.Buffer;
+import de.huxhorn.sulky.codec.LazyElement;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * Read-only view of a CodecFileBuffer returning LazyElement handles instead of decoded elements.
+ *
+ * This view can be used as source of a FilteringBuffer so conditions only decode what they actually
+ * need, e.g. just the header if the codec of the buffer is a HeaderDecoder. Block summaries of the
+ * wrapped buffer are still available to skip whole blocks.
+ *
+ * @param <E> the type of the elements of the wrapped buffer.
+ */
+public class LazyElementBuffer<E>
+	implements Buffer<LazyElement<E>>, BlockSummaryOperation
+{
+	private final CodecFileBuffer<E> buffer;
+
+	public LazyElementBuffer(CodecFileBuffer<E> buffer)
+	{
+		this.buffer = Objects.requireNonNull(buffer, "buffer must not be null!");
+	}
+
+	public CodecFileBuffer<E> getBuffer()
+	{
+		return buffer;
+	}
+
+	@Override
+	public LazyElement<E> get(long index)
+	{
+		return buffer.getLazy(index);
+	}
+
+	@Override
+	public long getSize()
+	{
+		return buffer.getSize();
+	}
+
+	@Override
+	public Iterator<LazyElement<E>> iterator()
+	{
+		return new BasicBufferIterator<>(this);
+	}
+
+	@Override
+	public int getBlockSize()
+	{
+		return buffer.getBlockSize();
+	}
+
+	@Override
+	public Object getBlockSummary(long blockIndex)
+	{
+		return buffer.getBlockSummary(blockIndex);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "LazyElementBuffer[buffer=" + buffer + "]";
+	}
+}
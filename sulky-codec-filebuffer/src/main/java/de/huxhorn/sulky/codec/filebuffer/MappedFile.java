@@ -0,0 +1,148 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory mapping of a whole file.
+ *
+ * The file is mapped in segments because a single MappedByteBuffer is limited to 2GB.
+ * All methods are using absolute positions and are therefore thread-safe.
+ */
+final class MappedFile
+{
+	private static final int SEGMENT_SHIFT = 30;
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+	private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private final ByteBuffer[] segments;
+	private final long length;
+
+	private MappedFile(ByteBuffer[] segments, long length)
+	{
+		this.segments = segments;
+		this.length = length;
+	}
+
+	/**
+	 * The mapping stays valid after the file has been closed.
+	 *
+	 * @param file the file to map.
+	 * @return the mapped file.
+	 * @throws IOException in case of IOException :p
+	 */
+	static MappedFile map(File file)
+		throws IOException
+	{
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r");
+			FileChannel channel = raf.getChannel())
+		{
+			long length = channel.size();
+			int segmentCount = (int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+			ByteBuffer[] segments = new ByteBuffer[segmentCount];
+			for(int i = 0; i < segmentCount; i++)
+			{
+				long position = i * SEGMENT_SIZE;
+				long size = Math.min(SEGMENT_SIZE, length - position);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+			}
+			return new MappedFile(segments, length);
+		}
+	}
+
+	long length()
+	{
+		return length;
+	}
+
+	int readInt(long position)
+	{
+		checkRange(position, 4);
+		ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+		int offset = (int) (position & SEGMENT_MASK);
+		if(offset + 4 <= segment.limit())
+		{
+			return segment.getInt(offset);
+		}
+		byte[] bytes = new byte[4];
+		read(position, bytes);
+		return ByteBuffer.wrap(bytes).getInt();
+	}
+
+	long readLong(long position)
+	{
+		checkRange(position, 8);
+		ByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+		int offset = (int) (position & SEGMENT_MASK);
+		if(offset + 8 <= segment.limit())
+		{
+			return segment.getLong(offset);
+		}
+		byte[] bytes = new byte[8];
+		read(position, bytes);
+		return ByteBuffer.wrap(bytes).getLong();
+	}
+
+	void read(long position, byte[] bytes)
+	{
+		checkRange(position, bytes.length);
+		int copied = 0;
+		while(copied < bytes.length)
+		{
+			long current = position + copied;
+			ByteBuffer segment = segments[(int) (current >>> SEGMENT_SHIFT)].duplicate();
+			int offset = (int) (current & SEGMENT_MASK);
+			int count = Math.min(bytes.length - copied, segment.limit() - offset);
+			// called on Buffer so the result also runs on Java 8 if compiled with a later JDK
+			((Buffer) segment).position(offset);
+			segment.get(bytes, copied, count);
+			copied += count;
+		}
+	}
+
+	private void checkRange(long position, long count)
+	{
+		if(position < 0 || position + count > length)
+		{
+			throw new IndexOutOfBoundsException("Can't read " + count + " bytes at position " + position + " of file with length " + length + "!");
+		}
+	}
+}
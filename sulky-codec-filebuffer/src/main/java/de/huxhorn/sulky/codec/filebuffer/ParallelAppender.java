@@ -0,0 +1,184 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.codec.Codec;
+import de.huxhorn.sulky.codec.EncodingBuffer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Appends elements to a CodecFileBuffer, encoding them using multiple threads.
+ *
+ * The elements are split into chunks that are encoded by a ForkJoinPool without holding the lock of
+ * the buffer. The encoded chunks are reassembled in order and written using a single write operation,
+ * so the elements are stored consecutively just like with CodecFileBuffer.addAll.
+ *
+ * The Codec of the buffer is called concurrently and must be thread-safe.
+ *
+ * @param <E> the type of the elements.
+ */
+public class ParallelAppender<E>
+{
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	private final CodecFileBuffer<E> buffer;
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+
+	public ParallelAppender(CodecFileBuffer<E> buffer)
+	{
+		this(buffer, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	public ParallelAppender(CodecFileBuffer<E> buffer, ForkJoinPool pool, int chunkSize)
+	{
+		if(chunkSize <= 0)
+		{
+			throw new IllegalArgumentException("chunkSize must be positive but was " + chunkSize + "!");
+		}
+		this.buffer = Objects.requireNonNull(buffer, "buffer must not be null!");
+		this.pool = Objects.requireNonNull(pool, "pool must not be null!");
+		this.chunkSize = chunkSize;
+	}
+
+	public int getChunkSize()
+	{
+		return chunkSize;
+	}
+
+	/**
+	 * Adds all elements to the end of the buffer.
+	 *
+	 * Nothing is written if any element couldn't be encoded. A batch not exceeding the chunk size
+	 * is encoded by the calling thread.
+	 *
+	 * @param elements the elements to add.
+	 * @throws InterruptedException if the calling thread was interrupted.
+	 * @throws ExecutionException if an element couldn't be encoded.
+	 * @throws IllegalStateException if no Codec has been set.
+	 */
+	public void addAll(List<E> elements)
+		throws InterruptedException, ExecutionException
+	{
+		Objects.requireNonNull(elements, "elements must not be null!");
+		Codec<E> codec = buffer.getCodec();
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		int size = elements.size();
+		if(size == 0)
+		{
+			return;
+		}
+		List<byte[]> encoded;
+		if(size <= chunkSize)
+		{
+			encoded = encode(elements, 0, size, codec);
+		}
+		else
+		{
+			encoded = encodeParallel(elements, codec);
+		}
+		int failedIndex = encoded.indexOf(null);
+		if(failedIndex >= 0)
+		{
+			throw new ExecutionException(new IOException("Couldn't encode element " + failedIndex + "!"));
+		}
+		buffer.addAllEncoded(elements, encoded);
+	}
+
+	private List<byte[]> encodeParallel(List<E> elements, Codec<E> codec)
+		throws InterruptedException, ExecutionException
+	{
+		int size = elements.size();
+		List<Future<List<byte[]>>> pending = new ArrayList<>((size + chunkSize - 1) / chunkSize);
+		try
+		{
+			for(int chunkStart = 0; chunkStart < size; chunkStart += chunkSize)
+			{
+				int start = chunkStart;
+				int end = Math.min(size, chunkStart + chunkSize);
+				pending.add(pool.submit(() -> encode(elements, start, end, codec)));
+			}
+			List<byte[]> result = new ArrayList<>(size);
+			for(Future<List<byte[]>> current : pending)
+			{
+				result.addAll(current.get());
+			}
+			return result;
+		}
+		finally
+		{
+			for(Future<List<byte[]>> current : pending)
+			{
+				current.cancel(true);
+			}
+		}
+	}
+
+	private static <E> List<byte[]> encode(List<E> elements, int start, int end, Codec<E> codec)
+	{
+		List<byte[]> result = new ArrayList<>(end - start);
+		EncodingBuffer encodingBuffer = EncodingBuffer.acquire();
+		try
+		{
+			for(int i = start; i < end; i++)
+			{
+				encodingBuffer.reset();
+				if(codec.encode(elements.get(i), encodingBuffer) < 0)
+				{
+					result.add(null);
+				}
+				else
+				{
+					result.add(Arrays.copyOf(encodingBuffer.getBuffer(), encodingBuffer.size()));
+				}
+			}
+		}
+		finally
+		{
+			encodingBuffer.release();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.codec.Codec;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Scans the elements of a CodecFileBuffer using multiple threads.
+ *
+ * The index range is split into chunks. Each chunk is read sequentially from disk by the
+ * calling thread while decoding and processing of the chunks is executed by a ForkJoinPool.
+ * At most maxPendingChunks chunks are in flight at any time so memory usage is bounded.
+ *
+ * The Codec of the buffer and the ChunkProcessor are called concurrently and must be thread-safe.
+ *
+ * @param <E> the type of the elements.
+ */
+public class ParallelScanner<E>
+{
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	private final CodecFileBuffer<E> buffer;
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+	private final int maxPendingChunks;
+
+	public ParallelScanner(CodecFileBuffer<E> buffer)
+	{
+		this(buffer, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	public ParallelScanner(CodecFileBuffer<E> buffer, ForkJoinPool pool, int chunkSize)
+	{
+		this(buffer, pool, chunkSize, 2 * pool.getParallelism());
+	}
+
+	public ParallelScanner(CodecFileBuffer<E> buffer, ForkJoinPool pool, int chunkSize, int maxPendingChunks)
+	{
+		if(chunkSize <= 0)
+		{
+			throw new IllegalArgumentException("chunkSize must be positive but was " + chunkSize + "!");
+		}
+		if(maxPendingChunks <= 0)
+		{
+			throw new IllegalArgumentException("maxPendingChunks must be positive but was " + maxPendingChunks + "!");
+		}
+		this.buffer = Objects.requireNonNull(buffer, "buffer must not be null!");
+		this.pool = Objects.requireNonNull(pool, "pool must not be null!");
+		this.chunkSize = chunkSize;
+		this.maxPendingChunks = maxPendingChunks;
+	}
+
+	public int getChunkSize()
+	{
+		return chunkSize;
+	}
+
+	public int getMaxPendingChunks()
+	{
+		return maxPendingChunks;
+	}
+
+	/**
+	 * Scans all elements of the buffer and returns the results of all chunks in index order.
+	 *
+	 * @param processor the processor called for every chunk.
+	 * @param <R> the type of the result of a chunk.
+	 * @return the results of all chunks in index order.
+	 * @throws InterruptedException if the calling thread was interrupted.
+	 * @throws ExecutionException if a chunk couldn't be read or processed.
+	 */
+	public <R> List<R> scan(ChunkProcessor<E, R> processor)
+		throws InterruptedException, ExecutionException
+	{
+		List<R> result = new ArrayList<>();
+		scan(0, buffer.getSize(), processor, result::add, true);
+		return result;
+	}
+
+	/**
+	 * Scans the elements in the range <code>[startIndex..(endIndex-1)]</code>.
+	 *
+	 * The results of the chunks are handed to the consumer on the calling thread.
+	 * If ordered is true, the consumer receives the results in index order.
+	 * Otherwise, results are handed over as soon as they are available.
+	 *
+	 * @param startIndex the index of the first element.
+	 * @param endIndex the index after the last element.
+	 * @param processor the processor called for every chunk.
+	 * @param consumer the consumer of the chunk results.
+	 * @param ordered whether or not the results must be consumed in index order.
+	 * @param <R> the type of the result of a chunk.
+	 * @throws InterruptedException if the calling thread was interrupted.
+	 * @throws ExecutionException if a chunk couldn't be read or processed.
+	 */
+	public <R> void scan(long startIndex, long endIndex, ChunkProcessor<E, R> processor, Consumer<? super R> consumer, boolean ordered)
+		throws InterruptedException, ExecutionException
+	{
+		Objects.requireNonNull(processor, "processor must not be null!");
+		Objects.requireNonNull(consumer, "consumer must not be null!");
+		Codec<E> codec = buffer.getCodec();
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+
+		// the completion queue is only used if results can be consumed in any order.
+		CompletionService<R> completionService = null;
+		if(!ordered)
+		{
+			completionService = new ExecutorCompletionService<>(pool);
+		}
+		Deque<Future<R>> pending = new ArrayDeque<>();
+		try
+		{
+			for(long chunkStart = Math.max(0, startIndex); chunkStart < endIndex; chunkStart += chunkSize)
+			{
+				if(pending.size() >= maxPendingChunks)
+				{
+					consumer.accept(takeNext(completionService, pending));
+				}
+				int count = (int) Math.min(chunkSize, endIndex - chunkStart);
+				List<byte[]> encoded = buffer.getEncoded(chunkStart, count);
+				if(encoded == null)
+				{
+					throw new ExecutionException(new IOException("Couldn't read " + count + " elements starting at index " + chunkStart + "!"));
+				}
+				long currentStart = chunkStart;
+				Callable<R> task = () -> processor.process(currentStart, decode(codec, encoded));
+				if(completionService == null)
+				{
+					pending.add(pool.submit(task));
+				}
+				else
+				{
+					pending.add(completionService.submit(task));
+				}
+			}
+			while(!pending.isEmpty())
+			{
+				consumer.accept(takeNext(completionService, pending));
+			}
+		}
+		finally
+		{
+			for(Future<R> current : pending)
+			{
+				current.cancel(true);
+			}
+		}
+	}
+
+	private static <R> R takeNext(CompletionService<R> completionService, Deque<Future<R>> pending)
+		throws InterruptedException, ExecutionException
+	{
+		Future<R> future;
+		if(completionService == null)
+		{
+			future = pending.peekFirst();
+		}
+		else
+		{
+			future = completionService.take();
+		}
+		R result = future.get();
+		pending.remove(future);
+		return result;
+	}
+
+	private static <E> List<E> decode(Codec<E> codec, List<byte[]> encoded)
+	{
+		List<E> result = new ArrayList<>(encoded.size());
+		for(byte[] current : encoded)
+		{
+			if(current == null)
+			{
+				result.add(null);
+			}
+			else
+			{
+				result.add(codec.decode(current));
+			}
+		}
+		return result;
+	}
+}
@@ -47,27 +47,64 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Buffer reading the files of a CodecFileBuffer that won't change anymore.
+ *
+ * If memoryMapped is true, both the data and the index file are memory-mapped
+ * and get doesn't need any lock. Otherwise, all reads are serialized.
+ *
+ * Since the files won't change, the size is determined once while opening them.
+ *
+ * @param <E> the type of objects that are stored in this buffer.
+ */
 public class ReadOnlyExclusiveCodecFileBuffer<E>
 	implements Buffer<E>
 {
 	private final Logger logger = LoggerFactory.getLogger(ReadOnlyExclusiveCodecFileBuffer.class);
 	private final Lock lock=new ReentrantLock();
 
-	private Codec<E> codec;
+	private volatile Codec<E> codec;
 	private DataStrategy<E> dataStrategy;
 	private IndexStrategy indexStrategy;
 	private FileHeader fileHeader;
 	private RandomAccessFile randomAccessIndexFile;
 	private RandomAccessFile randomAccessDataFile;
+	private final boolean memoryMapped;
+	private volatile MappedFile mappedIndexFile;
+	private volatile MappedFile mappedDataFile;
+	private long elementHeaderSize;
+	/**
+	 * -1 if closed.
+	 */
+	private volatile long size;
 
 	public ReadOnlyExclusiveCodecFileBuffer(File dataFile, File indexFile)
 			throws IOException
 	{
-		this(dataFile, indexFile, new DefaultFileHeaderStrategy());
+		this(dataFile, indexFile, new DefaultFileHeaderStrategy(), false);
+	}
+
+	public ReadOnlyExclusiveCodecFileBuffer(File dataFile, File indexFile, boolean memoryMapped)
+			throws IOException
+	{
+		this(dataFile, indexFile, new DefaultFileHeaderStrategy(), memoryMapped);
 	}
 
 	public ReadOnlyExclusiveCodecFileBuffer(File dataFile, File indexFile, FileHeaderStrategy fileHeaderStrategy)
 			throws IOException
+	{
+		this(dataFile, indexFile, fileHeaderStrategy, false);
+	}
+
+	/**
+	 * @param dataFile the data file.
+	 * @param indexFile the index file of the buffer.
+	 * @param fileHeaderStrategy the strategy used to read the file header.
+	 * @param memoryMapped whether or not data and index file should be memory-mapped. Ignored for a compact index.
+	 * @throws IOException in case of IOException :p
+	 */
+	public ReadOnlyExclusiveCodecFileBuffer(File dataFile, File indexFile, FileHeaderStrategy fileHeaderStrategy, boolean memoryMapped)
+			throws IOException
 	{
 		this.indexStrategy = new DefaultIndexStrategy();
 		if(!dataFile.canRead())
@@ -89,8 +126,20 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 			}
 			setFileHeader(header);
 
-			randomAccessIndexFile = new RandomAccessFile(indexFile, "r");
-			randomAccessDataFile = new RandomAccessFile(dataFile, "r");
+			// the compact index can't be accessed lock-free, fall back to RandomAccessFile
+			this.memoryMapped = memoryMapped && indexStrategy instanceof DefaultIndexStrategy;
+			if(this.memoryMapped)
+			{
+				mappedIndexFile = MappedFile.map(indexFile);
+				mappedDataFile = MappedFile.map(dataFile);
+				size = mappedIndexFile.length() / DefaultIndexStrategy.DATA_OFFSET_SIZE;
+			}
+			else
+			{
+				randomAccessIndexFile = new RandomAccessFile(indexFile, "r");
+				randomAccessDataFile = new RandomAccessFile(dataFile, "r");
+				size = indexStrategy.getSize(randomAccessIndexFile);
+			}
 		}
 		finally
 		{
@@ -98,6 +147,11 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 		}
 	}
 
+	public boolean isMemoryMapped()
+	{
+		return memoryMapped;
+	}
+
 	public Codec<E> getCodec()
 	{
 		lock.lock();
@@ -134,6 +188,10 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 	@Override
 	public E get(long index)
 	{
+		if(memoryMapped)
+		{
+			return getMapped(index);
+		}
 		Throwable throwable = null;
 		lock.lock();
 		try
@@ -159,6 +217,50 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 			lock.unlock();
 		}
 		// it's a really bad idea to log while locked *sigh*
+		logGetProblem(index, throwable);
+		return null;
+	}
+
+	private E getMapped(long index)
+	{
+		Codec<E> localCodec = codec;
+		if(localCodec == null)
+		{
+			throw new IllegalStateException("codec must not be null!");
+		}
+		MappedFile localIndexFile = mappedIndexFile;
+		MappedFile localDataFile = mappedDataFile;
+		Throwable throwable = null;
+		if(localIndexFile != null && localDataFile != null)
+		{
+			try
+			{
+				long elementsCount = localIndexFile.length() / DefaultIndexStrategy.DATA_OFFSET_SIZE;
+				if(index < 0 || index >= elementsCount)
+				{
+					return null;
+				}
+				long offset = localIndexFile.readLong(index * DefaultIndexStrategy.DATA_OFFSET_SIZE);
+				if(offset < 0)
+				{
+					return null;
+				}
+				int bufferSize = localDataFile.readInt(offset);
+				byte[] buffer = new byte[bufferSize];
+				localDataFile.read(offset + elementHeaderSize, buffer);
+				return localCodec.decode(buffer);
+			}
+			catch(Throwable e)
+			{
+				throwable = e;
+			}
+		}
+		logGetProblem(index, throwable);
+		return null;
+	}
+
+	private void logGetProblem(long index, Throwable throwable)
+	{
 		if(throwable != null)
 		{
 			if(throwable instanceof ClassNotFoundException
@@ -179,42 +281,17 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 		{
 			if(logger.isWarnEnabled()) logger.warn("Buffer has already been closed.");
 		}
-		return null;
 	}
 
 	@Override
 	public long getSize()
 	{
-		Throwable throwable = null;
-		lock.lock();
-		try
-		{
-			if(randomAccessIndexFile != null)
-			{
-				try
-				{
-					return indexStrategy.getSize(randomAccessIndexFile);
-				}
-				catch(Throwable e)
-				{
-					throwable = e;
-				}
-			}
-		}
-		finally
+		long result = size;
+		if(result >= 0)
 		{
-			lock.unlock();
-		}
-
-		// it's a really bad idea to log while locked *sigh*
-		if(throwable != null)
-		{
-			if(logger.isDebugEnabled()) logger.debug("Couldn't retrieve size!", throwable);
-		}
-		else
-		{
-			if(logger.isWarnEnabled()) logger.warn("Buffer has already been closed.");
+			return result;
 		}
+		if(logger.isWarnEnabled()) logger.warn("Buffer has already been closed.");
 		return 0;
 	}
 
@@ -224,11 +301,19 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 		return new BasicBufferIterator<>(this);
 	}
 
+	/**
+	 * Closes the buffer.
+	 *
+	 * Memory-mapped files are released as soon as the mappings are garbage-collected.
+	 */
 	public void close()
 	{
 		lock.lock();
 		try
 		{
+			size = -1;
+			mappedIndexFile = null;
+			mappedDataFile = null;
 			if(randomAccessIndexFile != null) {
 				try
 				{
@@ -286,11 +371,14 @@ public class ReadOnlyExclusiveCodecFileBuffer<E>
 			if(metaData.isSparse())
 			{
 				dataStrategy = new SparseDataStrategy<>();
+				elementHeaderSize = SparseDataStrategy.DATA_LENGTH_SIZE + SparseDataStrategy.INDEX_SIZE;
 			}
 			else
 			{
 				dataStrategy = new DefaultDataStrategy<>();
+				elementHeaderSize = DefaultDataStrategy.DATA_LENGTH_SIZE;
 			}
+			indexStrategy = CompactIndexStrategy.create(metaData);
 			this.fileHeader = fileHeader;
 		}
 		finally
@@ -0,0 +1,216 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.buffers.SerializingFileBuffer;
+import de.huxhorn.sulky.codec.Codec;
+import de.huxhorn.sulky.codec.Decoder;
+import de.huxhorn.sulky.tasks.AbstractProgressingCallable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Converts the content of a SerializingFileBuffer into a CodecFileBuffer.
+ *
+ * The serialized elements are read sequentially in chunks by the calling thread. Chunks are
+ * decoded and encoded using the codec of the target buffer by a ForkJoinPool. The encoded chunks
+ * are appended to the target buffer in their original order using a single write per chunk.
+ * At most maxPendingChunks chunks are in flight at any time so memory usage is bounded.
+ *
+ * Elements of a SerializingFileBuffer can be decoded by a compressing SerializableDecoder.
+ * The conversion fails if an element can't be decoded or encoded since skipping it would shift
+ * the indices of all following elements. Elements converted up to that point stay in the target buffer.
+ *
+ * The decoder and the codec of the target buffer are called concurrently and must be thread-safe.
+ * The target buffer should not be changed by anyone else during conversion.
+ *
+ * The result of the call is the number of elements added to the target buffer.
+ *
+ * @param <E> the type of the elements.
+ */
+public class SerializingFileBufferConverter<E>
+	extends AbstractProgressingCallable<Long>
+{
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	private final SerializingFileBuffer<E> source;
+	private final Decoder<E> decoder;
+	private final CodecFileBuffer<E> target;
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+	private final int maxPendingChunks;
+
+	public SerializingFileBufferConverter(SerializingFileBuffer<E> source, Decoder<E> decoder, CodecFileBuffer<E> target)
+	{
+		this(source, decoder, target, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	public SerializingFileBufferConverter(SerializingFileBuffer<E> source, Decoder<E> decoder, CodecFileBuffer<E> target, ForkJoinPool pool, int chunkSize)
+	{
+		this(source, decoder, target, pool, chunkSize, 2 * pool.getParallelism());
+	}
+
+	public SerializingFileBufferConverter(SerializingFileBuffer<E> source, Decoder<E> decoder, CodecFileBuffer<E> target, ForkJoinPool pool, int chunkSize, int maxPendingChunks)
+	{
+		super(chunkSize);
+		if(chunkSize <= 0)
+		{
+			throw new IllegalArgumentException("chunkSize must be positive but was " + chunkSize + "!");
+		}
+		if(maxPendingChunks <= 0)
+		{
+			throw new IllegalArgumentException("maxPendingChunks must be positive but was " + maxPendingChunks + "!");
+		}
+		this.source = Objects.requireNonNull(source, "source must not be null!");
+		this.decoder = Objects.requireNonNull(decoder, "decoder must not be null!");
+		this.target = Objects.requireNonNull(target, "target must not be null!");
+		this.pool = Objects.requireNonNull(pool, "pool must not be null!");
+		this.chunkSize = chunkSize;
+		this.maxPendingChunks = maxPendingChunks;
+	}
+
+	public int getChunkSize()
+	{
+		return chunkSize;
+	}
+
+	public int getMaxPendingChunks()
+	{
+		return maxPendingChunks;
+	}
+
+	@Override
+	public Long call()
+		throws Exception
+	{
+		Codec<E> codec = target.getCodec();
+		if(codec == null)
+		{
+			throw new IllegalStateException("Codec has not been initialized!");
+		}
+		long size = source.getSize();
+		setNumberOfSteps(size);
+		long added = 0;
+		Deque<Future<Chunk<E>>> pending = new ArrayDeque<>();
+		try
+		{
+			long chunkStart = 0;
+			while(chunkStart < size || !pending.isEmpty())
+			{
+				if(chunkStart < size && pending.size() < maxPendingChunks)
+				{
+					int count = (int) Math.min(chunkSize, size - chunkStart);
+					List<byte[]> serialized = source.getEncoded(chunkStart, count);
+					if(serialized == null)
+					{
+						throw new ExecutionException(new IOException("Couldn't read " + count + " elements starting at index " + chunkStart + "!"));
+					}
+					pending.add(pool.submit(() -> convert(serialized, codec)));
+					chunkStart += count;
+					continue;
+				}
+				Chunk<E> chunk = pending.removeFirst().get();
+				if(chunk.failedIndex >= 0)
+				{
+					throw new ExecutionException(new IOException("Couldn't convert element " + (added + chunk.failedIndex) + "!"));
+				}
+				// CodecFileBuffer.addAllEncoded only logs problems so a failed write is detected by the size of the target.
+				long expectedSize = target.getSize() + chunk.elements.size();
+				target.addAllEncoded(chunk.elements, chunk.encoded);
+				if(target.getSize() < expectedSize)
+				{
+					throw new ExecutionException(new IOException("Couldn't write " + chunk.elements.size() + " elements starting at index " + added + "!"));
+				}
+				added += chunk.elements.size();
+				setCurrentStep(added);
+			}
+		}
+		finally
+		{
+			for(Future<Chunk<E>> current : pending)
+			{
+				current.cancel(true);
+			}
+		}
+		return added;
+	}
+
+	private Chunk<E> convert(List<byte[]> serialized, Codec<E> codec)
+	{
+		Chunk<E> result = new Chunk<>(serialized.size());
+		for(int i = 0; i < serialized.size(); i++)
+		{
+			byte[] current = serialized.get(i);
+			E element = null;
+			byte[] encoded = null;
+			if(current != null)
+			{
+				element = decoder.decode(current);
+			}
+			if(element != null)
+			{
+				encoded = codec.encode(element);
+			}
+			if(encoded == null)
+			{
+				result.failedIndex = i;
+				break;
+			}
+			result.elements.add(element);
+			result.encoded.add(encoded);
+		}
+		return result;
+	}
+
+	private static class Chunk<E>
+	{
+		final List<E> elements;
+		final List<byte[]> encoded;
+		int failedIndex = -1;
+
+		Chunk(int size)
+		{
+			elements = new ArrayList<>(size);
+			encoded = new ArrayList<>(size);
+		}
+	}
+}
@@ -0,0 +1,566 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer;
+
+import de.huxhorn.sulky.buffers.AppendOperation;
+import de.huxhorn.sulky.buffers.BasicBufferIterator;
+import de.huxhorn.sulky.buffers.Buffer;
+import de.huxhorn.sulky.buffers.Dispose;
+import de.huxhorn.sulky.buffers.DisposeOperation;
+import de.huxhorn.sulky.buffers.ResetOperation;
+import de.huxhorn.sulky.codec.Codec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffer distributing appends over several CodecFileBuffer shards so concurrent writers don't
+ * contend on a single lock and data file.
+ *
+ * Every appended element receives a global sequence number. The order file contains one long per
+ * sequence number, consisting of the shard (upper 8 bits, +1) and the index of the element in that
+ * shard (lower 56 bits), so get(long) is a single positional read followed by a get of the shard.
+ * An entry of 0 denotes an element that couldn't be written.
+ *
+ * getSize() only covers sequence numbers that have been completely written, i.e. elements
+ * become visible in the order of their sequence numbers.
+ *
+ * Without ShardSelector, each add or addAll call is routed to the next shard that isn't
+ * currently written to, starting in round-robin order. With a ShardSelector, all shards needed by
+ * an addAll call are locked in ascending order. In both cases, the elements of a call receive
+ * consecutive sequence numbers, i.e. they are read in the order they have been added.
+ *
+ * If a shard fails to write its elements, none of the elements of the call become visible. They
+ * are read as null instead. Elements already written to other shards remain unreferenced in their files.
+ *
+ * The shards are owned by this buffer and must not be written to directly.
+ *
+ * @param <E> the type of objects that are stored in this buffer.
+ */
+public class ShardedCodecFileBuffer<E>
+	implements Buffer<E>, AppendOperation<E>, ResetOperation, DisposeOperation
+{
+	public static final int MAX_SHARD_COUNT = 255;
+
+	private static final String ORDER_EXTENSION = ".order";
+	private static final String INDEX_EXTENSION = ".index";
+	private static final int ENTRY_SIZE = 8;
+	private static final int SHARD_SHIFT = 56;
+	private static final long LOCAL_INDEX_MASK = (1L << SHARD_SHIFT) - 1;
+
+	private final Logger logger = LoggerFactory.getLogger(ShardedCodecFileBuffer.class);
+
+	private final List<CodecFileBuffer<E>> shards;
+	private final Lock[] shardLocks;
+	private final ShardSelector<E> shardSelector;
+	private final File orderFile;
+	private final FileChannel orderChannel;
+	private final AtomicInteger nextShard = new AtomicInteger();
+	private final AtomicLong nextSequence;
+
+	/**
+	 * Appends hold the read lock, reset and dispose the write lock.
+	 */
+	private final ReadWriteLock resetLock = new ReentrantReadWriteLock();
+	private final Lock commitLock = new ReentrantLock();
+	/**
+	 * Completed sequence ranges that can't be committed yet because a previous sequence is still being written.
+	 */
+	private final TreeMap<Long, Long> pendingRanges = new TreeMap<>();
+	private volatile long committed;
+	private volatile boolean disposed;
+
+	/**
+	 * Creates a buffer with shardCount shards next to the given data file.
+	 *
+	 * For a dataFile "events.ext", the shards are "events-0.ext" and "events-0.index" and so on,
+	 * while the order file is "events.order".
+	 *
+	 * @param magicValue the magic value of the shards.
+	 * @param preferredMetaData the meta data of the shards. Might be null.
+	 * @param codec the codec used by the shards.
+	 * @param dataFile the file used to derive the names of all files.
+	 * @param shardCount the number of shards.
+	 * @param shardSelector the selector routing elements to shards, null for round-robin.
+	 * @param <E> the type of objects that are stored in the buffer.
+	 * @return the buffer.
+	 * @throws IOException if the order file couldn't be opened.
+	 */
+	public static <E> ShardedCodecFileBuffer<E> create(int magicValue, Map<String, String> preferredMetaData, Codec<E> codec, File dataFile, int shardCount, ShardSelector<E> shardSelector)
+		throws IOException
+	{
+		if(shardCount < 1 || shardCount > MAX_SHARD_COUNT)
+		{
+			throw new IllegalArgumentException("shardCount must be in the range [1.." + MAX_SHARD_COUNT + "] but was " + shardCount + "!");
+		}
+		File parent = dataFile.getParentFile();
+		String baseName = dataFile.getName();
+		String extension = "";
+		int dotIndex = baseName.lastIndexOf('.');
+		if(dotIndex > 0)
+		{
+			extension = baseName.substring(dotIndex);
+			baseName = baseName.substring(0, dotIndex);
+		}
+		List<CodecFileBuffer<E>> shards = new ArrayList<>(shardCount);
+		for(int i = 0; i < shardCount; i++)
+		{
+			String shardName = baseName + "-" + i;
+			shards.add(new CodecFileBuffer<>(magicValue, false, preferredMetaData, codec, new File(parent, shardName + extension), new File(parent, shardName + INDEX_EXTENSION)));
+		}
+		return new ShardedCodecFileBuffer<>(shards, new File(parent, baseName + ORDER_EXTENSION), shardSelector);
+	}
+
+	/**
+	 * @param shards the shards. The order must be the same every time the buffer is opened.
+	 * @param orderFile the file containing the global order.
+	 * @param shardSelector the selector routing elements to shards, null for round-robin.
+	 * @throws IOException if the order file couldn't be opened.
+	 */
+	public ShardedCodecFileBuffer(List<CodecFileBuffer<E>> shards, File orderFile, ShardSelector<E> shardSelector)
+		throws IOException
+	{
+		Objects.requireNonNull(shards, "shards must not be null!");
+		if(shards.isEmpty() || shards.size() > MAX_SHARD_COUNT)
+		{
+			throw new IllegalArgumentException("The number of shards must be in the range [1.." + MAX_SHARD_COUNT + "] but was " + shards.size() + "!");
+		}
+		this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+		this.shardLocks = new Lock[shards.size()];
+		for(int i = 0; i < shardLocks.length; i++)
+		{
+			shardLocks[i] = new ReentrantLock();
+		}
+		this.shardSelector = shardSelector;
+		this.orderFile = Objects.requireNonNull(orderFile, "orderFile must not be null!");
+		this.orderChannel = FileChannel.open(orderFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.committed = orderChannel.size() / ENTRY_SIZE;
+		this.nextSequence = new AtomicLong(committed);
+	}
+
+	public List<CodecFileBuffer<E>> getShards()
+	{
+		return shards;
+	}
+
+	public File getOrderFile()
+	{
+		return orderFile;
+	}
+
+	public ShardSelector<E> getShardSelector()
+	{
+		return shardSelector;
+	}
+
+	@Override
+	public void add(E element)
+	{
+		addAll(Collections.singletonList(element));
+	}
+
+	@Override
+	public void addAll(List<E> elements)
+	{
+		if(elements == null || elements.isEmpty())
+		{
+			return;
+		}
+		Lock lock = resetLock.readLock();
+		lock.lock();
+		try
+		{
+			if(disposed)
+			{
+				return;
+			}
+			int count = elements.size();
+			int[] elementShards = new int[count];
+			if(shardSelector == null)
+			{
+				Arrays.fill(elementShards, acquireNextShard());
+			}
+			else
+			{
+				int shardCount = shards.size();
+				boolean[] usedShards = new boolean[shardCount];
+				for(int i = 0; i < count; i++)
+				{
+					int shard = shardSelector.selectShard(elements.get(i), shardCount);
+					if(shard < 0 || shard >= shardCount)
+					{
+						throw new IllegalArgumentException("ShardSelector returned invalid shard " + shard + "!");
+					}
+					elementShards[i] = shard;
+					usedShards[shard] = true;
+				}
+				// ascending order prevents deadlocks between concurrent calls
+				for(int shard = 0; shard < shardCount; shard++)
+				{
+					if(usedShards[shard])
+					{
+						shardLocks[shard].lock();
+					}
+				}
+			}
+			append(elements, elementShards);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void addAll(E[] elements)
+	{
+		addAll(Arrays.asList(elements));
+	}
+
+	/**
+	 * @return will always return false, i.e. it does not check for diskspace!
+	 */
+	@Override
+	public boolean isFull()
+	{
+		return false;
+	}
+
+	@Override
+	public E get(long index)
+	{
+		if(index < 0 || index >= committed || disposed)
+		{
+			return null;
+		}
+		Throwable throwable;
+		try
+		{
+			ByteBuffer entryBuffer = ByteBuffer.allocate(ENTRY_SIZE);
+			readFully(entryBuffer, index * ENTRY_SIZE);
+			long entry = entryBuffer.getLong(0);
+			if(entry == 0)
+			{
+				return null;
+			}
+			int shard = (int) (entry >>> SHARD_SHIFT) - 1;
+			return shards.get(shard).get(entry & LOCAL_INDEX_MASK);
+		}
+		catch(Throwable e)
+		{
+			throwable = e;
+		}
+		if(logger.isWarnEnabled()) logger.warn("Couldn't retrieve element at index {}!", index, throwable);
+		return null;
+	}
+
+	@Override
+	public long getSize()
+	{
+		return committed;
+	}
+
+	@Override
+	public Iterator<E> iterator()
+	{
+		return new BasicBufferIterator<>(this);
+	}
+
+	@Override
+	public void reset()
+	{
+		Lock lock = resetLock.writeLock();
+		lock.lock();
+		try
+		{
+			committed = 0;
+			nextSequence.set(0);
+			orderChannel.truncate(0);
+			for(CodecFileBuffer<E> current : shards)
+			{
+				current.reset();
+			}
+		}
+		catch(IOException e)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Exception while resetting order file {}!", orderFile.getAbsolutePath(), e);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void dispose()
+	{
+		Lock lock = resetLock.writeLock();
+		lock.lock();
+		try
+		{
+			if(disposed)
+			{
+				return;
+			}
+			disposed = true;
+			for(CodecFileBuffer<E> current : shards)
+			{
+				Dispose.dispose(current);
+			}
+			orderChannel.close();
+		}
+		catch(IOException e)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Exception while closing order file {}!", orderFile.getAbsolutePath(), e);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isDisposed()
+	{
+		return disposed;
+	}
+
+	/**
+	 * Tries to lock the shards starting with the next one in round-robin order.
+	 * If all of them are busy, it waits for the first one.
+	 *
+	 * @return the index of the locked shard.
+	 */
+	private int acquireNextShard()
+	{
+		int shardCount = shards.size();
+		int first = Math.floorMod(nextShard.getAndIncrement(), shardCount);
+		for(int i = 0; i < shardCount; i++)
+		{
+			int shard = (first + i) % shardCount;
+			if(shardLocks[shard].tryLock())
+			{
+				return shard;
+			}
+		}
+		shardLocks[first].lock();
+		return first;
+	}
+
+	/**
+	 * Appends the elements to their shards, which must already be locked, and commits them to the order file.
+	 * The locks of the shards are released by this method.
+	 *
+	 * @param elements the elements to append.
+	 * @param elementShards the shard of each element.
+	 */
+	private void append(List<E> elements, int[] elementShards)
+	{
+		int count = elements.size();
+		int shardCount = shards.size();
+		// stable counting sort of the element positions by shard
+		int[] shardStarts = new int[shardCount + 1];
+		for(int shard : elementShards)
+		{
+			shardStarts[shard + 1]++;
+		}
+		for(int shard = 0; shard < shardCount; shard++)
+		{
+			shardStarts[shard + 1] += shardStarts[shard];
+		}
+		int[] positions = new int[count];
+		int[] nextPositions = Arrays.copyOf(shardStarts, shardCount);
+		for(int i = 0; i < count; i++)
+		{
+			positions[nextPositions[elementShards[i]]++] = i;
+		}
+
+		long[] entries = new long[count];
+		long firstSequence = nextSequence.getAndAdd(count);
+		RuntimeException exception = null;
+		try
+		{
+			for(int shard = 0; shard < shardCount; shard++)
+			{
+				int start = shardStarts[shard];
+				int shardElementCount = shardStarts[shard + 1] - start;
+				if(shardElementCount == 0)
+				{
+					continue;
+				}
+				CodecFileBuffer<E> buffer = shards.get(shard);
+				long firstLocalIndex = buffer.getSize();
+				if(shardElementCount == 1)
+				{
+					buffer.add(elements.get(positions[start]));
+				}
+				else
+				{
+					List<E> shardElements = new ArrayList<>(shardElementCount);
+					for(int i = start; i < start + shardElementCount; i++)
+					{
+						shardElements.add(elements.get(positions[i]));
+					}
+					buffer.addAll(shardElements);
+				}
+				// CodecFileBuffer logs but doesn't propagate write problems.
+				if(buffer.getSize() - firstLocalIndex != shardElementCount)
+				{
+					Arrays.fill(entries, 0L);
+					break;
+				}
+				long shardBits = ((long) shard + 1) << SHARD_SHIFT;
+				for(int i = 0; i < shardElementCount; i++)
+				{
+					entries[positions[start + i]] = shardBits | (firstLocalIndex + i);
+				}
+			}
+		}
+		catch(RuntimeException e)
+		{
+			exception = e;
+			Arrays.fill(entries, 0L);
+		}
+		finally
+		{
+			for(int shard = shardCount - 1; shard >= 0; shard--)
+			{
+				if(shardStarts[shard + 1] > shardStarts[shard])
+				{
+					shardLocks[shard].unlock();
+				}
+			}
+		}
+
+		ByteBuffer entryBuffer = ByteBuffer.allocate(count * ENTRY_SIZE);
+		for(long entry : entries)
+		{
+			entryBuffer.putLong(entry);
+		}
+		((java.nio.Buffer) entryBuffer).flip();
+		Throwable throwable = null;
+		try
+		{
+			long position = firstSequence * ENTRY_SIZE;
+			while(entryBuffer.hasRemaining())
+			{
+				position += orderChannel.write(entryBuffer, position);
+			}
+		}
+		catch(IOException e)
+		{
+			throwable = e;
+		}
+		commit(firstSequence, firstSequence + count);
+		if(throwable != null)
+		{
+			if(logger.isWarnEnabled()) logger.warn("Couldn't write order of elements {} to {}!", firstSequence, firstSequence + count - 1, throwable);
+		}
+		if(exception != null)
+		{
+			throw exception;
+		}
+	}
+
+	/**
+	 * Marks the sequence range [start, end) as complete and advances the committed size if possible.
+	 */
+	private void commit(long start, long end)
+	{
+		commitLock.lock();
+		try
+		{
+			if(start != committed)
+			{
+				pendingRanges.put(start, end);
+				return;
+			}
+			long newCommitted = end;
+			for(;;)
+			{
+				Long pendingEnd = pendingRanges.remove(newCommitted);
+				if(pendingEnd == null)
+				{
+					break;
+				}
+				newCommitted = pendingEnd;
+			}
+			committed = newCommitted;
+		}
+		finally
+		{
+			commitLock.unlock();
+		}
+	}
+
+	private void readFully(ByteBuffer buffer, long position)
+		throws IOException
+	{
+		long currentPosition = position;
+		while(buffer.hasRemaining())
+		{
+			int read = orderChannel.read(buffer, currentPosition);
+			if(read < 0)
+			{
+				throw new IOException("Unexpected end of order file " + orderFile.getAbsolutePath() + "!");
+			}
+			currentPosition += read;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ShardedCodecFileBuffer{shards=" + shards.size() + ", orderFile=" + orderFile + ", size=" + committed + "}";
+	}
+}
@@ -35,8 +35,10 @@
 package de.huxhorn.sulky.codec.filebuffer;
 
 import de.huxhorn.sulky.codec.Codec;
+import de.huxhorn.sulky.codec.EncodingBuffer;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public class SparseDataStrategy<E>
@@ -52,6 +54,11 @@ public class SparseDataStrategy<E>
 	 */
 	public static final long INDEX_SIZE = 8;
 
+	/**
+	 * Encoded elements are written as soon as the write buffer exceeds this size.
+	 */
+	private static final int WRITE_BUFFER_SIZE = 512 * 1024;
+
 	private boolean supportingOverwrite;
 
 	public SparseDataStrategy()
@@ -110,21 +117,76 @@ public class SparseDataStrategy<E>
 
 				long[] offsets = new long[newElementCount];
 				int index = 0;
-				for(E element : elements)
+				EncodingBuffer buffer = EncodingBuffer.acquire();
+				try
 				{
-					offsets[index] = offset;
-					offset = offset + internalWriteElement(dataFile, offset, elementsCount + index, element, codec) + DATA_LENGTH_SIZE + INDEX_SIZE;
-					index++;
+					for(E element : elements)
+					{
+						offsets[index] = offset + buffer.size();
+						internalEncodeElement(buffer, elementsCount + index, element, codec);
+						index++;
+						if(buffer.size() >= WRITE_BUFFER_SIZE)
+						{
+							offset = internalWriteBuffer(dataFile, offset, buffer);
+						}
+					}
+					internalWriteBuffer(dataFile, offset, buffer);
+				}
+				finally
+				{
+					buffer.release();
+				}
+
+				indexStrategy.setOffsets(indexFile, elementsCount, offsets);
+			}
+
+		}
+	}
+
+	/**
+	 * Writes all elements using a single write.
+	 */
+	@Override
+	public void addAllEncoded(List<byte[]> encoded,
+	                          RandomAccessFile indexFile,
+	                          RandomAccessFile dataFile,
+	                          IndexStrategy indexStrategy)
+		throws IOException
+	{
+		if(encoded != null)
+		{
+			int newElementCount = encoded.size();
+			if(newElementCount > 0)
+			{
+				long elementsCount = indexStrategy.getSize(indexFile);
+
+				long dataSize = 0;
+				for(byte[] current : encoded)
+				{
+					dataSize = dataSize + current.length + DATA_LENGTH_SIZE + INDEX_SIZE;
+				}
+				if(dataSize > Integer.MAX_VALUE)
+				{
+					throw new IllegalArgumentException("Encoded elements are too large to be written at once!");
 				}
 
-				index = 0;
-				for(long curOffset : offsets)
+				long offset = dataFile.length();
+				long[] offsets = new long[newElementCount];
+				ByteBuffer buffer = ByteBuffer.allocate((int) dataSize);
+				int index = 0;
+				for(byte[] current : encoded)
 				{
-					indexStrategy.setOffset(indexFile, elementsCount + index, curOffset);
+					offsets[index] = offset + buffer.position();
+					buffer.putInt(current.length);
+					buffer.putLong(elementsCount + index);
+					buffer.put(current);
 					index++;
 				}
-			}
+				dataFile.seek(offset);
+				dataFile.write(buffer.array());
 
+				indexStrategy.setOffsets(indexFile, elementsCount, offsets);
+			}
 		}
 	}
 
@@ -153,6 +215,12 @@ public class SparseDataStrategy<E>
 		}
 	}
 
+	@Override
+	public boolean isAddAllEncodedSupported()
+	{
+		return true;
+	}
+
 	@Override
 	public boolean isSetSupported()
 	{
@@ -182,22 +250,75 @@ public class SparseDataStrategy<E>
 	}
 
 
+	@Override
+	public List<byte[]> getEncoded(long startIndex,
+	                               int count,
+	                               RandomAccessFile indexFile,
+	                               RandomAccessFile dataFile,
+	                               Codec<E> codec,
+	                               IndexStrategy indexStrategy)
+		throws IOException
+	{
+		long[] offsets = indexStrategy.getOffsets(indexFile, startIndex, count);
+		return EncodedElements.read(dataFile, offsets, DATA_LENGTH_SIZE + INDEX_SIZE);
+	}
+
 	private int internalWriteElement(RandomAccessFile dataFile, long offset, long index, E element, Codec<E> codec)
 		throws IOException
+	{
+		EncodingBuffer buffer = EncodingBuffer.acquire();
+		try
+		{
+			int bufferSize = internalEncodeElement(buffer, index, element, codec);
+			internalWriteBuffer(dataFile, offset, buffer);
+			return bufferSize;
+		}
+		finally
+		{
+			buffer.release();
+		}
+	}
+
+	/**
+	 * Appends length, index and encoded element to the buffer.
+	 */
+	private int internalEncodeElement(EncodingBuffer buffer, long index, E element, Codec<E> codec)
+		throws IOException
 	{
 		if(codec == null)
 		{
 			throw new IllegalStateException("Codec has not been initialized!");
 		}
-		byte[] buffer = codec.encode(element);
-
-		int bufferSize = buffer.length;
+		int position = buffer.reserveInt();
+		buffer.reserveLong();
+		int bufferSize = codec.encode(element, buffer);
+		if(bufferSize < 0)
+		{
+			buffer.setSize(position);
+			throw new IOException("Couldn't encode element " + index + "!");
+		}
+		buffer.putInt(position, bufferSize);
+		buffer.putLong(position + (int) DATA_LENGTH_SIZE, index);
+		return bufferSize;
+	}
 
+	/**
+	 * Writes and resets the buffer.
+	 *
+	 * @return the offset after the written data.
+	 */
+	private static long internalWriteBuffer(RandomAccessFile dataFile, long offset, EncodingBuffer buffer)
+		throws IOException
+	{
+		int size = buffer.size();
+		if(size == 0)
+		{
+			return offset;
+		}
 		dataFile.seek(offset);
-		dataFile.writeInt(bufferSize);
-		dataFile.writeLong(index);
-		dataFile.write(buffer);
-		return bufferSize;
+		dataFile.write(buffer.getBuffer(), 0, size);
+		buffer.reset();
+		return offset + size;
 	}
 
 	private E internalReadElement(RandomAccessFile dataFile, long offset, Codec<E> codec)
@@ -223,6 +344,9 @@ public class SparseDataStrategy<E>
 		dataFile.seek(startOfData);
 		byte[] buffer = new byte[bufferSize];
 		dataFile.readFully(buffer);
-		return codec.decode(buffer);
+		Object event = FileBufferEvents.ELEMENT_DECODE.begin();
+		E result = codec.decode(buffer);
+		FileBufferEvents.ELEMENT_DECODE.commit(event, bufferSize);
+		return result;
 	}
 }
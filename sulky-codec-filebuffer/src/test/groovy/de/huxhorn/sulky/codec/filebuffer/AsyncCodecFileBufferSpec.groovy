@@ -0,0 +1,199 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class AsyncCodecFileBufferSpec
+  extends Specification {
+
+  File tempOutputPath
+  File dataFile
+  File indexFile
+
+  int magicValue = 0xDEADBEEF
+
+  Codec<String> codec = new SerializableCodec<String>()
+  ExecutorService executor = Executors.newFixedThreadPool(2)
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    dataFile = new File(tempOutputPath, "dump")
+    indexFile = new File(tempOutputPath, "dump.index")
+  }
+
+  def cleanup() {
+    executor.shutdown()
+    dataFile.delete()
+    indexFile.delete()
+    tempOutputPath.delete()
+  }
+
+  static List<String> createValues(int count) {
+    List<String> result = []
+    for(int i = 0; i < count; i++) {
+      // every tenth value exceeds the speculative read
+      result.add('Value ' + i + ('x' * (i % 10 == 0 ? AsyncCodecFileBuffer.SPECULATIVE_READ_SIZE : i)))
+    }
+    return result
+  }
+
+  @Unroll
+  def "addAll(), then get() and getRange() (sparse=#sparse, metaData=#metaData)"(boolean sparse, Map<String, String> metaData) {
+    setup:
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, sparse, metaData, codec, dataFile, indexFile)
+    AsyncCodecFileBuffer<String> instance = new AsyncCodecFileBuffer<String>(buffer, executor, 2)
+    List<String> values = createValues(100)
+
+    when:
+    List<CompletableFuture<Void>> writes = []
+    for(int i = 0; i < values.size(); i += 10) {
+      writes.add(instance.addAll(values.subList(i, i + 10)))
+    }
+    writes.each { it.get() }
+    List<CompletableFuture<String>> reads = []
+    for(int i = 0; i < values.size() + 2; i++) {
+      reads.add(instance.get(i))
+    }
+
+    then:
+    values.size() == buffer.size
+    reads.collect { it.get() } == values + [null, null]
+    instance.getRange(95, 10).get() == values.subList(95, 100) + [null] * 5
+    instance.getRange(-1, 2).get() == [null, null]
+    instance.getRange(0, values.size()).get() == values
+    0 == instance.inFlightCount
+    0 == instance.pendingCount
+
+    cleanup:
+    instance.close()
+
+    where:
+    sparse | metaData
+    false  | null
+    true   | null
+    false  | [(CompactIndexStrategy.INDEX_STRATEGY_KEY): CompactIndexStrategy.COMPACT_INDEX_STRATEGY]
+  }
+
+  def "missing codec completes exceptionally"() {
+    setup:
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    buffer.add('Foo')
+    buffer.codec = null
+    AsyncCodecFileBuffer<String> instance = new AsyncCodecFileBuffer<String>(buffer, executor, 2)
+
+    when:
+    instance.get(0).get()
+
+    then:
+    ExecutionException ex = thrown()
+    ex.cause instanceof IllegalStateException
+
+    cleanup:
+    instance.close()
+  }
+
+  def "closed instance rejects operations"() {
+    setup:
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    AsyncCodecFileBuffer<String> instance = new AsyncCodecFileBuffer<String>(buffer)
+    instance.close()
+
+    when:
+    instance.add('Foo').get()
+
+    then:
+    ExecutionException ex = thrown()
+    ex.cause instanceof IllegalStateException
+  }
+
+  def "pending operations are executed after close()"() {
+    setup:
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    List<String> values = createValues(20)
+    buffer.addAll(values)
+    AsyncCodecFileBuffer<String> instance = new AsyncCodecFileBuffer<String>(buffer)
+
+    when:
+    List<CompletableFuture<String>> reads = []
+    for(int i = 0; i < 100; i++) {
+      reads.add(instance.get(i % values.size()))
+    }
+    instance.close()
+
+    then:
+    reads.collect { it.get() } == values * 5
+  }
+
+  def "failed write completes exceptionally"() {
+    setup:
+    Codec<String> failingCodec = new Codec<String>() {
+      byte[] encode(String obj) {
+        return obj == 'Fail' ? null : codec.encode(obj)
+      }
+
+      String decode(byte[] bytes) {
+        return codec.decode(bytes)
+      }
+    }
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, false, null, failingCodec, dataFile, indexFile)
+    AsyncCodecFileBuffer<String> instance = new AsyncCodecFileBuffer<String>(buffer, executor, 2)
+
+    when:
+    instance.addAll(['Foo', 'Fail']).get()
+
+    then:
+    ExecutionException ex = thrown()
+    ex.cause instanceof IOException
+
+    when:
+    instance.add('Bar').get()
+
+    then:
+    'Bar' == instance.get(buffer.size - 1).get()
+
+    cleanup:
+    instance.close()
+  }
+}
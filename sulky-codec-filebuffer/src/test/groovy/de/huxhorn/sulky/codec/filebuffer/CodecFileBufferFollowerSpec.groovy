@@ -0,0 +1,146 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class CodecFileBufferFollowerSpec
+  extends Specification {
+
+  File tempOutputPath
+  File dataFile
+  File indexFile
+
+  int magicValue = 0xDEADBEEF
+
+  Codec<String> codec = new SerializableCodec<String>()
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    dataFile = new File(tempOutputPath, "dump")
+    indexFile = new File(tempOutputPath, "dump.index")
+  }
+
+  def cleanup() {
+    dataFile.delete()
+    indexFile.delete()
+    tempOutputPath.delete()
+  }
+
+  def "check() publishes new ranges and resets"() {
+    setup:
+    CodecFileBuffer<String> writer = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    writer.add('Foo')
+    CodecFileBuffer<String> reader = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    CodecFileBufferFollower instance = new CodecFileBufferFollower(reader)
+    CapturingListener listener = new CapturingListener()
+    instance.addListener(listener)
+
+    when:
+    instance.check()
+
+    then:
+    listener.events.isEmpty()
+
+    when:
+    writer.addAll(['Bar', 'Baz'])
+    instance.check()
+    instance.check()
+
+    then:
+    ['1-3'] == listener.events.toList()
+    3 == reader.size
+
+    when:
+    listener.events.clear()
+    writer.reset()
+    writer.add('Foobar')
+    instance.check()
+
+    then:
+    ['reset', '0-1'] == listener.events.toList()
+    'Foobar' == reader.get(0)
+  }
+
+  @Unroll
+  def "running follower publishes new ranges (watching=#watching)"(boolean watching) {
+    setup:
+    CodecFileBuffer<String> writer = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    CodecFileBuffer<String> reader = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    CodecFileBufferFollower instance = new CodecFileBufferFollower(reader, 50, watching)
+    CapturingListener listener = new CapturingListener()
+    instance.addListener(listener)
+
+    when:
+    instance.start()
+    writer.add('Foo')
+
+    then:
+    '0-1' == listener.events.poll(10, TimeUnit.SECONDS)
+    instance.running
+
+    when:
+    instance.stop()
+
+    then:
+    !instance.running
+    !instance.watching
+
+    where:
+    watching << [true, false]
+  }
+
+  static class CapturingListener
+    implements ElementRangeListener {
+
+    BlockingQueue<String> events = new LinkedBlockingQueue<>()
+
+    void elementsAdded(long startIndex, long endIndex) {
+      events.add(startIndex + '-' + endIndex)
+    }
+
+    void bufferReset() {
+      events.add('reset')
+    }
+  }
+}
@@ -1,7 +1,13 @@
 package de.huxhorn.sulky.codec.filebuffer
 
+import de.huxhorn.sulky.buffers.BlockSummaries
+import de.huxhorn.sulky.buffers.BlockSummarizer
+import de.huxhorn.sulky.buffers.CachedElementCount
+import de.huxhorn.sulky.buffers.DurabilityPolicy
 import de.huxhorn.sulky.buffers.ElementProcessor
 import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.DictionaryCompressingCodec
+import de.huxhorn.sulky.codec.DictionaryTrainer
 import de.huxhorn.sulky.codec.SerializableCodec
 import spock.lang.Specification
 import spock.lang.Unroll
@@ -306,6 +312,165 @@ class CodecFileBufferSpec
     [sparse, metaDataData] << sparseAndMetaDataData()
   }
 
+  @Unroll
+  def "add() and addAll() with block summaries (sparse=#sparse, metaData=#metaDataData)"(boolean sparse, Map<String, String> metaDataData) {
+    setup:
+    BlockSummaries<String, Set<String>> summaries = new BlockSummaries<>(new FirstCharacterSummarizer(), 4)
+
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.setBlockSummaries(summaries)
+    instance.addAll(values)
+    instance.add('Eleven')
+
+    then:
+    4 == instance.blockSize
+    ['N', 'O', 'T'] as Set == instance.getBlockSummary(0)
+    ['F', 'S'] as Set == instance.getBlockSummary(1)
+    ['N', 'T', 'E'] as Set == instance.getBlockSummary(2)
+    null == instance.getBlockSummary(3)
+
+    where:
+    [sparse, metaDataData] << sparseAndMetaDataData()
+  }
+
+  @Unroll
+  def "block summaries don't cover existing elements (sparse=#sparse, metaData=#metaDataData)"(boolean sparse, Map<String, String> metaDataData) {
+    setup:
+    BlockSummaries<String, Set<String>> summaries = new BlockSummaries<>(new FirstCharacterSummarizer(), 4)
+
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(values)
+    CodecFileBuffer<String> otherInstance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    otherInstance.setBlockSummaries(summaries)
+    otherInstance.add('Eleven')
+    otherInstance.add('Twelve')
+
+    then:
+    null == otherInstance.getBlockSummary(0)
+    null == otherInstance.getBlockSummary(2)
+    ['T'] as Set == otherInstance.getBlockSummary(3)
+
+    when:
+    otherInstance.reset()
+    otherInstance.add('Zero')
+
+    then:
+    ['Z'] as Set == otherInstance.getBlockSummary(0)
+
+    where:
+    [sparse, metaDataData] << sparseAndMetaDataData()
+  }
+
+  @Unroll
+  def "block summaries don't cover elements added by other instances (sparse=#sparse, metaData=#metaDataData)"(boolean sparse, Map<String, String> metaDataData) {
+    setup:
+    BlockSummaries<String, Set<String>> summaries = new BlockSummaries<>(new FirstCharacterSummarizer(), 4)
+
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.setBlockSummaries(summaries)
+    instance.add('One')
+    instance.add('Two')
+    CodecFileBuffer<String> otherInstance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    otherInstance.add('Three')
+
+    then:
+    null == instance.getBlockSummary(0)
+
+    when:
+    otherInstance.addAll(['Four', 'Five', 'Six', 'Seven'])
+    instance.add('Eight')
+
+    then:
+    null == instance.getBlockSummary(0)
+    null == instance.getBlockSummary(1)
+
+    when:
+    instance.add('Nine')
+
+    then:
+    ['N'] as Set == instance.getBlockSummary(2)
+
+    where:
+    [sparse, metaDataData] << sparseAndMetaDataData()
+  }
+
+  @Unroll
+  def "add(), addAll() and set() with group commit (sparse=#sparse, metaData=#metaDataData)"(boolean sparse, Map<String, String> metaDataData) {
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.durabilityPolicy = DurabilityPolicy.GROUP_COMMIT
+    instance.addAll(values)
+    instance.add('Eleven')
+    instance.set(0, 'Zero')
+
+    then:
+    DurabilityPolicy.GROUP_COMMIT == instance.durabilityPolicy
+    (sparse ? 3 : 2) == instance.syncStatistics.forceCount
+    0 == instance.syncStatistics.failureCount
+    values.length + 1 == instance.size
+
+    when:
+    instance.durabilityPolicy = DurabilityPolicy.NONE
+    instance.add('Twelve')
+
+    then:
+    0 == instance.syncStatistics.forceCount
+
+    where:
+    [sparse, metaDataData] << sparseAndMetaDataData()
+  }
+
+  @Unroll
+  def "size is revalidated after changes of other instance (sparse=#sparse, metaData=#metaDataData)"(boolean sparse, Map<String, String> metaDataData) {
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(values)
+    CodecFileBuffer<String> otherInstance = new CodecFileBuffer<String>(magicValue, sparse, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    otherInstance.add('Eleven')
+
+    then:
+    values.length + 1 == otherInstance.size
+
+    when:
+    Thread.sleep(CachedElementCount.DEFAULT_REVALIDATION_MILLIS + 50)
+
+    then:
+    values.length + 1 == instance.size
+
+    where:
+    [sparse, metaDataData] << sparseAndMetaDataData()
+  }
+
+  def "compact index"() {
+    setup:
+    Map<String, String> metaDataData = [(CompactIndexStrategy.INDEX_STRATEGY_KEY): CompactIndexStrategy.COMPACT_INDEX_STRATEGY]
+
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, metaDataData, codec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(values)
+    instance.add('Eleven')
+    CodecFileBuffer<String> otherInstance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+
+    then:
+    indexFile.length() < 8 * (values.length + 1)
+    values.length + 1 == otherInstance.size
+    'Eleven' == otherInstance.get(values.length)
+    for(int i = 0; i < values.length; i++) {
+      assert values[i] == otherInstance.get(i)
+    }
+  }
+
+  def "compact index isn't supported by sparse buffers"() {
+    when:
+    new CodecFileBuffer<String>(magicValue, true, [(CompactIndexStrategy.INDEX_STRATEGY_KEY): CompactIndexStrategy.COMPACT_INDEX_STRATEGY], codec, dataFile, indexFile, fileHeaderStrategy)
+
+    then:
+    thrown(IllegalArgumentException)
+  }
+
   @Unroll
   def "reset non-empty buffer (sparse=#sparse, metaData=#metaDataData)"(boolean sparse, Map<String, String> metaDataData) {
     when:
@@ -512,6 +677,33 @@ class CodecFileBufferSpec
     [sparse, metaDataData] << sparseAndMetaDataData()
   }
 
+  def "dictionary stored in meta data"() {
+    setup:
+    List<byte[]> samples = new ArrayList<byte[]>()
+    for(String current : values) {
+      samples.add(codec.encode(current))
+    }
+    DictionaryCompressingCodec<String> dictionaryCodec = new DictionaryCompressingCodec<String>(codec, DictionaryTrainer.train(samples))
+    Map<String, String> metaDataData = new HashMap<String, String>()
+    dictionaryCodec.storeDictionary(metaDataData)
+
+    when:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, metaDataData, dictionaryCodec, dataFile, indexFile, fileHeaderStrategy)
+    instance.addAll(Arrays.asList(values))
+
+    and:
+    CodecFileBuffer<String> otherInstance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile, fileHeaderStrategy)
+    byte[] dictionary = DictionaryCompressingCodec.loadDictionary(otherInstance.fileHeader.metaData.data)
+    otherInstance.codec = new DictionaryCompressingCodec<String>(codec, dictionary)
+
+    then:
+    dictionary == dictionaryCodec.dictionary
+    otherInstance.size == values.length
+    for(int i = 0; i < values.length; i++) {
+      assert otherInstance.get(i) == values[i]
+    }
+  }
+
   static class CapturingStringElementProcessor
     implements ElementProcessor<String> {
 
@@ -525,5 +717,16 @@ class CodecFileBufferSpec
       list.addAll(element);
     }
   }
-}
 
+  static class FirstCharacterSummarizer
+    implements BlockSummarizer<String, Set<String>> {
+
+    public Set<String> summarize(Set<String> summary, String element) {
+      if(summary == null) {
+        summary = new HashSet<String>()
+      }
+      summary.add(element.substring(0, 1))
+      return summary
+    }
+  }
+}
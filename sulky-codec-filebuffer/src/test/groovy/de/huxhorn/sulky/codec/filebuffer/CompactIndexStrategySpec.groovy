@@ -0,0 +1,230 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import spock.lang.Specification
+
+class CompactIndexStrategySpec
+  extends Specification {
+  File testFile
+  CompactIndexStrategy instance = new CompactIndexStrategy()
+
+  def setup() {
+    testFile = File.createTempFile("index", "tst")
+    testFile.delete()
+  }
+
+  def cleanup() {
+    testFile.delete()
+  }
+
+  def "empty getSize and getOffset"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+
+    when:
+    long size = instance.getSize(raf)
+    long offset = instance.getOffset(raf, 17)
+    raf.close()
+
+    then:
+    0 == size
+    -1 == offset
+  }
+
+  def "any offset fills missing entries"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+
+    when:
+    instance.setOffset(raf, 17, 42)
+    long size = instance.getSize(raf)
+    long offset = instance.getOffset(raf, 17)
+    for(int i=0;i<17;i++) {
+      assert -1 == instance.getOffset(raf, i)
+    }
+    raf.close()
+
+    then:
+    18 == size
+    42 == offset
+  }
+
+  def "replacing an offset is not supported"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+    instance.setOffset(raf, 0, 17)
+
+    when:
+    instance.setOffset(raf, 0, 42)
+
+    then:
+    thrown(UnsupportedOperationException)
+
+    cleanup:
+    raf.close()
+  }
+
+  def "many offsets spanning several blocks"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+    int count = CompactIndexStrategy.BLOCK_SIZE * 3 + 17
+    long[] expected = new long[count]
+    long offset = 1000
+    Random random = new Random(17)
+    for(int i=0;i<count;i++) {
+      expected[i] = offset
+      offset += random.nextInt(500)
+      if(i % 100 == 99) {
+        // deltas may also be negative
+        offset -= 2000
+      }
+    }
+
+    when:
+    for(int i=0;i<count;i++) {
+      instance.setOffset(raf, i, expected[i])
+    }
+    CompactIndexStrategy otherInstance = new CompactIndexStrategy()
+
+    then:
+    count == instance.getSize(raf)
+    count == otherInstance.getSize(raf)
+    for(int i=count-1;i>=0;i--) {
+      assert expected[i] == instance.getOffset(raf, i)
+      assert expected[i] == otherInstance.getOffset(raf, i)
+    }
+    expected == instance.getOffsets(raf, 0, count)
+    raf.length() < count * DefaultIndexStrategy.DATA_OFFSET_SIZE / 3
+
+    cleanup:
+    raf.close()
+  }
+
+  def "offsets appended by other instance"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+    CompactIndexStrategy otherInstance = new CompactIndexStrategy()
+
+    when:
+    instance.setOffset(raf, 0, 17)
+    otherInstance.setOffset(raf, 1, 42)
+    otherInstance.setOffset(raf, 2, 4711)
+
+    then:
+    3 == instance.getSize(raf)
+    [17, 42, 4711] as long[] == instance.getOffsets(raf, 0, 3)
+
+    when:
+    raf.setLength(0)
+
+    then:
+    0 == instance.getSize(raf)
+
+    cleanup:
+    raf.close()
+  }
+
+  def "setOffsets writes the same index as setOffset"() {
+    setup:
+    File otherFile = File.createTempFile("index", "tst")
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+    RandomAccessFile otherRaf = new RandomAccessFile(otherFile, "rw")
+    CompactIndexStrategy otherInstance = new CompactIndexStrategy()
+    int count = CompactIndexStrategy.BLOCK_SIZE * 3 + 17
+    long[] expected = new long[count]
+    for(int i=0;i<count;i++) {
+      expected[i] = 1000 + i * 17
+    }
+
+    when:
+    for(int i=0;i<count;i++) {
+      instance.setOffset(raf, i, expected[i])
+    }
+    int index = 0
+    for(int batchSize : [1, 100, CompactIndexStrategy.BLOCK_SIZE, 2 * CompactIndexStrategy.BLOCK_SIZE]) {
+      int end = Math.min(count, index + batchSize)
+      otherInstance.setOffsets(otherRaf, index, Arrays.copyOfRange(expected, index, end))
+      index = end
+    }
+    raf.close()
+    otherRaf.close()
+
+    then:
+    count == index
+    testFile.bytes == otherFile.bytes
+
+    cleanup:
+    otherFile.delete()
+  }
+
+  def "data of an interrupted write is ignored"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+    instance.setOffsets(raf, 0, [17, 42, 4711] as long[])
+    // deltas without the corresponding header update
+    raf.seek(raf.length())
+    raf.write([5, 7, 9] as byte[])
+    CompactIndexStrategy otherInstance = new CompactIndexStrategy()
+
+    when:
+    long size = otherInstance.getSize(raf)
+    otherInstance.setOffset(raf, 3, 5000)
+
+    then:
+    3 == size
+    4 == instance.getSize(raf)
+    [17, 42, 4711, 5000] as long[] == instance.getOffsets(raf, 0, 4)
+
+    cleanup:
+    raf.close()
+  }
+
+  def "getOffsets"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+
+    when:
+    instance.setOffset(raf, 1, 17)
+    instance.setOffset(raf, 2, 42)
+    long[] offsets = instance.getOffsets(raf, 0, 5)
+    long[] invalidOffsets = instance.getOffsets(raf, -1, 2)
+    raf.close()
+
+    then:
+    [-1, 17, 42, -1, -1] as long[] == offsets
+    [-1, -1] as long[] == invalidOffsets
+  }
+}
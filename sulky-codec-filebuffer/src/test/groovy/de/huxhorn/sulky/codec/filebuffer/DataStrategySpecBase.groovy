@@ -102,6 +102,28 @@ abstract class DataStrategySpecBase
     value2 == readValue2
   }
 
+  def "addAll and getEncoded"() {
+    setup:
+    List<String> list = ["Foo", "Bar", "Foobar"]
+    RandomAccessFile randomIndexFile = new RandomAccessFile(indexFile, "rw")
+    RandomAccessFile randomDataFile = new RandomAccessFile(dataFile, "rw")
+
+    when:
+    instance.addAll(list, randomIndexFile, randomDataFile, codec, indexStrategy)
+    instance.add("Baz", randomIndexFile, randomDataFile, codec, indexStrategy)
+    List<byte[]> encoded = instance.getEncoded(1, 5, randomIndexFile, randomDataFile, codec, indexStrategy)
+    closeQuietly(randomIndexFile)
+    closeQuietly(randomDataFile)
+
+    then:
+    5 == encoded.size()
+    "Bar" == codec.decode(encoded[0])
+    "Foobar" == codec.decode(encoded[1])
+    "Baz" == codec.decode(encoded[2])
+    null == encoded[3]
+    null == encoded[4]
+  }
+
   static void closeQuietly(RandomAccessFile raf) {
     if(raf != null) {
       try {
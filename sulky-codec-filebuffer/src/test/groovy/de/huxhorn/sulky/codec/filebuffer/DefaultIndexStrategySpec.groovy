@@ -102,4 +102,20 @@ class DefaultIndexStrategySpec
     value1 == offset1
     value2 == offset2
   }
+
+  def "getOffsets"() {
+    setup:
+    RandomAccessFile raf = new RandomAccessFile(testFile, "rw")
+
+    when:
+    instance.setOffset(raf, 1, 17)
+    instance.setOffset(raf, 2, 42)
+    long[] offsets = instance.getOffsets(raf, 0, 5)
+    long[] invalidOffsets = instance.getOffsets(raf, -1, 2)
+    raf.close()
+
+    then:
+    [-1, 17, 42, -1, -1] as long[] == offsets
+    [-1, -1] as long[] == invalidOffsets
+  }
 }
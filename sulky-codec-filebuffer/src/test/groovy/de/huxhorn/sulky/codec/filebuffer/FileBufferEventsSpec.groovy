@@ -0,0 +1,117 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+import spock.lang.Requires
+import spock.lang.Specification
+
+class FileBufferEventsSpec
+  extends Specification {
+
+  static final List<String> EVENT_NAMES = ['BufferRead', 'BufferAppend', 'IndexLookup', 'ElementDecode', 'LockWait']
+
+  File tempOutputPath
+  File dataFile
+  File indexFile
+
+  int magicValue = 0xDEADBEEF
+
+  Codec<String> codec = new SerializableCodec<String>()
+
+  static boolean isFlightRecorderAvailable() {
+    try {
+      Class.forName('jdk.jfr.EventFactory')
+      return true
+    } catch(ClassNotFoundException ex) {
+      return false
+    }
+  }
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    dataFile = new File(tempOutputPath, "dump")
+    indexFile = new File(tempOutputPath, "dump.index")
+  }
+
+  def cleanup() {
+    tempOutputPath.deleteDir()
+  }
+
+  def "events are disabled without recording"() {
+    expect:
+    !FileBufferEvents.BUFFER_READ.enabled
+    null == FileBufferEvents.BUFFER_READ.begin()
+    null == FileBufferEvents.LOCK_WAIT.begin()
+  }
+
+  @Requires({ FileBufferEventsSpec.isFlightRecorderAvailable() })
+  def "events are recorded"() {
+    setup:
+    CodecFileBuffer<String> instance = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    def recording = Class.forName('jdk.jfr.Recording').newInstance()
+    for(String current : EVENT_NAMES) {
+      recording.enable('de.huxhorn.sulky.codec.filebuffer.' + current).withThreshold(Duration.ZERO)
+    }
+    Path recordingFile = new File(tempOutputPath, 'recording.jfr').toPath()
+
+    when:
+    recording.start()
+    instance.add('Foo')
+    instance.addAll(['Bar', 'Foobar'])
+    instance.get(1)
+    instance.getEncoded(0, 3)
+    recording.stop()
+    recording.dump(recordingFile)
+    recording.close()
+    def events = Class.forName('jdk.jfr.consumer.RecordingFile').readAllEvents(recordingFile)
+    Files.delete(recordingFile)
+
+    then:
+    events.collect { it.eventType.name - 'de.huxhorn.sulky.codec.filebuffer.' }.toSet() == EVENT_NAMES.toSet()
+    def appends = events.findAll { it.eventType.name.endsWith('BufferAppend') }
+    appends.collect { it.getLong('index') } == [0L, 1L]
+    appends.collect { it.getLong('count') } == [1L, 2L]
+    appends.every { it.getLong('bytes') > 0 }
+    def lookup = events.find { it.eventType.name.endsWith('IndexLookup') }
+    1L == lookup.getLong('index')
+  }
+}
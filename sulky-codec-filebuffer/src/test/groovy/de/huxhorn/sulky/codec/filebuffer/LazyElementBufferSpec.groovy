@@ -0,0 +1,117 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.HeaderPrefixCodec
+import de.huxhorn.sulky.codec.LazyElement
+import de.huxhorn.sulky.codec.SerializableCodec
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class LazyElementBufferSpec
+  extends Specification {
+
+  File tempOutputPath
+  File dataFile
+  File indexFile
+
+  int magicValue = 0xDEADBEEF
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    dataFile = new File(tempOutputPath, "dump")
+    indexFile = new File(tempOutputPath, "dump.index")
+  }
+
+  def cleanup() {
+    dataFile.delete()
+    indexFile.delete()
+    tempOutputPath.delete()
+  }
+
+  @Unroll
+  def "elements are decoded on demand (sparse=#sparse)"(boolean sparse) {
+    setup:
+    Codec<String> codec = new SerializableCodec<String>()
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile)
+    buffer.addAll(['Foo', 'Bar', 'Foobar'])
+    LazyElementBuffer<String> instance = new LazyElementBuffer<String>(buffer)
+
+    when:
+    LazyElement<String> element = instance.get(1)
+
+    then:
+    3 == instance.getSize()
+    !element.isDecoded()
+    !element.isHeaderAvailable()
+    null == element.getHeader()
+    'Bar' == element.get()
+    element.isDecoded()
+    ['Foo', 'Bar', 'Foobar'] == instance.collect { it.get() }
+
+    where:
+    sparse << [false, true]
+  }
+
+  def "header is decoded without the element"() {
+    setup:
+    Codec<String> codec = new HeaderPrefixCodec<String, Integer>(new SerializableCodec<String>(), new SerializableCodec<Integer>(), { String it -> it.length() })
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    buffer.addAll(['Foo', 'Foobar'])
+    LazyElementBuffer<String> instance = new LazyElementBuffer<String>(buffer)
+
+    when:
+    LazyElement<String> element = instance.get(1)
+
+    then:
+    element.isHeaderAvailable()
+    6 == element.getHeader()
+    !element.isDecoded()
+    'Foobar' == element.get()
+    'Foobar' == buffer.get(1)
+  }
+
+  def "missing elements are null"() {
+    setup:
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, true, null, new SerializableCodec<String>(), dataFile, indexFile)
+    buffer.set(2, 'Foo')
+
+    expect:
+    null == buffer.getLazy(0)
+    'Foo' == buffer.getLazy(2).get()
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ParallelAppenderSpec
+  extends Specification {
+
+  File tempOutputPath
+  File dataFile
+  File indexFile
+
+  int magicValue = 0xDEADBEEF
+
+  Codec<String> codec = new SerializableCodec<String>()
+  ForkJoinPool pool = new ForkJoinPool(4)
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    dataFile = new File(tempOutputPath, "dump")
+    indexFile = new File(tempOutputPath, "dump.index")
+  }
+
+  def cleanup() {
+    pool.shutdown()
+    dataFile.delete()
+    indexFile.delete()
+    tempOutputPath.delete()
+  }
+
+  static List<String> createValues(int start, int count) {
+    List<String> result = []
+    for(int i = start; i < start + count; i++) {
+      result.add('Value ' + i)
+    }
+    return result
+  }
+
+  def "invalid chunkSize"() {
+    setup:
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+
+    when:
+    new ParallelAppender<String>(buffer, pool, 0)
+
+    then:
+    IllegalArgumentException ex = thrown()
+    ex.message == 'chunkSize must be positive but was 0!'
+  }
+
+  @Unroll
+  def "addAll() keeps the order of #count elements (sparse=#sparse)"(boolean sparse, int count) {
+    setup:
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile)
+    buffer.add('First')
+    ParallelAppender<String> instance = new ParallelAppender<String>(buffer, pool, 77)
+
+    when:
+    instance.addAll(createValues(0, count))
+    buffer.add('Last')
+
+    then:
+    count + 2 == buffer.getSize()
+    'First' == buffer.get(0)
+    for(int i = 0; i < count; i++) {
+      assert 'Value ' + i == buffer.get(i + 1)
+    }
+    'Last' == buffer.get(count + 1)
+
+    where:
+    [sparse, count] << [[false, true], [0, 50, 77, 1000]].combinations()
+  }
+
+  def "failing codec doesn't write anything"() {
+    setup:
+    Codec<String> failingCodec = Mock(Codec)
+    failingCodec.encode(_, _) >> { String element, buffer ->
+      if(element == 'Value 500') {
+        return -1
+      }
+      return codec.encode(element, buffer)
+    }
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, false, null, failingCodec, dataFile, indexFile)
+    ParallelAppender<String> instance = new ParallelAppender<String>(buffer, pool, 10)
+
+    when:
+    instance.addAll(createValues(0, 1000))
+
+    then:
+    ExecutionException ex = thrown()
+    ex.cause instanceof IOException
+    ex.cause.message == "Couldn't encode element 500!"
+    0 == buffer.getSize()
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ParallelScannerSpec
+  extends Specification {
+
+  File tempOutputPath
+  File dataFile
+  File indexFile
+
+  int magicValue = 0xDEADBEEF
+
+  Codec<String> codec = new SerializableCodec<String>()
+  ForkJoinPool pool = new ForkJoinPool(4)
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    dataFile = new File(tempOutputPath, "dump")
+    indexFile = new File(tempOutputPath, "dump.index")
+  }
+
+  def cleanup() {
+    pool.shutdown()
+    dataFile.delete()
+    indexFile.delete()
+    tempOutputPath.delete()
+  }
+
+  CodecFileBuffer<String> createBuffer(boolean sparse, int count) {
+    CodecFileBuffer<String> result = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile)
+    List<String> values = []
+    for(int i = 0; i < count; i++) {
+      values.add('Value ' + i)
+    }
+    result.addAll(values)
+    return result
+  }
+
+  @Unroll
+  def "scan() returns chunk results in order (sparse=#sparse)"(boolean sparse) {
+    setup:
+    CodecFileBuffer<String> buffer = createBuffer(sparse, 1000)
+    ParallelScanner<String> instance = new ParallelScanner<String>(buffer, pool, 77)
+
+    when:
+    List<List<String>> result = instance.scan({ long startIndex, List<String> elements -> elements } as ChunkProcessor)
+
+    then:
+    14 == result.size()
+    List<String> flattened = result.flatten()
+    1000 == flattened.size()
+    for(int i = 0; i < 1000; i++) {
+      assert 'Value ' + i == flattened[i]
+    }
+
+    where:
+    sparse << [false, true]
+  }
+
+  def "unordered scan() of a range"() {
+    setup:
+    CodecFileBuffer<String> buffer = createBuffer(false, 1000)
+    ParallelScanner<String> instance = new ParallelScanner<String>(buffer, pool, 10, 3)
+    List<Long> startIndices = []
+
+    when:
+    instance.scan(95, 205, { long startIndex, List<String> elements ->
+      assert 'Value ' + startIndex == elements[0]
+      startIndex
+    } as ChunkProcessor, { startIndices.add(it) }, false)
+
+    then:
+    startIndices.sort() == [95L, 105L, 115L, 125L, 135L, 145L, 155L, 165L, 175L, 185L, 195L]
+  }
+
+  def "sparse elements are null"() {
+    setup:
+    CodecFileBuffer<String> buffer = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile)
+    buffer.set(3, 'Three')
+    buffer.set(1, 'One')
+    ParallelScanner<String> instance = new ParallelScanner<String>(buffer, pool, 2)
+
+    when:
+    List<List<String>> result = instance.scan({ long startIndex, List<String> elements -> elements } as ChunkProcessor)
+
+    then:
+    [[null, 'One'], [null, 'Three']] == result
+  }
+
+  def "failing processor aborts the scan"() {
+    setup:
+    CodecFileBuffer<String> buffer = createBuffer(false, 100)
+    ParallelScanner<String> instance = new ParallelScanner<String>(buffer, pool, 10)
+
+    when:
+    instance.scan({ long startIndex, List<String> elements ->
+      if(startIndex == 50) {
+        throw new IllegalStateException('Fail!')
+      }
+      elements
+    } as ChunkProcessor)
+
+    then:
+    ExecutionException ex = thrown()
+    ex.cause instanceof IllegalStateException
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ReadOnlyExclusiveCodecFileBufferSpec
+  extends Specification {
+
+  File tempOutputPath
+  File dataFile
+  File indexFile
+
+  String[] values = [
+      'Null, sort of nothing',
+      'One',
+      'Two',
+      'Three',
+      'Four',
+      'Five'
+    ]
+
+  int magicValue = 0xDEADBEEF
+
+  Codec<String> codec = new SerializableCodec<String>()
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    dataFile = new File(tempOutputPath, "dump")
+    indexFile = new File(tempOutputPath, "dump.index")
+  }
+
+  def cleanup() {
+    dataFile.delete()
+    indexFile.delete()
+    tempOutputPath.delete()
+  }
+
+  @Unroll
+  def "get() and getSize() (sparse=#sparse, memoryMapped=#memoryMapped)"(boolean sparse, boolean memoryMapped) {
+    setup:
+    CodecFileBuffer<String> writer = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile)
+    writer.addAll(values)
+
+    when:
+    ReadOnlyExclusiveCodecFileBuffer<String> instance = new ReadOnlyExclusiveCodecFileBuffer<String>(dataFile, indexFile, memoryMapped)
+    instance.codec = codec
+
+    then:
+    instance.memoryMapped == memoryMapped
+    values.length == instance.size
+    for(int i = 0; i < values.length; i++) {
+      assert values[i] == instance.get(i)
+    }
+    null == instance.get(-1)
+    null == instance.get(values.length)
+
+    int index = 0
+    for(String value : instance) {
+      assert value == values[index]
+      index++
+    }
+
+    when:
+    instance.close()
+
+    then:
+    0 == instance.size
+    null == instance.get(0)
+
+    where:
+    sparse | memoryMapped
+    false  | false
+    false  | true
+    true   | false
+    true   | true
+  }
+
+  @Unroll
+  def "get() of sparse entries (memoryMapped=#memoryMapped)"(boolean memoryMapped) {
+    setup:
+    CodecFileBuffer<String> writer = new CodecFileBuffer<String>(magicValue, true, null, codec, dataFile, indexFile)
+    writer.set(5, 'Five')
+    writer.set(2, 'Two')
+
+    when:
+    ReadOnlyExclusiveCodecFileBuffer<String> instance = new ReadOnlyExclusiveCodecFileBuffer<String>(dataFile, indexFile, memoryMapped)
+    instance.codec = codec
+
+    then:
+    6 == instance.size
+    null == instance.get(0)
+    'Two' == instance.get(2)
+    'Five' == instance.get(5)
+
+    cleanup:
+    instance.close()
+
+    where:
+    memoryMapped << [false, true]
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.buffers.BlockSummaries
+import de.huxhorn.sulky.buffers.SerializingFileBuffer
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.Decoder
+import de.huxhorn.sulky.codec.SerializableCodec
+import de.huxhorn.sulky.codec.SerializableDecoder
+import de.huxhorn.sulky.tasks.ProgressingCallable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class SerializingFileBufferConverterSpec
+  extends Specification {
+
+  File tempOutputPath
+  File sourceFile
+  File dataFile
+  File indexFile
+
+  int magicValue = 0xDEADBEEF
+
+  Codec<String> codec = new SerializableCodec<String>()
+  Decoder<String> decoder = new SerializableDecoder<String>(true)
+  ForkJoinPool pool = new ForkJoinPool(4)
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    sourceFile = new File(tempOutputPath, "source")
+    dataFile = new File(tempOutputPath, "dump")
+    indexFile = new File(tempOutputPath, "dump.index")
+  }
+
+  def cleanup() {
+    pool.shutdown()
+    tempOutputPath.deleteDir()
+  }
+
+  SerializingFileBuffer<String> createSource(int count) {
+    SerializingFileBuffer<String> result = new SerializingFileBuffer<String>(sourceFile)
+    List<String> values = []
+    for(int i = 0; i < count; i++) {
+      values.add('Value ' + i)
+    }
+    result.addAll(values)
+    return result
+  }
+
+  @Unroll
+  def "call() converts all elements in order (sparse=#sparse)"(boolean sparse) {
+    setup:
+    SerializingFileBuffer<String> source = createSource(1000)
+    CodecFileBuffer<String> target = new CodecFileBuffer<String>(magicValue, sparse, null, codec, dataFile, indexFile)
+    SerializingFileBufferConverter<String> instance = new SerializingFileBufferConverter<String>(source, decoder, target, pool, 77)
+    List<Integer> progress = []
+    instance.addPropertyChangeListener({ progress.add(it.newValue) })
+
+    when:
+    long result = instance.call()
+
+    then:
+    1000L == result
+    1000L == target.size
+    for(int i = 0; i < 1000; i++) {
+      assert 'Value ' + i == target.get(i)
+    }
+    100 == instance.progress
+    progress == progress.sort(false)
+
+    where:
+    sparse << [false, true]
+  }
+
+  def "converted elements are appended and summarized"() {
+    setup:
+    SerializingFileBuffer<String> source = createSource(10)
+    CodecFileBuffer<String> target = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    target.add('First')
+    target.blockSummaries = new BlockSummaries<String, Set<String>>(new CodecFileBufferSpec.FirstCharacterSummarizer(), 4)
+    CodecFileBufferSpec.CapturingStringElementProcessor processor = new CodecFileBufferSpec.CapturingStringElementProcessor()
+    target.elementProcessors = [processor]
+    SerializingFileBufferConverter<String> instance = new SerializingFileBufferConverter<String>(source, decoder, target, pool, 3)
+
+    when:
+    long result = instance.call()
+
+    then:
+    10L == result
+    11L == target.size
+    'First' == target.get(0)
+    'Value 9' == target.get(10)
+    10 == processor.list.size()
+    ['V'] as Set == target.getBlockSummary(1)
+    ['V'] as Set == target.getBlockSummary(2)
+  }
+
+  def "elements that can't be decoded fail the conversion"() {
+    setup:
+    SerializingFileBuffer<String> source = createSource(10)
+    CodecFileBuffer<String> target = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    Decoder<String> failingDecoder = { byte[] bytes ->
+      String value = decoder.decode(bytes)
+      value == 'Value 3' ? null : value
+    } as Decoder<String>
+    SerializingFileBufferConverter<String> instance = new SerializingFileBufferConverter<String>(source, failingDecoder, target, pool, 2)
+
+    when:
+    instance.call()
+
+    then:
+    ExecutionException ex = thrown()
+    ex.cause instanceof IOException
+    ex.cause.message == "Couldn't convert element 3!"
+    2L == target.size
+    'Value 1' == target.get(1)
+  }
+
+  def "failed writes fail the conversion"() {
+    setup:
+    SerializingFileBuffer<String> source = createSource(10)
+    CodecFileBuffer<String> target = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    // the data file can't be opened anymore
+    dataFile.delete()
+    new File(dataFile, 'foo').mkdirs()
+    SerializingFileBufferConverter<String> instance = new SerializingFileBufferConverter<String>(source, decoder, target, pool, 2)
+
+    when:
+    instance.call()
+
+    then:
+    ExecutionException ex = thrown()
+    ex.cause instanceof IOException
+  }
+
+  def "empty source"() {
+    setup:
+    SerializingFileBuffer<String> source = new SerializingFileBuffer<String>(sourceFile)
+    CodecFileBuffer<String> target = new CodecFileBuffer<String>(magicValue, false, null, codec, dataFile, indexFile)
+    ProgressingCallable<Long> instance = new SerializingFileBufferConverter<String>(source, decoder, target)
+
+    expect:
+    0L == instance.call()
+    0L == target.size
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.filebuffer
+
+import de.huxhorn.sulky.codec.Codec
+import de.huxhorn.sulky.codec.SerializableCodec
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ShardedCodecFileBufferSpec
+  extends Specification {
+
+  File tempOutputPath
+  File dataFile
+
+  int magicValue = 0xDEADBEEF
+
+  Codec<String> codec = new SerializableCodec<String>()
+
+  def setup() {
+    tempOutputPath = File.createTempFile("sfb-testing", "rulez")
+    tempOutputPath.delete()
+    tempOutputPath.mkdirs()
+    dataFile = new File(tempOutputPath, "dump.data")
+  }
+
+  def cleanup() {
+    tempOutputPath.listFiles().each { it.delete() }
+    tempOutputPath.delete()
+  }
+
+  static ShardSelector<String> keySelector() {
+    return { String element, int shardCount -> Math.floorMod(element.split(':')[0].hashCode(), shardCount) } as ShardSelector<String>
+  }
+
+  @Unroll
+  def "add() and addAll(), then get() and Iterable. (keyed=#keyed)"(boolean keyed) {
+    setup:
+    ShardedCodecFileBuffer<String> instance = ShardedCodecFileBuffer.create(magicValue, null, codec, dataFile, 3, keyed ? keySelector() : null)
+
+    when:
+    instance.add('a:0')
+    instance.addAll(['b:0', 'a:1', 'c:0'])
+    instance.add('b:1')
+
+    then:
+    new File(tempOutputPath, 'dump.order').isFile()
+    new File(tempOutputPath, 'dump-2.data').isFile()
+    new File(tempOutputPath, 'dump-2.index').isFile()
+    5 == instance.size
+    'a:0' == instance.get(0)
+    'b:1' == instance.get(4)
+    null == instance.get(5)
+    null == instance.get(-1)
+    ['a:0', 'b:0', 'a:1', 'c:0', 'b:1'] == instance.collect()
+
+    cleanup:
+    instance.dispose()
+
+    where:
+    keyed << [false, true]
+  }
+
+  @Unroll
+  def "concurrent appends keep the order of each writer. (keyed=#keyed)"(boolean keyed) {
+    setup:
+    ShardedCodecFileBuffer<String> instance = ShardedCodecFileBuffer.create(magicValue, null, codec, dataFile, 4, keyed ? keySelector() : null)
+    int threadCount = 8
+    int elementCount = 100
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount)
+
+    when:
+    List<Future> futures = []
+    for(int t = 0; t < threadCount; t++) {
+      int thread = t
+      futures.add(executor.submit({
+        for(int i = 0; i < elementCount; i++) {
+          instance.add(thread + ':' + i)
+        }
+      } as Runnable))
+    }
+    futures.each { it.get() }
+    executor.shutdown()
+    Map<String, List<Integer>> valuesByThread = instance.collect().groupBy { it.split(':')[0] }.collectEntries { key, value -> [key, value.collect { Integer.parseInt(it.split(':')[1]) }] }
+
+    then:
+    threadCount * elementCount == instance.size
+    threadCount == valuesByThread.size()
+    valuesByThread.values().every { it == (0..<elementCount).toList() }
+
+    cleanup:
+    instance.dispose()
+
+    where:
+    keyed << [false, true]
+  }
+
+  def "a failing shard hides all elements of the addAll call"() {
+    setup:
+    ShardedCodecFileBuffer<String> instance = ShardedCodecFileBuffer.create(magicValue, null, codec, dataFile, 3, keySelector())
+    instance.add('c:0')
+    // 'b' is routed to shard 2
+    File failingDataFile = new File(tempOutputPath, 'dump-2.data')
+    failingDataFile.delete()
+    failingDataFile.mkdirs()
+
+    when:
+    instance.addAll(['a:0', 'b:0', 'c:1'])
+
+    then:
+    4 == instance.size
+    ['c:0', null, null, null] == instance.collect()
+
+    cleanup:
+    instance.dispose()
+  }
+
+  def "reopen, then add and reset"() {
+    setup:
+    ShardedCodecFileBuffer<String> instance = ShardedCodecFileBuffer.create(magicValue, null, codec, dataFile, 2, null)
+    instance.addAll(['Foo', 'Bar', 'Baz'])
+    instance.dispose()
+
+    when:
+    ShardedCodecFileBuffer<String> otherInstance = ShardedCodecFileBuffer.create(magicValue, null, codec, dataFile, 2, null)
+    otherInstance.add('Foobar')
+
+    then:
+    instance.disposed
+    4 == otherInstance.size
+    ['Foo', 'Bar', 'Baz', 'Foobar'] == otherInstance.collect()
+
+    when:
+    otherInstance.reset()
+
+    then:
+    0 == otherInstance.size
+    null == otherInstance.get(0)
+
+    cleanup:
+    otherInstance.dispose()
+  }
+
+  def "invalid shard count"() {
+    when:
+    ShardedCodecFileBuffer.create(magicValue, null, codec, dataFile, 0, null)
+
+    then:
+    thrown(IllegalArgumentException)
+  }
+}
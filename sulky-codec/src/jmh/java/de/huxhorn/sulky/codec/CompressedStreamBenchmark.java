@@ -0,0 +1,165 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import de.huxhorn.sulky.codec.streaming.CompressedStreamReader;
+import de.huxhorn.sulky.codec.streaming.CompressedStreamWriter;
+import de.huxhorn.sulky.codec.streaming.StreamingSerializableCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures writing and reading elements of a single compressed stream as used for socket transport.
+ *
+ * Every element is sync flushed. The reader is recreated once all prepared elements have been read.
+ */
+@State(Scope.Benchmark)
+public class CompressedStreamBenchmark
+{
+	private static final int PREPARED_ELEMENTS = 1000;
+
+	@Param
+	private Payload payload;
+
+	private Serializable element;
+	private CompressedStreamWriter<Serializable> writer;
+	private byte[] prepared;
+	private CompressedStreamReader<Serializable> reader;
+	private int remaining;
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws IOException
+	{
+		element = (Serializable) payload.create();
+		writer = new CompressedStreamWriter<>(new StreamingSerializableCodec<>(), new DiscardingOutputStream());
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(CompressedStreamWriter<Serializable> preparing = new CompressedStreamWriter<>(new StreamingSerializableCodec<>(), bos))
+		{
+			for(int i = 0; i < PREPARED_ELEMENTS; i++)
+			{
+				preparing.write(element);
+			}
+		}
+		prepared = bos.toByteArray();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+		throws IOException
+	{
+		writer.close();
+		if(reader != null)
+		{
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void write()
+		throws IOException
+	{
+		writer.write(element);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Object read()
+		throws IOException
+	{
+		if(remaining == 0)
+		{
+			if(reader != null)
+			{
+				reader.close();
+			}
+			reader = new CompressedStreamReader<>(new StreamingSerializableCodec<>(), new ByteArrayInputStream(prepared));
+			remaining = PREPARED_ELEMENTS;
+		}
+		remaining--;
+		return reader.read();
+	}
+
+	private static class DiscardingOutputStream
+		extends OutputStream
+	{
+		@Override
+		public void write(int b)
+		{
+			// discard
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length)
+		{
+			// discard
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		Options opt = new OptionsBuilder()
+				.include(CompressedStreamBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.warmupIterations(5)
+				.measurementIterations(5)
+				.forks(1)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import de.huxhorn.sulky.codec.streaming.CompressedStreamWriter;
+import de.huxhorn.sulky.codec.streaming.StreamingSerializableCodec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Prints the encoded size of every payload shape for all codecs of the benchmarks.
+ *
+ * JMH measures time and allocations but not the size of the output, so this complements the results
+ * of CodecBenchmark, StreamingCodecBenchmark and CompressedStreamBenchmark.
+ */
+public final class EncodedSizes
+{
+	private static final int SHARED_STREAM_ELEMENTS = 100;
+
+	private EncodedSizes()
+	{}
+
+	public static void main(String[] args)
+		throws IOException
+	{
+		System.out.printf("%-20s %-30s %10s%n", "Payload", "Codec", "Bytes"); // NOPMD
+		for(Payload payload : Payload.values())
+		{
+			Object element = payload.create();
+			for(CodecType codecType : CodecType.values())
+			{
+				print(payload, codecType.name(), codecType.createCodec().encode(element).length);
+			}
+			for(StreamingCodecBenchmark.StreamingType streamingType : StreamingCodecBenchmark.StreamingType.values())
+			{
+				ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				streamingType.createEncoder().encode((Serializable) element, bos);
+				print(payload, "STREAMING_" + streamingType.name(), bos.size());
+			}
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			try(CompressedStreamWriter<Serializable> writer = new CompressedStreamWriter<>(new StreamingSerializableCodec<>(), bos))
+			{
+				for(int i = 0; i < SHARED_STREAM_ELEMENTS; i++)
+				{
+					writer.write((Serializable) element);
+				}
+			}
+			print(payload, "COMPRESSED_STREAM (average)", bos.size() / SHARED_STREAM_ELEMENTS);
+		}
+	}
+
+	private static void print(Payload payload, String codec, int size)
+	{
+		System.out.printf("%-20s %-30s %10d%n", payload, codec, size); // NOPMD
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Representative payload shapes used by the codec benchmarks.
+ *
+ * The payloads are created using a fixed seed so every codec encodes the same data. The beans are
+ * public and follow bean conventions so all codecs, including the XML ones, can handle them.
+ */
+public enum Payload
+{
+	/**
+	 * A single bean containing a few primitive and short String properties.
+	 */
+	SMALL_BEAN
+		{
+			@Override
+			Object create()
+			{
+				return createSmallBean(new Random(17), 0);
+			}
+		},
+	/**
+	 * A list of 1000 small beans.
+	 */
+	LARGE_COLLECTION
+		{
+			@Override
+			Object create()
+			{
+				Random random = new Random(17);
+				ArrayList<SmallBean> result = new ArrayList<>(1000);
+				for(int i = 0; i < 1000; i++)
+				{
+					result.add(createSmallBean(random, i));
+				}
+				return result;
+			}
+		},
+	/**
+	 * A bean dominated by long, log-like Strings.
+	 */
+	STRING_HEAVY
+		{
+			@Override
+			Object create()
+			{
+				Random random = new Random(17);
+				StringHeavyBean result = new StringHeavyBean();
+				StringBuilder message = new StringBuilder();
+				for(int i = 0; i < 20; i++)
+				{
+					message.append("Processing request ").append(random.nextInt(100_000)).append(" for user '")
+							.append(USERS[random.nextInt(USERS.length)]).append("' took ").append(random.nextInt(1000)).append("ms. ");
+				}
+				result.setMessage(message.toString());
+				String[] lines = new String[30];
+				for(int i = 0; i < lines.length; i++)
+				{
+					lines[i] = "at de.huxhorn.sulky.example.Service" + random.nextInt(10) + ".handle" + random.nextInt(100)
+							+ "(Service" + i + ".java:" + random.nextInt(2000) + ")";
+				}
+				result.setLines(lines);
+				HashMap<String, String> properties = new HashMap<>();
+				for(int i = 0; i < 10; i++)
+				{
+					properties.put("key" + i, USERS[random.nextInt(USERS.length)] + "@" + Long.toHexString(random.nextLong()));
+				}
+				result.setProperties(properties);
+				return result;
+			}
+		};
+
+	private static final String[] USERS = {"alice", "bob", "carol", "dave", "eve"};
+
+	/**
+	 * @return a new instance of the payload. Equal calls return equal payloads.
+	 */
+	abstract Object create();
+
+	private static SmallBean createSmallBean(Random random, int index)
+	{
+		SmallBean result = new SmallBean();
+		result.setName("Bean " + index);
+		result.setCategory(USERS[random.nextInt(USERS.length)]);
+		result.setCount(random.nextInt(1000));
+		result.setTimestamp(1_500_000_000_000L + random.nextInt(1_000_000));
+		result.setRatio(random.nextDouble());
+		result.setFlag(random.nextBoolean());
+		return result;
+	}
+
+	public static class SmallBean
+		implements Serializable
+	{
+		private static final long serialVersionUID = 4385398532867306171L;
+
+		private String name;
+		private String category;
+		private int count;
+		private long timestamp;
+		private double ratio;
+		private boolean flag;
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public void setName(String name)
+		{
+			this.name = name;
+		}
+
+		public String getCategory()
+		{
+			return category;
+		}
+
+		public void setCategory(String category)
+		{
+			this.category = category;
+		}
+
+		public int getCount()
+		{
+			return count;
+		}
+
+		public void setCount(int count)
+		{
+			this.count = count;
+		}
+
+		public long getTimestamp()
+		{
+			return timestamp;
+		}
+
+		public void setTimestamp(long timestamp)
+		{
+			this.timestamp = timestamp;
+		}
+
+		public double getRatio()
+		{
+			return ratio;
+		}
+
+		public void setRatio(double ratio)
+		{
+			this.ratio = ratio;
+		}
+
+		public boolean isFlag()
+		{
+			return flag;
+		}
+
+		public void setFlag(boolean flag)
+		{
+			this.flag = flag;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this == o) return true;
+			if(o == null || getClass() != o.getClass()) return false;
+			SmallBean that = (SmallBean) o;
+			return count == that.count
+					&& timestamp == that.timestamp
+					&& Double.compare(that.ratio, ratio) == 0
+					&& flag == that.flag
+					&& Objects.equals(name, that.name)
+					&& Objects.equals(category, that.category);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(name, count, timestamp);
+		}
+	}
+
+	public static class StringHeavyBean
+		implements Serializable
+	{
+		private static final long serialVersionUID = -2171379418232000123L;
+
+		private String message;
+		private String[] lines;
+		private HashMap<String, String> properties;
+
+		public String getMessage()
+		{
+			return message;
+		}
+
+		public void setMessage(String message)
+		{
+			this.message = message;
+		}
+
+		public String[] getLines()
+		{
+			return lines;
+		}
+
+		public void setLines(String[] lines)
+		{
+			this.lines = lines;
+		}
+
+		public HashMap<String, String> getProperties()
+		{
+			return properties;
+		}
+
+		public void setProperties(HashMap<String, String> properties)
+		{
+			this.properties = properties;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this == o) return true;
+			if(o == null || getClass() != o.getClass()) return false;
+			StringHeavyBean that = (StringHeavyBean) o;
+			return Objects.equals(message, that.message)
+					&& Arrays.equals(lines, that.lines)
+					&& Objects.equals(properties, that.properties);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hashCode(message);
+		}
+	}
+}
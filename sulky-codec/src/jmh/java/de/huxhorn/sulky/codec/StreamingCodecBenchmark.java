@@ -0,0 +1,153 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import de.huxhorn.sulky.codec.streaming.GZIPStreamingDecoderWrapper;
+import de.huxhorn.sulky.codec.streaming.GZIPStreamingEncoderWrapper;
+import de.huxhorn.sulky.codec.streaming.StreamingDecoder;
+import de.huxhorn.sulky.codec.streaming.StreamingEncoder;
+import de.huxhorn.sulky.codec.streaming.StreamingSerializableCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures encode and decode throughput of the streaming codecs for every payload shape.
+ *
+ * Every element is written to and read from a separate stream. See CompressedStreamBenchmark for
+ * a single stream containing all elements.
+ */
+@State(Scope.Benchmark)
+public class StreamingCodecBenchmark
+{
+	public enum StreamingType
+	{
+		SERIALIZABLE,
+		GZIP_SERIALIZABLE;
+
+		StreamingEncoder<Serializable> createEncoder()
+		{
+			StreamingSerializableCodec<Serializable> codec = new StreamingSerializableCodec<>();
+			if(this == GZIP_SERIALIZABLE)
+			{
+				return new GZIPStreamingEncoderWrapper<>(codec);
+			}
+			return codec;
+		}
+
+		StreamingDecoder<Serializable> createDecoder()
+		{
+			StreamingSerializableCodec<Serializable> codec = new StreamingSerializableCodec<>();
+			if(this == GZIP_SERIALIZABLE)
+			{
+				return new GZIPStreamingDecoderWrapper<>(codec);
+			}
+			return codec;
+		}
+	}
+
+	@Param
+	private Payload payload;
+
+	@Param
+	private StreamingType streamingType;
+
+	private StreamingEncoder<Serializable> encoder;
+	private StreamingDecoder<Serializable> decoder;
+	private Serializable element;
+	private byte[] encoded;
+	private ByteArrayOutputStream output;
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws IOException
+	{
+		encoder = streamingType.createEncoder();
+		decoder = streamingType.createDecoder();
+		element = (Serializable) payload.create();
+		output = new ByteArrayOutputStream();
+		encoder.encode(element, output);
+		encoded = output.toByteArray();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public int encode()
+		throws IOException
+	{
+		output.reset();
+		encoder.encode(element, output);
+		return output.size();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Object decode()
+		throws IOException
+	{
+		return decoder.decode(new ByteArrayInputStream(encoded));
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		Options opt = new OptionsBuilder()
+				.include(StreamingCodecBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.warmupIterations(5)
+				.measurementIterations(5)
+				.forks(1)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
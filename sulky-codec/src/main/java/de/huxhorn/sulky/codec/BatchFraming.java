@@ -0,0 +1,122 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Default batch format used by Encoder.encodeAll and Decoder.decodeAll.
+ *
+ * The batch starts with the number of elements followed by the length and bytes of every element,
+ * all int values in big endian. A length of -1 marks an element that couldn't be encoded.
+ */
+final class BatchFraming
+{
+	private BatchFraming()
+	{
+	}
+
+	static <E> byte[] encode(Encoder<E> encoder, List<E> objects)
+	{
+		if(objects == null)
+		{
+			return null;
+		}
+		EncodingBuffer buffer = EncodingBuffer.acquire();
+		try
+		{
+			buffer.putInt(buffer.reserveInt(), objects.size());
+			for(E object : objects)
+			{
+				int lengthPosition = buffer.reserveInt();
+				int length = encoder.encode(object, buffer);
+				buffer.putInt(lengthPosition, length);
+			}
+			return buffer.toByteArray();
+		}
+		finally
+		{
+			buffer.release();
+		}
+	}
+
+	static <E> List<E> decode(Decoder<E> decoder, byte[] bytes)
+	{
+		if(bytes == null || bytes.length < 4)
+		{
+			return null;
+		}
+		int count = readInt(bytes, 0);
+		// every element needs at least four bytes
+		if(count < 0 || count > (bytes.length - 4) / 4)
+		{
+			return null;
+		}
+		List<E> result = new ArrayList<>(count);
+		int offset = 4;
+		for(int i = 0; i < count; i++)
+		{
+			if(offset + 4 > bytes.length)
+			{
+				return null;
+			}
+			int length = readInt(bytes, offset);
+			offset += 4;
+			if(length < 0)
+			{
+				result.add(null);
+				continue;
+			}
+			if(length > bytes.length - offset)
+			{
+				return null;
+			}
+			byte[] element = new byte[length];
+			System.arraycopy(bytes, offset, element, 0, length);
+			offset += length;
+			result.add(decoder.decode(element));
+		}
+		return result;
+	}
+
+	private static int readInt(byte[] bytes, int offset)
+	{
+		return ((bytes[offset] & 0xFF) << 24)
+			| ((bytes[offset + 1] & 0xFF) << 16)
+			| ((bytes[offset + 2] & 0xFF) << 8)
+			| (bytes[offset + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Table of serialization class descriptors shared by all records encoded by a SharedClassDescriptorCodec.
+ *
+ * Every descriptor is stored once and referenced by its id afterwards. The table is either kept
+ * in memory or persisted in a file next to the buffer. A persisted table is append-only. Every new
+ * descriptor is written to the file before the record referencing it is returned by the codec.
+ * Descriptors added by other instances using the same file are loaded as soon as an unknown id is read.
+ *
+ * The file contains the descriptors as written by ObjectOutputStream.writeClassDescriptor, each prefixed by its length.
+ */
+public final class ClassDescriptorTable
+{
+	public static final String FILE_EXTENSION = ".classes";
+
+	private final File file;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Map<ObjectStreamClass, Integer> ids = new ConcurrentHashMap<>();
+	private final Map<String, Integer> idsByContent = new ConcurrentHashMap<>();
+	private volatile ObjectStreamClass[] descriptors = new ObjectStreamClass[0];
+	private long fileLength;
+
+	/**
+	 * Creates a table that is only kept in memory.
+	 */
+	public ClassDescriptorTable()
+	{
+		this.file = null;
+	}
+
+	/**
+	 * Creates a table persisted in the given file. Existing descriptors are loaded lazily.
+	 *
+	 * @param file the file containing the table.
+	 */
+	public ClassDescriptorTable(File file)
+	{
+		this.file = Objects.requireNonNull(file, "file must not be null!");
+	}
+
+	/**
+	 * @param dataFile the data file of a buffer.
+	 * @return a table persisted next to the data file.
+	 */
+	public static ClassDescriptorTable forDataFile(File dataFile)
+	{
+		return new ClassDescriptorTable(new File(dataFile.getParentFile(), dataFile.getName() + FILE_EXTENSION));
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	public int size()
+		throws IOException
+	{
+		lock.lock();
+		try
+		{
+			load();
+			return descriptors.length;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the id of the descriptor, adding the descriptor if it isn't contained, yet.
+	 *
+	 * @param descriptor the descriptor.
+	 * @return the id of the descriptor.
+	 * @throws IOException if the descriptor couldn't be persisted.
+	 */
+	int getId(ObjectStreamClass descriptor)
+		throws IOException
+	{
+		Integer result = ids.get(descriptor);
+		if(result != null)
+		{
+			return result;
+		}
+		byte[] bytes = DescriptorOutputStream.writeDescriptor(descriptor);
+		String key = toKey(bytes);
+		lock.lock();
+		try
+		{
+			load();
+			result = idsByContent.get(key);
+			if(result == null)
+			{
+				result = descriptors.length;
+				if(file != null)
+				{
+					append(bytes);
+				}
+				add(DescriptorInputStream.readDescriptor(bytes), key);
+			}
+			ids.put(descriptor, result);
+			return result;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param id the id of the descriptor.
+	 * @return the descriptor.
+	 * @throws IOException if the id is unknown or the table couldn't be read.
+	 */
+	ObjectStreamClass getDescriptor(int id)
+		throws IOException
+	{
+		ObjectStreamClass[] current = descriptors;
+		if(id >= 0 && id < current.length)
+		{
+			return current[id];
+		}
+		lock.lock();
+		try
+		{
+			load();
+			current = descriptors;
+			if(id >= 0 && id < current.length)
+			{
+				return current[id];
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		throw new IOException("Unknown class descriptor " + id + "!");
+	}
+
+	/**
+	 * Reads descriptors that have been appended since the last call. Must be called while locked.
+	 */
+	private void load()
+		throws IOException
+	{
+		if(file == null || !file.isFile() || file.length() <= fileLength)
+		{
+			return;
+		}
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"))
+		{
+			long length = raf.length();
+			raf.seek(fileLength);
+			while(fileLength + 4 <= length)
+			{
+				int entryLength = raf.readInt();
+				if(entryLength < 0 || fileLength + 4 + entryLength > length)
+				{
+					// incomplete entry that is still being written
+					break;
+				}
+				byte[] bytes = new byte[entryLength];
+				raf.readFully(bytes);
+				add(DescriptorInputStream.readDescriptor(bytes), toKey(bytes));
+				fileLength += 4 + entryLength;
+			}
+		}
+	}
+
+	private void append(byte[] bytes)
+		throws IOException
+	{
+		File parent = file.getParentFile();
+		if(parent != null && !parent.isDirectory() && !parent.mkdirs())
+		{
+			throw new IOException("Couldn't create directory " + parent.getAbsolutePath() + "!");
+		}
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			if(raf.length() != fileLength)
+			{
+				throw new IOException("Class descriptor file " + file.getAbsolutePath() + " has been changed concurrently!");
+			}
+			byte[] entry = new byte[4 + bytes.length];
+			entry[0] = (byte) (bytes.length >>> 24);
+			entry[1] = (byte) (bytes.length >>> 16);
+			entry[2] = (byte) (bytes.length >>> 8);
+			entry[3] = (byte) bytes.length;
+			System.arraycopy(bytes, 0, entry, 4, bytes.length);
+			raf.seek(fileLength);
+			raf.write(entry);
+			fileLength += entry.length;
+		}
+	}
+
+	private void add(ObjectStreamClass descriptor, String key)
+	{
+		ObjectStreamClass[] current = descriptors;
+		ObjectStreamClass[] newDescriptors = Arrays.copyOf(current, current.length + 1);
+		newDescriptors[current.length] = descriptor;
+		idsByContent.putIfAbsent(key, current.length);
+		descriptors = newDescriptors;
+	}
+
+	private static String toKey(byte[] bytes)
+	{
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ClassDescriptorTable[file=" + file + ", size=" + descriptors.length + "]";
+	}
+
+	/**
+	 * Writes a single class descriptor without stream header.
+	 */
+	private static class DescriptorOutputStream
+		extends ObjectOutputStream
+	{
+		DescriptorOutputStream(OutputStream out)
+			throws IOException
+		{
+			super(out);
+		}
+
+		static byte[] writeDescriptor(ObjectStreamClass descriptor)
+			throws IOException
+		{
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			try(DescriptorOutputStream out = new DescriptorOutputStream(bos))
+			{
+				out.writeClassDescriptor(descriptor);
+			}
+			return bos.toByteArray();
+		}
+
+		@Override
+		protected void writeStreamHeader()
+		{
+			// no header
+		}
+	}
+
+	/**
+	 * Reads a single class descriptor written by DescriptorOutputStream without resolving the class.
+	 */
+	private static class DescriptorInputStream
+		extends ObjectInputStream
+	{
+		DescriptorInputStream(InputStream in)
+			throws IOException
+		{
+			super(in);
+		}
+
+		static ObjectStreamClass readDescriptor(byte[] bytes)
+			throws IOException
+		{
+			try(DescriptorInputStream in = new DescriptorInputStream(new ByteArrayInputStream(bytes)))
+			{
+				return in.readClassDescriptor();
+			}
+			catch(ClassNotFoundException ex)
+			{
+				throw new IOException("Couldn't read class descriptor!", ex);
+			}
+		}
+
+		@Override
+		protected void readStreamHeader()
+		{
+			// no header
+		}
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Statistics recorded by the instrumented codec wrappers.
+ *
+ * Latencies are recorded in nanoseconds. The compression ratio is recorded by instrumented
+ * encoders wrapping a CompressionReporter.
+ *
+ * Use registerMBean to expose the statistics via JMX or read the histograms directly to feed
+ * another metrics system.
+ */
+public final class CodecStatistics
+	implements CodecStatisticsMBean
+{
+	public static final String OBJECT_NAME_PREFIX = "de.huxhorn.sulky.codec:type=CodecStatistics,name=";
+
+	private final String name;
+	private final Histogram encodeLatency = new Histogram();
+	private final Histogram encodedSize = new Histogram();
+	private final Histogram decodeLatency = new Histogram();
+	private final Histogram decodedSize = new Histogram();
+	private final AtomicLong encodeFailures = new AtomicLong();
+	private final AtomicLong decodeFailures = new AtomicLong();
+	private final AtomicLong uncompressedBytes = new AtomicLong();
+	private final AtomicLong compressedBytes = new AtomicLong();
+
+	public CodecStatistics(String name)
+	{
+		this.name = Objects.requireNonNull(name, "name must not be null!");
+	}
+
+	@Override
+	public String getName()
+	{
+		return name;
+	}
+
+	public Histogram getEncodeLatency()
+	{
+		return encodeLatency;
+	}
+
+	/**
+	 * @return the histogram of the sizes of successfully encoded objects.
+	 */
+	public Histogram getEncodedSize()
+	{
+		return encodedSize;
+	}
+
+	public Histogram getDecodeLatency()
+	{
+		return decodeLatency;
+	}
+
+	/**
+	 * @return the histogram of the sizes of the decoded input.
+	 */
+	public Histogram getDecodedSize()
+	{
+		return decodedSize;
+	}
+
+	public void recordEncode(long nanos, long size)
+	{
+		encodeLatency.record(nanos);
+		encodedSize.record(size);
+	}
+
+	public void recordEncodeFailure(long nanos)
+	{
+		encodeLatency.record(nanos);
+		encodeFailures.incrementAndGet();
+	}
+
+	public void recordDecode(long nanos, long size)
+	{
+		decodeLatency.record(nanos);
+		decodedSize.record(size);
+	}
+
+	public void recordDecodeFailure(long nanos, long size)
+	{
+		decodeLatency.record(nanos);
+		decodedSize.record(size);
+		decodeFailures.incrementAndGet();
+	}
+
+	/**
+	 * @param uncompressed the size before compression.
+	 * @param compressed the size after compression.
+	 */
+	public void recordCompression(long uncompressed, long compressed)
+	{
+		uncompressedBytes.addAndGet(uncompressed);
+		compressedBytes.addAndGet(compressed);
+	}
+
+	@Override
+	public long getEncodeCount()
+	{
+		return encodeLatency.getCount();
+	}
+
+	@Override
+	public long getEncodeFailureCount()
+	{
+		return encodeFailures.get();
+	}
+
+	@Override
+	public double getEncodeLatencyMean()
+	{
+		return encodeLatency.getMean() / 1000;
+	}
+
+	@Override
+	public long getEncodeLatency50thPercentile()
+	{
+		return toMicros(encodeLatency.getPercentile(50));
+	}
+
+	@Override
+	public long getEncodeLatency99thPercentile()
+	{
+		return toMicros(encodeLatency.getPercentile(99));
+	}
+
+	@Override
+	public long getEncodeLatencyMax()
+	{
+		return toMicros(encodeLatency.getMax());
+	}
+
+	@Override
+	public double getEncodedSizeMean()
+	{
+		return encodedSize.getMean();
+	}
+
+	@Override
+	public long getEncodedSize50thPercentile()
+	{
+		return encodedSize.getPercentile(50);
+	}
+
+	@Override
+	public long getEncodedSize99thPercentile()
+	{
+		return encodedSize.getPercentile(99);
+	}
+
+	@Override
+	public long getEncodedSizeMax()
+	{
+		return encodedSize.getMax();
+	}
+
+	@Override
+	public long getDecodeCount()
+	{
+		return decodeLatency.getCount();
+	}
+
+	@Override
+	public long getDecodeFailureCount()
+	{
+		return decodeFailures.get();
+	}
+
+	@Override
+	public double getDecodeLatencyMean()
+	{
+		return decodeLatency.getMean() / 1000;
+	}
+
+	@Override
+	public long getDecodeLatency50thPercentile()
+	{
+		return toMicros(decodeLatency.getPercentile(50));
+	}
+
+	@Override
+	public long getDecodeLatency99thPercentile()
+	{
+		return toMicros(decodeLatency.getPercentile(99));
+	}
+
+	@Override
+	public long getDecodeLatencyMax()
+	{
+		return toMicros(decodeLatency.getMax());
+	}
+
+	/**
+	 * @return compressed bytes divided by uncompressed bytes, NaN if nothing has been compressed.
+	 */
+	@Override
+	public double getCompressionRatio()
+	{
+		long uncompressed = uncompressedBytes.get();
+		if(uncompressed == 0)
+		{
+			return Double.NaN;
+		}
+		return (double) compressedBytes.get() / uncompressed;
+	}
+
+	@Override
+	public void reset()
+	{
+		encodeLatency.reset();
+		encodedSize.reset();
+		decodeLatency.reset();
+		decodedSize.reset();
+		encodeFailures.set(0);
+		decodeFailures.set(0);
+		uncompressedBytes.set(0);
+		compressedBytes.set(0);
+	}
+
+	public ObjectName getObjectName()
+		throws JMException
+	{
+		return new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+	}
+
+	/**
+	 * Registers this instance at the platform MBeanServer.
+	 *
+	 * @throws JMException if registration failed, e.g. because the name is already in use.
+	 */
+	public void registerMBean()
+		throws JMException
+	{
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, getObjectName());
+	}
+
+	public void unregisterMBean()
+		throws JMException
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = getObjectName();
+		if(server.isRegistered(objectName))
+		{
+			server.unregisterMBean(objectName);
+		}
+	}
+
+	private static long toMicros(long nanos)
+	{
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CodecStatistics[name=" + name + ", encodeLatency=" + encodeLatency + ", encodedSize=" + encodedSize
+			+ ", encodeFailures=" + encodeFailures + ", decodeLatency=" + decodeLatency + ", decodedSize=" + decodedSize
+			+ ", decodeFailures=" + decodeFailures + ", compressionRatio=" + getCompressionRatio() + "]";
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.zip.Deflater;
+
+/**
+ * Describes how encoded data is compressed.
+ *
+ * GZIP framing is compatible with GZIPOutputStream and GZIPInputStream. DEFLATE framing omits
+ * the GZIP header and trailer, saving 18 bytes and a checksum calculation per element.
+ *
+ * The streams created by this class use Deflater, Inflater and buffer instances of the CompressionPool.
+ * They are returned to the pool when the stream is closed.
+ */
+public final class Compression
+{
+	public enum Framing
+	{
+		GZIP,
+		DEFLATE
+	}
+
+	/**
+	 * The buffer size of the streams, suitable for small elements.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 512;
+
+	public static final Compression GZIP = new Compression(Framing.GZIP, Deflater.DEFAULT_COMPRESSION);
+	public static final Compression DEFLATE = new Compression(Framing.DEFLATE, Deflater.DEFAULT_COMPRESSION);
+
+	private final Framing framing;
+	private final int level;
+
+	/**
+	 * @param framing the framing of the compressed data.
+	 * @param level the compression level, i.e. Deflater.DEFAULT_COMPRESSION or a value in the range [0..9].
+	 */
+	public Compression(Framing framing, int level)
+	{
+		this.framing = Objects.requireNonNull(framing, "framing must not be null!");
+		if(level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+		{
+			throw new IllegalArgumentException("Invalid compression level " + level + "!");
+		}
+		this.level = level;
+	}
+
+	public Framing getFraming()
+	{
+		return framing;
+	}
+
+	public int getLevel()
+	{
+		return level;
+	}
+
+	/**
+	 * Closing the returned stream also closes the given stream.
+	 *
+	 * @param out the stream receiving the compressed data.
+	 * @return a stream compressing everything written into it.
+	 * @throws IOException if the header couldn't be written.
+	 */
+	public OutputStream compress(OutputStream out)
+		throws IOException
+	{
+		return compress(out, DEFAULT_BUFFER_SIZE, false, null);
+	}
+
+	/**
+	 * Closing the returned stream also closes the given stream.
+	 *
+	 * @param out the stream receiving the compressed data.
+	 * @param listener notified once the stream has been finished, may be null.
+	 * @return a stream compressing everything written into it.
+	 * @throws IOException if the header couldn't be written.
+	 */
+	public OutputStream compress(OutputStream out, CompressionListener listener)
+		throws IOException
+	{
+		return compress(out, DEFAULT_BUFFER_SIZE, false, listener);
+	}
+
+	/**
+	 * Closing the returned stream also closes the given stream.
+	 *
+	 * @param out the stream receiving the compressed data.
+	 * @param bufferSize the size of the output buffer. Larger buffers reduce the number of writes.
+	 * Sync flushing streams use at least 64 bytes.
+	 * @param syncFlush if true, flush() flushes all pending data so it can be decompressed immediately.
+	 * @return a stream compressing everything written into it.
+	 * @throws IOException if the header couldn't be written.
+	 */
+	public OutputStream compress(OutputStream out, int bufferSize, boolean syncFlush)
+		throws IOException
+	{
+		return compress(out, bufferSize, syncFlush, null);
+	}
+
+	/**
+	 * Closing the returned stream also closes the given stream.
+	 *
+	 * @param out the stream receiving the compressed data.
+	 * @param bufferSize the size of the output buffer. Larger buffers reduce the number of writes.
+	 * Sync flushing streams use at least 64 bytes.
+	 * @param syncFlush if true, flush() flushes all pending data so it can be decompressed immediately.
+	 * @param listener notified once the stream has been finished, may be null.
+	 * @return a stream compressing everything written into it.
+	 * @throws IOException if the header couldn't be written.
+	 */
+	public OutputStream compress(OutputStream out, int bufferSize, boolean syncFlush, CompressionListener listener)
+		throws IOException
+	{
+		checkBufferSize(bufferSize);
+		return new PooledDeflaterOutputStream(out, level, framing == Framing.GZIP, bufferSize, syncFlush, listener);
+	}
+
+	/**
+	 * Closing the returned stream also closes the given stream.
+	 *
+	 * @param in the stream containing the compressed data.
+	 * @return a stream returning the decompressed data.
+	 * @throws IOException if the header couldn't be read.
+	 */
+	public InputStream decompress(InputStream in)
+		throws IOException
+	{
+		return decompress(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Closing the returned stream also closes the given stream.
+	 *
+	 * The given stream is read in chunks of bufferSize bytes so data following the compressed data
+	 * may be consumed.
+	 *
+	 * @param in the stream containing the compressed data.
+	 * @param bufferSize the size of the input buffer.
+	 * @return a stream returning the decompressed data.
+	 * @throws IOException if the header couldn't be read.
+	 */
+	public InputStream decompress(InputStream in, int bufferSize)
+		throws IOException
+	{
+		checkBufferSize(bufferSize);
+		return new PooledInflaterInputStream(in, framing == Framing.GZIP, bufferSize);
+	}
+
+	private static void checkBufferSize(int bufferSize)
+	{
+		if(bufferSize <= 0)
+		{
+			throw new IllegalArgumentException("bufferSize must be positive but was " + bufferSize + "!");
+		}
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if(this == o) return true;
+		if(o == null || getClass() != o.getClass()) return false;
+
+		Compression that = (Compression) o;
+
+		return level == that.level && framing == that.framing;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return 31 * framing.hashCode() + level;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Compression[framing=" + framing + ", level=" + level + "]";
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-thread pool of raw (nowrap) Deflater and Inflater instances and of stream buffers.
+ *
+ * Creating a Deflater or Inflater allocates a native zlib context which is rather expensive
+ * compared to compressing a single small element. Every thread keeps one Deflater per compression
+ * level, one Inflater and one buffer. Instances that are acquired while the pooled one is in use,
+ * e.g. by nested encoders, are created on demand and ended or dropped on release.
+ *
+ * Acquired instances must be released exactly once and must not be used after release.
+ */
+public final class CompressionPool
+{
+	/**
+	 * Larger buffers are dropped on release to limit retained memory.
+	 */
+	public static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+	private static final int LEVEL_COUNT = Deflater.BEST_COMPRESSION + 2;
+
+	private static final ThreadLocal<Entries> ENTRIES = ThreadLocal.withInitial(Entries::new);
+
+	private CompressionPool()
+	{}
+
+	/**
+	 * @param level the compression level, i.e. Deflater.DEFAULT_COMPRESSION or a value in the range [0..9].
+	 * @return a reset, raw Deflater using the given level.
+	 */
+	public static Deflater acquireDeflater(int level)
+	{
+		int slot = slot(level);
+		Entries entries = ENTRIES.get();
+		Deflater result = entries.deflaters[slot];
+		if(result == null)
+		{
+			return new Deflater(level, true);
+		}
+		entries.deflaters[slot] = null;
+		return result;
+	}
+
+	/**
+	 * Resets the deflater and keeps it for the next acquire on the current thread.
+	 *
+	 * @param deflater the deflater returned by acquireDeflater(level).
+	 * @param level the level used to acquire the deflater.
+	 */
+	public static void releaseDeflater(Deflater deflater, int level)
+	{
+		if(deflater == null)
+		{
+			return;
+		}
+		int slot = slot(level);
+		Entries entries = ENTRIES.get();
+		if(entries.deflaters[slot] != null)
+		{
+			deflater.end();
+			return;
+		}
+		deflater.reset();
+		entries.deflaters[slot] = deflater;
+	}
+
+	/**
+	 * @return a reset, raw Inflater.
+	 */
+	public static Inflater acquireInflater()
+	{
+		Entries entries = ENTRIES.get();
+		Inflater result = entries.inflater;
+		if(result == null)
+		{
+			return new Inflater(true);
+		}
+		entries.inflater = null;
+		return result;
+	}
+
+	/**
+	 * Resets the inflater and keeps it for the next acquire on the current thread.
+	 *
+	 * @param inflater the inflater returned by acquireInflater().
+	 */
+	public static void releaseInflater(Inflater inflater)
+	{
+		if(inflater == null)
+		{
+			return;
+		}
+		Entries entries = ENTRIES.get();
+		if(entries.inflater != null)
+		{
+			inflater.end();
+			return;
+		}
+		inflater.reset();
+		entries.inflater = inflater;
+	}
+
+	/**
+	 * @param size the size of the buffer.
+	 * @return a buffer of exactly the given size. Its content is undefined.
+	 */
+	public static byte[] acquireBuffer(int size)
+	{
+		if(size <= 0)
+		{
+			throw new IllegalArgumentException("size must be positive but was " + size + "!");
+		}
+		Entries entries = ENTRIES.get();
+		byte[] result = entries.buffer;
+		if(result == null || result.length != size)
+		{
+			return new byte[size];
+		}
+		entries.buffer = null;
+		return result;
+	}
+
+	/**
+	 * Keeps the buffer for the next acquire on the current thread, replacing a previously kept one.
+	 *
+	 * @param buffer the buffer returned by acquireBuffer(size).
+	 */
+	public static void releaseBuffer(byte[] buffer)
+	{
+		if(buffer == null || buffer.length > MAX_POOLED_BUFFER_SIZE)
+		{
+			return;
+		}
+		ENTRIES.get().buffer = buffer;
+	}
+
+	private static int slot(int level)
+	{
+		if(level == Deflater.DEFAULT_COMPRESSION)
+		{
+			return 0;
+		}
+		if(level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+		{
+			throw new IllegalArgumentException("Invalid compression level " + level + "!");
+		}
+		return level + 1;
+	}
+
+	private static class Entries
+	{
+		final Deflater[] deflaters = new Deflater[LEVEL_COUNT];
+		Inflater inflater;
+		byte[] buffer;
+	}
+}
@@ -34,7 +34,20 @@
 
 package de.huxhorn.sulky.codec;
 
+import java.util.List;
+
 public interface Decoder<E>
 {
 	E decode(byte[] bytes);
+
+	/**
+	 * Decodes a batch created by Encoder.encodeAll of the matching encoder.
+	 *
+	 * @param bytes the encoded batch.
+	 * @return the decoded objects or null if the batch couldn't be decoded.
+	 */
+	default List<E> decodeAll(byte[] bytes)
+	{
+		return BatchFraming.decode(this, bytes);
+	}
 }
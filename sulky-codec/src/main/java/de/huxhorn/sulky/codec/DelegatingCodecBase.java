@@ -34,11 +34,14 @@
 
 package de.huxhorn.sulky.codec;
 
+import java.util.List;
+
 public class DelegatingCodecBase<E>
-	implements Codec<E>
+	implements Codec<E>, CompressionReporter
 {
 	private Encoder<E> encoder;
 	private Decoder<E> decoder;
+	private CompressionListener compressionListener;
 
 	protected DelegatingCodecBase()
 	{
@@ -59,6 +62,10 @@ public class DelegatingCodecBase<E>
 	protected void setEncoder(Encoder<E> encoder)
 	{
 		this.encoder = encoder;
+		if(compressionListener != null)
+		{
+			forwardCompressionListener();
+		}
 	}
 
 	protected Decoder<E> getDecoder()
@@ -71,6 +78,24 @@ public class DelegatingCodecBase<E>
 		this.decoder = decoder;
 	}
 
+	/**
+	 * Forwards the listener to the encoder if it is a CompressionReporter, including encoders set later.
+	 */
+	@Override
+	public void setCompressionListener(CompressionListener compressionListener)
+	{
+		this.compressionListener = compressionListener;
+		forwardCompressionListener();
+	}
+
+	private void forwardCompressionListener()
+	{
+		if(encoder instanceof CompressionReporter)
+		{
+			((CompressionReporter) encoder).setCompressionListener(compressionListener);
+		}
+	}
+
 	@Override
 	public byte[] encode(E object)
 	{
@@ -81,6 +106,26 @@ public class DelegatingCodecBase<E>
 		return encoder.encode(object);
 	}
 
+	@Override
+	public int encode(E object, EncodingBuffer buffer)
+	{
+		if(encoder == null)
+		{
+			throw new IllegalStateException("encoder must not be null!");
+		}
+		return encoder.encode(object, buffer);
+	}
+
+	@Override
+	public byte[] encodeAll(List<E> objects)
+	{
+		if(encoder == null)
+		{
+			throw new IllegalStateException("encoder must not be null!");
+		}
+		return encoder.encodeAll(objects);
+	}
+
 	@Override
 	public E decode(byte[] bytes)
 	{
@@ -90,4 +135,14 @@ public class DelegatingCodecBase<E>
 		}
 		return decoder.decode(bytes);
 	}
+
+	@Override
+	public List<E> decodeAll(byte[] bytes)
+	{
+		if(decoder == null)
+		{
+			throw new IllegalStateException("decoder must not be null!");
+		}
+		return decoder.decodeAll(bytes);
+	}
 }
@@ -0,0 +1,314 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec compressing the bytes of another codec using Deflater with a preset dictionary.
+ *
+ * Small records compress badly on their own because each of them starts with an empty window.
+ * A dictionary containing content that is common to most records, e.g. class names, logger names
+ * and message patterns, fixes this while every record can still be decoded on its own.
+ * See DictionaryTrainer for creating a dictionary from sample records.
+ *
+ * The encoded form is the length of the uncompressed data (varint) followed by raw deflate data.
+ * Records must be decoded using the same dictionary that was used to encode them. The dictionary can
+ * be stored in the meta data of a buffer using storeDictionary and restored using loadDictionary.
+ *
+ * Setting the dictionary has a cost proportional to its size for every encoded record.
+ *
+ * @param <E> the type of the encoded objects.
+ */
+public class DictionaryCompressingCodec<E>
+	implements Codec<E>, CompressionReporter
+{
+	public static final String DICTIONARY_META_DATA_KEY = "sulky.codec.deflateDictionary";
+
+	/**
+	 * Deflater only uses the last 32k of a dictionary.
+	 */
+	public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+	/**
+	 * Deflate can't compress better than 1032:1 so any larger uncompressed length is corrupt.
+	 */
+	static final int MAX_COMPRESSION_RATIO = 1032;
+
+	private final Codec<E> codec;
+	private final byte[] dictionary;
+	private final int level;
+	private CompressionListener compressionListener;
+
+	public DictionaryCompressingCodec(Codec<E> codec, byte[] dictionary)
+	{
+		this(codec, dictionary, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param codec the codec producing the uncompressed bytes.
+	 * @param dictionary the preset dictionary.
+	 * @param level the Deflater compression level.
+	 */
+	public DictionaryCompressingCodec(Codec<E> codec, byte[] dictionary, int level)
+	{
+		this.codec = Objects.requireNonNull(codec, "codec must not be null!");
+		Objects.requireNonNull(dictionary, "dictionary must not be null!");
+		if(dictionary.length > MAX_DICTIONARY_SIZE)
+		{
+			dictionary = Arrays.copyOfRange(dictionary, dictionary.length - MAX_DICTIONARY_SIZE, dictionary.length);
+		}
+		else
+		{
+			dictionary = dictionary.clone();
+		}
+		this.dictionary = dictionary;
+		if(level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+		{
+			throw new IllegalArgumentException("Invalid compression level " + level + "!");
+		}
+		this.level = level;
+	}
+
+	public Codec<E> getCodec()
+	{
+		return codec;
+	}
+
+	public byte[] getDictionary()
+	{
+		return dictionary.clone();
+	}
+
+	public int getLevel()
+	{
+		return level;
+	}
+
+	@Override
+	public void setCompressionListener(CompressionListener compressionListener)
+	{
+		this.compressionListener = compressionListener;
+	}
+
+	/**
+	 * Stores the dictionary in the given meta data, e.g. the preferred meta data of a buffer.
+	 *
+	 * @param metaData the meta data.
+	 */
+	public void storeDictionary(Map<String, String> metaData)
+	{
+		metaData.put(DICTIONARY_META_DATA_KEY, Base64.getEncoder().encodeToString(dictionary));
+	}
+
+	/**
+	 * @param metaData the meta data, e.g. of a buffer.
+	 * @return the dictionary contained in the meta data or null if there is none.
+	 */
+	public static byte[] loadDictionary(Map<String, String> metaData)
+	{
+		if(metaData == null)
+		{
+			return null;
+		}
+		String value = metaData.get(DICTIONARY_META_DATA_KEY);
+		if(value == null)
+		{
+			return null;
+		}
+		return Base64.getDecoder().decode(value);
+	}
+
+	@Override
+	public byte[] encode(E object)
+	{
+		return deflate(codec.encode(object));
+	}
+
+	/**
+	 * Compresses the batch encoded by the wrapped codec as a whole.
+	 */
+	@Override
+	public byte[] encodeAll(List<E> objects)
+	{
+		return deflate(codec.encodeAll(objects));
+	}
+
+	@Override
+	public E decode(byte[] bytes)
+	{
+		byte[] inflated = inflate(bytes);
+		if(inflated == null)
+		{
+			return null;
+		}
+		return codec.decode(inflated);
+	}
+
+	@Override
+	public List<E> decodeAll(byte[] bytes)
+	{
+		byte[] inflated = inflate(bytes);
+		if(inflated == null)
+		{
+			return null;
+		}
+		return codec.decodeAll(inflated);
+	}
+
+	private byte[] deflate(byte[] bytes)
+	{
+		if(bytes == null)
+		{
+			return null;
+		}
+		Deflater deflater = CompressionPool.acquireDeflater(level);
+		try
+		{
+			deflater.setDictionary(dictionary);
+			deflater.setInput(bytes);
+			deflater.finish();
+			byte[] result = new byte[bytes.length + bytes.length / 8 + 64];
+			int length = writeVarInt(bytes.length, result);
+			while(!deflater.finished())
+			{
+				if(length == result.length)
+				{
+					result = Arrays.copyOf(result, result.length * 2);
+				}
+				length += deflater.deflate(result, length, result.length - length);
+			}
+			CompressionListener listener = compressionListener;
+			if(listener != null)
+			{
+				listener.compressed(bytes.length, length);
+			}
+			return Arrays.copyOf(result, length);
+		}
+		finally
+		{
+			CompressionPool.releaseDeflater(deflater, level);
+		}
+	}
+
+	private byte[] inflate(byte[] bytes)
+	{
+		if(bytes == null)
+		{
+			return null;
+		}
+		Inflater inflater = CompressionPool.acquireInflater();
+		try
+		{
+			int[] position = new int[1];
+			int uncompressedLength = readVarInt(bytes, position);
+			if(uncompressedLength < 0 || uncompressedLength > (long) (bytes.length - position[0]) * MAX_COMPRESSION_RATIO)
+			{
+				// corrupted length, don't even try to allocate it
+				return null;
+			}
+			inflater.setDictionary(dictionary);
+			inflater.setInput(bytes, position[0], bytes.length - position[0]);
+			byte[] result = new byte[uncompressedLength];
+			int length = 0;
+			while(length < uncompressedLength)
+			{
+				int inflated = inflater.inflate(result, length, uncompressedLength - length);
+				if(inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+				{
+					// truncated or corrupted data
+					return null;
+				}
+				length += inflated;
+			}
+			return result;
+		}
+		catch(DataFormatException | RuntimeException e)
+		{
+			// silently ignore any problems
+			return null;
+		}
+		finally
+		{
+			CompressionPool.releaseInflater(inflater);
+		}
+	}
+
+	private static int writeVarInt(int value, byte[] buffer)
+	{
+		int remaining = value;
+		int index = 0;
+		while((remaining & ~0x7F) != 0)
+		{
+			buffer[index] = (byte) ((remaining & 0x7F) | 0x80);
+			remaining >>>= 7;
+			index++;
+		}
+		buffer[index] = (byte) remaining;
+		return index + 1;
+	}
+
+	/**
+	 * @return the value or -1 if it's invalid.
+	 */
+	private static int readVarInt(byte[] buffer, int[] position)
+	{
+		int result = 0;
+		for(int shift = 0; shift < 32 && position[0] < buffer.length; shift += 7)
+		{
+			byte current = buffer[position[0]];
+			position[0]++;
+			result |= (current & 0x7F) << shift;
+			if((current & 0x80) == 0)
+			{
+				return result;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DictionaryCompressingCodec[codec=" + codec + ", dictionarySize=" + dictionary.length + ", level=" + level + "]";
+	}
+}
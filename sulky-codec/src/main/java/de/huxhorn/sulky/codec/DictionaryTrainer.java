@@ -0,0 +1,202 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates a preset dictionary for DictionaryCompressingCodec from sample records.
+ *
+ * Every sample is split into overlapping segments. A segment is rated by the number of samples
+ * containing each of its eight-byte sequences. The best segments are selected greedily, ignoring
+ * sequences that are already covered by previously selected segments, until the dictionary is full.
+ * Deflate references close matches more cheaply, so the best segments are placed at the end.
+ */
+public final class DictionaryTrainer
+{
+	public static final int DEFAULT_DICTIONARY_SIZE = 8 * 1024;
+
+	private static final int GRAM_SIZE = 8;
+	private static final int SEGMENT_SIZE = 64;
+	private static final int SEGMENT_STEP = SEGMENT_SIZE / 2;
+
+	private DictionaryTrainer()
+	{}
+
+	public static byte[] train(List<byte[]> samples)
+	{
+		return train(samples, DEFAULT_DICTIONARY_SIZE);
+	}
+
+	/**
+	 * @param samples the encoded sample records, e.g. created by the codec wrapped by DictionaryCompressingCodec.
+	 * @param maxSize the maximum size of the dictionary.
+	 * @return the dictionary. Empty if samples don't share any content.
+	 */
+	public static byte[] train(List<byte[]> samples, int maxSize)
+	{
+		if(maxSize <= 0 || maxSize > DictionaryCompressingCodec.MAX_DICTIONARY_SIZE)
+		{
+			throw new IllegalArgumentException("maxSize must be in the range [1.." + DictionaryCompressingCodec.MAX_DICTIONARY_SIZE + "] but was " + maxSize + "!");
+		}
+		Map<Long, Integer> sampleFrequencies = new HashMap<>();
+		for(byte[] sample : samples)
+		{
+			Set<Long> grams = new HashSet<>();
+			for(int i = 0; i + GRAM_SIZE <= sample.length; i++)
+			{
+				grams.add(gram(sample, i));
+			}
+			for(Long current : grams)
+			{
+				sampleFrequencies.merge(current, 1, Integer::sum);
+			}
+		}
+
+		List<Segment> candidates = new ArrayList<>();
+		for(byte[] sample : samples)
+		{
+			for(int start = 0; start < sample.length; start += SEGMENT_STEP)
+			{
+				int end = Math.min(sample.length, start + SEGMENT_SIZE);
+				long score = score(sample, start, end, sampleFrequencies, null);
+				if(score > 0)
+				{
+					candidates.add(new Segment(sample, start, end, score));
+				}
+				if(end == sample.length)
+				{
+					break;
+				}
+			}
+		}
+		candidates.sort(Comparator.comparingLong((Segment segment) -> segment.score).reversed());
+
+		Set<Long> covered = new HashSet<>();
+		List<Segment> selected = new ArrayList<>();
+		int size = 0;
+		for(Segment current : candidates)
+		{
+			if(size >= maxSize)
+			{
+				break;
+			}
+			long score = score(current.sample, current.start, current.end, sampleFrequencies, covered);
+			if(score <= 0)
+			{
+				continue;
+			}
+			for(int i = current.start; i + GRAM_SIZE <= current.end; i++)
+			{
+				covered.add(gram(current.sample, i));
+			}
+			current.score = score;
+			selected.add(current);
+			size += current.end - current.start;
+		}
+		// best segments last
+		selected.sort(Comparator.comparingLong(segment -> segment.score));
+
+		byte[] dictionary = new byte[size];
+		int position = 0;
+		for(Segment current : selected)
+		{
+			int length = current.end - current.start;
+			System.arraycopy(current.sample, current.start, dictionary, position, length);
+			position += length;
+		}
+		if(size <= maxSize)
+		{
+			return dictionary;
+		}
+		byte[] result = new byte[maxSize];
+		System.arraycopy(dictionary, size - maxSize, result, 0, maxSize);
+		return result;
+	}
+
+	/**
+	 * Sums the frequencies of all sequences occurring in more than one sample that aren't covered, yet.
+	 */
+	private static long score(byte[] sample, int start, int end, Map<Long, Integer> sampleFrequencies, Set<Long> covered)
+	{
+		long result = 0;
+		for(int i = start; i + GRAM_SIZE <= end; i++)
+		{
+			Long current = gram(sample, i);
+			if(covered != null && covered.contains(current))
+			{
+				continue;
+			}
+			int frequency = sampleFrequencies.get(current);
+			if(frequency > 1)
+			{
+				result += frequency;
+			}
+		}
+		return result;
+	}
+
+	private static long gram(byte[] bytes, int offset)
+	{
+		long result = 0;
+		for(int i = 0; i < GRAM_SIZE; i++)
+		{
+			result = (result << 8) | (bytes[offset + i] & 0xFF);
+		}
+		return result;
+	}
+
+	private static class Segment
+	{
+		final byte[] sample;
+		final int start;
+		final int end;
+		long score;
+
+		Segment(byte[] sample, int start, int end, long score)
+		{
+			this.sample = sample;
+			this.start = start;
+			this.end = end;
+			this.score = score;
+		}
+	}
+}
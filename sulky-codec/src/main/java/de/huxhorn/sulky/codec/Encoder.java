@@ -34,7 +34,45 @@
 
 package de.huxhorn.sulky.codec;
 
+import java.util.List;
+
 public interface Encoder<E>
 {
 	byte[] encode(E object);
+
+	/**
+	 * Appends the encoded object to the given buffer.
+	 *
+	 * The default implementation copies the result of encode(E). Implementations should override this method
+	 * to write into the buffer directly. In case of failure, the content of the buffer must be unchanged.
+	 *
+	 * @param object the object to encode.
+	 * @param buffer the buffer receiving the encoded bytes.
+	 * @return the number of appended bytes or -1 if the object couldn't be encoded.
+	 */
+	default int encode(E object, EncodingBuffer buffer)
+	{
+		byte[] bytes = encode(object);
+		if(bytes == null)
+		{
+			return -1;
+		}
+		buffer.write(bytes, 0, bytes.length);
+		return bytes.length;
+	}
+
+	/**
+	 * Encodes all objects into a single batch that can be decoded by Decoder.decodeAll.
+	 *
+	 * The default implementation frames the results of encode(E, EncodingBuffer). Elements that
+	 * couldn't be encoded are decoded as null. Implementations sharing state across the batch may
+	 * instead return null if any element couldn't be encoded.
+	 *
+	 * @param objects the objects to encode.
+	 * @return the encoded batch or null if it couldn't be encoded.
+	 */
+	default byte[] encodeAll(List<E> objects)
+	{
+		return BatchFraming.encode(this, objects);
+	}
 }
@@ -0,0 +1,285 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable, unsynchronized byte buffer that encoders can write into.
+ *
+ * In contrast to ByteArrayOutputStream, the backing array is exposed using getBuffer()
+ * so the encoded bytes can be written to a file without copying them first.
+ *
+ * Instances can be reused by calling reset(). acquire() returns an instance that is cached
+ * per thread and must be handed back using release() after use. Nested calls of acquire()
+ * on the same thread return new, unpooled instances.
+ */
+public final class EncodingBuffer
+	extends OutputStream
+{
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * Pooled instances with a larger capacity are dropped on release to limit retained memory.
+	 */
+	public static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+
+	private static final ThreadLocal<EncodingBuffer> POOL = new ThreadLocal<>();
+
+	private byte[] buffer;
+	private int size;
+	private boolean pooled;
+	private boolean inUse;
+
+	public EncodingBuffer()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	public EncodingBuffer(int capacity)
+	{
+		if(capacity < 0)
+		{
+			throw new IllegalArgumentException("capacity must not be negative!");
+		}
+		buffer = new byte[capacity];
+	}
+
+	/**
+	 * Returns the empty buffer of the current thread.
+	 *
+	 * @return an empty buffer that must be released after use.
+	 */
+	public static EncodingBuffer acquire()
+	{
+		EncodingBuffer result = POOL.get();
+		if(result == null)
+		{
+			result = new EncodingBuffer();
+			result.pooled = true;
+			POOL.set(result);
+		}
+		else if(result.inUse)
+		{
+			// nested usage, e.g. by a wrapping encoder
+			return new EncodingBuffer();
+		}
+		result.inUse = true;
+		result.size = 0;
+		return result;
+	}
+
+	/**
+	 * Hands an acquired buffer back to the pool of the current thread.
+	 * Calling this method on an unpooled buffer has no effect.
+	 */
+	public void release()
+	{
+		if(!pooled)
+		{
+			return;
+		}
+		inUse = false;
+		size = 0;
+		if(buffer.length > MAX_POOLED_CAPACITY)
+		{
+			buffer = new byte[DEFAULT_CAPACITY];
+		}
+	}
+
+	/**
+	 * Returns the backing array. Only the first size() bytes are valid.
+	 * The array is replaced if the buffer has to grow.
+	 *
+	 * @return the backing array.
+	 */
+	public byte[] getBuffer()
+	{
+		return buffer;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Discards the content of the buffer but keeps its capacity.
+	 */
+	public void reset()
+	{
+		size = 0;
+	}
+
+	/**
+	 * Truncates the buffer, e.g. to discard partially written data after a failure.
+	 *
+	 * @param size the new size, must not be larger than the current size.
+	 */
+	public void setSize(int size)
+	{
+		if(size < 0 || size > this.size)
+		{
+			throw new IllegalArgumentException("Invalid size " + size + "! Must be in the range [0.." + this.size + "].");
+		}
+		this.size = size;
+	}
+
+	/**
+	 * Makes sure that at least additional bytes can be written without growing the buffer.
+	 *
+	 * @param additional the number of additional bytes.
+	 */
+	public void ensureRemaining(int additional)
+	{
+		int required = size + additional;
+		if(required < 0)
+		{
+			throw new OutOfMemoryError("Required buffer size is too large!");
+		}
+		if(required > buffer.length)
+		{
+			int newCapacity = Math.max(required, buffer.length * 2);
+			if(newCapacity < 0)
+			{
+				newCapacity = Integer.MAX_VALUE - 8;
+			}
+			buffer = Arrays.copyOf(buffer, newCapacity);
+		}
+	}
+
+	/**
+	 * Appends 4 zero bytes that can be overwritten later using putInt, e.g. by a length.
+	 *
+	 * @return the position of the reserved bytes.
+	 */
+	public int reserveInt()
+	{
+		return reserve(4);
+	}
+
+	/**
+	 * Appends 8 zero bytes that can be overwritten later using putLong.
+	 *
+	 * @return the position of the reserved bytes.
+	 */
+	public int reserveLong()
+	{
+		return reserve(8);
+	}
+
+	private int reserve(int count)
+	{
+		ensureRemaining(count);
+		int result = size;
+		Arrays.fill(buffer, size, size + count, (byte) 0);
+		size += count;
+		return result;
+	}
+
+	/**
+	 * Writes a big-endian int at the given position.
+	 *
+	 * @param position the position, e.g. returned by reserveInt.
+	 * @param value the value.
+	 */
+	public void putInt(int position, int value)
+	{
+		if(position < 0 || position + 4 > size)
+		{
+			throw new IndexOutOfBoundsException("Invalid position " + position + "!");
+		}
+		buffer[position] = (byte) (value >>> 24);
+		buffer[position + 1] = (byte) (value >>> 16);
+		buffer[position + 2] = (byte) (value >>> 8);
+		buffer[position + 3] = (byte) value;
+	}
+
+	/**
+	 * Writes a big-endian long at the given position.
+	 *
+	 * @param position the position, e.g. returned by reserveLong.
+	 * @param value the value.
+	 */
+	public void putLong(int position, long value)
+	{
+		putInt(position, (int) (value >>> 32));
+		putInt(position + 4, (int) value);
+	}
+
+	@Override
+	public void write(int b)
+	{
+		ensureRemaining(1);
+		buffer[size] = (byte) b;
+		size++;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length)
+	{
+		if(offset < 0 || length < 0 || offset > bytes.length - length)
+		{
+			throw new IndexOutOfBoundsException();
+		}
+		ensureRemaining(length);
+		System.arraycopy(bytes, offset, buffer, size, length);
+		size += length;
+	}
+
+	/**
+	 * @return a copy of the valid bytes.
+	 */
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(buffer, size);
+	}
+
+	/**
+	 * Closing has no effect so the buffer can still be used by the caller after an encoder closed its streams.
+	 */
+	@Override
+	public void close()
+	{
+		// nothing to do
+	}
+
+	@Override
+	public String toString()
+	{
+		return "EncodingBuffer[size=" + size + ", capacity=" + buffer.length + "]";
+	}
+}
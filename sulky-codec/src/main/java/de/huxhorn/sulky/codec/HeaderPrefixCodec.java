@@ -0,0 +1,208 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Codec writing a header extracted from the element in front of the encoded element.
+ *
+ * The encoded form consists of the varint length of the encoded header, the encoded header and the
+ * element encoded by the wrapped codec. decodeHeader only decodes the header so filters can evaluate
+ * the header fields without decoding the complete element.
+ *
+ * @param <E> the type of the element.
+ * @param <H> the type of the header.
+ */
+public class HeaderPrefixCodec<E, H>
+	implements Codec<E>, HeaderDecoder<H>
+{
+	private final Codec<E> codec;
+	private final Codec<H> headerCodec;
+	private final Function<E, H> headerFunction;
+
+	/**
+	 * @param codec the codec of the element.
+	 * @param headerCodec the codec of the header. It should be cheap to decode.
+	 * @param headerFunction extracts the header from an element.
+	 */
+	public HeaderPrefixCodec(Codec<E> codec, Codec<H> headerCodec, Function<E, H> headerFunction)
+	{
+		this.codec = Objects.requireNonNull(codec, "codec must not be null!");
+		this.headerCodec = Objects.requireNonNull(headerCodec, "headerCodec must not be null!");
+		this.headerFunction = Objects.requireNonNull(headerFunction, "headerFunction must not be null!");
+	}
+
+	public Codec<E> getCodec()
+	{
+		return codec;
+	}
+
+	public Codec<H> getHeaderCodec()
+	{
+		return headerCodec;
+	}
+
+	@Override
+	public byte[] encode(E object)
+	{
+		EncodingBuffer buffer = EncodingBuffer.acquire();
+		try
+		{
+			if(encode(object, buffer) < 0)
+			{
+				return null;
+			}
+			return buffer.toByteArray();
+		}
+		finally
+		{
+			buffer.release();
+		}
+	}
+
+	@Override
+	public int encode(E object, EncodingBuffer buffer)
+	{
+		int start = buffer.size();
+		EncodingBuffer headerBuffer = EncodingBuffer.acquire();
+		try
+		{
+			H header = object == null ? null : headerFunction.apply(object);
+			int headerLength = headerCodec.encode(header, headerBuffer);
+			if(headerLength < 0)
+			{
+				return -1;
+			}
+			writeVarInt(buffer, headerLength);
+			buffer.write(headerBuffer.getBuffer(), 0, headerLength);
+			if(codec.encode(object, buffer) < 0)
+			{
+				buffer.setSize(start);
+				return -1;
+			}
+			return buffer.size() - start;
+		}
+		catch(RuntimeException e)
+		{
+			buffer.setSize(start);
+			e.printStackTrace(); // NOPMD
+			return -1;
+		}
+		finally
+		{
+			headerBuffer.release();
+		}
+	}
+
+	@Override
+	public E decode(byte[] bytes)
+	{
+		int[] position = new int[1];
+		int headerLength = headerLength(bytes, position);
+		if(headerLength < 0)
+		{
+			return null;
+		}
+		int offset = position[0] + headerLength;
+		byte[] element = new byte[bytes.length - offset];
+		System.arraycopy(bytes, offset, element, 0, element.length);
+		return codec.decode(element);
+	}
+
+	@Override
+	public H decodeHeader(byte[] bytes)
+	{
+		int[] position = new int[1];
+		int headerLength = headerLength(bytes, position);
+		if(headerLength < 0)
+		{
+			return null;
+		}
+		byte[] header = new byte[headerLength];
+		System.arraycopy(bytes, position[0], header, 0, headerLength);
+		return headerCodec.decode(header);
+	}
+
+	/**
+	 * @return the header length or -1 if the bytes are invalid.
+	 */
+	private static int headerLength(byte[] bytes, int[] position)
+	{
+		if(bytes == null)
+		{
+			return -1;
+		}
+		int result = 0;
+		int index = 0;
+		for(int shift = 0; shift < 32; shift += 7)
+		{
+			if(index >= bytes.length)
+			{
+				return -1;
+			}
+			int b = bytes[index++];
+			result |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+			{
+				position[0] = index;
+				if(result < 0 || result > bytes.length - index)
+				{
+					return -1;
+				}
+				return result;
+			}
+		}
+		return -1;
+	}
+
+	private static void writeVarInt(EncodingBuffer buffer, int value)
+	{
+		int remaining = value;
+		while((remaining & ~0x7F) != 0)
+		{
+			buffer.write((remaining & 0x7F) | 0x80);
+			remaining >>>= 7;
+		}
+		buffer.write(remaining);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "HeaderPrefixCodec[codec=" + codec + ", headerCodec=" + headerCodec + "]";
+	}
+}
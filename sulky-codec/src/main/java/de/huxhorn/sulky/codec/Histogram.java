@@ -0,0 +1,178 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values using power-of-two buckets.
+ *
+ * Bucket 0 counts the value 0, bucket i counts values in the range [2^(i-1), 2^i).
+ * Percentiles are therefore estimates, reported as the upper bound of the containing bucket
+ * but never larger than the maximum recorded value.
+ */
+public final class Histogram
+{
+	public static final int BUCKET_COUNT = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param value the value to record, negative values are recorded as 0.
+	 */
+	public void record(long value)
+	{
+		long v = Math.max(0, value);
+		buckets.incrementAndGet(bucketOf(v));
+		count.incrementAndGet();
+		sum.addAndGet(v);
+		long currentMax = max.get();
+		while(v > currentMax && !max.compareAndSet(currentMax, v))
+		{
+			currentMax = max.get();
+		}
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	public long getSum()
+	{
+		return sum.get();
+	}
+
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * @return the mean of all recorded values, 0 if nothing has been recorded.
+	 */
+	public double getMean()
+	{
+		long currentCount = count.get();
+		if(currentCount == 0)
+		{
+			return 0;
+		}
+		return (double) sum.get() / currentCount;
+	}
+
+	/**
+	 * @param percentile the percentile in the range [0..100].
+	 * @return the estimated value of the percentile, 0 if nothing has been recorded.
+	 */
+	public long getPercentile(double percentile)
+	{
+		if(percentile < 0 || percentile > 100)
+		{
+			throw new IllegalArgumentException("percentile must be in the range [0..100]!");
+		}
+		long[] counts = getBucketCounts();
+		long total = 0;
+		for(long current : counts)
+		{
+			total += current;
+		}
+		if(total == 0)
+		{
+			return 0;
+		}
+		long threshold = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long accumulated = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			accumulated += counts[i];
+			if(accumulated >= threshold)
+			{
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public long[] getBucketCounts()
+	{
+		long[] result = new long[BUCKET_COUNT];
+		for(int i = 0; i < BUCKET_COUNT; i++)
+		{
+			result[i] = buckets.get(i);
+		}
+		return result;
+	}
+
+	public void reset()
+	{
+		for(int i = 0; i < BUCKET_COUNT; i++)
+		{
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	static int bucketOf(long value)
+	{
+		return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+	}
+
+	static long upperBound(int bucket)
+	{
+		if(bucket == 0)
+		{
+			return 0;
+		}
+		if(bucket >= 63)
+		{
+			return Long.MAX_VALUE;
+		}
+		return (1L << bucket) - 1;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Histogram[count=" + getCount() + ", mean=" + getMean() + ", p50=" + getPercentile(50)
+			+ ", p99=" + getPercentile(99) + ", max=" + getMax() + "]";
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Decoder recording latency, input size and failures of the wrapped decoder in CodecStatistics.
+ *
+ * A null result for non-null input is counted as failure. The behavior of the wrapped decoder
+ * is not changed. Batch operations are delegated without being recorded.
+ */
+public class InstrumentedDecoder<E>
+	implements Decoder<E>
+{
+	private final Decoder<E> wrapped;
+	private final CodecStatistics statistics;
+
+	public InstrumentedDecoder(Decoder<E> wrapped, CodecStatistics statistics)
+	{
+		this.wrapped = Objects.requireNonNull(wrapped, "wrapped must not be null!");
+		this.statistics = Objects.requireNonNull(statistics, "statistics must not be null!");
+	}
+
+	public Decoder<E> getWrapped()
+	{
+		return wrapped;
+	}
+
+	public CodecStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	@Override
+	public E decode(byte[] bytes)
+	{
+		long start = System.nanoTime();
+		E result = null;
+		try
+		{
+			result = wrapped.decode(bytes);
+			return result;
+		}
+		finally
+		{
+			long nanos = System.nanoTime() - start;
+			int size = bytes == null ? 0 : bytes.length;
+			if(result == null && bytes != null)
+			{
+				statistics.recordDecodeFailure(nanos, size);
+			}
+			else
+			{
+				statistics.recordDecode(nanos, size);
+			}
+		}
+	}
+
+	@Override
+	public List<E> decodeAll(byte[] bytes)
+	{
+		return wrapped.decodeAll(bytes);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "InstrumentedDecoder[wrapped=" + wrapped + ", statistics=" + statistics.getName() + "]";
+	}
+}
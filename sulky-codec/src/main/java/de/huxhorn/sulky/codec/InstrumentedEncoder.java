@@ -0,0 +1,131 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Encoder recording latency, size and failures of the wrapped encoder in CodecStatistics.
+ *
+ * The behavior of the wrapped encoder is not changed. Batch operations are delegated without being recorded.
+ * If the wrapped encoder is a CompressionReporter, the compression ratio is recorded using its listener.
+ */
+public class InstrumentedEncoder<E>
+	implements Encoder<E>
+{
+	private final Encoder<E> wrapped;
+	private final CodecStatistics statistics;
+
+	public InstrumentedEncoder(Encoder<E> wrapped, CodecStatistics statistics)
+	{
+		this.wrapped = Objects.requireNonNull(wrapped, "wrapped must not be null!");
+		this.statistics = Objects.requireNonNull(statistics, "statistics must not be null!");
+		if(wrapped instanceof CompressionReporter)
+		{
+			((CompressionReporter) wrapped).setCompressionListener(statistics::recordCompression);
+		}
+	}
+
+	public Encoder<E> getWrapped()
+	{
+		return wrapped;
+	}
+
+	public CodecStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	@Override
+	public byte[] encode(E object)
+	{
+		long start = System.nanoTime();
+		byte[] result = null;
+		try
+		{
+			result = wrapped.encode(object);
+			return result;
+		}
+		finally
+		{
+			long nanos = System.nanoTime() - start;
+			if(result == null)
+			{
+				statistics.recordEncodeFailure(nanos);
+			}
+			else
+			{
+				statistics.recordEncode(nanos, result.length);
+			}
+		}
+	}
+
+	@Override
+	public int encode(E object, EncodingBuffer buffer)
+	{
+		long start = System.nanoTime();
+		int result = -1;
+		try
+		{
+			result = wrapped.encode(object, buffer);
+			return result;
+		}
+		finally
+		{
+			long nanos = System.nanoTime() - start;
+			if(result < 0)
+			{
+				statistics.recordEncodeFailure(nanos);
+			}
+			else
+			{
+				statistics.recordEncode(nanos, result);
+			}
+		}
+	}
+
+	@Override
+	public byte[] encodeAll(List<E> objects)
+	{
+		return wrapped.encodeAll(objects);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "InstrumentedEncoder[wrapped=" + wrapped + ", statistics=" + statistics.getName() + "]";
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.util.Objects;
+
+/**
+ * Handle of an encoded element that is only decoded on demand.
+ *
+ * If the decoder is a HeaderDecoder, the header can be retrieved without decoding the element.
+ * Both the element and the header are decoded at most once, unless they are requested concurrently.
+ *
+ * @param <E> the type of the element.
+ */
+public final class LazyElement<E>
+{
+	private final byte[] bytes;
+	private final Decoder<E> decoder;
+	private volatile boolean decoded;
+	private volatile E element;
+	private volatile boolean headerDecoded;
+	private volatile Object header;
+
+	public LazyElement(byte[] bytes, Decoder<E> decoder)
+	{
+		this.bytes = Objects.requireNonNull(bytes, "bytes must not be null!");
+		this.decoder = Objects.requireNonNull(decoder, "decoder must not be null!");
+	}
+
+	/**
+	 * @return the decoded element, null if it couldn't be decoded.
+	 */
+	public E get()
+	{
+		if(!decoded)
+		{
+			element = decoder.decode(bytes);
+			decoded = true;
+		}
+		return element;
+	}
+
+	public boolean isDecoded()
+	{
+		return decoded;
+	}
+
+	/**
+	 * @return true if getHeader can be called without decoding the element.
+	 */
+	public boolean isHeaderAvailable()
+	{
+		return decoder instanceof HeaderDecoder;
+	}
+
+	/**
+	 * @return the header decoded by the HeaderDecoder or null if the decoder isn't a HeaderDecoder.
+	 */
+	public Object getHeader()
+	{
+		if(!headerDecoded)
+		{
+			if(decoder instanceof HeaderDecoder)
+			{
+				header = ((HeaderDecoder<?>) decoder).decodeHeader(bytes);
+			}
+			headerDecoded = true;
+		}
+		return header;
+	}
+
+	public int getEncodedSize()
+	{
+		return bytes.length;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "LazyElement[encodedSize=" + bytes.length + ", decoded=" + decoded + "]";
+	}
+}
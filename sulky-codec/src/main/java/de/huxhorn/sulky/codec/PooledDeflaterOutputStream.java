@@ -0,0 +1,170 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * DeflaterOutputStream using a pooled Deflater and buffer, optionally writing GZIP header and trailer.
+ */
+class PooledDeflaterOutputStream
+	extends DeflaterOutputStream
+{
+	private static final byte[] GZIP_HEADER = {
+		(byte) 0x1f, (byte) 0x8b, // magic
+		8, // compression method deflate
+		0, // flags
+		0, 0, 0, 0, // modification time
+		0, // extra flags
+		0, // operating system
+	};
+
+	private static final int MIN_SYNC_FLUSH_BUFFER_SIZE = 64;
+	private static final int GZIP_TRAILER_SIZE = 8;
+
+	private final int level;
+	private final CRC32 crc;
+	private final CompressionListener listener;
+	private boolean released;
+
+	PooledDeflaterOutputStream(OutputStream out, int level, boolean gzip, int bufferSize, boolean syncFlush, CompressionListener listener)
+		throws IOException
+	{
+		// the minimal buffer allocated by super is replaced by a pooled one
+		super(out, CompressionPool.acquireDeflater(level), 1, syncFlush);
+		// flush() would loop forever if the buffer can't hold an empty sync flush block
+		this.buf = CompressionPool.acquireBuffer(syncFlush ? Math.max(bufferSize, MIN_SYNC_FLUSH_BUFFER_SIZE) : bufferSize);
+		this.level = level;
+		this.listener = listener;
+		if(gzip)
+		{
+			crc = new CRC32();
+			boolean success = false;
+			try
+			{
+				out.write(GZIP_HEADER);
+				success = true;
+			}
+			finally
+			{
+				if(!success)
+				{
+					release();
+				}
+			}
+		}
+		else
+		{
+			crc = null;
+		}
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length)
+		throws IOException
+	{
+		if(released)
+		{
+			throw new IOException("Stream closed");
+		}
+		super.write(bytes, offset, length);
+		if(crc != null)
+		{
+			crc.update(bytes, offset, length);
+		}
+	}
+
+	@Override
+	public void finish()
+		throws IOException
+	{
+		if(released || def.finished())
+		{
+			return;
+		}
+		super.finish();
+		if(crc != null)
+		{
+			byte[] trailer = new byte[GZIP_TRAILER_SIZE];
+			writeIntLittleEndian(trailer, 0, (int) crc.getValue());
+			writeIntLittleEndian(trailer, 4, (int) def.getBytesRead());
+			out.write(trailer);
+		}
+		if(listener != null)
+		{
+			long framing = crc == null ? 0 : GZIP_HEADER.length + GZIP_TRAILER_SIZE;
+			listener.compressed(def.getBytesRead(), def.getBytesWritten() + framing);
+		}
+	}
+
+	@Override
+	public void close()
+		throws IOException
+	{
+		if(released)
+		{
+			return;
+		}
+		try
+		{
+			super.close();
+		}
+		finally
+		{
+			release();
+		}
+	}
+
+	private void release()
+	{
+		if(!released)
+		{
+			released = true;
+			CompressionPool.releaseDeflater(def, level);
+			CompressionPool.releaseBuffer(buf);
+		}
+	}
+
+	private static void writeIntLittleEndian(byte[] buffer, int offset, int value)
+	{
+		buffer[offset] = (byte) value;
+		buffer[offset + 1] = (byte) (value >>> 8);
+		buffer[offset + 2] = (byte) (value >>> 16);
+		buffer[offset + 3] = (byte) (value >>> 24);
+	}
+}
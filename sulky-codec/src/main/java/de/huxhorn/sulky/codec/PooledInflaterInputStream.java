@@ -0,0 +1,251 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * InflaterInputStream using a pooled Inflater and buffer, optionally reading GZIP header and trailer.
+ *
+ * In contrast to GZIPInputStream, only a single GZIP member is read.
+ */
+class PooledInflaterInputStream
+	extends InflaterInputStream
+{
+	private static final int GZIP_MAGIC = 0x8b1f;
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	private final CRC32 crc;
+	private boolean endOfStream;
+	private boolean released;
+
+	PooledInflaterInputStream(InputStream in, boolean gzip, int bufferSize)
+		throws IOException
+	{
+		// the minimal buffer allocated by super is replaced by a pooled one
+		super(in, CompressionPool.acquireInflater(), 1);
+		this.buf = CompressionPool.acquireBuffer(bufferSize);
+		if(gzip)
+		{
+			crc = new CRC32();
+			boolean success = false;
+			try
+			{
+				readHeader();
+				success = true;
+			}
+			finally
+			{
+				if(!success)
+				{
+					release();
+				}
+			}
+		}
+		else
+		{
+			crc = null;
+		}
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length)
+		throws IOException
+	{
+		if(released)
+		{
+			throw new IOException("Stream closed");
+		}
+		if(endOfStream)
+		{
+			return -1;
+		}
+		int result = super.read(bytes, offset, length);
+		if(result == -1)
+		{
+			if(crc != null)
+			{
+				readTrailer();
+			}
+			endOfStream = true;
+		}
+		else if(crc != null)
+		{
+			crc.update(bytes, offset, result);
+		}
+		return result;
+	}
+
+	@Override
+	public int available()
+		throws IOException
+	{
+		if(endOfStream)
+		{
+			return 0;
+		}
+		return super.available();
+	}
+
+	@Override
+	public void close()
+		throws IOException
+	{
+		if(released)
+		{
+			return;
+		}
+		try
+		{
+			super.close();
+		}
+		finally
+		{
+			release();
+		}
+	}
+
+	private void release()
+	{
+		if(!released)
+		{
+			released = true;
+			CompressionPool.releaseInflater(inf);
+			CompressionPool.releaseBuffer(buf);
+		}
+	}
+
+	private void readHeader()
+		throws IOException
+	{
+		if(readUnsignedShort(in) != GZIP_MAGIC)
+		{
+			throw new ZipException("Not in GZIP format");
+		}
+		if(readUnsignedByte(in) != 8)
+		{
+			throw new ZipException("Unsupported compression method");
+		}
+		int flags = readUnsignedByte(in);
+		// modification time, extra flags and operating system
+		skipBytes(in, 6);
+		if((flags & FEXTRA) == FEXTRA)
+		{
+			skipBytes(in, readUnsignedShort(in));
+		}
+		if((flags & FNAME) == FNAME)
+		{
+			skipZeroTerminated(in);
+		}
+		if((flags & FCOMMENT) == FCOMMENT)
+		{
+			skipZeroTerminated(in);
+		}
+		if((flags & FHCRC) == FHCRC)
+		{
+			skipBytes(in, 2);
+		}
+	}
+
+	private void readTrailer()
+		throws IOException
+	{
+		byte[] trailer = new byte[8];
+		int remaining = Math.min(inf.getRemaining(), trailer.length);
+		System.arraycopy(buf, len - inf.getRemaining(), trailer, 0, remaining);
+		for(int i = remaining; i < trailer.length; i++)
+		{
+			trailer[i] = (byte) readUnsignedByte(in);
+		}
+		long expectedCrc = readIntLittleEndian(trailer, 0) & 0xFFFF_FFFFL;
+		long expectedSize = readIntLittleEndian(trailer, 4) & 0xFFFF_FFFFL;
+		if(expectedCrc != crc.getValue() || expectedSize != (inf.getBytesWritten() & 0xFFFF_FFFFL))
+		{
+			throw new ZipException("Corrupt GZIP trailer");
+		}
+	}
+
+	private static int readIntLittleEndian(byte[] buffer, int offset)
+	{
+		return (buffer[offset] & 0xFF)
+			| (buffer[offset + 1] & 0xFF) << 8
+			| (buffer[offset + 2] & 0xFF) << 16
+			| (buffer[offset + 3] & 0xFF) << 24;
+	}
+
+	private static int readUnsignedShort(InputStream in)
+		throws IOException
+	{
+		int low = readUnsignedByte(in);
+		return (readUnsignedByte(in) << 8) | low;
+	}
+
+	private static int readUnsignedByte(InputStream in)
+		throws IOException
+	{
+		int result = in.read();
+		if(result == -1)
+		{
+			throw new EOFException();
+		}
+		return result;
+	}
+
+	private static void skipBytes(InputStream in, int count)
+		throws IOException
+	{
+		for(int i = 0; i < count; i++)
+		{
+			readUnsignedByte(in);
+		}
+	}
+
+	private static void skipZeroTerminated(InputStream in)
+		throws IOException
+	{
+		while(readUnsignedByte(in) != 0)
+		{
+			// skip
+		}
+	}
+}
@@ -38,12 +38,13 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.zip.GZIPInputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 public class SerializableDecoder<E extends Serializable>
 	implements Decoder<E>
 {
-	private boolean compressing;
+	private Compression compression;
 
 	public SerializableDecoder()
 	{
@@ -52,17 +53,47 @@ public class SerializableDecoder<E extends Serializable>
 
 	public SerializableDecoder(boolean compressing)
 	{
-		setCompressing(compressing);
+		this(compressing ? Compression.GZIP : null);
+	}
+
+	/**
+	 * @param compression the compression, null if the data isn't compressed.
+	 */
+	public SerializableDecoder(Compression compression)
+	{
+		this.compression = compression;
 	}
 
 	public boolean isCompressing()
 	{
-		return compressing;
+		return compression != null;
 	}
 
+	/**
+	 * Enables GZIP compression unless another compression has already been set.
+	 *
+	 * @param compressing whether or not the data is compressed.
+	 */
 	public void setCompressing(boolean compressing)
 	{
-		this.compressing = compressing;
+		if(!compressing)
+		{
+			compression = null;
+		}
+		else if(compression == null)
+		{
+			compression = Compression.GZIP;
+		}
+	}
+
+	public Compression getCompression()
+	{
+		return compression;
+	}
+
+	public void setCompression(Compression compression)
+	{
+		this.compression = compression;
 	}
 
 	@Override
@@ -82,14 +113,42 @@ public class SerializableDecoder<E extends Serializable>
 		}
 	}
 
+	/**
+	 * Decodes a batch created by SerializableEncoder.encodeAll.
+	 */
+	@Override
+	public List<E> decodeAll(byte[] bytes)
+	{
+		try(ObjectInputStream ois = createObjectInputStream(bytes))
+		{
+			int count = ois.readInt();
+			if(count < 0)
+			{
+				return null;
+			}
+			List<E> result = new ArrayList<>(Math.min(count, bytes.length));
+			for(int i = 0; i < count; i++)
+			{
+				@SuppressWarnings({"unchecked"})
+				E e =(E) ois.readObject();
+				result.add(e);
+			}
+			return result;
+		}
+		catch(Throwable e)
+		{
+			// silently ignore any problems
+			return null;
+		}
+	}
+
 	private ObjectInputStream createObjectInputStream(byte[] bytes)
 			throws IOException
 	{
 		ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
-		if(compressing)
+		if(compression != null)
 		{
-			GZIPInputStream gis = new GZIPInputStream(bis);
-			return new ObjectInputStream(gis);
+			return new ObjectInputStream(compression.decompress(bis));
 		}
 		return new ObjectInputStream(bis);
 	}
@@ -97,7 +156,7 @@ public class SerializableDecoder<E extends Serializable>
 	@Override
 	public String toString()
 	{
-		return "SerializableDecoder[compressing=" + compressing + "]";
+		return "SerializableDecoder[compression=" + compression + "]";
 	}
 
 }
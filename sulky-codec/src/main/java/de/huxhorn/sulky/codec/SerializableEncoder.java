@@ -34,16 +34,17 @@
 
 package de.huxhorn.sulky.codec;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
-import java.util.zip.GZIPOutputStream;
+import java.util.List;
 
 public class SerializableEncoder<E extends Serializable>
-	implements Encoder<E>
+	implements Encoder<E>, CompressionReporter
 {
-	private boolean compressing;
+	private Compression compression;
+	private CompressionListener compressionListener;
 
 	public SerializableEncoder()
 	{
@@ -52,52 +53,143 @@ public class SerializableEncoder<E extends Serializable>
 
 	public SerializableEncoder(boolean compressing)
 	{
-		this.compressing = compressing;
+		this(compressing ? Compression.GZIP : null);
+	}
+
+	/**
+	 * @param compression the compression, null if the data isn't compressed.
+	 */
+	public SerializableEncoder(Compression compression)
+	{
+		this.compression = compression;
 	}
 
 	public boolean isCompressing()
 	{
-		return compressing;
+		return compression != null;
 	}
 
+	/**
+	 * Enables GZIP compression unless another compression has already been set.
+	 *
+	 * @param compressing whether or not the data is compressed.
+	 */
 	public void setCompressing(boolean compressing)
 	{
-		this.compressing = compressing;
+		if(!compressing)
+		{
+			compression = null;
+		}
+		else if(compression == null)
+		{
+			compression = Compression.GZIP;
+		}
+	}
+
+	public Compression getCompression()
+	{
+		return compression;
+	}
+
+	public void setCompression(Compression compression)
+	{
+		this.compression = compression;
+	}
+
+	@Override
+	public void setCompressionListener(CompressionListener compressionListener)
+	{
+		this.compressionListener = compressionListener;
 	}
 
 	@Override
 	public byte[] encode(E object)
 	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		EncodingBuffer buffer = EncodingBuffer.acquire();
+		try
+		{
+			if(encode(object, buffer) < 0)
+			{
+				return null;
+			}
+			return buffer.toByteArray();
+		}
+		finally
+		{
+			buffer.release();
+		}
+	}
 
-		try(ObjectOutputStream oos = createObjectOutputStream(bos))
+	@Override
+	public int encode(E object, EncodingBuffer buffer)
+	{
+		int start = buffer.size();
+		try(ObjectOutputStream oos = createObjectOutputStream(buffer))
 		{
 			oos.writeObject(object);
-			oos.flush();
-			oos.close();
-			return bos.toByteArray();
 		}
 		catch(IOException e)
 		{
+			buffer.setSize(start);
 			e.printStackTrace(); // NOPMD
+			return -1;
+		}
+		return buffer.size() - start;
+	}
+
+	/**
+	 * Writes all objects into a single object stream, preceded by their number.
+	 *
+	 * Class descriptors are written only once and compression spans the whole batch. Objects
+	 * referenced by more than one element are therefore shared by the decoded elements, too.
+	 *
+	 * @param objects the objects to encode.
+	 * @return the encoded batch or null if any object couldn't be encoded.
+	 */
+	@Override
+	public byte[] encodeAll(List<E> objects)
+	{
+		if(objects == null)
+		{
 			return null;
 		}
+		EncodingBuffer buffer = EncodingBuffer.acquire();
+		try
+		{
+			try(ObjectOutputStream oos = createObjectOutputStream(buffer))
+			{
+				oos.writeInt(objects.size());
+				for(E object : objects)
+				{
+					oos.writeObject(object);
+				}
+			}
+			return buffer.toByteArray();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace(); // NOPMD
+			return null;
+		}
+		finally
+		{
+			buffer.release();
+		}
 	}
 
-	private ObjectOutputStream createObjectOutputStream(ByteArrayOutputStream bos)
+	private ObjectOutputStream createObjectOutputStream(OutputStream out)
 			throws IOException
 	{
-		if(compressing)
+		if(compression != null)
 		{
-			GZIPOutputStream gos = new GZIPOutputStream(bos);
-			return new ObjectOutputStream(gos);
+			return new ObjectOutputStream(compression.compress(out, compressionListener));
 		}
-		return new ObjectOutputStream(bos);
+		return new ObjectOutputStream(out);
 	}
 
 	@Override
 	public String toString()
 	{
-		return "SerializableEncoder[compressing=" + compressing + "]";
+		return "SerializableEncoder[compression=" + compression + "]";
 	}
 }
@@ -0,0 +1,242 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Serialization codec that writes class descriptors only once into a ClassDescriptorTable.
+ *
+ * Records contain the serialized object graph without stream header. Every class descriptor is
+ * replaced by its id in the table so each record can still be decoded on its own, given the table.
+ *
+ * Use ClassDescriptorTable.forDataFile(File) to keep the table next to the data file of a buffer.
+ * A record can't be decoded without the table it has been encoded with.
+ */
+public class SharedClassDescriptorCodec<E extends Serializable>
+	implements Codec<E>, CompressionReporter
+{
+	private final ClassDescriptorTable table;
+	private final Compression compression;
+	private CompressionListener compressionListener;
+
+	public SharedClassDescriptorCodec(ClassDescriptorTable table)
+	{
+		this(table, null);
+	}
+
+	/**
+	 * @param table the table containing the class descriptors.
+	 * @param compression the compression, null if the data isn't compressed.
+	 */
+	public SharedClassDescriptorCodec(ClassDescriptorTable table, Compression compression)
+	{
+		this.table = Objects.requireNonNull(table, "table must not be null!");
+		this.compression = compression;
+	}
+
+	public ClassDescriptorTable getTable()
+	{
+		return table;
+	}
+
+	public Compression getCompression()
+	{
+		return compression;
+	}
+
+	@Override
+	public void setCompressionListener(CompressionListener compressionListener)
+	{
+		this.compressionListener = compressionListener;
+	}
+
+	@Override
+	public byte[] encode(E object)
+	{
+		EncodingBuffer buffer = EncodingBuffer.acquire();
+		try
+		{
+			if(encode(object, buffer) < 0)
+			{
+				return null;
+			}
+			return buffer.toByteArray();
+		}
+		finally
+		{
+			buffer.release();
+		}
+	}
+
+	@Override
+	public int encode(E object, EncodingBuffer buffer)
+	{
+		int start = buffer.size();
+		try(ObjectOutputStream oos = new SharedDescriptorOutputStream(compress(buffer), table))
+		{
+			oos.writeObject(object);
+		}
+		catch(IOException e)
+		{
+			buffer.setSize(start);
+			e.printStackTrace(); // NOPMD
+			return -1;
+		}
+		return buffer.size() - start;
+	}
+
+	@Override
+	public E decode(byte[] bytes)
+	{
+		try(ObjectInputStream ois = new SharedDescriptorInputStream(decompress(new ByteArrayInputStream(bytes)), table))
+		{
+			Object result = ois.readObject();
+			@SuppressWarnings({"unchecked"})
+			E e =(E) result;
+			return e;
+		}
+		catch(Throwable e)
+		{
+			// silently ignore any problems
+			return null;
+		}
+	}
+
+	private OutputStream compress(OutputStream out)
+		throws IOException
+	{
+		if(compression != null)
+		{
+			return compression.compress(out, compressionListener);
+		}
+		return out;
+	}
+
+	private InputStream decompress(InputStream in)
+		throws IOException
+	{
+		if(compression != null)
+		{
+			return compression.decompress(in);
+		}
+		return in;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SharedClassDescriptorCodec[table=" + table + ", compression=" + compression + "]";
+	}
+
+	private static class SharedDescriptorOutputStream
+		extends ObjectOutputStream
+	{
+		private final ClassDescriptorTable table;
+
+		SharedDescriptorOutputStream(OutputStream out, ClassDescriptorTable table)
+			throws IOException
+		{
+			super(out);
+			this.table = table;
+		}
+
+		@Override
+		protected void writeStreamHeader()
+		{
+			// the header is implied
+		}
+
+		@Override
+		protected void writeClassDescriptor(ObjectStreamClass desc)
+			throws IOException
+		{
+			int id = table.getId(desc);
+			while((id & ~0x7F) != 0)
+			{
+				write((id & 0x7F) | 0x80);
+				id >>>= 7;
+			}
+			write(id);
+		}
+	}
+
+	private static class SharedDescriptorInputStream
+		extends ObjectInputStream
+	{
+		private final ClassDescriptorTable table;
+
+		SharedDescriptorInputStream(InputStream in, ClassDescriptorTable table)
+			throws IOException
+		{
+			super(in);
+			this.table = table;
+		}
+
+		@Override
+		protected void readStreamHeader()
+		{
+			// the header is implied
+		}
+
+		@Override
+		protected ObjectStreamClass readClassDescriptor()
+			throws IOException
+		{
+			int id = 0;
+			for(int shift = 0; ; shift += 7)
+			{
+				if(shift > 28)
+				{
+					throw new IOException("Invalid class descriptor id!");
+				}
+				int b = readUnsignedByte();
+				id |= (b & 0x7F) << shift;
+				if((b & 0x80) == 0)
+				{
+					return table.getDescriptor(id);
+				}
+			}
+		}
+	}
+}
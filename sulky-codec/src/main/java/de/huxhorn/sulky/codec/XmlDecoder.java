@@ -37,12 +37,11 @@ package de.huxhorn.sulky.codec;
 import java.beans.XMLDecoder;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
 
 public class XmlDecoder<E>
 	implements Decoder<E>
 {
-	private boolean compressing;
+	private Compression compression;
 
 	public XmlDecoder()
 	{
@@ -51,17 +50,47 @@ public class XmlDecoder<E>
 
 	public XmlDecoder(boolean compressing)
 	{
-		setCompressing(compressing);
+		this(compressing ? Compression.GZIP : null);
+	}
+
+	/**
+	 * @param compression the compression, null if the data isn't compressed.
+	 */
+	public XmlDecoder(Compression compression)
+	{
+		this.compression = compression;
 	}
 
 	public boolean isCompressing()
 	{
-		return compressing;
+		return compression != null;
 	}
 
+	/**
+	 * Enables GZIP compression unless another compression has already been set.
+	 *
+	 * @param compressing whether or not the data is compressed.
+	 */
 	public void setCompressing(boolean compressing)
 	{
-		this.compressing = compressing;
+		if(!compressing)
+		{
+			compression = null;
+		}
+		else if(compression == null)
+		{
+			compression = Compression.GZIP;
+		}
+	}
+
+	public Compression getCompression()
+	{
+		return compression;
+	}
+
+	public void setCompression(Compression compression)
+	{
+		this.compression = compression;
 	}
 
 	@Override
@@ -85,10 +114,9 @@ public class XmlDecoder<E>
 			throws IOException
 	{
 		ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
-		if(compressing)
+		if(compression != null)
 		{
-			GZIPInputStream gis = new GZIPInputStream(bis);
-			return new XMLDecoder(gis);
+			return new XMLDecoder(compression.decompress(bis));
 		}
 		return new XMLDecoder(bis);
 	}
@@ -96,6 +124,6 @@ public class XmlDecoder<E>
 	@Override
 	public String toString()
 	{
-		return "XmlDecoder[compressing=" + compressing + "]";
+		return "XmlDecoder[compression=" + compression + "]";
 	}
 }
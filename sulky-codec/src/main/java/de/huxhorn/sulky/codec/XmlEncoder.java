@@ -35,9 +35,8 @@
 package de.huxhorn.sulky.codec;
 
 import java.beans.XMLEncoder;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPOutputStream;
+import java.io.OutputStream;
 
 /**
  * This class does only support XML serialization for the simple case where the class to serialize
@@ -48,9 +47,10 @@ import java.util.zip.GZIPOutputStream;
  * @param <E> the type to be encoded
  */
 public class XmlEncoder<E>
-	implements Encoder<E>
+	implements Encoder<E>, CompressionReporter
 {
-	private boolean compressing;
+	private Compression compression;
+	private CompressionListener compressionListener;
 
 	public XmlEncoder()
 	{
@@ -59,7 +59,15 @@ public class XmlEncoder<E>
 
 	public XmlEncoder(boolean compressing)
 	{
-		this.compressing = compressing;
+		this(compressing ? Compression.GZIP : null);
+	}
+
+	/**
+	 * @param compression the compression, null if the data isn't compressed.
+	 */
+	public XmlEncoder(Compression compression)
+	{
+		this.compression = compression;
 	}
 
 	/**
@@ -78,46 +86,90 @@ public class XmlEncoder<E>
 
 	public boolean isCompressing()
 	{
-		return compressing;
+		return compression != null;
 	}
 
+	/**
+	 * Enables GZIP compression unless another compression has already been set.
+	 *
+	 * @param compressing whether or not the data is compressed.
+	 */
 	public void setCompressing(boolean compressing)
 	{
-		this.compressing = compressing;
+		if(!compressing)
+		{
+			compression = null;
+		}
+		else if(compression == null)
+		{
+			compression = Compression.GZIP;
+		}
+	}
+
+	public Compression getCompression()
+	{
+		return compression;
+	}
+
+	public void setCompression(Compression compression)
+	{
+		this.compression = compression;
+	}
+
+	@Override
+	public void setCompressionListener(CompressionListener compressionListener)
+	{
+		this.compressionListener = compressionListener;
 	}
 
 	@Override
 	public byte[] encode(E object)
 	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		EncodingBuffer buffer = EncodingBuffer.acquire();
+		try
+		{
+			if(encode(object, buffer) < 0)
+			{
+				return null;
+			}
+			return buffer.toByteArray();
+		}
+		finally
+		{
+			buffer.release();
+		}
+	}
 
-		try(XMLEncoder encoder=createXmlEncoder(bos))
+	@Override
+	public int encode(E object, EncodingBuffer buffer)
+	{
+		int start = buffer.size();
+		try(XMLEncoder encoder=createXmlEncoder(buffer))
 		{
 			encoder.writeObject(object);
-			encoder.close();
-			return bos.toByteArray();
 		}
 		catch(IOException e)
 		{
+			buffer.setSize(start);
 			e.printStackTrace(); // NOPMD
-			return null;
+			return -1;
 		}
+		return buffer.size() - start;
 	}
 
-	private XMLEncoder createXmlEncoder(ByteArrayOutputStream bos)
+	private XMLEncoder createXmlEncoder(OutputStream out)
 			throws IOException
 	{
-		if(compressing)
+		if(compression != null)
 		{
-			GZIPOutputStream gos = new GZIPOutputStream(bos);
-			return new XMLEncoder(gos);
+			return new XMLEncoder(compression.compress(out, compressionListener));
 		}
-		return new XMLEncoder(bos);
+		return new XMLEncoder(out);
 	}
 
 	@Override
 	public String toString()
 	{
-		return "XmlEncoder[compressing=" + compressing + "]";
+		return "XmlEncoder[compression=" + compression + "]";
 	}
 }
@@ -0,0 +1,180 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.binary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the values written by BinaryOutput from a byte array.
+ */
+final class BinaryInput
+{
+	private final byte[] bytes;
+	private int position;
+
+	BinaryInput(byte[] bytes)
+	{
+		this.bytes = bytes;
+	}
+
+	int readByte()
+		throws IOException
+	{
+		if(position >= bytes.length)
+		{
+			throw new EOFException();
+		}
+		return bytes[position++];
+	}
+
+	int readVarInt()
+		throws IOException
+	{
+		int result = 0;
+		for(int shift = 0; shift < 32; shift += 7)
+		{
+			int b = readByte();
+			result |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+			{
+				return result;
+			}
+		}
+		throw new StreamCorruptedException("Malformed varint!");
+	}
+
+	long readVarLong()
+		throws IOException
+	{
+		long result = 0;
+		for(int shift = 0; shift < 64; shift += 7)
+		{
+			int b = readByte();
+			result |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+			{
+				return result;
+			}
+		}
+		throw new StreamCorruptedException("Malformed varint!");
+	}
+
+	int readInt()
+		throws IOException
+	{
+		int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	long readLong()
+		throws IOException
+	{
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	float readFloat()
+		throws IOException
+	{
+		return Float.intBitsToFloat(readFixedInt());
+	}
+
+	double readDouble()
+		throws IOException
+	{
+		long high = readFixedInt();
+		long low = readFixedInt();
+		return Double.longBitsToDouble((high << 32) | (low & 0xFFFFFFFFL));
+	}
+
+	private int readFixedInt()
+		throws IOException
+	{
+		if(bytes.length - position < 4)
+		{
+			throw new EOFException();
+		}
+		int result = (bytes[position] & 0xFF) << 24
+				| (bytes[position + 1] & 0xFF) << 16
+				| (bytes[position + 2] & 0xFF) << 8
+				| (bytes[position + 3] & 0xFF);
+		position += 4;
+		return result;
+	}
+
+	byte[] readBytes()
+		throws IOException
+	{
+		int length = readLength();
+		if(length < 0)
+		{
+			return null;
+		}
+		byte[] result = new byte[length];
+		System.arraycopy(bytes, position, result, 0, length);
+		position += length;
+		return result;
+	}
+
+	String readString()
+		throws IOException
+	{
+		int length = readLength();
+		if(length < 0)
+		{
+			return null;
+		}
+		String result = new String(bytes, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return result;
+	}
+
+	/**
+	 * @return the length of a nullable value or -1 for null.
+	 */
+	private int readLength()
+		throws IOException
+	{
+		int result = readVarInt() - 1;
+		if(result < -1 || result > bytes.length - position)
+		{
+			throw new StreamCorruptedException("Invalid length " + result + "!");
+		}
+		return result;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.binary;
+
+import de.huxhorn.sulky.codec.EncodingBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the values of the binary record format.
+ *
+ * int, long and short values are written as zigzag varints so small values need a single byte.
+ * Nullable values are prefixed with their varint length + 1, 0 meaning null.
+ */
+final class BinaryOutput
+{
+	private BinaryOutput() {}
+
+	static void writeVarInt(EncodingBuffer buffer, int value)
+	{
+		int remaining = value;
+		while((remaining & ~0x7F) != 0)
+		{
+			buffer.write((remaining & 0x7F) | 0x80);
+			remaining >>>= 7;
+		}
+		buffer.write(remaining);
+	}
+
+	static void writeVarLong(EncodingBuffer buffer, long value)
+	{
+		long remaining = value;
+		while((remaining & ~0x7FL) != 0)
+		{
+			buffer.write((int) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+		buffer.write((int) remaining);
+	}
+
+	static void writeInt(EncodingBuffer buffer, int value)
+	{
+		writeVarInt(buffer, (value << 1) ^ (value >> 31));
+	}
+
+	static void writeLong(EncodingBuffer buffer, long value)
+	{
+		writeVarLong(buffer, (value << 1) ^ (value >> 63));
+	}
+
+	static void writeFloat(EncodingBuffer buffer, float value)
+	{
+		writeFixedInt(buffer, Float.floatToIntBits(value));
+	}
+
+	static void writeDouble(EncodingBuffer buffer, double value)
+	{
+		long bits = Double.doubleToLongBits(value);
+		writeFixedInt(buffer, (int) (bits >>> 32));
+		writeFixedInt(buffer, (int) bits);
+	}
+
+	private static void writeFixedInt(EncodingBuffer buffer, int value)
+	{
+		buffer.write(value >>> 24);
+		buffer.write(value >>> 16);
+		buffer.write(value >>> 8);
+		buffer.write(value);
+	}
+
+	static void writeBytes(EncodingBuffer buffer, byte[] value)
+	{
+		if(value == null)
+		{
+			buffer.write(0);
+			return;
+		}
+		writeVarInt(buffer, value.length + 1);
+		buffer.write(value, 0, value.length);
+	}
+
+	static void writeString(EncodingBuffer buffer, String value)
+	{
+		writeBytes(buffer, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+	}
+}
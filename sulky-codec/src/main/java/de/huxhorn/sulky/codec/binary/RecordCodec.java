@@ -0,0 +1,298 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.binary;
+
+import de.huxhorn.sulky.codec.Codec;
+import de.huxhorn.sulky.codec.EncodingBuffer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Codec writing the given fields of a class in a compact binary form.
+ *
+ * The fields are resolved once using the given lookup, which must have access to them, e.g.
+ * MethodHandles.lookup() called by the class itself. They are accessed using method handles so
+ * neither access checks have to be suppressed nor reflection is used while encoding or decoding.
+ *
+ * Instances are created using the constructor taking the values of all fields in the given order.
+ * If there is no such constructor, the default constructor is used and the fields are set afterwards.
+ * This requires that none of the fields is final.
+ *
+ * Supported field types are primitives, their wrappers, String, byte[] and enums.
+ *
+ * The encoded form consists of the varint number of fields + 1, 0 meaning null, followed by the
+ * values of the fields. The field list is the schema of the data: new fields must only be appended.
+ * Fields missing in older data are passed to the constructor as null, zero or false or keep the value
+ * assigned by the default constructor. Additional fields written by a newer schema are ignored.
+ *
+ * @param <E> the type of the records.
+ */
+public class RecordCodec<E>
+	implements Codec<E>
+{
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType DEFAULT_CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+	private final Class<E> type;
+	private final RecordField[] fields;
+	private final List<String> fieldNames;
+	private final Object[] defaultValues;
+	private final MethodHandle constructor;
+	private final MethodHandle[] setters;
+
+	/**
+	 * @param lookup the lookup having access to the fields and constructor of the type.
+	 * @param type the type of the records.
+	 * @param fieldNames the names of the fields in the order they are written.
+	 * @throws IllegalArgumentException if a field doesn't exist, has an unsupported type, isn't accessible
+	 * or if the type can't be instantiated.
+	 */
+	public RecordCodec(MethodHandles.Lookup lookup, Class<E> type, String... fieldNames)
+	{
+		Objects.requireNonNull(lookup, "lookup must not be null!");
+		this.type = Objects.requireNonNull(type, "type must not be null!");
+		Objects.requireNonNull(fieldNames, "fieldNames must not be null!");
+		if(fieldNames.length == 0)
+		{
+			throw new IllegalArgumentException("fieldNames must not be empty!");
+		}
+
+		Set<String> names = new HashSet<>();
+		List<Field> reflectedFields = new ArrayList<>(fieldNames.length);
+		RecordField[] recordFields = new RecordField[fieldNames.length];
+		Object[] defaults = new Object[fieldNames.length];
+		Class<?>[] fieldTypes = new Class<?>[fieldNames.length];
+		for(int i = 0; i < fieldNames.length; i++)
+		{
+			String name = Objects.requireNonNull(fieldNames[i], "fieldNames must not contain null!");
+			if(!names.add(name))
+			{
+				throw new IllegalArgumentException("Duplicate field " + name + "!");
+			}
+			Field field = findField(type, name);
+			try
+			{
+				recordFields[i] = RecordField.of(lookup, field);
+			}
+			catch(IllegalAccessException e)
+			{
+				throw new IllegalArgumentException("Field " + name + " of " + type.getName() + " isn't accessible!", e);
+			}
+			reflectedFields.add(field);
+			defaults[i] = recordFields[i].getDefaultValue();
+			fieldTypes[i] = field.getType();
+		}
+		this.fields = recordFields;
+		this.fieldNames = Collections.unmodifiableList(Arrays.asList(fieldNames.clone()));
+		this.defaultValues = defaults;
+
+		MethodHandle recordConstructor = findConstructor(lookup, type, fieldTypes);
+		if(recordConstructor != null)
+		{
+			this.constructor = recordConstructor.asSpreader(Object[].class, fieldTypes.length).asType(CONSTRUCTOR_TYPE);
+			this.setters = null;
+			return;
+		}
+		MethodHandle defaultConstructor = findConstructor(lookup, type);
+		if(defaultConstructor == null)
+		{
+			throw new IllegalArgumentException(type.getName() + " has neither an accessible constructor taking "
+					+ Arrays.toString(fieldTypes) + " nor an accessible default constructor!");
+		}
+		this.constructor = defaultConstructor.asType(DEFAULT_CONSTRUCTOR_TYPE);
+		this.setters = new MethodHandle[recordFields.length];
+		for(int i = 0; i < setters.length; i++)
+		{
+			Field field = reflectedFields.get(i);
+			try
+			{
+				setters[i] = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+			}
+			catch(IllegalAccessException e)
+			{
+				throw new IllegalArgumentException("Field " + field.getName() + " of " + type.getName() + " isn't writable!", e);
+			}
+		}
+	}
+
+	private static Field findField(Class<?> type, String name)
+	{
+		for(Class<?> current = type; current != null; current = current.getSuperclass())
+		{
+			Field field;
+			try
+			{
+				field = current.getDeclaredField(name);
+			}
+			catch(NoSuchFieldException e)
+			{
+				continue;
+			}
+			if(Modifier.isStatic(field.getModifiers()))
+			{
+				throw new IllegalArgumentException("Field " + name + " of " + type.getName() + " is static!");
+			}
+			return field;
+		}
+		throw new IllegalArgumentException(type.getName() + " doesn't have a field " + name + "!");
+	}
+
+	private static MethodHandle findConstructor(MethodHandles.Lookup lookup, Class<?> type, Class<?>... parameterTypes)
+	{
+		try
+		{
+			return lookup.findConstructor(type, MethodType.methodType(void.class, parameterTypes));
+		}
+		catch(NoSuchMethodException | IllegalAccessException e)
+		{
+			return null;
+		}
+	}
+
+	public Class<E> getType()
+	{
+		return type;
+	}
+
+	public List<String> getFieldNames()
+	{
+		return fieldNames;
+	}
+
+	@Override
+	public byte[] encode(E object)
+	{
+		EncodingBuffer buffer = EncodingBuffer.acquire();
+		try
+		{
+			if(encode(object, buffer) < 0)
+			{
+				return null;
+			}
+			return buffer.toByteArray();
+		}
+		finally
+		{
+			buffer.release();
+		}
+	}
+
+	@Override
+	public int encode(E object, EncodingBuffer buffer)
+	{
+		int start = buffer.size();
+		if(object == null)
+		{
+			buffer.write(0);
+			return 1;
+		}
+		try
+		{
+			BinaryOutput.writeVarInt(buffer, fields.length + 1);
+			for(RecordField field : fields)
+			{
+				field.write(object, buffer);
+			}
+			return buffer.size() - start;
+		}
+		catch(Throwable e)
+		{
+			buffer.setSize(start);
+			e.printStackTrace(); // NOPMD
+			return -1;
+		}
+	}
+
+	@Override
+	public E decode(byte[] bytes)
+	{
+		if(bytes == null)
+		{
+			return null;
+		}
+		try
+		{
+			BinaryInput input = new BinaryInput(bytes);
+			int count = input.readVarInt() - 1;
+			if(count < 0)
+			{
+				return null;
+			}
+			// fields appended by a newer schema are ignored
+			int known = Math.min(count, fields.length);
+			Object result;
+			if(setters == null)
+			{
+				Object[] values = defaultValues.clone();
+				for(int i = 0; i < known; i++)
+				{
+					values[i] = fields[i].read(input);
+				}
+				result = (Object) constructor.invokeExact(values);
+			}
+			else
+			{
+				result = (Object) constructor.invokeExact();
+				for(int i = 0; i < known; i++)
+				{
+					setters[i].invokeExact(result, fields[i].read(input));
+				}
+			}
+			return type.cast(result);
+		}
+		catch(Throwable e)
+		{
+			// silently ignore any problems
+			return null;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "RecordCodec[type=" + type.getName() + ", fieldNames=" + fieldNames + "]";
+	}
+}
@@ -0,0 +1,586 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.binary;
+
+import de.huxhorn.sulky.codec.EncodingBuffer;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * A field of a record written by RecordCodec.
+ *
+ * Primitive fields are read using method handles of the exact primitive type so encoding doesn't box.
+ */
+abstract class RecordField
+{
+	private static final MethodType OBJECT_GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private final String name;
+	private final Class<?> type;
+
+	RecordField(String name, Class<?> type)
+	{
+		this.name = name;
+		this.type = type;
+	}
+
+	static RecordField of(MethodHandles.Lookup lookup, Field field)
+		throws IllegalAccessException
+	{
+		String name = field.getName();
+		Class<?> type = field.getType();
+		MethodHandle getter = lookup.unreflectGetter(field);
+		if(type.isPrimitive())
+		{
+			getter = getter.asType(MethodType.methodType(type, Object.class));
+			if(type == boolean.class)
+			{
+				return new BooleanField(name, getter);
+			}
+			if(type == byte.class)
+			{
+				return new ByteField(name, getter);
+			}
+			if(type == short.class)
+			{
+				return new ShortField(name, getter);
+			}
+			if(type == char.class)
+			{
+				return new CharField(name, getter);
+			}
+			if(type == int.class)
+			{
+				return new IntField(name, getter);
+			}
+			if(type == long.class)
+			{
+				return new LongField(name, getter);
+			}
+			if(type == float.class)
+			{
+				return new FloatField(name, getter);
+			}
+			return new DoubleField(name, getter);
+		}
+		getter = getter.asType(OBJECT_GETTER_TYPE);
+		if(type == String.class)
+		{
+			return new StringField(name, getter);
+		}
+		if(type == byte[].class)
+		{
+			return new BytesField(name, getter);
+		}
+		if(type.isEnum())
+		{
+			return new EnumField(name, type, getter);
+		}
+		if(type == Boolean.class || type == Byte.class || type == Short.class || type == Character.class
+				|| type == Integer.class || type == Long.class || type == Float.class || type == Double.class)
+		{
+			return new BoxedField(name, type, getter);
+		}
+		throw new IllegalArgumentException("Field " + name + " has unsupported type " + type.getName() + "!");
+	}
+
+	String getName()
+	{
+		return name;
+	}
+
+	Class<?> getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return the value of a field that isn't contained in the encoded record.
+	 */
+	Object getDefaultValue()
+	{
+		return null;
+	}
+
+	abstract void write(Object record, EncodingBuffer buffer)
+		throws Throwable;
+
+	abstract Object read(BinaryInput input)
+		throws IOException;
+
+	private static final class BooleanField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		BooleanField(String name, MethodHandle getter)
+		{
+			super(name, boolean.class);
+			this.getter = getter;
+		}
+
+		@Override
+		Object getDefaultValue()
+		{
+			return Boolean.FALSE;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			buffer.write((boolean) getter.invokeExact(record) ? 1 : 0);
+		}
+
+		@Override
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			return input.readByte() != 0;
+		}
+	}
+
+	private static final class ByteField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		ByteField(String name, MethodHandle getter)
+		{
+			super(name, byte.class);
+			this.getter = getter;
+		}
+
+		@Override
+		Object getDefaultValue()
+		{
+			return (byte) 0;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			buffer.write((byte) getter.invokeExact(record));
+		}
+
+		@Override
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			return (byte) input.readByte();
+		}
+	}
+
+	private static final class ShortField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		ShortField(String name, MethodHandle getter)
+		{
+			super(name, short.class);
+			this.getter = getter;
+		}
+
+		@Override
+		Object getDefaultValue()
+		{
+			return (short) 0;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			BinaryOutput.writeInt(buffer, (short) getter.invokeExact(record));
+		}
+
+		@Override
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			return (short) input.readInt();
+		}
+	}
+
+	private static final class CharField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		CharField(String name, MethodHandle getter)
+		{
+			super(name, char.class);
+			this.getter = getter;
+		}
+
+		@Override
+		Object getDefaultValue()
+		{
+			return (char) 0;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			BinaryOutput.writeVarInt(buffer, (char) getter.invokeExact(record));
+		}
+
+		@Override
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			return (char) input.readVarInt();
+		}
+	}
+
+	private static final class IntField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		IntField(String name, MethodHandle getter)
+		{
+			super(name, int.class);
+			this.getter = getter;
+		}
+
+		@Override
+		Object getDefaultValue()
+		{
+			return 0;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			BinaryOutput.writeInt(buffer, (int) getter.invokeExact(record));
+		}
+
+		@Override
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			return input.readInt();
+		}
+	}
+
+	private static final class LongField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		LongField(String name, MethodHandle getter)
+		{
+			super(name, long.class);
+			this.getter = getter;
+		}
+
+		@Override
+		Object getDefaultValue()
+		{
+			return 0L;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			BinaryOutput.writeLong(buffer, (long) getter.invokeExact(record));
+		}
+
+		@Override
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			return input.readLong();
+		}
+	}
+
+	private static final class FloatField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		FloatField(String name, MethodHandle getter)
+		{
+			super(name, float.class);
+			this.getter = getter;
+		}
+
+		@Override
+		Object getDefaultValue()
+		{
+			return 0.0f;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			BinaryOutput.writeFloat(buffer, (float) getter.invokeExact(record));
+		}
+
+		@Override
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			return input.readFloat();
+		}
+	}
+
+	private static final class DoubleField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		DoubleField(String name, MethodHandle getter)
+		{
+			super(name, double.class);
+			this.getter = getter;
+		}
+
+		@Override
+		Object getDefaultValue()
+		{
+			return 0.0;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			BinaryOutput.writeDouble(buffer, (double) getter.invokeExact(record));
+		}
+
+		@Override
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			return input.readDouble();
+		}
+	}
+
+	private static final class StringField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		StringField(String name, MethodHandle getter)
+		{
+			super(name, String.class);
+			this.getter = getter;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			BinaryOutput.writeString(buffer, (String) (Object) getter.invokeExact(record));
+		}
+
+		@Override
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			return input.readString();
+		}
+	}
+
+	private static final class BytesField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		BytesField(String name, MethodHandle getter)
+		{
+			super(name, byte[].class);
+			this.getter = getter;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			BinaryOutput.writeBytes(buffer, (byte[]) (Object) getter.invokeExact(record));
+		}
+
+		@Override
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			return input.readBytes();
+		}
+	}
+
+	/**
+	 * Enums are written by name so reordering the constants doesn't break existing data.
+	 */
+	private static final class EnumField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		EnumField(String name, Class<?> type, MethodHandle getter)
+		{
+			super(name, type);
+			this.getter = getter;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			Enum<?> value = (Enum<?>) (Object) getter.invokeExact(record);
+			BinaryOutput.writeString(buffer, value == null ? null : value.name());
+		}
+
+		@Override
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			String value = input.readString();
+			if(value == null)
+			{
+				return null;
+			}
+			return Enum.valueOf((Class) getType(), value);
+		}
+	}
+
+	/**
+	 * Boxed values are prefixed with a byte that is 0 for null and 1 otherwise.
+	 */
+	private static final class BoxedField
+		extends RecordField
+	{
+		private final MethodHandle getter;
+
+		BoxedField(String name, Class<?> type, MethodHandle getter)
+		{
+			super(name, type);
+			this.getter = getter;
+		}
+
+		@Override
+		void write(Object record, EncodingBuffer buffer)
+			throws Throwable
+		{
+			Object value = (Object) getter.invokeExact(record);
+			if(value == null)
+			{
+				buffer.write(0);
+				return;
+			}
+			buffer.write(1);
+			if(value instanceof Boolean)
+			{
+				buffer.write((Boolean) value ? 1 : 0);
+			}
+			else if(value instanceof Byte)
+			{
+				buffer.write((Byte) value);
+			}
+			else if(value instanceof Character)
+			{
+				BinaryOutput.writeVarInt(buffer, (Character) value);
+			}
+			else if(value instanceof Long)
+			{
+				BinaryOutput.writeLong(buffer, (Long) value);
+			}
+			else if(value instanceof Float)
+			{
+				BinaryOutput.writeFloat(buffer, (Float) value);
+			}
+			else if(value instanceof Double)
+			{
+				BinaryOutput.writeDouble(buffer, (Double) value);
+			}
+			else
+			{
+				// Short or Integer
+				BinaryOutput.writeInt(buffer, ((Number) value).intValue());
+			}
+		}
+
+		@Override
+		Object read(BinaryInput input)
+			throws IOException
+		{
+			if(input.readByte() == 0)
+			{
+				return null;
+			}
+			Class<?> type = getType();
+			if(type == Boolean.class)
+			{
+				return input.readByte() != 0;
+			}
+			if(type == Byte.class)
+			{
+				return (byte) input.readByte();
+			}
+			if(type == Character.class)
+			{
+				return (char) input.readVarInt();
+			}
+			if(type == Long.class)
+			{
+				return input.readLong();
+			}
+			if(type == Float.class)
+			{
+				return input.readFloat();
+			}
+			if(type == Double.class)
+			{
+				return input.readDouble();
+			}
+			if(type == Short.class)
+			{
+				return (short) input.readInt();
+			}
+			return input.readInt();
+		}
+	}
+}
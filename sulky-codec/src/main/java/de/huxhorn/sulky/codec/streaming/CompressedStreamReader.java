@@ -0,0 +1,109 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import de.huxhorn.sulky.codec.Compression;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Objects;
+
+/**
+ * Reads the objects written by CompressedStreamWriter.
+ *
+ * Inflater state and buffer are created once for the whole stream.
+ *
+ * Instances are not thread-safe.
+ *
+ * @param <E> the type of the objects.
+ */
+public class CompressedStreamReader<E>
+	implements Closeable
+{
+	public static final int DEFAULT_BUFFER_SIZE = CompressedStreamWriter.DEFAULT_BUFFER_SIZE;
+
+	private final StreamingDecoder<E> decoder;
+	private final PushbackInputStream decompressed;
+	private final InputStream shielded;
+
+	public CompressedStreamReader(StreamingDecoder<E> decoder, InputStream in)
+		throws IOException
+	{
+		this(decoder, in, Compression.GZIP, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param decoder the decoder reading the objects.
+	 * @param in the stream containing the compressed data. It's closed by close().
+	 * @param compression the compression used by the writer. The level is ignored.
+	 * @param bufferSize the size of the input buffer.
+	 * @throws IOException if the header couldn't be read.
+	 */
+	public CompressedStreamReader(StreamingDecoder<E> decoder, InputStream in, Compression compression, int bufferSize)
+		throws IOException
+	{
+		this.decoder = Objects.requireNonNull(decoder, "decoder must not be null!");
+		Objects.requireNonNull(in, "in must not be null!");
+		Objects.requireNonNull(compression, "compression must not be null!");
+		this.decompressed = new PushbackInputStream(compression.decompress(in, bufferSize), 1);
+		this.shielded = new ShieldedInputStream(decompressed);
+	}
+
+	/**
+	 * Blocks until the next object is available.
+	 *
+	 * @return the next object or null if the end of the compressed data has been reached.
+	 * @throws IOException if the object couldn't be read.
+	 */
+	public E read()
+		throws IOException
+	{
+		int b = decompressed.read();
+		if(b == -1)
+		{
+			return null;
+		}
+		decompressed.unread(b);
+		return decoder.decode(shielded);
+	}
+
+	@Override
+	public void close()
+		throws IOException
+	{
+		decompressed.close();
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import de.huxhorn.sulky.codec.Compression;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Writes many objects into a single compressed stream, e.g. a socket.
+ *
+ * In contrast to GZIPStreamingEncoderWrapper, header, Deflater state and buffer are created once
+ * and the dictionary is shared by all objects, so repeated content compresses well. The result can be
+ * read using CompressedStreamReader.
+ *
+ * If autoFlush is enabled, every object is sync flushed so the receiver can decode it immediately.
+ * Otherwise, data is only flushed by flush() and close().
+ *
+ * Instances are not thread-safe.
+ *
+ * @param <E> the type of the objects.
+ */
+public class CompressedStreamWriter<E>
+	implements Closeable, Flushable
+{
+	public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+	private final StreamingEncoder<E> encoder;
+	private final OutputStream compressed;
+	private final OutputStream shielded;
+	private final boolean autoFlush;
+
+	public CompressedStreamWriter(StreamingEncoder<E> encoder, OutputStream out)
+		throws IOException
+	{
+		this(encoder, out, Compression.GZIP, DEFAULT_BUFFER_SIZE, true);
+	}
+
+	/**
+	 * @param encoder the encoder writing the objects.
+	 * @param out the stream receiving the compressed data. It's closed by close().
+	 * @param compression the compression.
+	 * @param bufferSize the size of the output buffer. High-bandwidth links benefit from larger buffers.
+	 * @param autoFlush whether or not every object is flushed.
+	 * @throws IOException if the header couldn't be written.
+	 */
+	public CompressedStreamWriter(StreamingEncoder<E> encoder, OutputStream out, Compression compression, int bufferSize, boolean autoFlush)
+		throws IOException
+	{
+		this.encoder = Objects.requireNonNull(encoder, "encoder must not be null!");
+		Objects.requireNonNull(out, "out must not be null!");
+		Objects.requireNonNull(compression, "compression must not be null!");
+		this.compressed = compression.compress(out, bufferSize, true);
+		this.shielded = new ShieldedOutputStream(compressed);
+		this.autoFlush = autoFlush;
+		if(autoFlush)
+		{
+			// make the header available to the reader
+			compressed.flush();
+		}
+	}
+
+	public boolean isAutoFlush()
+	{
+		return autoFlush;
+	}
+
+	public void write(E object)
+		throws IOException
+	{
+		encoder.encode(object, shielded);
+		if(autoFlush)
+		{
+			compressed.flush();
+		}
+	}
+
+	/**
+	 * Sync flushes all pending data so everything written so far can be decoded by the receiver.
+	 */
+	@Override
+	public void flush()
+		throws IOException
+	{
+		compressed.flush();
+	}
+
+	/**
+	 * Finishes the compressed data and closes the stream.
+	 */
+	@Override
+	public void close()
+		throws IOException
+	{
+		compressed.close();
+	}
+}
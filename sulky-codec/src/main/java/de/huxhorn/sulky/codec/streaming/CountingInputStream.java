@@ -0,0 +1,107 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from the wrapped stream.
+ */
+class CountingInputStream
+	extends FilterInputStream
+{
+	private long count;
+	private long mark;
+
+	CountingInputStream(InputStream in)
+	{
+		super(in);
+	}
+
+	long getCount()
+	{
+		return count;
+	}
+
+	@Override
+	public int read()
+		throws IOException
+	{
+		int result = in.read();
+		if(result >= 0)
+		{
+			count++;
+		}
+		return result;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length)
+		throws IOException
+	{
+		int result = in.read(bytes, offset, length);
+		if(result > 0)
+		{
+			count += result;
+		}
+		return result;
+	}
+
+	@Override
+	public long skip(long n)
+		throws IOException
+	{
+		long result = in.skip(n);
+		count += result;
+		return result;
+	}
+
+	@Override
+	public synchronized void mark(int readLimit)
+	{
+		in.mark(readLimit);
+		mark = count;
+	}
+
+	@Override
+	public synchronized void reset()
+		throws IOException
+	{
+		in.reset();
+		count = mark;
+	}
+}
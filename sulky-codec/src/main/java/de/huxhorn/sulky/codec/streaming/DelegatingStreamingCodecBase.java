@@ -34,15 +34,18 @@
 
 package de.huxhorn.sulky.codec.streaming;
 
+import de.huxhorn.sulky.codec.CompressionListener;
+import de.huxhorn.sulky.codec.CompressionReporter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 public class DelegatingStreamingCodecBase<E>
-	implements StreamingCodec<E>
+	implements StreamingCodec<E>, CompressionReporter
 {
 	private StreamingEncoder<E> encoder;
 	private StreamingDecoder<E> decoder;
+	private CompressionListener compressionListener;
 
 	protected DelegatingStreamingCodecBase()
 	{
@@ -63,6 +66,10 @@ public class DelegatingStreamingCodecBase<E>
 	protected void setEncoder(StreamingEncoder<E> encoder)
 	{
 		this.encoder = encoder;
+		if(compressionListener != null)
+		{
+			forwardCompressionListener();
+		}
 	}
 
 	protected StreamingDecoder<E> getDecoder()
@@ -75,6 +82,24 @@ public class DelegatingStreamingCodecBase<E>
 		this.decoder = decoder;
 	}
 
+	/**
+	 * Forwards the listener to the encoder if it is a CompressionReporter, including encoders set later.
+	 */
+	@Override
+	public void setCompressionListener(CompressionListener compressionListener)
+	{
+		this.compressionListener = compressionListener;
+		forwardCompressionListener();
+	}
+
+	private void forwardCompressionListener()
+	{
+		if(encoder instanceof CompressionReporter)
+		{
+			((CompressionReporter) encoder).setCompressionListener(compressionListener);
+		}
+	}
+
 	@Override
 	public E decode(InputStream from) throws IOException
 	{
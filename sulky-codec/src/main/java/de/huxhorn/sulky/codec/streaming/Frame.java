@@ -0,0 +1,208 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import de.huxhorn.sulky.codec.Compression;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A single length-prefixed frame as written by FramedStreamingCodec.
+ *
+ * A frame consists of a five byte header followed by the payload. The header contains the length of the
+ * payload as big endian int and a flags byte describing the compression of the payload.
+ *
+ * Frames are immutable views of a byte array that is never modified after the frame has been created.
+ * They can be decoded concurrently and forwarded using writeTo without being decoded and encoded again.
+ */
+public final class Frame
+{
+	public static final int HEADER_SIZE = 5;
+
+	public static final byte UNCOMPRESSED = 0;
+	public static final byte GZIP = 1;
+	public static final byte DEFLATE = 2;
+
+	private final byte[] bytes;
+	private final int offset;
+	private final int length;
+	private final byte flags;
+
+	/**
+	 * @param bytes the array containing the payload.
+	 * @param offset the offset of the payload in the array.
+	 * @param length the length of the payload.
+	 * @param flags the compression of the payload.
+	 */
+	Frame(byte[] bytes, int offset, int length, byte flags)
+	{
+		this.bytes = Objects.requireNonNull(bytes, "bytes must not be null!");
+		if(offset < 0 || length < 0 || offset + length > bytes.length)
+		{
+			throw new IllegalArgumentException("Invalid offset " + offset + " and length " + length + " for " + bytes.length + " bytes!");
+		}
+		this.offset = offset;
+		this.length = length;
+		this.flags = flags;
+	}
+
+	public byte getFlags()
+	{
+		return flags;
+	}
+
+	public boolean isCompressed()
+	{
+		return flags != UNCOMPRESSED;
+	}
+
+	/**
+	 * @return the length of the payload, excluding the header.
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * @return a read-only view of the payload.
+	 */
+	public ByteBuffer getPayload()
+	{
+		return ByteBuffer.wrap(bytes, offset, length).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns the uncompressed payload. The array of this frame is returned without copying if it contains
+	 * only the uncompressed payload so the result must not be modified.
+	 */
+	byte[] uncompressedPayload()
+		throws IOException
+	{
+		if(flags == UNCOMPRESSED)
+		{
+			if(offset == 0 && length == bytes.length)
+			{
+				return bytes;
+			}
+			byte[] result = new byte[length];
+			System.arraycopy(bytes, offset, result, 0, length);
+			return result;
+		}
+		try(InputStream in = openUncompressed())
+		{
+			byte[] buffer = new byte[Math.max(256, length * 4)];
+			int count = 0;
+			for(;;)
+			{
+				if(count == buffer.length)
+				{
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+				int read = in.read(buffer, count, buffer.length - count);
+				if(read < 0)
+				{
+					return Arrays.copyOf(buffer, count);
+				}
+				count += read;
+			}
+		}
+	}
+
+	private InputStream openUncompressed()
+		throws IOException
+	{
+		InputStream in = new ByteArrayInputStream(bytes, offset, length);
+		switch(flags)
+		{
+			case UNCOMPRESSED:
+				return in;
+			case GZIP:
+				return Compression.GZIP.decompress(in);
+			case DEFLATE:
+				return Compression.DEFLATE.decompress(in);
+			default:
+				throw new IOException("Unknown frame flags " + flags + "!");
+		}
+	}
+
+	/**
+	 * Writes header and payload of this frame unchanged.
+	 *
+	 * @param out the stream receiving the frame.
+	 * @throws IOException if writing fails.
+	 */
+	public void writeTo(OutputStream out)
+		throws IOException
+	{
+		out.write(header(length, flags));
+		out.write(bytes, offset, length);
+	}
+
+	static byte[] header(int length, byte flags)
+	{
+		return new byte[]{
+			(byte) (length >>> 24),
+			(byte) (length >>> 16),
+			(byte) (length >>> 8),
+			(byte) length,
+			flags,
+		};
+	}
+
+	static byte flagsOf(Compression compression)
+	{
+		if(compression == null)
+		{
+			return UNCOMPRESSED;
+		}
+		if(compression.getFraming() == Compression.Framing.GZIP)
+		{
+			return GZIP;
+		}
+		return DEFLATE;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Frame[length=" + length + ", flags=" + flags + "]";
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * Reads frames written by FramedStreamingCodec from a stream.
+ *
+ * The stream is read in chunks and the frames returned are views of those chunks, i.e. the payload
+ * isn't copied again. A chunk is never reused so frames stay valid after subsequent reads.
+ */
+public class FrameReader
+	implements Closeable
+{
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+	private final InputStream in;
+	private final int chunkSize;
+	private final int maxFrameLength;
+
+	private byte[] chunk;
+	private int position;
+	private int limit;
+
+	public FrameReader(InputStream in)
+	{
+		this(in, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	/**
+	 * @param in the stream containing the frames.
+	 * @param chunkSize the size of the chunks read at once. Larger frames are read into an array of their own.
+	 * @param maxFrameLength the maximum accepted payload length.
+	 */
+	public FrameReader(InputStream in, int chunkSize, int maxFrameLength)
+	{
+		this.in = Objects.requireNonNull(in, "in must not be null!");
+		if(chunkSize < Frame.HEADER_SIZE)
+		{
+			throw new IllegalArgumentException("chunkSize must be at least " + Frame.HEADER_SIZE + "!");
+		}
+		if(maxFrameLength < 0)
+		{
+			throw new IllegalArgumentException("maxFrameLength must not be negative!");
+		}
+		this.chunkSize = chunkSize;
+		this.maxFrameLength = maxFrameLength;
+		this.chunk = new byte[chunkSize];
+	}
+
+	/**
+	 * @return the next frame or null if the stream ended after the previous frame.
+	 * @throws EOFException if the stream ended within a frame.
+	 * @throws IOException if reading fails or the frame is invalid.
+	 */
+	public Frame read()
+		throws IOException
+	{
+		if(!fill(Frame.HEADER_SIZE))
+		{
+			if(position == limit)
+			{
+				return null;
+			}
+			throw new EOFException("Stream ended within frame header!");
+		}
+		int length = ((chunk[position] & 0xFF) << 24)
+			| ((chunk[position + 1] & 0xFF) << 16)
+			| ((chunk[position + 2] & 0xFF) << 8)
+			| (chunk[position + 3] & 0xFF);
+		byte flags = chunk[position + 4];
+		if(length < 0 || length > maxFrameLength)
+		{
+			throw new IOException("Invalid frame length " + length + "!");
+		}
+		position += Frame.HEADER_SIZE;
+		if(!fill(length))
+		{
+			throw new EOFException("Stream ended within frame payload!");
+		}
+		Frame result = new Frame(chunk, position, length, flags);
+		position += length;
+		return result;
+	}
+
+	/**
+	 * Makes sure that at least the given number of bytes are available in the current chunk.
+	 *
+	 * @return false if the stream ended before.
+	 */
+	private boolean fill(int required)
+		throws IOException
+	{
+		if(limit - position >= required)
+		{
+			return true;
+		}
+		if(chunk.length - position < required)
+		{
+			// frames have been handed out for the current chunk so it must not be modified.
+			byte[] newChunk = new byte[Math.max(chunkSize, required)];
+			int available = limit - position;
+			System.arraycopy(chunk, position, newChunk, 0, available);
+			chunk = newChunk;
+			position = 0;
+			limit = available;
+		}
+		while(limit - position < required)
+		{
+			int read = in.read(chunk, limit, chunk.length - limit);
+			if(read < 0)
+			{
+				return false;
+			}
+			limit += read;
+		}
+		return true;
+	}
+
+	@Override
+	public void close()
+		throws IOException
+	{
+		in.close();
+	}
+}
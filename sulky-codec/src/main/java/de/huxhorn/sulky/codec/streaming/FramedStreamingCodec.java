@@ -0,0 +1,198 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import de.huxhorn.sulky.codec.Codec;
+import de.huxhorn.sulky.codec.Compression;
+import de.huxhorn.sulky.codec.CompressionListener;
+import de.huxhorn.sulky.codec.CompressionReporter;
+import de.huxhorn.sulky.codec.EncodingBuffer;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Streaming codec writing every object as a length-prefixed Frame.
+ *
+ * Each frame is compressed on its own if a compression is given and the compressed payload is
+ * actually smaller. Readers can skip, batch or decode frames in parallel using a FrameReader and
+ * decode(Frame), and forward them without decoding using Frame.writeTo.
+ */
+public class FramedStreamingCodec<E>
+	implements StreamingCodec<E>, CompressionReporter
+{
+	private final Codec<E> codec;
+	private final Compression compression;
+	private CompressionListener compressionListener;
+
+	public FramedStreamingCodec(Codec<E> codec)
+	{
+		this(codec, null);
+	}
+
+	/**
+	 * @param codec the codec used for the payload of the frames.
+	 * @param compression the compression of the payload, null if the payload shouldn't be compressed.
+	 */
+	public FramedStreamingCodec(Codec<E> codec, Compression compression)
+	{
+		this.codec = Objects.requireNonNull(codec, "codec must not be null!");
+		this.compression = compression;
+	}
+
+	public Codec<E> getCodec()
+	{
+		return codec;
+	}
+
+	public Compression getCompression()
+	{
+		return compression;
+	}
+
+	/**
+	 * The listener receives the payload length and the stored payload length, i.e. both are equal
+	 * if compression didn't reduce the size.
+	 */
+	@Override
+	public void setCompressionListener(CompressionListener compressionListener)
+	{
+		this.compressionListener = compressionListener;
+	}
+
+	@Override
+	public void encode(E obj, OutputStream into)
+		throws IOException
+	{
+		EncodingBuffer buffer = EncodingBuffer.acquire();
+		try
+		{
+			int lengthPosition = buffer.reserveInt();
+			buffer.write(Frame.UNCOMPRESSED);
+			int length = codec.encode(obj, buffer);
+			if(length < 0)
+			{
+				throw new IOException("Couldn't encode " + obj + "!");
+			}
+			if(compression != null)
+			{
+				int uncompressedLength = length;
+				length = compress(buffer, length);
+				CompressionListener listener = compressionListener;
+				if(listener != null)
+				{
+					listener.compressed(uncompressedLength, length);
+				}
+			}
+			buffer.putInt(lengthPosition, length);
+			into.write(buffer.getBuffer(), 0, buffer.size());
+		}
+		finally
+		{
+			buffer.release();
+		}
+	}
+
+	/**
+	 * Replaces the payload in the buffer with its compressed form if that is smaller.
+	 *
+	 * @return the resulting payload length.
+	 */
+	private int compress(EncodingBuffer buffer, int length)
+		throws IOException
+	{
+		EncodingBuffer compressed = EncodingBuffer.acquire();
+		try
+		{
+			try(OutputStream out = compression.compress(compressed))
+			{
+				out.write(buffer.getBuffer(), Frame.HEADER_SIZE, length);
+			}
+			int compressedLength = compressed.size();
+			if(compressedLength >= length)
+			{
+				return length;
+			}
+			buffer.setSize(Frame.HEADER_SIZE - 1);
+			buffer.write(Frame.flagsOf(compression));
+			buffer.write(compressed.getBuffer(), 0, compressedLength);
+			return compressedLength;
+		}
+		finally
+		{
+			compressed.release();
+		}
+	}
+
+	/**
+	 * Reads a single frame from the stream and decodes it.
+	 *
+	 * Use a FrameReader to read a sequence of frames efficiently.
+	 */
+	@Override
+	public E decode(InputStream from)
+		throws IOException
+	{
+		// a chunk size of HEADER_SIZE makes sure that nothing beyond this frame is read
+		Frame frame = new FrameReader(from, Frame.HEADER_SIZE, FrameReader.DEFAULT_MAX_FRAME_LENGTH).read();
+		if(frame == null)
+		{
+			throw new EOFException("No frame available!");
+		}
+		return decode(frame);
+	}
+
+	/**
+	 * Decodes the payload of the given frame. This method can be called concurrently.
+	 *
+	 * @param frame the frame.
+	 * @return the decoded object, may be null if the codec failed to decode the payload.
+	 * @throws IOException if the payload couldn't be decompressed.
+	 */
+	public E decode(Frame frame)
+		throws IOException
+	{
+		Objects.requireNonNull(frame, "frame must not be null!");
+		return codec.decode(frame.uncompressedPayload());
+	}
+
+	@Override
+	public String toString()
+	{
+		return "FramedStreamingCodec[codec=" + codec + ", compression=" + compression + "]";
+	}
+}
@@ -34,24 +34,47 @@
 
 package de.huxhorn.sulky.codec.streaming;
 
+import de.huxhorn.sulky.codec.Compression;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
 
+/**
+ * Reads a single GZIP member per object and closes the stream afterwards.
+ *
+ * Inflater and buffer are pooled per thread. Use CompressedStreamReader to read many objects
+ * from a single compressed stream.
+ *
+ * @param <E> the type of the objects.
+ */
 public class GZIPStreamingDecoderWrapper<E>
 	implements StreamingDecoder<E>
 {
 	private final StreamingDecoder<E> wrapped;
+	private final int bufferSize;
 
 	public GZIPStreamingDecoderWrapper(StreamingDecoder<E> wrapped)
 	{
+		this(wrapped, Compression.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param wrapped the wrapped decoder.
+	 * @param bufferSize the size of the input buffer.
+	 */
+	public GZIPStreamingDecoderWrapper(StreamingDecoder<E> wrapped, int bufferSize)
+	{
+		if(bufferSize <= 0)
+		{
+			throw new IllegalArgumentException("bufferSize must be positive but was " + bufferSize + "!");
+		}
 		this.wrapped = wrapped;
+		this.bufferSize = bufferSize;
 	}
 
 	@Override
 	public E decode(InputStream from) throws IOException
 	{
-		try(GZIPInputStream gis=new GZIPInputStream(from))
+		try(InputStream gis=Compression.GZIP.decompress(from, bufferSize))
 		{
 			return wrapped.decode(gis);
 		}
@@ -34,27 +34,71 @@
 
 package de.huxhorn.sulky.codec.streaming;
 
+import de.huxhorn.sulky.codec.Compression;
+import de.huxhorn.sulky.codec.CompressionListener;
+import de.huxhorn.sulky.codec.CompressionReporter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
 
+/**
+ * Writes every object as a separate GZIP member and closes the stream afterwards.
+ *
+ * Deflater and buffer are pooled per thread. Use CompressedStreamWriter to write many objects
+ * into a single compressed stream.
+ *
+ * @param <E> the type of the objects.
+ */
 public class GZIPStreamingEncoderWrapper<E>
-	implements StreamingEncoder<E>
+	implements StreamingEncoder<E>, CompressionReporter
 {
 	private final StreamingEncoder<E> wrapped;
+	private final Compression compression;
+	private final int bufferSize;
+	private CompressionListener compressionListener;
 
 	public GZIPStreamingEncoderWrapper(StreamingEncoder<E> wrapped)
 	{
+		this(wrapped, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param wrapped the wrapped encoder.
+	 * @param level the compression level, i.e. Deflater.DEFAULT_COMPRESSION or a value in the range [0..9].
+	 */
+	public GZIPStreamingEncoderWrapper(StreamingEncoder<E> wrapped, int level)
+	{
+		this(wrapped, level, Compression.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param wrapped the wrapped encoder.
+	 * @param level the compression level, i.e. Deflater.DEFAULT_COMPRESSION or a value in the range [0..9].
+	 * @param bufferSize the size of the output buffer.
+	 */
+	public GZIPStreamingEncoderWrapper(StreamingEncoder<E> wrapped, int level, int bufferSize)
+	{
+		if(bufferSize <= 0)
+		{
+			throw new IllegalArgumentException("bufferSize must be positive but was " + bufferSize + "!");
+		}
 		this.wrapped = wrapped;
+		this.compression = new Compression(Compression.Framing.GZIP, level);
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public void setCompressionListener(CompressionListener compressionListener)
+	{
+		this.compressionListener = compressionListener;
 	}
 
 	@Override
 	public void encode(E obj, OutputStream into) throws IOException
 	{
-		try(GZIPOutputStream gos=new GZIPOutputStream(into))
+		try(OutputStream gos=compression.compress(into, bufferSize, false, compressionListener))
 		{
 			wrapped.encode(obj, gos);
-			gos.finish();
 		}
 	}
 }
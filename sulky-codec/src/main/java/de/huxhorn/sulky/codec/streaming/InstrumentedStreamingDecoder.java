@@ -0,0 +1,102 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import de.huxhorn.sulky.codec.CodecStatistics;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * StreamingDecoder recording latency, read bytes and failures of the wrapped decoder in CodecStatistics.
+ *
+ * An exception thrown by the wrapped decoder is counted as failure and rethrown. The recorded size
+ * contains any bytes the wrapped decoder reads ahead.
+ */
+public class InstrumentedStreamingDecoder<E>
+	implements StreamingDecoder<E>
+{
+	private final StreamingDecoder<E> wrapped;
+	private final CodecStatistics statistics;
+
+	public InstrumentedStreamingDecoder(StreamingDecoder<E> wrapped, CodecStatistics statistics)
+	{
+		this.wrapped = Objects.requireNonNull(wrapped, "wrapped must not be null!");
+		this.statistics = Objects.requireNonNull(statistics, "statistics must not be null!");
+	}
+
+	public StreamingDecoder<E> getWrapped()
+	{
+		return wrapped;
+	}
+
+	public CodecStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	@Override
+	public E decode(InputStream from)
+		throws IOException
+	{
+		CountingInputStream in = new CountingInputStream(from);
+		long start = System.nanoTime();
+		boolean success = false;
+		try
+		{
+			E result = wrapped.decode(in);
+			success = true;
+			return result;
+		}
+		finally
+		{
+			long nanos = System.nanoTime() - start;
+			if(success)
+			{
+				statistics.recordDecode(nanos, in.getCount());
+			}
+			else
+			{
+				statistics.recordDecodeFailure(nanos, in.getCount());
+			}
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "InstrumentedStreamingDecoder[wrapped=" + wrapped + ", statistics=" + statistics.getName() + "]";
+	}
+}
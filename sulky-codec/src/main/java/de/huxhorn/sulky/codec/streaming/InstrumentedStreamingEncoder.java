@@ -0,0 +1,106 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import de.huxhorn.sulky.codec.CodecStatistics;
+import de.huxhorn.sulky.codec.CompressionReporter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * StreamingEncoder recording latency, written bytes and failures of the wrapped encoder in CodecStatistics.
+ *
+ * An exception thrown by the wrapped encoder is counted as failure and rethrown. If the wrapped encoder
+ * is a CompressionReporter, the compression ratio is recorded using its listener.
+ */
+public class InstrumentedStreamingEncoder<E>
+	implements StreamingEncoder<E>
+{
+	private final StreamingEncoder<E> wrapped;
+	private final CodecStatistics statistics;
+
+	public InstrumentedStreamingEncoder(StreamingEncoder<E> wrapped, CodecStatistics statistics)
+	{
+		this.wrapped = Objects.requireNonNull(wrapped, "wrapped must not be null!");
+		this.statistics = Objects.requireNonNull(statistics, "statistics must not be null!");
+		if(wrapped instanceof CompressionReporter)
+		{
+			((CompressionReporter) wrapped).setCompressionListener(statistics::recordCompression);
+		}
+	}
+
+	public StreamingEncoder<E> getWrapped()
+	{
+		return wrapped;
+	}
+
+	public CodecStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	@Override
+	public void encode(E obj, OutputStream into)
+		throws IOException
+	{
+		CountingOutputStream out = new CountingOutputStream(into);
+		long start = System.nanoTime();
+		boolean success = false;
+		try
+		{
+			wrapped.encode(obj, out);
+			success = true;
+		}
+		finally
+		{
+			long nanos = System.nanoTime() - start;
+			if(success)
+			{
+				statistics.recordEncode(nanos, out.getCount());
+			}
+			else
+			{
+				statistics.recordEncodeFailure(nanos);
+			}
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "InstrumentedStreamingEncoder[wrapped=" + wrapped + ", statistics=" + statistics.getName() + "]";
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.xml;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cached public accessors of a bean class.
+ *
+ * Properties are resolved once per class using the Introspector and invoked using method handles
+ * obtained by the public lookup so no access checks have to be suppressed.
+ */
+final class BeanProperties
+{
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+	private static final ClassValue<BeanProperties> CACHE = new ClassValue<BeanProperties>()
+	{
+		@Override
+		protected BeanProperties computeValue(Class<?> type)
+		{
+			return new BeanProperties(type);
+		}
+	};
+
+	private final Class<?> type;
+	private final MethodHandle constructor;
+	private final Map<String, Property> properties;
+	private final List<Property> persistentProperties;
+	private volatile Object[] defaultValues;
+
+	static BeanProperties of(Class<?> type)
+	{
+		return CACHE.get(type);
+	}
+
+	private BeanProperties(Class<?> type)
+	{
+		this.type = type;
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		this.constructor = findConstructor(lookup, type);
+		BeanInfo beanInfo;
+		try
+		{
+			beanInfo = Introspector.getBeanInfo(type);
+		}
+		catch(IntrospectionException e)
+		{
+			throw new IllegalArgumentException("Couldn't introspect " + type.getName() + "!", e);
+		}
+		Map<String, Property> allProperties = new HashMap<>();
+		List<Property> persistent = new ArrayList<>();
+		for(PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors())
+		{
+			MethodHandle getter = unreflect(lookup, descriptor.getReadMethod(), GETTER_TYPE);
+			MethodHandle setter = unreflect(lookup, descriptor.getWriteMethod(), SETTER_TYPE);
+			if(getter == null && setter == null)
+			{
+				continue;
+			}
+			Property property = new Property(descriptor.getName(), getter, setter);
+			allProperties.put(property.name, property);
+			if(getter != null && setter != null && !Boolean.TRUE.equals(descriptor.getValue("transient")))
+			{
+				persistent.add(property);
+			}
+		}
+		this.properties = allProperties;
+		this.persistentProperties = Collections.unmodifiableList(persistent);
+	}
+
+	private static MethodHandle findConstructor(MethodHandles.Lookup lookup, Class<?> type)
+	{
+		try
+		{
+			return lookup.findConstructor(type, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+		}
+		catch(NoSuchMethodException | IllegalAccessException e)
+		{
+			return null;
+		}
+	}
+
+	private static MethodHandle unreflect(MethodHandles.Lookup lookup, Method method, MethodType methodType)
+	{
+		if(method == null)
+		{
+			return null;
+		}
+		try
+		{
+			return lookup.unreflect(method).asType(methodType);
+		}
+		catch(IllegalAccessException e)
+		{
+			return null;
+		}
+	}
+
+	Class<?> getType()
+	{
+		return type;
+	}
+
+	boolean isInstantiable()
+	{
+		return constructor != null;
+	}
+
+	Object newInstance()
+		throws ReflectiveOperationException
+	{
+		if(constructor == null)
+		{
+			throw new InstantiationException(type.getName() + " doesn't have an accessible default constructor!");
+		}
+		try
+		{
+			return (Object) constructor.invokeExact();
+		}
+		catch(ReflectiveOperationException | RuntimeException | Error e)
+		{
+			throw e;
+		}
+		catch(Throwable t)
+		{
+			throw new InvocationTargetException(t);
+		}
+	}
+
+	/**
+	 * @return the properties with getter and setter that are written by the encoder, sorted by name.
+	 */
+	List<Property> getPersistentProperties()
+	{
+		return persistentProperties;
+	}
+
+	Property getProperty(String name)
+	{
+		return properties.get(name);
+	}
+
+	/**
+	 * Returns the values of the persistent properties of a new instance.
+	 * Properties having their default value are not written.
+	 */
+	Object[] getDefaultValues()
+		throws ReflectiveOperationException
+	{
+		Object[] result = defaultValues;
+		if(result == null)
+		{
+			Object instance = newInstance();
+			result = new Object[persistentProperties.size()];
+			for(int i = 0; i < result.length; i++)
+			{
+				result[i] = persistentProperties.get(i).get(instance);
+			}
+			defaultValues = result;
+		}
+		return result;
+	}
+
+	static final class Property
+	{
+		private final String name;
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+
+		Property(String name, MethodHandle getter, MethodHandle setter)
+		{
+			this.name = name;
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		String getName()
+		{
+			return name;
+		}
+
+		Object get(Object bean)
+			throws ReflectiveOperationException
+		{
+			if(getter == null)
+			{
+				throw new NoSuchMethodException("Property " + name + " of " + bean.getClass().getName() + " isn't readable!");
+			}
+			try
+			{
+				return (Object) getter.invokeExact(bean);
+			}
+			catch(ReflectiveOperationException | RuntimeException | Error e)
+			{
+				throw e;
+			}
+			catch(Throwable t)
+			{
+				throw new InvocationTargetException(t);
+			}
+		}
+
+		void set(Object bean, Object value)
+			throws ReflectiveOperationException
+		{
+			if(setter == null)
+			{
+				throw new NoSuchMethodException("Property " + name + " of " + bean.getClass().getName() + " isn't writable!");
+			}
+			try
+			{
+				setter.invokeExact(bean, value);
+			}
+			catch(ReflectiveOperationException | RuntimeException | Error e)
+			{
+				throw e;
+			}
+			catch(Throwable t)
+			{
+				throw new InvocationTargetException(t);
+			}
+		}
+	}
+}
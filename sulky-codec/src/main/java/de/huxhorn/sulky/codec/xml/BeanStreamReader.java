@@ -0,0 +1,739 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.xml;
+
+import de.huxhorn.sulky.stax.GenericStreamReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Predicate;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the first object of a document in the format of java.beans.XMLEncoder.
+ *
+ * Supported are all elements written by BeanStreamWriter, objects created by public constructors
+ * or static fields, properties, indices, add of collections, put of maps and valueOf of enums as well
+ * as id and idref. Only public members are used.
+ *
+ * Other methods are rejected since invoking arbitrary methods named by the document would allow
+ * the document to execute code, like java.beans.XMLDecoder does.
+ *
+ * For the same reason, only the following classes are used. Any other class is rejected before
+ * it is loaded.
+ * <ul>
+ * <li>primitives, their wrappers, String, Object, Enum and Date</li>
+ * <li>the collections and maps of java.util and java.util.concurrent that BeanStreamWriter writes,
+ * created using their default constructor only</li>
+ * <li>classes registered using registerClasses, e.g. beans and enums</li>
+ * <li>classes whose name is accepted by the class filter</li>
+ * </ul>
+ * Arrays are supported if their element type is supported. Their length must not exceed maxArrayLength.
+ */
+public class BeanStreamReader
+	implements GenericStreamReader<Object>, BeanXmlConstants
+{
+	private static final Map<String, Class<?>> PRIMITIVE_TYPES = new HashMap<>();
+
+	static
+	{
+		for(Class<?> type : new Class<?>[]{boolean.class, byte.class, short.class, int.class, long.class, float.class, double.class, char.class, void.class})
+		{
+			PRIMITIVE_TYPES.put(type.getName(), type);
+		}
+	}
+
+	private static final Set<String> DEFAULT_TYPES = names(Object.class, String.class, Boolean.class,
+		Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class, Character.class,
+		Enum.class, Date.class);
+
+	private static final Set<String> CONTAINER_TYPES = names(ArrayList.class, LinkedList.class, Vector.class,
+		ArrayDeque.class, HashSet.class, LinkedHashSet.class, TreeSet.class, HashMap.class, LinkedHashMap.class,
+		TreeMap.class, Hashtable.class, IdentityHashMap.class, ConcurrentHashMap.class, ConcurrentSkipListMap.class,
+		ConcurrentSkipListSet.class, CopyOnWriteArrayList.class, CopyOnWriteArraySet.class,
+		ConcurrentLinkedQueue.class, ConcurrentLinkedDeque.class);
+
+	public static final int DEFAULT_MAX_ARRAY_LENGTH = 1024 * 1024;
+
+	private final ClassLoader classLoader;
+	private final Predicate<String> classFilter;
+	private final Set<String> registeredClasses = ConcurrentHashMap.newKeySet();
+	private volatile int maxArrayLength = DEFAULT_MAX_ARRAY_LENGTH;
+
+	public BeanStreamReader()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param classLoader the class loader used to resolve classes, null for the context class loader.
+	 */
+	public BeanStreamReader(ClassLoader classLoader)
+	{
+		this(classLoader, null);
+	}
+
+	/**
+	 * @param classLoader the class loader used to resolve classes, null for the context class loader.
+	 * @param classFilter accepts the names of additional classes that may be used, null to use only
+	 * the default and registered classes. The filter is called with the element type name of arrays.
+	 */
+	public BeanStreamReader(ClassLoader classLoader, Predicate<String> classFilter)
+	{
+		this.classLoader = classLoader;
+		this.classFilter = classFilter;
+	}
+
+	/**
+	 * Allows the document to use the given classes.
+	 *
+	 * Any public constructor of a registered class can be called and any of its bean properties
+	 * can be set, so only register classes that are safe to create from untrusted input.
+	 *
+	 * @param classes the classes, e.g. beans and enums.
+	 */
+	public void registerClasses(Class<?>... classes)
+	{
+		Objects.requireNonNull(classes, "classes must not be null!");
+		for(Class<?> type : classes)
+		{
+			registeredClasses.add(Objects.requireNonNull(type, "classes must not contain null!").getName());
+		}
+	}
+
+	public int getMaxArrayLength()
+	{
+		return maxArrayLength;
+	}
+
+	/**
+	 * @param maxArrayLength the maximum length attribute of arrays.
+	 */
+	public void setMaxArrayLength(int maxArrayLength)
+	{
+		if(maxArrayLength < 0)
+		{
+			throw new IllegalArgumentException("maxArrayLength must not be negative but was " + maxArrayLength + "!");
+		}
+		this.maxArrayLength = maxArrayLength;
+	}
+
+	@Override
+	public Object read(XMLStreamReader reader)
+		throws XMLStreamException
+	{
+		int type = reader.getEventType();
+		if(XMLStreamConstants.START_DOCUMENT == type)
+		{
+			reader.nextTag();
+		}
+		reader.require(XMLStreamConstants.START_ELEMENT, null, JAVA_NODE);
+		if(reader.nextTag() == XMLStreamConstants.END_ELEMENT)
+		{
+			return null;
+		}
+		Object result = readValue(reader, new HashMap<>());
+		while(reader.getEventType() != XMLStreamConstants.END_ELEMENT || !JAVA_NODE.equals(reader.getLocalName()))
+		{
+			// skip any additional objects
+			reader.next();
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the value expression at the current start element. The reader is positioned at the
+	 * corresponding end element afterwards.
+	 */
+	private Object readValue(XMLStreamReader reader, Map<String, Object> ids)
+		throws XMLStreamException
+	{
+		reader.require(XMLStreamConstants.START_ELEMENT, null, null);
+		String name = reader.getLocalName();
+		switch(name)
+		{
+			case NULL_NODE:
+				reader.nextTag();
+				return null;
+			case STRING_NODE:
+			{
+				String id = attribute(reader, ID_ATTRIBUTE);
+				String result = readString(reader);
+				if(id != null)
+				{
+					ids.put(id, result);
+				}
+				return result;
+			}
+			case INT_NODE:
+				return Integer.valueOf(readTrimmedText(reader));
+			case LONG_NODE:
+				return Long.valueOf(readTrimmedText(reader));
+			case BOOLEAN_NODE:
+				return Boolean.valueOf(readTrimmedText(reader));
+			case DOUBLE_NODE:
+				return Double.valueOf(readTrimmedText(reader));
+			case FLOAT_NODE:
+				return Float.valueOf(readTrimmedText(reader));
+			case SHORT_NODE:
+				return Short.valueOf(readTrimmedText(reader));
+			case BYTE_NODE:
+				return Byte.valueOf(readTrimmedText(reader));
+			case CHAR_NODE:
+				return readChar(reader);
+			case CLASS_NODE:
+				return resolveClass(readTrimmedText(reader));
+			case OBJECT_NODE:
+				return readObject(reader, ids);
+			case ARRAY_NODE:
+				return readArray(reader, ids);
+			default:
+				throw new XMLStreamException("Unexpected element " + name + "!", reader.getLocation());
+		}
+	}
+
+	private Object readObject(XMLStreamReader reader, Map<String, Object> ids)
+		throws XMLStreamException
+	{
+		String id = attribute(reader, ID_ATTRIBUTE);
+		String idref = attribute(reader, IDREF_ATTRIBUTE);
+		String className = attribute(reader, CLASS_ATTRIBUTE);
+		String method = attribute(reader, METHOD_ATTRIBUTE);
+		String field = attribute(reader, FIELD_ATTRIBUTE);
+
+		Object target = null;
+		boolean created = false;
+		if(idref != null)
+		{
+			if(!ids.containsKey(idref))
+			{
+				throw new XMLStreamException("Unknown idref " + idref + "!", reader.getLocation());
+			}
+			target = ids.get(idref);
+			created = true;
+		}
+		else if(field != null)
+		{
+			try
+			{
+				target = resolveClass(className).getField(field).get(null);
+			}
+			catch(ReflectiveOperationException | RuntimeException e)
+			{
+				throw new XMLStreamException("Couldn't read field " + field + " of " + className + "!", reader.getLocation(), e);
+			}
+			created = true;
+		}
+		if(created && id != null)
+		{
+			ids.put(id, target);
+		}
+
+		List<Object> arguments = new ArrayList<>();
+		while(reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+		{
+			if(VOID_NODE.equals(reader.getLocalName()))
+			{
+				if(!created)
+				{
+					target = create(reader, className, method, arguments);
+					created = true;
+					if(id != null)
+					{
+						ids.put(id, target);
+					}
+				}
+				readStatement(reader, target, ids);
+			}
+			else
+			{
+				arguments.add(readValue(reader, ids));
+			}
+		}
+		if(!created)
+		{
+			target = create(reader, className, method, arguments);
+			if(id != null)
+			{
+				ids.put(id, target);
+			}
+		}
+		return target;
+	}
+
+	private Object create(XMLStreamReader reader, String className, String method, List<Object> arguments)
+		throws XMLStreamException
+	{
+		Class<?> type = resolveClass(className);
+		try
+		{
+			if(method != null)
+			{
+				return valueOf(type, method, arguments);
+			}
+			if(arguments.isEmpty())
+			{
+				return BeanProperties.of(type).newInstance();
+			}
+			if(CONTAINER_TYPES.contains(type.getName()))
+			{
+				// e.g. a huge initial capacity
+				throw new NoSuchMethodException(type.getName() + " is only created using its default constructor!");
+			}
+			Object[] args = arguments.toArray();
+			for(Constructor<?> constructor : type.getConstructors())
+			{
+				if(matches(constructor, args))
+				{
+					return constructor.newInstance(args);
+				}
+			}
+			throw new NoSuchMethodException("No public constructor of " + type.getName() + " matching " + arguments + "!");
+		}
+		catch(InvocationTargetException e)
+		{
+			throw new XMLStreamException("Couldn't create " + className + "!", reader.getLocation(), e.getCause());
+		}
+		catch(ReflectiveOperationException | RuntimeException e)
+		{
+			throw new XMLStreamException("Couldn't create " + className + "!", reader.getLocation(), e);
+		}
+	}
+
+	/**
+	 * Reads the void statement at the current start element and applies it to the target.
+	 */
+	private void readStatement(XMLStreamReader reader, Object target, Map<String, Object> ids)
+		throws XMLStreamException
+	{
+		String id = attribute(reader, ID_ATTRIBUTE);
+		String property = attribute(reader, PROPERTY_ATTRIBUTE);
+		String method = attribute(reader, METHOD_ATTRIBUTE);
+		String index = attribute(reader, INDEX_ATTRIBUTE);
+
+		List<Object> arguments = new ArrayList<>();
+		Object result = null;
+		boolean executed = false;
+		while(reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+		{
+			if(VOID_NODE.equals(reader.getLocalName()))
+			{
+				if(!executed)
+				{
+					result = execute(reader, target, property, method, index, arguments);
+					executed = true;
+					if(id != null)
+					{
+						ids.put(id, result);
+					}
+				}
+				readStatement(reader, result, ids);
+			}
+			else
+			{
+				arguments.add(readValue(reader, ids));
+			}
+		}
+		if(!executed)
+		{
+			result = execute(reader, target, property, method, index, arguments);
+			if(id != null)
+			{
+				ids.put(id, result);
+			}
+		}
+	}
+
+	private Object execute(XMLStreamReader reader, Object target, String property, String method, String index, List<Object> arguments)
+		throws XMLStreamException
+	{
+		if(target == null)
+		{
+			throw new XMLStreamException("Statement without target!", reader.getLocation());
+		}
+		try
+		{
+			if(property != null)
+			{
+				BeanProperties.Property beanProperty = BeanProperties.of(target.getClass()).getProperty(property);
+				if(beanProperty == null)
+				{
+					throw new NoSuchMethodException("Unknown property " + property + " of " + target.getClass().getName() + "!");
+				}
+				if(arguments.isEmpty())
+				{
+					return beanProperty.get(target);
+				}
+				beanProperty.set(target, arguments.get(0));
+				return null;
+			}
+			if(index != null)
+			{
+				return executeIndex(target, Integer.parseInt(index), arguments);
+			}
+			if(method == null)
+			{
+				throw new XMLStreamException("Statement without property, method or index!", reader.getLocation());
+			}
+			if(ADD_METHOD.equals(method) && arguments.size() == 1 && target instanceof Collection)
+			{
+				@SuppressWarnings("unchecked")
+				Collection<Object> collection = (Collection<Object>) target;
+				return collection.add(arguments.get(0));
+			}
+			if(PUT_METHOD.equals(method) && arguments.size() == 2 && target instanceof Map)
+			{
+				@SuppressWarnings("unchecked")
+				Map<Object, Object> map = (Map<Object, Object>) target;
+				return map.put(arguments.get(0), arguments.get(1));
+			}
+			throw new NoSuchMethodException("Method " + method + " of " + target.getClass().getName() + " isn't supported!");
+		}
+		catch(InvocationTargetException e)
+		{
+			throw new XMLStreamException("Statement failed!", reader.getLocation(), e.getCause());
+		}
+		catch(ReflectiveOperationException | RuntimeException e)
+		{
+			throw new XMLStreamException("Statement failed!", reader.getLocation(), e);
+		}
+	}
+
+	private static Object executeIndex(Object target, int index, List<Object> arguments)
+	{
+		if(target.getClass().isArray())
+		{
+			if(arguments.isEmpty())
+			{
+				return Array.get(target, index);
+			}
+			Array.set(target, index, arguments.get(0));
+			return null;
+		}
+		@SuppressWarnings("unchecked")
+		List<Object> list = (List<Object>) target;
+		if(arguments.isEmpty())
+		{
+			return list.get(index);
+		}
+		return list.set(index, arguments.get(0));
+	}
+
+	/**
+	 * Supports Enum.valueOf(Class, String) as written by BeanStreamWriter and XMLEncoder
+	 * as well as valueOf(String) of an enum.
+	 */
+	private static Object valueOf(Class<?> type, String method, List<Object> arguments)
+		throws NoSuchMethodException
+	{
+		if(VALUE_OF_METHOD.equals(method))
+		{
+			if(type == Enum.class && arguments.size() == 2 && arguments.get(0) instanceof Class && arguments.get(1) instanceof String)
+			{
+				return enumConstant((Class<?>) arguments.get(0), (String) arguments.get(1));
+			}
+			if(arguments.size() == 1 && arguments.get(0) instanceof String)
+			{
+				return enumConstant(type, (String) arguments.get(0));
+			}
+		}
+		throw new NoSuchMethodException("Method " + method + " of " + type.getName() + " isn't supported!");
+	}
+
+	private static Object enumConstant(Class<?> type, String name)
+		throws NoSuchMethodException
+	{
+		if(!type.isEnum())
+		{
+			throw new NoSuchMethodException(type.getName() + " isn't an enum!");
+		}
+		for(Object current : type.getEnumConstants())
+		{
+			if(((Enum<?>) current).name().equals(name))
+			{
+				return current;
+			}
+		}
+		throw new IllegalArgumentException("No enum constant " + type.getName() + "." + name + "!");
+	}
+
+	private static boolean matches(Executable executable, Object[] args)
+	{
+		Class<?>[] parameterTypes = executable.getParameterTypes();
+		if(parameterTypes.length != args.length)
+		{
+			return false;
+		}
+		for(int i = 0; i < args.length; i++)
+		{
+			Class<?> parameterType = parameterTypes[i];
+			if(args[i] == null)
+			{
+				if(parameterType.isPrimitive())
+				{
+					return false;
+				}
+				continue;
+			}
+			if(parameterType.isPrimitive())
+			{
+				parameterType = Array.get(Array.newInstance(parameterType, 1), 0).getClass();
+			}
+			if(!parameterType.isInstance(args[i]))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Object readArray(XMLStreamReader reader, Map<String, Object> ids)
+		throws XMLStreamException
+	{
+		String id = attribute(reader, ID_ATTRIBUTE);
+		Class<?> componentType = resolveClass(attribute(reader, CLASS_ATTRIBUTE));
+		String length = attribute(reader, LENGTH_ATTRIBUTE);
+		Object array = null;
+		List<Object> elements = new ArrayList<>();
+		if(length != null)
+		{
+			int arrayLength = Integer.parseInt(length);
+			if(arrayLength < 0 || arrayLength > maxArrayLength)
+			{
+				throw new XMLStreamException("Invalid array length " + length + "! Must be in the range [0.." + maxArrayLength + "].", reader.getLocation());
+			}
+			array = Array.newInstance(componentType, arrayLength);
+			if(id != null)
+			{
+				ids.put(id, array);
+			}
+		}
+		while(reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+		{
+			if(array != null && VOID_NODE.equals(reader.getLocalName()))
+			{
+				readStatement(reader, array, ids);
+			}
+			else
+			{
+				elements.add(readValue(reader, ids));
+			}
+		}
+		if(array == null)
+		{
+			array = Array.newInstance(componentType, elements.size());
+			for(int i = 0; i < elements.size(); i++)
+			{
+				Array.set(array, i, elements.get(i));
+			}
+			if(id != null)
+			{
+				ids.put(id, array);
+			}
+		}
+		return array;
+	}
+
+	private static String readString(XMLStreamReader reader)
+		throws XMLStreamException
+	{
+		StringBuilder result = new StringBuilder();
+		for(;;)
+		{
+			int type = reader.next();
+			switch(type)
+			{
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+				case XMLStreamConstants.ENTITY_REFERENCE:
+					result.append(reader.getText());
+					break;
+				case XMLStreamConstants.START_ELEMENT:
+					if(!CHAR_NODE.equals(reader.getLocalName()))
+					{
+						throw new XMLStreamException("Unexpected element " + reader.getLocalName() + " in string!", reader.getLocation());
+					}
+					result.append(readChar(reader));
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					return result.toString();
+				default:
+					// ignore comments and processing instructions
+					break;
+			}
+		}
+	}
+
+	private static Character readChar(XMLStreamReader reader)
+		throws XMLStreamException
+	{
+		String code = attribute(reader, CODE_ATTRIBUTE);
+		String text = reader.getElementText();
+		if(code != null)
+		{
+			if(code.startsWith("#"))
+			{
+				return (char) Integer.parseInt(code.substring(1), 16);
+			}
+			return (char) Integer.parseInt(code);
+		}
+		if(text.length() != 1)
+		{
+			throw new XMLStreamException("Invalid char '" + text + "'!", reader.getLocation());
+		}
+		return text.charAt(0);
+	}
+
+	private static String readTrimmedText(XMLStreamReader reader)
+		throws XMLStreamException
+	{
+		return reader.getElementText().trim();
+	}
+
+	private static String attribute(XMLStreamReader reader, String name)
+	{
+		return reader.getAttributeValue(null, name);
+	}
+
+	private Class<?> resolveClass(String name)
+		throws XMLStreamException
+	{
+		if(name == null)
+		{
+			throw new XMLStreamException("Missing class!");
+		}
+		Class<?> result = PRIMITIVE_TYPES.get(name);
+		if(result != null)
+		{
+			return result;
+		}
+		if(!isAllowed(name))
+		{
+			throw new XMLStreamException("Class " + name + " isn't allowed!");
+		}
+		ClassLoader loader = classLoader;
+		if(loader == null)
+		{
+			loader = Thread.currentThread().getContextClassLoader();
+		}
+		try
+		{
+			return Class.forName(name, false, loader);
+		}
+		catch(ClassNotFoundException e)
+		{
+			try
+			{
+				return Class.forName(name);
+			}
+			catch(ClassNotFoundException ex)
+			{
+				throw new XMLStreamException("Unknown class " + name + "!", ex);
+			}
+		}
+	}
+
+	private boolean isAllowed(String name)
+	{
+		String elementName = name;
+		if(name.startsWith("["))
+		{
+			// array descriptor, e.g. [I or [[Ljava.lang.String;
+			int dimensions = 0;
+			while(name.charAt(dimensions) == '[')
+			{
+				dimensions++;
+				if(dimensions == name.length())
+				{
+					return false;
+				}
+			}
+			elementName = name.substring(dimensions);
+			if(elementName.length() == 1)
+			{
+				return "ZBSICJFD".contains(elementName);
+			}
+			if(!elementName.startsWith("L") || !elementName.endsWith(";"))
+			{
+				return false;
+			}
+			elementName = elementName.substring(1, elementName.length() - 1);
+		}
+		return DEFAULT_TYPES.contains(elementName)
+			|| CONTAINER_TYPES.contains(elementName)
+			|| registeredClasses.contains(elementName)
+			|| classFilter != null && classFilter.test(elementName);
+	}
+
+	private static Set<String> names(Class<?>... classes)
+	{
+		Set<String> result = new HashSet<>();
+		for(Class<?> type : classes)
+		{
+			result.add(type.getName());
+		}
+		return Collections.unmodifiableSet(result);
+	}
+}
@@ -0,0 +1,362 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.xml;
+
+import de.huxhorn.sulky.stax.GenericStreamWriter;
+import de.huxhorn.sulky.stax.StaxUtilities;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes objects in the format of java.beans.XMLEncoder.
+ *
+ * <ul>
+ * <li>Strings, primitive wrappers and classes are written as their respective elements.</li>
+ * <li>Enums are written as Enum.valueOf expression.</li>
+ * <li>java.util.Date is written using its long constructor.</li>
+ * <li>Collections and Maps having a public default constructor are written using add and put.</li>
+ * <li>Arrays are written with all elements that aren't null or zero.</li>
+ * <li>Any other object must be a bean with a public default constructor. All properties with public
+ * getter and setter that differ from the value of a new instance are written.</li>
+ * </ul>
+ *
+ * Objects referenced more than once are written more than once, cyclic references are not supported.
+ */
+public class BeanStreamWriter
+	implements GenericStreamWriter<Object>, BeanXmlConstants
+{
+	@Override
+	public void write(XMLStreamWriter writer, Object object, boolean isRoot)
+		throws XMLStreamException
+	{
+		if(isRoot)
+		{
+			writer.writeStartDocument(StandardCharsets.UTF_8.toString(), "1.0");
+		}
+		StaxUtilities.writeStartElement(writer, null, null, JAVA_NODE);
+		StaxUtilities.writeAttribute(writer, false, null, null, VERSION_ATTRIBUTE, System.getProperty("java.version"));
+		StaxUtilities.writeAttribute(writer, false, null, null, CLASS_ATTRIBUTE, DECODER_CLASS);
+		writeValue(writer, object, Collections.newSetFromMap(new IdentityHashMap<>()));
+		writer.writeEndElement();
+		if(isRoot)
+		{
+			writer.writeEndDocument();
+		}
+	}
+
+	private void writeValue(XMLStreamWriter writer, Object value, Set<Object> path)
+		throws XMLStreamException
+	{
+		if(value == null)
+		{
+			StaxUtilities.writeEmptyElement(writer, null, null, NULL_NODE);
+			return;
+		}
+		if(value instanceof String)
+		{
+			writeString(writer, (String) value);
+			return;
+		}
+		String primitiveNode = primitiveNode(value.getClass());
+		if(primitiveNode != null)
+		{
+			if(value instanceof Character)
+			{
+				writeChar(writer, (Character) value);
+				return;
+			}
+			StaxUtilities.writeSimpleTextNode(writer, null, null, primitiveNode, value.toString());
+			return;
+		}
+		if(value instanceof Class)
+		{
+			StaxUtilities.writeSimpleTextNode(writer, null, null, CLASS_NODE, ((Class<?>) value).getName());
+			return;
+		}
+		if(value instanceof Enum)
+		{
+			Enum<?> e = (Enum<?>) value;
+			writeObjectStart(writer, Enum.class);
+			StaxUtilities.writeAttribute(writer, false, null, null, METHOD_ATTRIBUTE, VALUE_OF_METHOD);
+			StaxUtilities.writeSimpleTextNode(writer, null, null, CLASS_NODE, e.getDeclaringClass().getName());
+			writeString(writer, e.name());
+			writer.writeEndElement();
+			return;
+		}
+		if(value.getClass() == Date.class)
+		{
+			writeObjectStart(writer, Date.class);
+			StaxUtilities.writeSimpleTextNode(writer, null, null, LONG_NODE, Long.toString(((Date) value).getTime()));
+			writer.writeEndElement();
+			return;
+		}
+		if(!path.add(value))
+		{
+			throw new XMLStreamException("Cyclic reference to instance of " + value.getClass().getName() + "!");
+		}
+		if(value.getClass().isArray())
+		{
+			writeArray(writer, value, path);
+		}
+		else if(value instanceof Collection)
+		{
+			writeCollection(writer, (Collection<?>) value, path);
+		}
+		else if(value instanceof Map)
+		{
+			writeMap(writer, (Map<?, ?>) value, path);
+		}
+		else
+		{
+			writeBean(writer, value, path);
+		}
+		path.remove(value);
+	}
+
+	private void writeObjectStart(XMLStreamWriter writer, Class<?> type)
+		throws XMLStreamException
+	{
+		StaxUtilities.writeStartElement(writer, null, null, OBJECT_NODE);
+		StaxUtilities.writeAttribute(writer, false, null, null, CLASS_ATTRIBUTE, type.getName());
+	}
+
+	private void writeArray(XMLStreamWriter writer, Object array, Set<Object> path)
+		throws XMLStreamException
+	{
+		Class<?> componentType = array.getClass().getComponentType();
+		int length = Array.getLength(array);
+		StaxUtilities.writeStartElement(writer, null, null, ARRAY_NODE);
+		StaxUtilities.writeAttribute(writer, false, null, null, CLASS_ATTRIBUTE, componentType.getName());
+		StaxUtilities.writeAttribute(writer, false, null, null, LENGTH_ATTRIBUTE, Integer.toString(length));
+		Object defaultValue = componentType.isPrimitive() ? Array.get(Array.newInstance(componentType, 1), 0) : null;
+		for(int i = 0; i < length; i++)
+		{
+			Object element = Array.get(array, i);
+			if(Objects.equals(element, defaultValue))
+			{
+				continue;
+			}
+			StaxUtilities.writeStartElement(writer, null, null, VOID_NODE);
+			StaxUtilities.writeAttribute(writer, false, null, null, INDEX_ATTRIBUTE, Integer.toString(i));
+			writeValue(writer, element, path);
+			writer.writeEndElement();
+		}
+		writer.writeEndElement();
+	}
+
+	private void writeCollection(XMLStreamWriter writer, Collection<?> collection, Set<Object> path)
+		throws XMLStreamException
+	{
+		writeObjectStart(writer, instantiableType(collection));
+		for(Object element : collection)
+		{
+			StaxUtilities.writeStartElement(writer, null, null, VOID_NODE);
+			StaxUtilities.writeAttribute(writer, false, null, null, METHOD_ATTRIBUTE, ADD_METHOD);
+			writeValue(writer, element, path);
+			writer.writeEndElement();
+		}
+		writer.writeEndElement();
+	}
+
+	private void writeMap(XMLStreamWriter writer, Map<?, ?> map, Set<Object> path)
+		throws XMLStreamException
+	{
+		writeObjectStart(writer, instantiableType(map));
+		for(Map.Entry<?, ?> entry : map.entrySet())
+		{
+			StaxUtilities.writeStartElement(writer, null, null, VOID_NODE);
+			StaxUtilities.writeAttribute(writer, false, null, null, METHOD_ATTRIBUTE, PUT_METHOD);
+			writeValue(writer, entry.getKey(), path);
+			writeValue(writer, entry.getValue(), path);
+			writer.writeEndElement();
+		}
+		writer.writeEndElement();
+	}
+
+	private void writeBean(XMLStreamWriter writer, Object bean, Set<Object> path)
+		throws XMLStreamException
+	{
+		BeanProperties beanProperties = BeanProperties.of(instantiableType(bean));
+		List<BeanProperties.Property> properties = beanProperties.getPersistentProperties();
+		Object[] defaultValues;
+		try
+		{
+			defaultValues = beanProperties.getDefaultValues();
+		}
+		catch(ReflectiveOperationException | RuntimeException e)
+		{
+			throw new XMLStreamException("Couldn't create instance of " + bean.getClass().getName() + "!", e);
+		}
+		writeObjectStart(writer, bean.getClass());
+		for(int i = 0; i < defaultValues.length; i++)
+		{
+			BeanProperties.Property property = properties.get(i);
+			Object value;
+			try
+			{
+				value = property.get(bean);
+			}
+			catch(ReflectiveOperationException | RuntimeException e)
+			{
+				throw new XMLStreamException("Couldn't read property " + property.getName() + " of " + bean.getClass().getName() + "!", e);
+			}
+			if(Objects.deepEquals(value, defaultValues[i]))
+			{
+				continue;
+			}
+			StaxUtilities.writeStartElement(writer, null, null, VOID_NODE);
+			StaxUtilities.writeAttribute(writer, false, null, null, PROPERTY_ATTRIBUTE, property.getName());
+			writeValue(writer, value, path);
+			writer.writeEndElement();
+		}
+		writer.writeEndElement();
+	}
+
+	private static Class<?> instantiableType(Object value)
+		throws XMLStreamException
+	{
+		Class<?> type = value.getClass();
+		if(!BeanProperties.of(type).isInstantiable())
+		{
+			throw new XMLStreamException("Unsupported " + type.getName() + " without public default constructor!");
+		}
+		return type;
+	}
+
+	private void writeString(XMLStreamWriter writer, String text)
+		throws XMLStreamException
+	{
+		StaxUtilities.writeStartElement(writer, null, null, STRING_NODE);
+		int start = 0;
+		int length = text.length();
+		for(int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if(!isValidCharacter(c))
+			{
+				if(i > start)
+				{
+					writer.writeCharacters(text.substring(start, i));
+				}
+				writeCharCode(writer, c);
+				start = i + 1;
+			}
+		}
+		if(length > start)
+		{
+			writer.writeCharacters(start == 0 ? text : text.substring(start));
+		}
+		writer.writeEndElement();
+	}
+
+	private void writeChar(XMLStreamWriter writer, char c)
+		throws XMLStreamException
+	{
+		if(isValidCharacter(c))
+		{
+			StaxUtilities.writeSimpleTextNode(writer, null, null, CHAR_NODE, String.valueOf(c));
+		}
+		else
+		{
+			writeCharCode(writer, c);
+		}
+	}
+
+	private void writeCharCode(XMLStreamWriter writer, char c)
+		throws XMLStreamException
+	{
+		StaxUtilities.writeEmptyElement(writer, null, null, CHAR_NODE);
+		StaxUtilities.writeAttribute(writer, false, null, null, CODE_ATTRIBUTE, "#" + Integer.toString(c, 16));
+	}
+
+	/**
+	 * Carriage returns are not considered valid since XML parsers normalize them.
+	 */
+	private static boolean isValidCharacter(char c)
+	{
+		if(c < 0x20)
+		{
+			return c == '\t' || c == '\n';
+		}
+		return c != 0xFFFE && c != 0xFFFF;
+	}
+
+	private static String primitiveNode(Class<?> type)
+	{
+		if(type == Integer.class)
+		{
+			return INT_NODE;
+		}
+		if(type == Long.class)
+		{
+			return LONG_NODE;
+		}
+		if(type == Boolean.class)
+		{
+			return BOOLEAN_NODE;
+		}
+		if(type == Double.class)
+		{
+			return DOUBLE_NODE;
+		}
+		if(type == Float.class)
+		{
+			return FLOAT_NODE;
+		}
+		if(type == Short.class)
+		{
+			return SHORT_NODE;
+		}
+		if(type == Byte.class)
+		{
+			return BYTE_NODE;
+		}
+		if(type == Character.class)
+		{
+			return CHAR_NODE;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.xml;
+
+import de.huxhorn.sulky.codec.Compression;
+import de.huxhorn.sulky.codec.DelegatingCodecBase;
+
+public class BeanXmlCodec<E>
+	extends DelegatingCodecBase<E>
+{
+	public BeanXmlCodec()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param compression the compression, null if the data shouldn't be compressed.
+	 */
+	public BeanXmlCodec(Compression compression)
+	{
+		this(compression, new Class<?>[0]);
+	}
+
+	/**
+	 * @param compression the compression, null if the data shouldn't be compressed.
+	 * @param classes the classes the decoded documents may use, e.g. beans and enums.
+	 */
+	public BeanXmlCodec(Compression compression, Class<?>... classes)
+	{
+		super(new BeanXmlEncoder<>(compression),
+			createDecoder(compression, classes));
+	}
+
+	private static <E> BeanXmlDecoder<E> createDecoder(Compression compression, Class<?>... classes)
+	{
+		BeanXmlDecoder<E> result = new BeanXmlDecoder<>(compression);
+		result.registerClasses(classes);
+		return result;
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.xml;
+
+/**
+ * Element and attribute names of the java.beans.XMLEncoder format.
+ */
+public interface BeanXmlConstants
+{
+	String JAVA_NODE = "java";
+	String VERSION_ATTRIBUTE = "version";
+	String CLASS_ATTRIBUTE = "class";
+	String DECODER_CLASS = "java.beans.XMLDecoder";
+
+	// Expressions
+	String OBJECT_NODE = "object";
+	String ARRAY_NODE = "array";
+	String VOID_NODE = "void";
+	String NULL_NODE = "null";
+	String CLASS_NODE = "class";
+
+	String PROPERTY_ATTRIBUTE = "property";
+	String METHOD_ATTRIBUTE = "method";
+	String FIELD_ATTRIBUTE = "field";
+	String INDEX_ATTRIBUTE = "index";
+	String LENGTH_ATTRIBUTE = "length";
+	String ID_ATTRIBUTE = "id";
+	String IDREF_ATTRIBUTE = "idref";
+
+	// Primitive types
+	String STRING_NODE = "string";
+	String BOOLEAN_NODE = "boolean";
+	String BYTE_NODE = "byte";
+	String SHORT_NODE = "short";
+	String INT_NODE = "int";
+	String LONG_NODE = "long";
+	String FLOAT_NODE = "float";
+	String DOUBLE_NODE = "double";
+	String CHAR_NODE = "char";
+
+	/**
+	 * Used for characters that can't be contained in XML, e.g. &lt;char code="#1"/&gt;
+	 */
+	String CODE_ATTRIBUTE = "code";
+
+	String ADD_METHOD = "add";
+	String PUT_METHOD = "put";
+	String VALUE_OF_METHOD = "valueOf";
+}
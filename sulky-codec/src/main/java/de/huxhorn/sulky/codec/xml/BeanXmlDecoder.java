@@ -0,0 +1,176 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.xml;
+
+import de.huxhorn.sulky.codec.Compression;
+import de.huxhorn.sulky.codec.Decoder;
+import de.huxhorn.sulky.codec.streaming.StreamingDecoder;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Predicate;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * StAX-based replacement for XmlDecoder reading the java.beans.XMLEncoder format.
+ *
+ * See BeanStreamReader for the supported elements and classes. Bean and enum classes must be
+ * registered using registerClasses or accepted by a class filter.
+ */
+public class BeanXmlDecoder<E>
+	implements Decoder<E>, StreamingDecoder<E>
+{
+	private static final XMLInputFactory INPUT_FACTORY;
+
+	static
+	{
+		INPUT_FACTORY = XMLInputFactory.newInstance();
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_VALIDATING, false);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+	}
+
+	private final BeanStreamReader beanStreamReader;
+	private Compression compression;
+
+	public BeanXmlDecoder()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param compression the compression, null if the data isn't compressed.
+	 */
+	public BeanXmlDecoder(Compression compression)
+	{
+		this(compression, null);
+	}
+
+	/**
+	 * @param compression the compression, null if the data isn't compressed.
+	 * @param classLoader the class loader used to resolve classes, null for the context class loader.
+	 */
+	public BeanXmlDecoder(Compression compression, ClassLoader classLoader)
+	{
+		this(compression, classLoader, null);
+	}
+
+	/**
+	 * @param compression the compression, null if the data isn't compressed.
+	 * @param classLoader the class loader used to resolve classes, null for the context class loader.
+	 * @param classFilter accepts the names of additional classes that may be used, null to use only
+	 * the default and registered classes.
+	 */
+	public BeanXmlDecoder(Compression compression, ClassLoader classLoader, Predicate<String> classFilter)
+	{
+		this.compression = compression;
+		this.beanStreamReader = new BeanStreamReader(classLoader, classFilter);
+	}
+
+	/**
+	 * @param classes the classes the decoded documents may use, e.g. beans and enums.
+	 * @see BeanStreamReader#registerClasses(Class[])
+	 */
+	public void registerClasses(Class<?>... classes)
+	{
+		beanStreamReader.registerClasses(classes);
+	}
+
+	public int getMaxArrayLength()
+	{
+		return beanStreamReader.getMaxArrayLength();
+	}
+
+	public void setMaxArrayLength(int maxArrayLength)
+	{
+		beanStreamReader.setMaxArrayLength(maxArrayLength);
+	}
+
+	public Compression getCompression()
+	{
+		return compression;
+	}
+
+	public void setCompression(Compression compression)
+	{
+		this.compression = compression;
+	}
+
+	@Override
+	public E decode(InputStream from)
+		throws IOException
+	{
+		InputStream in = from;
+		if(compression != null)
+		{
+			in = compression.decompress(from);
+		}
+		try
+		{
+			XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+			@SuppressWarnings({"unchecked"})
+			E result = (E) beanStreamReader.read(reader);
+			reader.close();
+			return result;
+		}
+		catch(XMLStreamException e)
+		{
+			throw new IOException("Exception while reading XML!", e);
+		}
+	}
+
+	@Override
+	public E decode(byte[] bytes)
+	{
+		try
+		{
+			return decode(new ByteArrayInputStream(bytes));
+		}
+		catch(Throwable e)
+		{
+			// silently ignore any problems
+			return null;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "BeanXmlDecoder[compression=" + compression + "]";
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.xml;
+
+import de.huxhorn.sulky.codec.Compression;
+import de.huxhorn.sulky.codec.CompressionListener;
+import de.huxhorn.sulky.codec.CompressionReporter;
+import de.huxhorn.sulky.codec.Encoder;
+import de.huxhorn.sulky.codec.EncodingBuffer;
+import de.huxhorn.sulky.codec.streaming.StreamingEncoder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * StAX-based replacement for XmlEncoder writing the java.beans.XMLEncoder format.
+ *
+ * The result can be read by both BeanXmlDecoder and java.beans.XMLDecoder.
+ * See BeanStreamWriter for the supported types.
+ */
+public class BeanXmlEncoder<E>
+	implements Encoder<E>, StreamingEncoder<E>, CompressionReporter
+{
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	private final BeanStreamWriter beanStreamWriter = new BeanStreamWriter();
+	private Compression compression;
+	private CompressionListener compressionListener;
+
+	public BeanXmlEncoder()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param compression the compression, null if the data shouldn't be compressed.
+	 */
+	public BeanXmlEncoder(Compression compression)
+	{
+		this.compression = compression;
+	}
+
+	public Compression getCompression()
+	{
+		return compression;
+	}
+
+	public void setCompression(Compression compression)
+	{
+		this.compression = compression;
+	}
+
+	@Override
+	public void setCompressionListener(CompressionListener compressionListener)
+	{
+		this.compressionListener = compressionListener;
+	}
+
+	@Override
+	public void encode(E obj, OutputStream into)
+		throws IOException
+	{
+		Compression currentCompression = compression;
+		OutputStream out = into;
+		if(currentCompression != null)
+		{
+			out = currentCompression.compress(into, compressionListener);
+		}
+		try
+		{
+			XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+			beanStreamWriter.write(writer, obj, true);
+			writer.close();
+		}
+		catch(XMLStreamException e)
+		{
+			throw new IOException("Exception while writing XML!", e);
+		}
+		if(currentCompression != null)
+		{
+			// finishes the compressed data
+			out.close();
+		}
+		else
+		{
+			out.flush();
+		}
+	}
+
+	@Override
+	public byte[] encode(E object)
+	{
+		EncodingBuffer buffer = EncodingBuffer.acquire();
+		try
+		{
+			if(encode(object, buffer) < 0)
+			{
+				return null;
+			}
+			return buffer.toByteArray();
+		}
+		finally
+		{
+			buffer.release();
+		}
+	}
+
+	@Override
+	public int encode(E object, EncodingBuffer buffer)
+	{
+		int start = buffer.size();
+		try
+		{
+			encode(object, (OutputStream) buffer);
+			return buffer.size() - start;
+		}
+		catch(IOException e)
+		{
+			buffer.setSize(start);
+			e.printStackTrace(); // NOPMD
+			return -1;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "BeanXmlEncoder[compression=" + compression + "]";
+	}
+}
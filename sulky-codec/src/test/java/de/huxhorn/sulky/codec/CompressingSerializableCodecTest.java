@@ -34,9 +34,12 @@
 
 package de.huxhorn.sulky.codec;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class CompressingSerializableCodecTest
 {
@@ -49,4 +52,24 @@ public class CompressingSerializableCodecTest
 		String decoded = instance.decode(encoded);
 		assertEquals(obj, decoded);
 	}
+
+	@Test
+	public void batch()
+	{
+		List<String> objects = new ArrayList<>();
+		for(int i = 0; i < 100; i++)
+		{
+			objects.add("Message " + i);
+		}
+		CompressingSerializableCodec<String> instance = new CompressingSerializableCodec<>();
+		byte[] encoded = instance.encodeAll(objects);
+		assertEquals(objects, instance.decodeAll(encoded));
+
+		int separateSize = 0;
+		for(String current : objects)
+		{
+			separateSize += instance.encode(current).length;
+		}
+		assertTrue("batch: " + encoded.length + ", separate: " + separateSize, encoded.length * 4 < separateSize);
+	}
 }
@@ -0,0 +1,219 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionTest
+{
+	private static final byte[] DATA = "Foo Bar Foobar Foo Bar Foobar Foo Bar Foobar".getBytes(StandardCharsets.UTF_8);
+
+	private static byte[] compress(Compression compression, byte[] data)
+		throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(OutputStream out = compression.compress(bos))
+		{
+			out.write(data, 0, 3);
+			out.write(data[3]);
+			out.write(data, 4, data.length - 4);
+		}
+		return bos.toByteArray();
+	}
+
+	private static byte[] readFully(InputStream in)
+		throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[7];
+		for(;;)
+		{
+			int read = in.read(buffer);
+			if(read < 0)
+			{
+				return bos.toByteArray();
+			}
+			bos.write(buffer, 0, read);
+		}
+	}
+
+	@Test
+	public void gzipIsCompatible()
+		throws IOException
+	{
+		byte[] compressed = compress(Compression.GZIP, DATA);
+		try(InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed)))
+		{
+			assertArrayEquals(DATA, readFully(in));
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(GZIPOutputStream out = new GZIPOutputStream(bos))
+		{
+			out.write(DATA);
+		}
+		try(InputStream in = Compression.GZIP.decompress(new ByteArrayInputStream(bos.toByteArray())))
+		{
+			assertArrayEquals(DATA, readFully(in));
+		}
+	}
+
+	@Test
+	public void deflateWithLevels()
+		throws IOException
+	{
+		byte[] gzip = compress(Compression.GZIP, DATA);
+		for(int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++)
+		{
+			Compression compression = new Compression(Compression.Framing.DEFLATE, level);
+			byte[] compressed = compress(compression, DATA);
+			if(level == Deflater.DEFAULT_COMPRESSION)
+			{
+				assertEquals(gzip.length - 18, compressed.length);
+			}
+			try(InputStream in = compression.decompress(new ByteArrayInputStream(compressed)))
+			{
+				assertArrayEquals(DATA, readFully(in));
+			}
+		}
+	}
+
+	@Test(expected = ZipException.class)
+	public void corruptTrailer()
+		throws IOException
+	{
+		byte[] compressed = compress(Compression.GZIP, DATA);
+		compressed[compressed.length - 5]++;
+		try(InputStream in = Compression.GZIP.decompress(new ByteArrayInputStream(compressed)))
+		{
+			readFully(in);
+		}
+	}
+
+	@Test
+	public void pooling()
+	{
+		Deflater deflater = CompressionPool.acquireDeflater(Deflater.BEST_SPEED);
+		Deflater nested = CompressionPool.acquireDeflater(Deflater.BEST_SPEED);
+		assertNotSame(deflater, nested);
+		CompressionPool.releaseDeflater(deflater, Deflater.BEST_SPEED);
+		CompressionPool.releaseDeflater(nested, Deflater.BEST_SPEED);
+		assertSame(deflater, CompressionPool.acquireDeflater(Deflater.BEST_SPEED));
+		CompressionPool.releaseDeflater(deflater, Deflater.BEST_SPEED);
+
+		Inflater inflater = CompressionPool.acquireInflater();
+		CompressionPool.releaseInflater(inflater);
+		assertSame(inflater, CompressionPool.acquireInflater());
+		assertTrue(inflater.needsInput());
+		CompressionPool.releaseInflater(inflater);
+	}
+
+	@Test
+	public void bufferPooling()
+	{
+		byte[] buffer = CompressionPool.acquireBuffer(100);
+		byte[] nested = CompressionPool.acquireBuffer(100);
+		assertNotSame(buffer, nested);
+		CompressionPool.releaseBuffer(nested);
+		CompressionPool.releaseBuffer(buffer);
+		assertNotSame(buffer, CompressionPool.acquireBuffer(200));
+		assertSame(buffer, CompressionPool.acquireBuffer(100));
+		CompressionPool.releaseBuffer(buffer);
+	}
+
+	@Test
+	public void bufferSizeAndSyncFlush()
+		throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(OutputStream out = Compression.GZIP.compress(bos, 3, true))
+		{
+			out.write(DATA);
+			out.flush();
+			try(InputStream in = Compression.GZIP.decompress(new ByteArrayInputStream(bos.toByteArray()), 3))
+			{
+				byte[] flushed = new byte[DATA.length];
+				int offset = 0;
+				while(offset < flushed.length)
+				{
+					offset += in.read(flushed, offset, flushed.length - offset);
+				}
+				assertArrayEquals(DATA, flushed);
+			}
+		}
+		try(InputStream in = new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray())))
+		{
+			assertArrayEquals(DATA, readFully(in));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidBufferSize()
+		throws IOException
+	{
+		Compression.GZIP.compress(new ByteArrayOutputStream(), 0, false);
+	}
+
+	@Test
+	public void codecs()
+	{
+		Compression compression = new Compression(Compression.Framing.DEFLATE, Deflater.BEST_SPEED);
+		SerializableEncoder<String> encoder = new SerializableEncoder<>(compression);
+		SerializableDecoder<String> decoder = new SerializableDecoder<>(compression);
+		assertEquals("Foo", decoder.decode(encoder.encode("Foo")));
+		assertEquals("Foo", new SerializableDecoder<String>(true).decode(new SerializableEncoder<String>(true).encode("Foo")));
+
+		XmlEncoder<String> xmlEncoder = new XmlEncoder<>(compression);
+		XmlDecoder<String> xmlDecoder = new XmlDecoder<>(compression);
+		assertEquals("Bar", xmlDecoder.decode(xmlEncoder.encode("Bar")));
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DictionaryCompressingCodecTest
+{
+	private static String record(int i)
+	{
+		return "de.huxhorn.lilith.example.SomeService|de.huxhorn.lilith.example.SomeService.process"
+			+ "|Processing request " + i + " for user user" + (i % 7) + " took " + (i * 13 % 1000) + "ms.";
+	}
+
+	@Test
+	public void roundTrip()
+	{
+		SerializableCodec<String> codec = new SerializableCodec<>();
+		List<byte[]> samples = new ArrayList<>();
+		for(int i = 0; i < 100; i++)
+		{
+			samples.add(codec.encode(record(i)));
+		}
+		byte[] dictionary = DictionaryTrainer.train(samples);
+		assertTrue(dictionary.length > 0);
+		assertTrue(dictionary.length <= DictionaryTrainer.DEFAULT_DICTIONARY_SIZE);
+
+		DictionaryCompressingCodec<String> instance = new DictionaryCompressingCodec<>(codec, dictionary);
+		CompressingSerializableCodec<String> gzip = new CompressingSerializableCodec<>();
+		long dictionarySize = 0;
+		long gzipSize = 0;
+		for(int i = 1000; i < 1100; i++)
+		{
+			String obj = record(i);
+			byte[] encoded = instance.encode(obj);
+			assertEquals(obj, instance.decode(encoded));
+			dictionarySize += encoded.length;
+			gzipSize += gzip.encode(obj).length;
+		}
+		assertTrue("dictionary: " + dictionarySize + ", gzip: " + gzipSize, dictionarySize * 2 < gzipSize);
+	}
+
+	@Test
+	public void emptyDictionary()
+	{
+		DictionaryCompressingCodec<String> instance = new DictionaryCompressingCodec<>(new SerializableCodec<>(), new byte[0]);
+		assertEquals("Foo", instance.decode(instance.encode("Foo")));
+	}
+
+	@Test
+	public void wrongDictionary()
+	{
+		SerializableCodec<String> codec = new SerializableCodec<>();
+		byte[] dictionary = codec.encode(record(1));
+		DictionaryCompressingCodec<String> instance = new DictionaryCompressingCodec<>(codec, dictionary);
+		byte[] encoded = instance.encode(record(2));
+
+		byte[] otherDictionary = codec.encode("Something else entirely.");
+		DictionaryCompressingCodec<String> other = new DictionaryCompressingCodec<>(codec, otherDictionary);
+		assertNull(other.decode(encoded));
+		assertNull(instance.decode(Arrays.copyOf(encoded, encoded.length / 2)));
+		assertNull(instance.decode(null));
+	}
+
+	@Test
+	public void corruptLength()
+	{
+		DictionaryCompressingCodec<String> instance = new DictionaryCompressingCodec<>(new SerializableCodec<>(), new byte[0]);
+		byte[] encoded = instance.encode("Foo");
+		// varint of Integer.MAX_VALUE followed by the deflate data
+		byte[] corrupt = new byte[encoded.length + 4];
+		corrupt[0] = (byte) 0xFF;
+		corrupt[1] = (byte) 0xFF;
+		corrupt[2] = (byte) 0xFF;
+		corrupt[3] = (byte) 0xFF;
+		corrupt[4] = (byte) 0x07;
+		System.arraycopy(encoded, 1, corrupt, 5, encoded.length - 1);
+		assertNull(instance.decode(corrupt));
+
+		// negative length
+		corrupt[4] = (byte) 0x0F;
+		assertNull(instance.decode(corrupt));
+	}
+
+	@Test
+	public void metaData()
+	{
+		byte[] dictionary = new byte[]{1, 2, 3, 4, 5};
+		DictionaryCompressingCodec<String> instance = new DictionaryCompressingCodec<>(new SerializableCodec<>(), dictionary);
+		Map<String, String> metaData = new HashMap<>();
+		assertNull(DictionaryCompressingCodec.loadDictionary(metaData));
+		instance.storeDictionary(metaData);
+		assertArrayEquals(dictionary, DictionaryCompressingCodec.loadDictionary(metaData));
+	}
+
+	@Test
+	public void batch()
+	{
+		SerializableCodec<String> codec = new SerializableCodec<>();
+		List<String> objects = new ArrayList<>();
+		List<byte[]> samples = new ArrayList<>();
+		for(int i = 0; i < 100; i++)
+		{
+			objects.add(record(i));
+			samples.add(codec.encode(record(i)));
+		}
+		DictionaryCompressingCodec<String> instance = new DictionaryCompressingCodec<>(codec, DictionaryTrainer.train(samples));
+		assertEquals(objects, instance.decodeAll(instance.encodeAll(objects)));
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class EncodingBufferTest
+{
+	@Test
+	public void growAndPatch()
+	{
+		EncodingBuffer instance = new EncodingBuffer(2);
+		int position = instance.reserveInt();
+		instance.write(new byte[]{1, 2, 3}, 0, 3);
+		instance.write(4);
+		instance.putInt(position, 0x01020304);
+		assertArrayEquals(new byte[]{1, 2, 3, 4, 1, 2, 3, 4}, instance.toByteArray());
+
+		instance.setSize(4);
+		int longPosition = instance.reserveLong();
+		instance.putLong(longPosition, 0x0102030405060708L);
+		assertArrayEquals(new byte[]{1, 2, 3, 4, 1, 2, 3, 4, 5, 6, 7, 8}, instance.toByteArray());
+
+		instance.reset();
+		assertEquals(0, instance.size());
+	}
+
+	@Test
+	public void pooling()
+	{
+		EncodingBuffer first = EncodingBuffer.acquire();
+		first.write(17);
+		EncodingBuffer nested = EncodingBuffer.acquire();
+		assertNotSame(first, nested);
+		nested.release();
+		first.release();
+
+		EncodingBuffer second = EncodingBuffer.acquire();
+		assertSame(first, second);
+		assertEquals(0, second.size());
+		second.release();
+	}
+
+	@Test
+	public void encoders()
+	{
+		EncodingBuffer buffer = new EncodingBuffer();
+		buffer.write(42);
+		SerializableEncoder<String> encoder = new SerializableEncoder<>(true);
+		int length = encoder.encode("Foo", buffer);
+		assertEquals(buffer.size() - 1, length);
+
+		byte[] encoded = new byte[length];
+		System.arraycopy(buffer.getBuffer(), 1, encoded, 0, length);
+		assertArrayEquals(encoder.encode("Foo"), encoded);
+		assertEquals("Foo", new SerializableDecoder<String>(true).decode(encoded));
+
+		XmlEncoder<String> xmlEncoder = new XmlEncoder<>();
+		buffer.reset();
+		length = xmlEncoder.encode("Bar", buffer);
+		assertEquals(buffer.size(), length);
+		assertEquals("Bar", new XmlDecoder<String>().decode(buffer.toByteArray()));
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HeaderPrefixCodecTest
+{
+	@Test
+	public void roundTrip()
+	{
+		HeaderPrefixCodec<String, Integer> instance = new HeaderPrefixCodec<>(new SerializableCodec<>(), new SerializableCodec<>(), String::length);
+		byte[] encoded = instance.encode("Foobar");
+		assertEquals("Foobar", instance.decode(encoded));
+		assertEquals(Integer.valueOf(6), instance.decodeHeader(encoded));
+
+		EncodingBuffer buffer = new EncodingBuffer();
+		buffer.write(17);
+		assertEquals(encoded.length, instance.encode("Foobar", buffer));
+		assertEquals(encoded.length + 1, buffer.size());
+	}
+
+	@Test
+	public void nullElement()
+	{
+		HeaderPrefixCodec<String, Integer> instance = new HeaderPrefixCodec<>(new SerializableCodec<>(), new SerializableCodec<>(), String::length);
+		byte[] encoded = instance.encode(null);
+		assertNull(instance.decode(encoded));
+		assertNull(instance.decodeHeader(encoded));
+	}
+
+	@Test
+	public void invalidBytes()
+	{
+		HeaderPrefixCodec<String, Integer> instance = new HeaderPrefixCodec<>(new SerializableCodec<>(), new SerializableCodec<>(), String::length);
+		assertNull(instance.decode(new byte[]{(byte) 0x80}));
+		assertNull(instance.decodeHeader(new byte[]{10, 1, 2}));
+		assertNull(instance.decodeHeader(null));
+	}
+
+	@Test
+	public void lazyElement()
+	{
+		HeaderPrefixCodec<String, Integer> codec = new HeaderPrefixCodec<>(new SerializableCodec<>(), new SerializableCodec<>(), String::length);
+		LazyElement<String> instance = new LazyElement<>(codec.encode("Foo"), codec);
+		assertTrue(instance.isHeaderAvailable());
+		assertEquals(3, instance.getHeader());
+		assertFalse(instance.isDecoded());
+		assertEquals("Foo", instance.get());
+		assertTrue(instance.isDecoded());
+
+		LazyElement<String> plain = new LazyElement<>(new SerializableCodec<String>().encode("Foo"), new SerializableCodec<>());
+		assertFalse(plain.isHeaderAvailable());
+		assertNull(plain.getHeader());
+		assertEquals("Foo", plain.get());
+	}
+}
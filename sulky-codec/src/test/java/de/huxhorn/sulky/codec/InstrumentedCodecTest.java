@@ -0,0 +1,159 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.MBeanServer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentedCodecTest
+{
+	@Test
+	public void unchangedBehavior()
+	{
+		SerializableCodec<String> codec = new SerializableCodec<>();
+		CodecStatistics statistics = new CodecStatistics("unchanged");
+		InstrumentedCodec<String> instance = new InstrumentedCodec<>(codec, statistics);
+
+		byte[] encoded = instance.encode("Foo");
+		assertArrayEquals(codec.encode("Foo"), encoded);
+		assertEquals("Foo", instance.decode(encoded));
+		assertEquals(Arrays.asList("Foo", "Bar"), instance.decodeAll(instance.encodeAll(Arrays.asList("Foo", "Bar"))));
+		assertNull(instance.decode(new byte[]{1, 2, 3}));
+
+		assertEquals(1, statistics.getEncodeCount());
+		assertEquals(0, statistics.getEncodeFailureCount());
+		assertEquals(encoded.length, statistics.getEncodedSizeMax());
+		assertEquals(2, statistics.getDecodeCount());
+		assertEquals(1, statistics.getDecodeFailureCount());
+		assertEquals(encoded.length, statistics.getDecodedSize().getMax());
+		assertTrue(Double.isNaN(statistics.getCompressionRatio()));
+
+		statistics.reset();
+		assertEquals(0, statistics.getEncodeCount());
+		assertEquals(0, statistics.getDecodeFailureCount());
+	}
+
+	@Test
+	public void encodingBuffer()
+	{
+		CodecStatistics statistics = new CodecStatistics("buffer");
+		InstrumentedEncoder<String> instance = new InstrumentedEncoder<>(new SerializableEncoder<>(), statistics);
+		EncodingBuffer buffer = new EncodingBuffer();
+		int length = instance.encode("Foo", buffer);
+		assertEquals(buffer.size(), length);
+		assertEquals(length, statistics.getEncodedSizeMax());
+	}
+
+	@Test
+	public void compressionRatio()
+	{
+		char[] chars = new char[10000];
+		Arrays.fill(chars, 'x');
+		String obj = new String(chars);
+		CodecStatistics statistics = new CodecStatistics("compression");
+		InstrumentedCodec<String> instance = new InstrumentedCodec<>(new CompressingSerializableCodec<>(), statistics);
+		byte[] encoded = instance.encode(obj);
+		assertArrayEquals(new CompressingSerializableCodec<String>().encode(obj), encoded);
+		assertEquals(obj, instance.decode(encoded));
+		double ratio = statistics.getCompressionRatio();
+		assertTrue(String.valueOf(ratio), ratio > 0 && ratio < 0.1);
+
+		// compression of other instances isn't recorded
+		new CompressingSerializableCodec<String>().encode(obj + obj);
+		assertEquals(ratio, statistics.getCompressionRatio(), 0);
+
+		CodecStatistics dictionaryStatistics = new CodecStatistics("dictionary");
+		InstrumentedCodec<String> dictionary = new InstrumentedCodec<>(new DictionaryCompressingCodec<>(new SerializableCodec<>(), obj.getBytes()), dictionaryStatistics);
+		assertEquals(obj, dictionary.decode(dictionary.encode(obj)));
+		assertTrue(String.valueOf(dictionaryStatistics.getCompressionRatio()), dictionaryStatistics.getCompressionRatio() < 0.1);
+	}
+
+	@Test
+	public void encodeFailure()
+	{
+		CodecStatistics statistics = new CodecStatistics("failure");
+		InstrumentedEncoder<Object> instance = new InstrumentedEncoder<>(object -> null, statistics);
+		assertNull(instance.encode("Foo"));
+		assertEquals(1, statistics.getEncodeCount());
+		assertEquals(1, statistics.getEncodeFailureCount());
+		assertEquals(0, statistics.getEncodedSize().getCount());
+	}
+
+	@Test
+	public void mbean()
+		throws Exception
+	{
+		CodecStatistics statistics = new CodecStatistics("mbean");
+		new InstrumentedCodec<>(new SerializableCodec<String>(), statistics).encode("Foo");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		statistics.registerMBean();
+		try
+		{
+			assertEquals(1L, server.getAttribute(statistics.getObjectName(), "EncodeCount"));
+		}
+		finally
+		{
+			statistics.unregisterMBean();
+		}
+		assertFalse(server.isRegistered(statistics.getObjectName()));
+	}
+
+	@Test
+	public void histogram()
+	{
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getPercentile(50));
+		for(int i = 1; i <= 100; i++)
+		{
+			histogram.record(i);
+		}
+		histogram.record(-5);
+		assertEquals(101, histogram.getCount());
+		assertEquals(5050, histogram.getSum());
+		assertEquals(100, histogram.getMax());
+		assertEquals(63, histogram.getPercentile(50));
+		assertEquals(100, histogram.getPercentile(99));
+		assertEquals(0, histogram.getPercentile(0));
+		assertEquals(1, histogram.getBucketCounts()[0]);
+	}
+}
@@ -34,9 +34,12 @@
 
 package de.huxhorn.sulky.codec;
 
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class SerializableCodecTest
 {
@@ -49,4 +52,14 @@ public class SerializableCodecTest
 		String decoded = instance.decode(encoded);
 		assertEquals(obj, decoded);
 	}
+
+	@Test
+	public void batch()
+	{
+		List<String> objects = Arrays.asList("Foo", null, "Bar", "Foo");
+		SerializableCodec<String> instance = new SerializableCodec<>();
+		byte[] encoded = instance.encodeAll(objects);
+		assertEquals(objects, instance.decodeAll(encoded));
+		assertNull(instance.decodeAll(new byte[]{1, 2, 3}));
+	}
 }
@@ -0,0 +1,173 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SharedClassDescriptorCodecTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Event event(int i)
+	{
+		Event result = new Event();
+		result.timestamp = 1000L * i;
+		result.message = "Message " + i;
+		result.level = Level.values()[i % Level.values().length];
+		result.mdc = new HashMap<>();
+		result.mdc.put("user", "user" + (i % 7));
+		result.arguments = new ArrayList<>();
+		result.arguments.add(i);
+		return result;
+	}
+
+	@Test
+	public void roundTrip()
+	{
+		SharedClassDescriptorCodec<Event> instance = new SharedClassDescriptorCodec<>(new ClassDescriptorTable());
+		SerializableCodec<Event> plain = new SerializableCodec<>();
+		long sharedSize = 0;
+		long plainSize = 0;
+		for(int i = 0; i < 100; i++)
+		{
+			Event obj = event(i);
+			byte[] encoded = instance.encode(obj);
+			assertEquals(obj, instance.decode(encoded));
+			sharedSize += encoded.length;
+			plainSize += plain.encode(obj).length;
+		}
+		assertTrue("shared: " + sharedSize + ", plain: " + plainSize, sharedSize * 2 < plainSize);
+	}
+
+	@Test
+	public void compressed()
+	{
+		SharedClassDescriptorCodec<Event> instance = new SharedClassDescriptorCodec<>(new ClassDescriptorTable(), Compression.DEFLATE);
+		Event obj = event(17);
+		assertEquals(obj, instance.decode(instance.encode(obj)));
+	}
+
+	@Test
+	public void persistentTable()
+		throws Exception
+	{
+		File dataFile = new File(folder.getRoot(), "buffer.data");
+		ClassDescriptorTable table = ClassDescriptorTable.forDataFile(dataFile);
+		assertEquals(new File(folder.getRoot(), "buffer.data" + ClassDescriptorTable.FILE_EXTENSION), table.getFile());
+		SharedClassDescriptorCodec<Event> writer = new SharedClassDescriptorCodec<>(table);
+		SharedClassDescriptorCodec<Event> reader = new SharedClassDescriptorCodec<>(ClassDescriptorTable.forDataFile(dataFile));
+		// reader has been created before anything was written
+		List<byte[]> records = new ArrayList<>();
+		for(int i = 0; i < 10; i++)
+		{
+			records.add(writer.encode(event(i)));
+		}
+		int size = table.size();
+		assertTrue(table.getFile().isFile());
+		for(int i = 0; i < 10; i++)
+		{
+			assertEquals(event(i), reader.decode(records.get(i)));
+		}
+		assertEquals(size, reader.getTable().size());
+
+		// a second writer reuses the existing descriptors
+		SharedClassDescriptorCodec<Event> otherWriter = new SharedClassDescriptorCodec<>(ClassDescriptorTable.forDataFile(dataFile));
+		assertEquals(records.get(3).length, otherWriter.encode(event(3)).length);
+		assertEquals(size, otherWriter.getTable().size());
+
+		// descriptors added by one instance are appended to those of the other
+		SharedClassDescriptorCodec<Serializable> mixed = new SharedClassDescriptorCodec<>(ClassDescriptorTable.forDataFile(dataFile));
+		byte[] date = mixed.encode(new java.util.Date(42));
+		assertEquals(new java.util.Date(42), new SharedClassDescriptorCodec<>(table).decode(date));
+		assertEquals(size + 1, table.size());
+	}
+
+	@Test
+	public void unknownDescriptor()
+	{
+		SharedClassDescriptorCodec<Event> writer = new SharedClassDescriptorCodec<>(new ClassDescriptorTable());
+		SharedClassDescriptorCodec<Event> reader = new SharedClassDescriptorCodec<>(new ClassDescriptorTable());
+		assertNull(reader.decode(writer.encode(event(1))));
+	}
+
+	public enum Level
+	{
+		DEBUG, INFO, WARN
+	}
+
+	public static class Event
+		implements Serializable
+	{
+		private static final long serialVersionUID = 4413395962929924212L;
+
+		long timestamp;
+		String message;
+		Level level;
+		Map<String, String> mdc;
+		List<Object> arguments;
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this == o) return true;
+			if(!(o instanceof Event)) return false;
+			Event event = (Event) o;
+			return timestamp == event.timestamp
+				&& java.util.Objects.equals(message, event.message)
+				&& level == event.level
+				&& java.util.Objects.equals(mdc, event.mdc)
+				&& java.util.Objects.equals(arguments, event.arguments);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (int) (timestamp ^ (timestamp >>> 32));
+		}
+	}
+}
@@ -34,9 +34,12 @@
 
 package de.huxhorn.sulky.codec;
 
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class XmlCodecTest
 {
@@ -50,4 +53,16 @@ public class XmlCodecTest
 		String decoded = decoder.decode(encoded);
 		assertEquals(obj, decoded);
 	}
+
+	@Test
+	public void batch()
+	{
+		List<String> objects = Arrays.asList("Foo", null, "Bar");
+		XmlEncoder<String> encoder = new XmlEncoder<>();
+		XmlDecoder<String> decoder = new XmlDecoder<>();
+		byte[] encoded = encoder.encodeAll(objects);
+		assertEquals(objects, decoder.decodeAll(encoded));
+		assertEquals(Arrays.asList(), decoder.decodeAll(encoder.encodeAll(Arrays.asList())));
+		assertNull(decoder.decodeAll(new byte[]{0, 0, 0, 1, 0, 0, 0, 5}));
+	}
 }
@@ -0,0 +1,346 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.binary;
+
+import de.huxhorn.sulky.codec.EncodingBuffer;
+import de.huxhorn.sulky.codec.SerializableCodec;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.Objects;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecordCodecTest
+{
+	private static final String[] EVENT_FIELDS = {"timestamp", "level", "logger", "message", "threadId", "lineNumber", "ratio", "flag", "data"};
+
+	private static Event createEvent()
+	{
+		return new Event(1234567890123L, Level.WARN, "de.huxhorn.sulky.Foo", "Foo \u00e4\u00f6\u00fc \ud83d\ude00", 17L, -42, 0.25, true, new byte[]{1, 2, 3});
+	}
+
+	private static RecordCodec<Event> createEventCodec()
+	{
+		return new RecordCodec<>(MethodHandles.lookup(), Event.class, EVENT_FIELDS);
+	}
+
+	@Test
+	public void roundTrip()
+	{
+		RecordCodec<Event> instance = createEventCodec();
+		Event event = createEvent();
+		assertEquals(event, instance.decode(instance.encode(event)));
+
+		Event empty = new Event(0, null, null, null, null, 0, 0.0, false, null);
+		assertEquals(empty, instance.decode(instance.encode(empty)));
+	}
+
+	@Test
+	public void extremeValues()
+	{
+		RecordCodec<Event> instance = createEventCodec();
+		Event event = new Event(Long.MIN_VALUE, Level.DEBUG, "", "", Long.MAX_VALUE, Integer.MIN_VALUE, Double.NaN, false, new byte[0]);
+		assertEquals(event, instance.decode(instance.encode(event)));
+		event = new Event(Long.MAX_VALUE, Level.DEBUG, "", "", Long.MIN_VALUE, Integer.MAX_VALUE, Double.NEGATIVE_INFINITY, false, new byte[0]);
+		assertEquals(event, instance.decode(instance.encode(event)));
+	}
+
+	@Test
+	public void allTypes()
+	{
+		RecordCodec<AllTypes> instance = new RecordCodec<>(MethodHandles.lookup(), AllTypes.class,
+				"booleanValue", "byteValue", "shortValue", "charValue", "intValue", "longValue", "floatValue", "doubleValue",
+				"booleanObject", "byteObject", "shortObject", "charObject", "intObject", "longObject", "floatObject", "doubleObject");
+		AllTypes value = new AllTypes();
+		value.booleanValue = true;
+		value.byteValue = -1;
+		value.shortValue = Short.MIN_VALUE;
+		value.charValue = '\uFFFF';
+		value.intValue = -1;
+		value.longValue = -1L;
+		value.floatValue = -0.0f;
+		value.doubleValue = Double.MAX_VALUE;
+		value.booleanObject = false;
+		value.byteObject = Byte.MIN_VALUE;
+		value.shortObject = Short.MAX_VALUE;
+		value.charObject = 'x';
+		value.intObject = Integer.MAX_VALUE;
+		value.longObject = Long.MIN_VALUE;
+		value.floatObject = Float.MIN_VALUE;
+		value.doubleObject = null;
+		assertEquals(value, instance.decode(instance.encode(value)));
+		assertEquals(new AllTypes(), instance.decode(instance.encode(new AllTypes())));
+	}
+
+	@Test
+	public void nullRecord()
+	{
+		RecordCodec<Event> instance = createEventCodec();
+		byte[] bytes = instance.encode(null);
+		assertArrayEquals(new byte[]{0}, bytes);
+		assertNull(instance.decode(bytes));
+	}
+
+	@Test
+	public void appendsToBuffer()
+	{
+		RecordCodec<Event> instance = createEventCodec();
+		Event event = createEvent();
+		byte[] expected = instance.encode(event);
+		EncodingBuffer buffer = new EncodingBuffer();
+		buffer.write(17);
+		assertEquals(expected.length, instance.encode(event, buffer));
+		assertEquals(expected.length + 1, buffer.size());
+		assertArrayEquals(expected, Arrays.copyOfRange(buffer.getBuffer(), 1, buffer.size()));
+	}
+
+	@Test
+	public void smallerThanSerializable()
+	{
+		Event event = createEvent();
+		int recordSize = createEventCodec().encode(event).length;
+		int serializableSize = new SerializableCodec<Event>().encode(event).length;
+		assertTrue("record: " + recordSize + ", serializable: " + serializableSize, recordSize * 5 < serializableSize);
+	}
+
+	@Test
+	public void schemaEvolution()
+	{
+		RecordCodec<Event> current = createEventCodec();
+		RecordCodec<Event> previous = new RecordCodec<>(MethodHandles.lookup(), Event.class, "timestamp", "level", "logger", "message");
+		Event event = createEvent();
+
+		Event expected = new Event(event.timestamp, event.level, event.logger, event.message, null, 0, 0.0, false, null);
+		assertEquals(expected, current.decode(previous.encode(event)));
+		assertEquals(expected, previous.decode(current.encode(event)));
+	}
+
+	@Test
+	public void mutableRecord()
+	{
+		RecordCodec<MutableEvent> instance = new RecordCodec<>(MethodHandles.lookup(), MutableEvent.class, "timestamp", "message");
+		MutableEvent event = new MutableEvent();
+		event.timestamp = 17;
+		event.message = "Foo";
+		MutableEvent decoded = instance.decode(instance.encode(event));
+		assertEquals(17, decoded.timestamp);
+		assertEquals("Foo", decoded.message);
+
+		RecordCodec<MutableEvent> previous = new RecordCodec<>(MethodHandles.lookup(), MutableEvent.class, "timestamp");
+		decoded = instance.decode(previous.encode(event));
+		assertEquals(17, decoded.timestamp);
+		assertEquals("Default", decoded.message);
+	}
+
+	@Test
+	public void invalidData()
+	{
+		RecordCodec<Event> instance = createEventCodec();
+		byte[] bytes = instance.encode(createEvent());
+		assertNull(instance.decode(Arrays.copyOf(bytes, bytes.length - 2)));
+		assertNull(instance.decode(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}));
+		assertNull(instance.decode(new byte[0]));
+		assertNull(instance.decode(null));
+	}
+
+	@Test
+	public void invalidSchema()
+	{
+		expectIllegalArgument("missing");
+		expectIllegalArgument("timestamp", "timestamp");
+		expectIllegalArgument("timestamp", "self");
+		expectIllegalArgument("CONSTANT");
+		expectIllegalArgument();
+	}
+
+	private static void expectIllegalArgument(String... fieldNames)
+	{
+		try
+		{
+			new RecordCodec<>(MethodHandles.lookup(), Unsupported.class, fieldNames);
+			fail("Expected IllegalArgumentException for " + Arrays.toString(fieldNames) + "!");
+		}
+		catch(IllegalArgumentException ex)
+		{
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void finalFieldsWithoutConstructor()
+	{
+		new RecordCodec<>(MethodHandles.lookup(), Event.class, "timestamp", "level");
+	}
+
+	public enum Level
+	{
+		DEBUG, INFO, WARN
+	}
+
+	private static final class Event
+		implements Serializable
+	{
+		private static final long serialVersionUID = -4353411440637467453L;
+
+		private final long timestamp;
+		private final Level level;
+		private final String logger;
+		private final String message;
+		private final Long threadId;
+		private final int lineNumber;
+		private final double ratio;
+		private final boolean flag;
+		private final byte[] data;
+
+		private Event(long timestamp, Level level, String logger, String message, Long threadId, int lineNumber, double ratio, boolean flag, byte[] data)
+		{
+			this.timestamp = timestamp;
+			this.level = level;
+			this.logger = logger;
+			this.message = message;
+			this.threadId = threadId;
+			this.lineNumber = lineNumber;
+			this.ratio = ratio;
+			this.flag = flag;
+			this.data = data;
+		}
+
+		private Event(long timestamp, Level level, String logger, String message)
+		{
+			this(timestamp, level, logger, message, null, 0, 0.0, false, null);
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this == o) return true;
+			if(o == null || getClass() != o.getClass()) return false;
+			Event event = (Event) o;
+			return timestamp == event.timestamp
+					&& lineNumber == event.lineNumber
+					&& Double.compare(event.ratio, ratio) == 0
+					&& flag == event.flag
+					&& level == event.level
+					&& Objects.equals(logger, event.logger)
+					&& Objects.equals(message, event.message)
+					&& Objects.equals(threadId, event.threadId)
+					&& Arrays.equals(data, event.data);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(timestamp, level, logger, message);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Event[timestamp=" + timestamp + ", level=" + level + ", logger=" + logger + ", message=" + message
+					+ ", threadId=" + threadId + ", lineNumber=" + lineNumber + ", ratio=" + ratio + ", flag=" + flag
+					+ ", data=" + Arrays.toString(data) + "]";
+		}
+	}
+
+	private static final class MutableEvent
+	{
+		private long timestamp;
+		private String message = "Default";
+	}
+
+	private static final class AllTypes
+	{
+		private boolean booleanValue;
+		private byte byteValue;
+		private short shortValue;
+		private char charValue;
+		private int intValue;
+		private long longValue;
+		private float floatValue;
+		private double doubleValue;
+		private Boolean booleanObject;
+		private Byte byteObject;
+		private Short shortObject;
+		private Character charObject;
+		private Integer intObject;
+		private Long longObject;
+		private Float floatObject;
+		private Double doubleObject;
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this == o) return true;
+			if(o == null || getClass() != o.getClass()) return false;
+			AllTypes that = (AllTypes) o;
+			return booleanValue == that.booleanValue
+					&& byteValue == that.byteValue
+					&& shortValue == that.shortValue
+					&& charValue == that.charValue
+					&& intValue == that.intValue
+					&& longValue == that.longValue
+					&& Float.compare(that.floatValue, floatValue) == 0
+					&& Double.compare(that.doubleValue, doubleValue) == 0
+					&& Objects.equals(booleanObject, that.booleanObject)
+					&& Objects.equals(byteObject, that.byteObject)
+					&& Objects.equals(shortObject, that.shortObject)
+					&& Objects.equals(charObject, that.charObject)
+					&& Objects.equals(intObject, that.intObject)
+					&& Objects.equals(longObject, that.longObject)
+					&& Objects.equals(floatObject, that.floatObject)
+					&& Objects.equals(doubleObject, that.doubleObject);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(intValue, longValue);
+		}
+	}
+
+	private static final class Unsupported
+	{
+		private static final String CONSTANT = "constant";
+
+		private long timestamp;
+		private Unsupported self;
+	}
+}
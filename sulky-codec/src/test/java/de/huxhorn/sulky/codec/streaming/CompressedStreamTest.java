@@ -0,0 +1,184 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import de.huxhorn.sulky.codec.Compression;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedStreamTest
+{
+	private static final int COUNT = 100;
+
+	private static List<String> createValues()
+	{
+		List<String> result = new ArrayList<>(COUNT);
+		for(int i = 0; i < COUNT; i++)
+		{
+			result.add("Some rather repetitive message number " + i);
+		}
+		return result;
+	}
+
+	private static byte[] write(List<String> values, Compression compression, int bufferSize, boolean autoFlush)
+		throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(CompressedStreamWriter<String> writer = new CompressedStreamWriter<>(new StreamingSerializableCodec<>(), bos, compression, bufferSize, autoFlush))
+		{
+			for(String value : values)
+			{
+				writer.write(value);
+			}
+		}
+		return bos.toByteArray();
+	}
+
+	private static List<String> read(byte[] bytes, Compression compression, int bufferSize)
+		throws IOException
+	{
+		List<String> result = new ArrayList<>();
+		try(CompressedStreamReader<String> reader = new CompressedStreamReader<>(new StreamingSerializableCodec<>(), new ByteArrayInputStream(bytes), compression, bufferSize))
+		{
+			for(;;)
+			{
+				String value = reader.read();
+				if(value == null)
+				{
+					return result;
+				}
+				result.add(value);
+			}
+		}
+	}
+
+	@Test
+	public void roundTrip()
+		throws IOException
+	{
+		List<String> values = createValues();
+		Compression deflate = new Compression(Compression.Framing.DEFLATE, Deflater.BEST_SPEED);
+		for(Compression compression : new Compression[]{Compression.GZIP, deflate})
+		{
+			for(int bufferSize : new int[]{1, 512, CompressedStreamWriter.DEFAULT_BUFFER_SIZE})
+			{
+				assertEquals(values, read(write(values, compression, bufferSize, true), compression, bufferSize));
+				assertEquals(values, read(write(values, compression, bufferSize, false), compression, bufferSize));
+			}
+		}
+	}
+
+	@Test
+	public void defaults()
+		throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(CompressedStreamWriter<String> writer = new CompressedStreamWriter<>(new StreamingSerializableCodec<>(), bos))
+		{
+			assertTrue(writer.isAutoFlush());
+			writer.write("Foo");
+			writer.write("Bar");
+		}
+		try(CompressedStreamReader<String> reader = new CompressedStreamReader<>(new StreamingSerializableCodec<>(), new ByteArrayInputStream(bos.toByteArray())))
+		{
+			assertEquals("Foo", reader.read());
+			assertEquals("Bar", reader.read());
+			assertNull(reader.read());
+		}
+	}
+
+	@Test
+	public void autoFlushMakesObjectsAvailable()
+		throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try(CompressedStreamWriter<String> writer = new CompressedStreamWriter<>(new StreamingSerializableCodec<>(), bos))
+		{
+			writer.write("Foo");
+			try(CompressedStreamReader<String> reader = new CompressedStreamReader<>(new StreamingSerializableCodec<>(), new ByteArrayInputStream(bos.toByteArray())))
+			{
+				assertEquals("Foo", reader.read());
+			}
+		}
+	}
+
+	@Test
+	public void smallerThanSeparateMembers()
+		throws IOException
+	{
+		List<String> values = createValues();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		GZIPStreamingEncoderWrapper<String> encoder = new GZIPStreamingEncoderWrapper<>(new StreamingSerializableCodec<>());
+		for(String value : values)
+		{
+			ByteArrayOutputStream member = new ByteArrayOutputStream();
+			encoder.encode(value, member);
+			bos.write(member.toByteArray());
+		}
+		int separate = bos.size();
+		int shared = write(values, Compression.GZIP, CompressedStreamWriter.DEFAULT_BUFFER_SIZE, false).length;
+		assertTrue("shared: " + shared + ", separate: " + separate, shared * 5 < separate);
+	}
+
+	@Test
+	public void gzipIsCompatible()
+		throws IOException
+	{
+		List<String> values = createValues();
+		byte[] bytes = write(values, Compression.GZIP, 512, true);
+		StreamingSerializableCodec<String> codec = new StreamingSerializableCodec<>();
+		List<String> result = new ArrayList<>();
+		try(InputStream in = new ShieldedInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes))))
+		{
+			for(int i = 0; i < COUNT; i++)
+			{
+				result.add(codec.decode(in));
+			}
+			assertEquals(-1, in.read());
+		}
+		assertEquals(values, result);
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import de.huxhorn.sulky.codec.Compression;
+import de.huxhorn.sulky.codec.SerializableCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FramedStreamingCodecTest
+{
+	private static List<String> objects()
+	{
+		List<String> result = new ArrayList<>();
+		for(int i = 0; i < 50; i++)
+		{
+			result.add("Message " + i);
+		}
+		char[] large = new char[10000];
+		Arrays.fill(large, 'x');
+		result.add(new String(large));
+		result.add("");
+		return result;
+	}
+
+	private static byte[] encode(FramedStreamingCodec<String> instance, List<String> objects)
+		throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		for(String current : objects)
+		{
+			instance.encode(current, bos);
+		}
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void decodeStream()
+		throws IOException
+	{
+		FramedStreamingCodec<String> instance = new FramedStreamingCodec<>(new SerializableCodec<>());
+		List<String> objects = objects();
+		ByteArrayInputStream bis = new ByteArrayInputStream(encode(instance, objects));
+		for(String current : objects)
+		{
+			assertEquals(current, instance.decode(bis));
+		}
+		assertEquals(-1, bis.read());
+	}
+
+	@Test
+	public void frameReader()
+		throws IOException
+	{
+		FramedStreamingCodec<String> instance = new FramedStreamingCodec<>(new SerializableCodec<>(), Compression.DEFLATE);
+		List<String> objects = objects();
+		byte[] encoded = encode(instance, objects);
+
+		List<Frame> frames = new ArrayList<>();
+		ByteArrayOutputStream forwarded = new ByteArrayOutputStream();
+		try(FrameReader reader = new FrameReader(new ByteArrayInputStream(encoded), 100, FrameReader.DEFAULT_MAX_FRAME_LENGTH))
+		{
+			for(;;)
+			{
+				Frame frame = reader.read();
+				if(frame == null)
+				{
+					break;
+				}
+				frames.add(frame);
+				frame.writeTo(forwarded);
+			}
+		}
+		assertArrayEquals(encoded, forwarded.toByteArray());
+		assertEquals(objects.size(), frames.size());
+		assertFalse(frames.get(0).isCompressed());
+		assertTrue(frames.get(50).isCompressed());
+		assertEquals(Frame.DEFLATE, frames.get(50).getFlags());
+		assertTrue(frames.get(50).getPayload().remaining() < 100);
+
+		List<String> decoded = frames.parallelStream().map(frame -> {
+			try
+			{
+				return instance.decode(frame);
+			}
+			catch(IOException e)
+			{
+				return null;
+			}
+		}).collect(Collectors.toList());
+		assertEquals(objects, decoded);
+	}
+
+	@Test
+	public void emptyStream()
+		throws IOException
+	{
+		try(FrameReader reader = new FrameReader(new ByteArrayInputStream(new byte[0])))
+		{
+			assertNull(reader.read());
+		}
+	}
+
+	@Test(expected = EOFException.class)
+	public void truncatedStream()
+		throws IOException
+	{
+		FramedStreamingCodec<String> instance = new FramedStreamingCodec<>(new SerializableCodec<>());
+		byte[] encoded = encode(instance, Arrays.asList("Foo"));
+		try(FrameReader reader = new FrameReader(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 1))))
+		{
+			reader.read();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void invalidLength()
+		throws IOException
+	{
+		try(FrameReader reader = new FrameReader(new ByteArrayInputStream(new byte[]{(byte) 0xFF, 0, 0, 0, 0})))
+		{
+			reader.read();
+		}
+	}
+}
@@ -37,6 +37,7 @@ package de.huxhorn.sulky.codec.streaming;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.zip.Deflater;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -45,10 +46,21 @@ public class GZIPStreamingWrapperTest
 {
 	@Test
 	public void test() throws IOException
+	{
+		roundTrip(new GZIPStreamingEncoderWrapper<>(new StreamingSerializableCodec<>()),
+				new GZIPStreamingDecoderWrapper<>(new StreamingSerializableCodec<>()));
+	}
+
+	@Test
+	public void bufferSize() throws IOException
+	{
+		roundTrip(new GZIPStreamingEncoderWrapper<>(new StreamingSerializableCodec<>(), Deflater.BEST_SPEED, 7),
+				new GZIPStreamingDecoderWrapper<>(new StreamingSerializableCodec<>(), 64 * 1024));
+	}
+
+	private static void roundTrip(StreamingEncoder<String> encoder, StreamingDecoder<String> decoder) throws IOException
 	{
 		String obj = "Foo";
-		StreamingEncoder<String> encoder = new GZIPStreamingEncoderWrapper<>(new StreamingSerializableCodec<>());
-		StreamingDecoder<String> decoder = new GZIPStreamingDecoderWrapper<>(new StreamingSerializableCodec<>());
 		try(ByteArrayOutputStream bos=new ByteArrayOutputStream())
 		{
 			encoder.encode(obj, bos);
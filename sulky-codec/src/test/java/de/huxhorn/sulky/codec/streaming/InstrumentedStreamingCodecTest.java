@@ -0,0 +1,97 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.streaming;
+
+import de.huxhorn.sulky.codec.CodecStatistics;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InstrumentedStreamingCodecTest
+{
+	@Test
+	public void test()
+		throws IOException
+	{
+		CodecStatistics statistics = new CodecStatistics("streaming");
+		InstrumentedStreamingCodec<String> instance = new InstrumentedStreamingCodec<>(new StreamingSerializableCodec<>(), statistics);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		instance.encode("Foo", bos);
+		byte[] encoded = bos.toByteArray();
+		assertEquals("Foo", instance.decode(new ByteArrayInputStream(encoded)));
+
+		assertEquals(1, statistics.getEncodeCount());
+		assertEquals(encoded.length, statistics.getEncodedSizeMax());
+		assertEquals(1, statistics.getDecodeCount());
+		assertEquals(encoded.length, statistics.getDecodedSize().getMax());
+
+		try
+		{
+			instance.decode(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+			fail("Expected IOException!");
+		}
+		catch(IOException expected)
+		{
+			// expected
+		}
+		assertEquals(2, statistics.getDecodeCount());
+		assertEquals(1, statistics.getDecodeFailureCount());
+	}
+
+	@Test
+	public void compressionRatio()
+		throws IOException
+	{
+		char[] chars = new char[10000];
+		Arrays.fill(chars, 'x');
+		String obj = new String(chars);
+		CodecStatistics statistics = new CodecStatistics("gzip");
+		InstrumentedStreamingEncoder<String> instance = new InstrumentedStreamingEncoder<>(new GZIPStreamingEncoderWrapper<>(new StreamingSerializableCodec<>()), statistics);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		instance.encode(obj, bos);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new GZIPStreamingEncoderWrapper<String>(new StreamingSerializableCodec<>()).encode(obj, expected);
+		assertArrayEquals(expected.toByteArray(), bos.toByteArray());
+		double ratio = statistics.getCompressionRatio();
+		assertTrue(String.valueOf(ratio), ratio > 0 && ratio < 0.1);
+	}
+}
@@ -0,0 +1,396 @@
+/*
+ * sulky-modules - several general-purpose modules.
+ * Copyright (C) 2007-2021 Joern Huxhorn
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright 2007-2021 Joern Huxhorn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.huxhorn.sulky.codec.xml;
+
+import de.huxhorn.sulky.codec.Compression;
+import de.huxhorn.sulky.codec.XmlDecoder;
+import de.huxhorn.sulky.codec.XmlEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BeanXmlCodecTest
+{
+	private static Bean createBean()
+	{
+		Bean result = new Bean();
+		result.setName("Foo <&> \"bar\"\r\n\u0001");
+		result.setCount(17);
+		result.setTimestamp(1234567890123L);
+		result.setFlag(true);
+		result.setRatio(0.25);
+		result.setLevel(Level.WARN);
+		result.setList(new ArrayList<>(Arrays.asList("a", null, "c")));
+		Map<String, Integer> map = new HashMap<>();
+		map.put("one", 1);
+		map.put("two", 2);
+		result.setMap(map);
+		result.setDate(new Date(42));
+		result.setArray(new String[]{"x", null, "z"});
+		result.setValues(new int[]{0, 1, 0, 3});
+		result.setCharacter('\u0002');
+		result.setDescription(null);
+		Bean child = new Bean();
+		child.setName("child");
+		result.setChild(child);
+		return result;
+	}
+
+	private static <E> BeanXmlDecoder<E> createDecoder()
+	{
+		BeanXmlDecoder<E> result = new BeanXmlDecoder<>();
+		result.registerClasses(Bean.class, Level.class);
+		return result;
+	}
+
+	@Test
+	public void roundTrip()
+	{
+		Bean bean = createBean();
+		BeanXmlCodec<Bean> instance = new BeanXmlCodec<>(null, Bean.class, Level.class);
+		assertEquals(bean, instance.decode(instance.encode(bean)));
+		assertEquals(new Bean(), instance.decode(instance.encode(new Bean())));
+	}
+
+	@Test
+	public void compressed()
+	{
+		Bean bean = createBean();
+		BeanXmlCodec<Bean> instance = new BeanXmlCodec<>(Compression.GZIP, Bean.class, Level.class);
+		assertEquals(bean, instance.decode(instance.encode(bean)));
+	}
+
+	@Test
+	public void simpleValues()
+	{
+		BeanXmlCodec<Object> instance = new BeanXmlCodec<>(null, Level.class);
+		List<Object> values = Arrays.asList("Foo", "", 1, 2L, (short) 3, (byte) 4, 5.0f, 6.0, true, 'c', Level.DEBUG, String.class, new Date(17));
+		for(Object value : values)
+		{
+			assertEquals(value, instance.decode(instance.encode(value)));
+		}
+		assertNull(instance.decode(instance.encode(null)));
+	}
+
+	@Test
+	public void readsXmlEncoder()
+	{
+		Bean bean = createBean();
+		BeanXmlDecoder<Bean> decoder = createDecoder();
+		assertEquals(bean, decoder.decode(new XmlEncoder<Bean>().encode(bean)));
+	}
+
+	@Test
+	public void readableByXmlDecoder()
+	{
+		Bean bean = createBean();
+		XmlDecoder<Bean> decoder = new XmlDecoder<>();
+		assertEquals(bean, decoder.decode(new BeanXmlEncoder<Bean>().encode(bean)));
+	}
+
+	@Test
+	public void sharedReferences()
+	{
+		Bean shared = new Bean();
+		shared.setName("shared");
+		Bean bean = new Bean();
+		bean.setChild(shared);
+		bean.setList(new ArrayList<>());
+		bean.getList().add(shared.getName());
+		bean.getList().add(shared.getName());
+		BeanXmlDecoder<Bean> decoder = createDecoder();
+		assertEquals(bean, decoder.decode(new XmlEncoder<Bean>().encode(bean)));
+	}
+
+	@Test
+	public void cyclicReference()
+	{
+		Bean bean = new Bean();
+		bean.setChild(bean);
+		assertNull(new BeanXmlEncoder<Bean>().encode(bean));
+	}
+
+	@Test
+	public void invalidInput()
+	{
+		BeanXmlDecoder<Object> decoder = createDecoder();
+		assertNull(decoder.decode("<java><object class=\"does.not.Exist\"/></java>".getBytes()));
+		assertNull(decoder.decode("<foo/>".getBytes()));
+	}
+
+	@Test
+	public void rejectsMethods()
+	{
+		BeanXmlDecoder<Object> decoder = createDecoder();
+		assertNull(decoder.decode("<java><object class=\"java.lang.Integer\" method=\"getInteger\"><string>foo</string></object></java>".getBytes()));
+		assertNull(decoder.decode("<java><object class=\"java.lang.Runtime\" method=\"getRuntime\"/></java>".getBytes()));
+		assertNull(decoder.decode("<java><object class=\"java.util.ArrayList\"><void method=\"clear\"/></object></java>".getBytes()));
+		assertEquals(Level.INFO, decoder.decode(("<java><object class=\"" + Level.class.getName() + "\" method=\"valueOf\"><string>INFO</string></object></java>").getBytes()));
+	}
+
+	@Test
+	public void rejectsClasses()
+	{
+		BeanXmlDecoder<Object> decoder = createDecoder();
+		assertNull(decoder.decode("<java><object class=\"java.io.FileOutputStream\"><string>foo</string></object></java>".getBytes()));
+		assertNull(decoder.decode("<java><array class=\"java.io.File\" length=\"1\"/></java>".getBytes()));
+		assertNull(decoder.decode("<java><class>java.lang.Runtime</class></java>".getBytes()));
+		assertNull(decoder.decode("<java><object class=\"java.util.ArrayList\"><int>2147483647</int></object></java>".getBytes()));
+		assertNull(new BeanXmlDecoder<>().decode(new BeanXmlEncoder<Bean>().encode(new Bean())));
+
+		BeanXmlDecoder<Object> filtered = new BeanXmlDecoder<>(null, null, name -> name.startsWith(Bean.class.getName()));
+		assertEquals(new Bean(), filtered.decode(new BeanXmlEncoder<Bean>().encode(new Bean())));
+		assertNull(filtered.decode(new BeanXmlEncoder<Level>().encode(Level.INFO)));
+	}
+
+	@Test
+	public void arrayLength()
+	{
+		BeanXmlDecoder<Object> decoder = createDecoder();
+		assertNull(decoder.decode("<java><array class=\"long\" length=\"2147483647\"/></java>".getBytes()));
+		assertNull(decoder.decode("<java><array class=\"int\" length=\"-1\"/></java>".getBytes()));
+		int[][] values = {{1, 2}, null, {3}};
+		int[][] decoded = (int[][]) decoder.decode(new BeanXmlEncoder<int[][]>().encode(values));
+		assertEquals(Arrays.deepToString(values), Arrays.deepToString(decoded));
+
+		decoder.setMaxArrayLength(2);
+		assertNull(decoder.decode(new BeanXmlEncoder<int[][]>().encode(values)));
+	}
+
+	public enum Level
+	{
+		DEBUG, INFO, WARN
+	}
+
+	public static class Bean
+	{
+		private String name;
+		private int count;
+		private long timestamp;
+		private boolean flag;
+		private double ratio;
+		private Level level;
+		private List<String> list;
+		private Map<String, Integer> map;
+		private Date date;
+		private String[] array;
+		private int[] values;
+		private char character;
+		private String description = "default";
+		private Bean child;
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public void setName(String name)
+		{
+			this.name = name;
+		}
+
+		public int getCount()
+		{
+			return count;
+		}
+
+		public void setCount(int count)
+		{
+			this.count = count;
+		}
+
+		public long getTimestamp()
+		{
+			return timestamp;
+		}
+
+		public void setTimestamp(long timestamp)
+		{
+			this.timestamp = timestamp;
+		}
+
+		public boolean isFlag()
+		{
+			return flag;
+		}
+
+		public void setFlag(boolean flag)
+		{
+			this.flag = flag;
+		}
+
+		public double getRatio()
+		{
+			return ratio;
+		}
+
+		public void setRatio(double ratio)
+		{
+			this.ratio = ratio;
+		}
+
+		public Level getLevel()
+		{
+			return level;
+		}
+
+		public void setLevel(Level level)
+		{
+			this.level = level;
+		}
+
+		public List<String> getList()
+		{
+			return list;
+		}
+
+		public void setList(List<String> list)
+		{
+			this.list = list;
+		}
+
+		public Map<String, Integer> getMap()
+		{
+			return map;
+		}
+
+		public void setMap(Map<String, Integer> map)
+		{
+			this.map = map;
+		}
+
+		public Date getDate()
+		{
+			return date;
+		}
+
+		public void setDate(Date date)
+		{
+			this.date = date;
+		}
+
+		public String[] getArray()
+		{
+			return array;
+		}
+
+		public void setArray(String[] array)
+		{
+			this.array = array;
+		}
+
+		public int[] getValues()
+		{
+			return values;
+		}
+
+		public void setValues(int[] values)
+		{
+			this.values = values;
+		}
+
+		public char getCharacter()
+		{
+			return character;
+		}
+
+		public void setCharacter(char character)
+		{
+			this.character = character;
+		}
+
+		public String getDescription()
+		{
+			return description;
+		}
+
+		public void setDescription(String description)
+		{
+			this.description = description;
+		}
+
+		public Bean getChild()
+		{
+			return child;
+		}
+
+		public void setChild(Bean child)
+		{
+			this.child = child;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(this == o) return true;
+			if(o == null || getClass() != o.getClass()) return false;
+			Bean bean = (Bean) o;
+			return count == bean.count
+				&& timestamp == bean.timestamp
+				&& flag == bean.flag
+				&& Double.compare(bean.ratio, ratio) == 0
+				&& character == bean.character
+				&& Objects.equals(name, bean.name)
+				&& level == bean.level
+				&& Objects.equals(list, bean.list)
+				&& Objects.equals(map, bean.map)
+				&& Objects.equals(date, bean.date)
+				&& Arrays.equals(array, bean.array)
+				&& Arrays.equals(values, bean.values)
+				&& Objects.equals(description, bean.description)
+				&& Objects.equals(child, bean.child);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(name, count, timestamp);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Bean[name=" + name + ", count=" + count + ", child=" + child + "]";
+		}
+	}
+}